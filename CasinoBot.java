@@ -21,6 +21,12 @@ package irccasino;
 import irccasino.blackjack.Blackjack;
 import irccasino.texaspoker.TexasPoker;
 import irccasino.cardgame.CardGame;
+import irccasino.cardgame.CommandRegistry;
+import irccasino.cardgame.ConnectionPool;
+import irccasino.cardgame.GameTimer;
+import irccasino.cardgame.NickIndex;
+import irccasino.cardgame.PersistenceQueue;
+import irccasino.cardgame.PlayerCache;
 import irccasino.texastourney.TexasTourney;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -29,11 +35,17 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.pircbotx.Channel;
 import org.pircbotx.Colors;
 import org.pircbotx.PircBotX;
@@ -51,14 +63,33 @@ import org.pircbotx.hooks.events.*;
 public class CasinoBot extends PircBotX implements GameManager {
     
     protected HashMap<String,String> configMap;
-    protected ArrayList<CardGame> gameList;
+    protected CopyOnWriteArrayList<CardGame> gameList;
+    protected ConcurrentHashMap<Channel,CardGame> channelGames;
+    protected ConnectionPool dbPool;
+    protected PersistenceQueue persistenceQueue;
+    protected PlayerCache playerCache;
+    protected NickIndex nickIndex;
+    protected GameTimer gameTimer;
+    protected ExecutorService gameWorkers;
     protected String logFile;
     protected SimpleDateFormat timeFormat;
     
     /**
-     * Listener for CasinoBot initialization commands.
+     * Listener for CasinoBot initialization commands. It is the only
+     * listener, and it also routes each event to the game it concerns, so
+     * that every line is parsed once rather than once per game.
      */
     public static class InitListener extends ListenerAdapter<CasinoBot> {
+        /** The bot commands, all of which are for channel Ops. */
+        private static final CommandRegistry BOT_COMMANDS = new CommandRegistry()
+                .addOp("games")
+                .addOp("blackjack", "bj")
+                .addOp("texaspoker", "tp")
+                .addOp("texastourney", "tt")
+                .addOp("endgame")
+                .addOp("botquit", "shutdown")
+                .addOp("reboot", "reconnect");
+        
         protected CasinoBot bot;
         protected char commandChar;
         
@@ -121,9 +152,63 @@ public class CasinoBot extends PircBotX implements GameManager {
                 for (int ctr = 0; ctr < params.length; ctr++){
                     params[ctr] = st.nextToken();
                 }
+                
+                // Route the command to the game in the channel, if any
+                CardGame game = bot.getGame(event.getChannel());
+                if (game != null) {
+                    game.handleCommand(event.getUser(), command, params);
+                }
                 processCommand(event.getChannel(), event.getUser(), command, params, msg);
             }
         }
+        
+        /**
+         * Routes part events to the game in the channel.
+         * @param event Part event
+         */
+        @Override
+        public void onPart(PartEvent<CasinoBot> event) {
+            CardGame game = bot.getGame(event.getChannel());
+            if (game != null) {
+                game.handlePart(event.getUser());
+            }
+        }
+        
+        /**
+         * Routes quit events to the game the user is playing, if any.
+         * @param event Quit event
+         */
+        @Override
+        public void onQuit(QuitEvent<CasinoBot> event) {
+            CardGame game = bot.getGame(event.getUser().getNick());
+            if (game != null) {
+                game.handleQuit(event.getUser());
+            }
+        }
+        
+        /**
+         * Routes nick change events to the game the user is playing, if any.
+         * @param event Nick change event
+         */
+        @Override
+        public void onNickChange(NickChangeEvent<CasinoBot> event) {
+            CardGame game = bot.getGame(event.getOldNick());
+            if (game != null) {
+                game.handleNickChange(event.getUser(), event.getOldNick(), event.getNewNick());
+            }
+        }
+        
+        /**
+         * Routes kick events to the game in the channel.
+         * @param event Kick event
+         */
+        @Override
+        public void onKick(KickEvent<CasinoBot> event) {
+            CardGame game = bot.getGame(event.getChannel());
+            if (game != null) {
+                game.handleKick(event.getRecipient());
+            }
+        }
 
         /**
          * Processes initialization commands for a CasinoBot.
@@ -134,24 +219,19 @@ public class CasinoBot extends PircBotX implements GameManager {
          * @param msg
          */
         public void processCommand(Channel channel, User user, String command, String[] params, String msg){
-            if (!channel.isOp(user)){
-                return; // Do nothing if not a channel Op
+            CommandRegistry.Command cmd = BOT_COMMANDS.find(command);
+            if (cmd == null || !channel.isOp(user)){
+                return; // Do nothing if not a bot command or not a channel Op
             }
             
-            if (command.equalsIgnoreCase("games")) {
-                games(channel, user, params, msg);
-            } else if (command.equalsIgnoreCase("blackjack") || command.equalsIgnoreCase("bj")) {
-                blackjack(channel, user, params, msg);
-            } else if (command.equalsIgnoreCase("texaspoker") || command.equalsIgnoreCase("tp")) {
-                texaspoker(channel, user, params, msg);
-            } else if (command.equalsIgnoreCase("texastourney") || command.equalsIgnoreCase("tt")) {
-                texastourney(channel, user, params, msg);
-            } else if (command.equalsIgnoreCase("endgame")) {
-                endGame(channel, user, params, msg);
-            } else if (command.equalsIgnoreCase("botquit") || command.equalsIgnoreCase("shutdown")) {
-                botQuit(channel, user, params, msg);
-            } else if (command.equalsIgnoreCase("reboot") || command.equalsIgnoreCase("reconnect")) {
-                reboot(channel, user, params, msg);
+            switch (cmd.getName()) {
+                case "games": games(channel, user, params, msg); break;
+                case "blackjack": blackjack(channel, user, params, msg); break;
+                case "texaspoker": texaspoker(channel, user, params, msg); break;
+                case "texastourney": texastourney(channel, user, params, msg); break;
+                case "endgame": endGame(channel, user, params, msg); break;
+                case "botquit": botQuit(channel, user, params, msg); break;
+                case "reboot": reboot(channel, user, params, msg); break;
             }
         }
         
@@ -235,15 +315,11 @@ public class CasinoBot extends PircBotX implements GameManager {
          * @param msg 
          */
         public void endGame(Channel channel, User user, String[] params, String msg) {
-            if (!bot.hasGame(channel)) {
+            CardGame game = bot.getGame(channel);
+            if (game == null) {
                 bot.sendMessage(channel, "No game is currently running.");
-            } else {
-                CardGame game = bot.getGame(channel);
-                if (game.isInProgress()){
-                    bot.sendMessage(channel, "Please wait for the current round to finish.");
-                } else {
-                    bot.endGame(game);
-                }
+            } else if (!bot.endGameIfIdle(game)) {
+                bot.sendMessage(channel, "Please wait for the current round to finish.");
             }
         }
         
@@ -255,13 +331,32 @@ public class CasinoBot extends PircBotX implements GameManager {
          * @param msg
          */
         public void botQuit(Channel channel, User user, String[] params, String msg) {
-            if (bot.gamesInProgress()) {
-                bot.sendMessage(channel, "There is a game in progress. Please wait for it to finish.");
-            } else {
-                bot.endAllGames();
-                bot.setAutoReconnect(false);
-                bot.quitServer("Bye.");
+            // Check every game before ending any of them
+            String busy = "";
+            for (CardGame game : bot.getGames()) {
+                if (bot.isInProgress(game)) {
+                    busy += (busy.isEmpty() ? "" : ", ") + game.getChannel().getName();
+                }
             }
+            if (!busy.isEmpty()) {
+                bot.sendMessage(channel, "There is a game in progress in " + busy + ". Please wait for it to finish.");
+                return;
+            }
+            
+            // A round may have started since the check above, so each game
+            // is checked again as it is ended and any left running is reported
+            String running = "";
+            for (CardGame game : bot.getGames()) {
+                if (!bot.endGameIfIdle(game)) {
+                    running += (running.isEmpty() ? "" : ", ") + game.getChannel().getName();
+                }
+            }
+            if (!running.isEmpty()) {
+                bot.sendMessage(channel, "A round started in " + running + ", which was left running. The other games have ended. Please wait for it to finish and try again.");
+                return;
+            }
+            bot.setAutoReconnect(false);
+            bot.quitServer("Bye.");
         }
         
         /**
@@ -272,11 +367,13 @@ public class CasinoBot extends PircBotX implements GameManager {
          * @param msg
          */
         public void reboot(Channel channel, User user, String[] params, String msg) {
-            if (bot.gamesInProgress()) {
-                bot.sendMessage(channel, "There is a game in progress. Please wait for it to finish.");
-            } else {
-                bot.quitServer("Reconnecting...");
+            for (CardGame game : bot.getGames()) {
+                if (bot.isInProgress(game)) {
+                    bot.sendMessage(channel, "There is a game in progress. Please wait for it to finish.");
+                    return;
+                }
             }
+            bot.quitServer("Reconnecting...");
         }
     }
     
@@ -286,8 +383,22 @@ public class CasinoBot extends PircBotX implements GameManager {
     public CasinoBot(){
         super();
         logFile = "";
-        gameList = new ArrayList<>();
+        gameList = new CopyOnWriteArrayList<>();
+        channelGames = new ConcurrentHashMap<>();
         configMap = new HashMap<>();
+        dbPool = new ConnectionPool("jdbc:sqlite:stats.sqlite3", 4);
+        persistenceQueue = new PersistenceQueue(this, dbPool);
+        playerCache = new PlayerCache(1000);
+        nickIndex = new NickIndex();
+        gameTimer = new GameTimer();
+        gameWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Game Worker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
         timeFormat = new SimpleDateFormat("yyyy/MM/dd  HH:mm:ss:SSS");
     }
     
@@ -365,22 +476,12 @@ public class CasinoBot extends PircBotX implements GameManager {
     
     @Override
     public CardGame getGame(Channel channel) {
-        for (CardGame game : gameList) {
-            if (game.getChannel().equals(channel)){
-                return game;
-            }
-        }
-        return null;
+        return channelGames.get(channel);
     }
     
     @Override
     public CardGame getGame(String nick) {
-        for (CardGame game : gameList) {
-            if (game.isJoined(nick) || game.isWaitlisted(nick)) {
-                return game;
-            }
-        }
-        return null;
+        return nickIndex.getGame(nick);
     }
     
     @Override
@@ -390,12 +491,7 @@ public class CasinoBot extends PircBotX implements GameManager {
     
     @Override
     public boolean isBlacklisted(String nick) {
-        for (CardGame game : gameList) {
-            if (game.isBlacklisted(nick)) {
-                return true;
-            }
-        }
-        return false;
+        return nickIndex.isBlacklisted(nick);
     }
         
     @Override
@@ -411,14 +507,75 @@ public class CasinoBot extends PircBotX implements GameManager {
     @Override
     public void startGame(CardGame game) {
         gameList.add(game);
-        getListenerManager().addListener(game);
+        channelGames.put(game.getChannel(), game);
+    }
+    
+    /**
+     * Checks whether a game has a round in progress. The check runs on the
+     * game's mailbox so that it sees the game's latest state.
+     * @param game the game
+     * @return true if a round is in progress
+     */
+    public boolean isInProgress(final CardGame game) {
+        final AtomicBoolean inProgress = new AtomicBoolean();
+        game.getMailbox().executeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                inProgress.set(game.isInProgress());
+            }
+        });
+        return inProgress.get();
+    }
+    
+    /**
+     * Ends a game unless it has a round in progress. The check and the
+     * teardown run as one message on the game's mailbox, so a round cannot
+     * start in between.
+     * @param game the game
+     * @return false if the game was left running
+     */
+    public boolean endGameIfIdle(final CardGame game) {
+        final AtomicBoolean ended = new AtomicBoolean();
+        boolean ran = game.getMailbox().executeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                if (!game.isInProgress()) {
+                    game.endGame();
+                    game.getMailbox().close();
+                    ended.set(true);
+                }
+            }
+        });
+        // A closed mailbox means the game has already been ended
+        if (ran && !ended.get()) {
+            return false;
+        }
+        removeGame(game);
+        return true;
     }
     
     @Override
-    public void endGame(CardGame game) {
-        game.endGame();
-        getListenerManager().removeListener(game);
+    public void endGame(final CardGame game) {
+        // End the game on its own mailbox, after any events already queued
+        game.getMailbox().executeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                game.endGame();
+                game.getMailbox().close();
+            }
+        });
+        removeGame(game);
+    }
+    
+    /**
+     * Removes an ended game from the bot.
+     * @param game the game
+     */
+    protected void removeGame(CardGame game) {
         gameList.remove(game);
+        channelGames.remove(game.getChannel());
+        nickIndex.removeGame(game);
+        persistenceQueue.flush();
     }
     
     @Override
@@ -428,6 +585,36 @@ public class CasinoBot extends PircBotX implements GameManager {
         }
     }
     
+    @Override
+    public ConnectionPool getDBPool() {
+        return dbPool;
+    }
+    
+    @Override
+    public PersistenceQueue getPersistenceQueue() {
+        return persistenceQueue;
+    }
+    
+    @Override
+    public PlayerCache getPlayerCache() {
+        return playerCache;
+    }
+    
+    @Override
+    public NickIndex getNickIndex() {
+        return nickIndex;
+    }
+    
+    @Override
+    public GameTimer getGameTimer() {
+        return gameTimer;
+    }
+    
+    @Override
+    public ExecutorService getGameWorkers() {
+        return gameWorkers;
+    }
+    
     /**
      * Loads configuration file for this bot.
      * @param configFile the configuration file
@@ -587,5 +774,10 @@ public class CasinoBot extends PircBotX implements GameManager {
         }
         
         bot.runBot();
+        bot.getGameTimer().close();
+        bot.getGameWorkers().shutdown();
+        bot.getGameWorkers().awaitTermination(10, TimeUnit.SECONDS);
+        bot.getPersistenceQueue().close();
+        bot.getDBPool().close();
     }
 }
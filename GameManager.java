@@ -19,8 +19,14 @@
 package irccasino;
 
 import irccasino.cardgame.CardGame;
+import irccasino.cardgame.ConnectionPool;
+import irccasino.cardgame.GameTimer;
+import irccasino.cardgame.NickIndex;
+import irccasino.cardgame.PersistenceQueue;
+import irccasino.cardgame.PlayerCache;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import org.pircbotx.Channel;
 import org.pircbotx.User;
 
@@ -94,6 +100,45 @@ public interface GameManager {
      */
     public void endAllGames();
     
+    /**
+     * Returns the connection pool for the stats database that is shared by
+     * all games.
+     * @return the ConnectionPool
+     */
+    public ConnectionPool getDBPool();
+    
+    /**
+     * Returns the queue that writes round results to the stats database in
+     * the background.
+     * @return the PersistenceQueue
+     */
+    public PersistenceQueue getPersistenceQueue();
+    
+    /**
+     * Returns the cache of player purses and stats that is shared by all
+     * games.
+     * @return the PlayerCache
+     */
+    public PlayerCache getPlayerCache();
+    
+    /**
+     * Returns the index of the players in every game by nick.
+     * @return the NickIndex
+     */
+    public NickIndex getNickIndex();
+    
+    /**
+     * Returns the timer that runs the scheduled tasks of all games.
+     * @return the GameTimer
+     */
+    public GameTimer getGameTimer();
+    
+    /**
+     * Returns the worker threads that run the mailboxes of all games.
+     * @return the ExecutorService
+     */
+    public ExecutorService getGameWorkers();
+    
     /**
      * Sends a message to a channel. Automatically implemented by any PircBotX
      * 1.9 which implements this interface.
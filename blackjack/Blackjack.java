@@ -29,11 +29,14 @@ import irccasino.*;
 import irccasino.cardgame.Card;
 import irccasino.cardgame.CardDeck;
 import irccasino.cardgame.CardGame;
+import irccasino.cardgame.CommandRegistry;
 import irccasino.cardgame.Hand;
+import irccasino.cardgame.Leaderboard;
+import irccasino.cardgame.PersistenceTask;
 import irccasino.cardgame.Player;
+import irccasino.cardgame.PlayerCache;
 import irccasino.cardgame.Record;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -43,11 +46,52 @@ import java.sql.SQLException;
  * @author Yizhe Shen
  */
 public class Blackjack extends CardGame {
+    /** The commands of Blackjack. */
+    private static final CommandRegistry BLACKJACK_COMMANDS = new CommandRegistry(CARDGAME_COMMANDS)
+            .add("start", "go")
+            .add("bet", "b")
+            .add("allin", "a")
+            .add("hit", "h")
+            .add("stand", "stay", "sit", "s")
+            .add("doubledown", "dd")
+            .add("surrender", "surr")
+            .add("insure")
+            .add("split")
+            .add("table")
+            .add("sum")
+            .add("hand")
+            .add("allhands")
+            .add("turn")
+            .add("zen", "zc")
+            .add("hilo", "hc")
+            .add("red7", "rc")
+            .add("count", "c")
+            .add("numcards", "ncards")
+            .add("numdiscards", "ndiscards")
+            .add("numdecks", "ndecks")
+            .add("players")
+            .add("house")
+            .addOp("fstart", "fgo")
+            .addOp("fstop")
+            .addOp("fbet", "fb")
+            .addOp("fallin", "fa")
+            .addOp("fhit", "fh")
+            .addOp("fstand", "fstay", "fsit")
+            .addOp("fdoubledown", "fdd")
+            .addOp("fsurrender", "fsurr")
+            .addOp("fsplit")
+            .addOp("finsure")
+            .addOp("shuffle")
+            .addOp("reload")
+            .addOp("test1");
     
     public enum BlackjackState {
-        NONE, PRE_START, BETTING, PLAYING, CONTINUE_ROUND, END_ROUND
+        NONE, PRE_START, BETTING, PLAYING, CONTINUE_ROUND, DEALER_PLAY, END_ROUND
     }
     
+    /** The keys of the Blackjack stats kept in the player cache. */
+    private static final String[] STAT_KEYS = {"rounds", "winnings", "idles"};
+    
     BlackjackPlayer dealer;
     IdleShuffleTask idleShuffleTask;
     // In-game properties
@@ -84,172 +128,54 @@ public class Blackjack extends CardGame {
     }
 
     @Override
-    public void processCommand(User user, String command, String[] params){
+    protected CommandRegistry getCommandRegistry() {
+        return BLACKJACK_COMMANDS;
+    }
+    
+    @Override
+    protected void executeCommand(User user, String command, String[] params){
         String nick = user.getNick();
-        String host = user.getHostmask();
         
         // Commands available in Blackjack.
-        if (command.equalsIgnoreCase("join") || command.equalsIgnoreCase("j")){
-            join(nick, host);
-        } else if (command.equalsIgnoreCase("leave") || command.equalsIgnoreCase("quit") || command.equalsIgnoreCase("l") || command.equalsIgnoreCase("q")){
-            leave(nick, params);
-        } else if (command.equalsIgnoreCase("last")) {
-            last(nick, params);
-        } else if (command.equalsIgnoreCase("start") || command.equalsIgnoreCase("go")){
-            start(nick, params);
-        } else if (command.equalsIgnoreCase("stop")) {
-            stop(nick, params);
-        } else if (command.equalsIgnoreCase("bet") || command.equalsIgnoreCase("b")) {
-            bet(nick, params);
-        } else if (command.equalsIgnoreCase("allin") || command.equalsIgnoreCase("a")){
-            allin(nick, params);
-        } else if (command.equalsIgnoreCase("hit") || command.equalsIgnoreCase("h")) {
-            hit(nick, params);
-        } else if (command.equalsIgnoreCase("stand") || command.equalsIgnoreCase("stay") || command.equalsIgnoreCase("sit") || command.equalsIgnoreCase("s")) {
-            stand(nick, params);
-        } else if (command.equalsIgnoreCase("doubledown") || command.equalsIgnoreCase("dd")) {
-            doubledown(nick, params);
-        } else if (command.equalsIgnoreCase("surrender") || command.equalsIgnoreCase("surr")) {
-            surrender(nick, params);
-        } else if (command.equalsIgnoreCase("insure")) {
-            insure(nick, params);
-        } else if (command.equalsIgnoreCase("split")) {
-            split(nick, params);
-        } else if (command.equalsIgnoreCase("table")) {
-            table(nick, params);
-        } else if (command.equalsIgnoreCase("sum")) {
-            sum(nick, params);
-        } else if (command.equalsIgnoreCase("hand")) {
-            hand(nick, params);
-        } else if (command.equalsIgnoreCase("allhands")) {
-            allhands(nick, params);
-        } else if (command.equalsIgnoreCase("turn")) {
-            turn(nick, params);
-        } else if (command.equalsIgnoreCase("zc") || (command.equalsIgnoreCase("zen"))) {
-            zen(nick, params);
-        } else if (command.equalsIgnoreCase("hc") || (command.equalsIgnoreCase("hilo"))) {
-            hilo(nick, params);
-        } else if (command.equalsIgnoreCase("rc") || (command.equalsIgnoreCase("red7"))) {
-            red7(nick, params);
-        } else if (command.equalsIgnoreCase("count") || command.equalsIgnoreCase("c")){
-            count(nick, params);
-        } else if (command.equalsIgnoreCase("numcards") || command.equalsIgnoreCase("ncards")) {
-            numcards(nick, params);
-        } else if (command.equalsIgnoreCase("numdiscards") || command.equalsIgnoreCase("ndiscards")) {
-            numdiscards(nick, params);
-        } else if (command.equalsIgnoreCase("numdecks") || command.equalsIgnoreCase("ndecks")) {
-            numdecks(nick, params);
-        } else if (command.equalsIgnoreCase("players")) {
-            players(nick, params);
-        } else if (command.equalsIgnoreCase("house")) {
-            house(nick, params);
-        } else if (command.equalsIgnoreCase("cash") || command.equalsIgnoreCase("stack")) {
-            cash(nick, params);
-        } else if (command.equalsIgnoreCase("netcash") || command.equalsIgnoreCase("net")) {
-            netcash(nick, params);
-        } else if (command.equalsIgnoreCase("bank")) {
-            bank(nick, params);
-        } else if (command.equalsIgnoreCase("bankrupts")) {
-            bankrupts(nick, params);
-        } else if (command.equalsIgnoreCase("winnings")) {
-            winnings(nick, params);
-        } else if (command.equalsIgnoreCase("winrate")) {
-            winrate(nick, params);
-        } else if (command.equalsIgnoreCase("rounds")) {
-            rounds(nick, params);
-        } else if (command.equalsIgnoreCase("player") || command.equalsIgnoreCase("p")){
-            player(nick, params);
-        } else if (command.equalsIgnoreCase("deposit")) {
-            deposit(nick, params);
-        } else if (command.equalsIgnoreCase("rathole")) {
-            rathole(nick, params);
-        } else if (command.equalsIgnoreCase("withdraw")) {
-            withdraw(nick, params);
-        } else if (command.equalsIgnoreCase("waitlist")) {
-            waitlist(nick, params);
-        } else if (command.equalsIgnoreCase("blacklist")) {
-            blacklist(nick, params);
-        } else if (command.equalsIgnoreCase("rank")) {
-            rank(nick, params);
-        } else if (command.equalsIgnoreCase("top")) {
-            top(nick, params);
-        } else if (command.equalsIgnoreCase("away")){
-            away(nick, params);
-        } else if (command.equalsIgnoreCase("back")){
-            back(nick, params);
-        } else if (command.equalsIgnoreCase("ping")) {
-            ping(nick, params);
-        } else if (command.equalsIgnoreCase("simple")) {
-            simple(nick, params);
-        } else if (command.equalsIgnoreCase("stats")){
-            stats(nick, params);
-        } else if (command.equalsIgnoreCase("grules") || command.equalsIgnoreCase("gamerules")) {
-            grules(nick, params);
-        } else if (command.equalsIgnoreCase("ghelp") || command.equalsIgnoreCase("gamehelp")) {
-            ghelp(nick, params);
-        } else if (command.equalsIgnoreCase("gcommands") || command.equalsIgnoreCase("gamecommands")) {
-            gcommands(user, nick, params);
-        } else if (command.equalsIgnoreCase("game")) {
-            game(nick, params);
-        } else if (command.equalsIgnoreCase("gversion")) {
-            gversion(nick, params);
-        /* Op commands */
-        } else if (command.equalsIgnoreCase("fj") || command.equalsIgnoreCase("fjoin")){
-            fjoin(user, nick, params);
-        } else if (command.equalsIgnoreCase("fl") || command.equalsIgnoreCase("fq") || command.equalsIgnoreCase("fquit") || command.equalsIgnoreCase("fleave")){
-            fleave(user, nick, params);
-        } else if (command.equalsIgnoreCase("flast")) {
-            flast(user, nick, params);
-        } else if (command.equalsIgnoreCase("fstart") || command.equalsIgnoreCase("fgo")){
-            fstart(user, nick, params);
-        } else if (command.equalsIgnoreCase("fstop")){
-            fstop(user, nick, params);
-        } else if (command.equalsIgnoreCase("fb") || command.equalsIgnoreCase("fbet")){
-            fbet(user, nick, params);
-        } else if (command.equalsIgnoreCase("fallin") || command.equalsIgnoreCase("fa")){
-            fallin(user, nick, params);
-        } else if (command.equalsIgnoreCase("fhit") || command.equalsIgnoreCase("fh")) {
-            fhit(user, nick, params);
-        } else if (command.equalsIgnoreCase("fstay") || command.equalsIgnoreCase("fstand") || command.equalsIgnoreCase("fsit")) {
-            fstand(user, nick, params);
-        } else if (command.equalsIgnoreCase("fdoubledown") || command.equalsIgnoreCase("fdd")) {
-            fdoubledown(user, nick, params);
-        } else if (command.equalsIgnoreCase("fsurrender") || command.equalsIgnoreCase("fsurr")) {
-            fsurrender(user, nick, params);
-        } else if (command.equalsIgnoreCase("fsplit")) {
-            fsplit(user, nick, params);
-        } else if (command.equalsIgnoreCase("finsure")) {
-            finsure(user, nick, params);
-        } else if (command.equalsIgnoreCase("fdeposit")) {
-            fdeposit(user, nick, params);
-        } else if (command.equalsIgnoreCase("fwithdraw")) {
-            fwithdraw(user, nick, params);
-        } else if (command.equalsIgnoreCase("shuffle")){
-            shuffle(user, nick, params);
-        } else if (command.equalsIgnoreCase("reload")){
-            reload(user, nick, params);
-        } else if (command.equalsIgnoreCase("cards")) {
-            cards(user, nick, params);
-        } else if (command.equalsIgnoreCase("discards")) {
-            discards(user, nick, params);
-        } else if (command.equalsIgnoreCase("settings")) {
-            settings(user, nick, params);
-        } else if (command.equalsIgnoreCase("set")){
-            set(user, nick, params);
-        } else if (command.equalsIgnoreCase("get")) {
-            get(user, nick, params);
-        } else if (command.equalsIgnoreCase("resetaway")){
-            resetaway(user, nick, params);
-        } else if (command.equalsIgnoreCase("resetsimple")) {
-            resetsimple(user, nick, params);
-        } else if (command.equalsIgnoreCase("trim")) {
-            trim(user, nick, params);
-        } else if (command.equalsIgnoreCase("query") || command.equalsIgnoreCase("sql")) {
-            query(user, nick, params);
-        } else if (command.equalsIgnoreCase("migrate")) {
-            migrate(user, nick, params);
-        } else if (command.equalsIgnoreCase("test1")){
-            test1(user, nick, params);
+        switch (command) {
+            case "start": start(nick, params); break;
+            case "bet": bet(nick, params); break;
+            case "allin": allin(nick, params); break;
+            case "hit": hit(nick, params); break;
+            case "stand": stand(nick, params); break;
+            case "doubledown": doubledown(nick, params); break;
+            case "surrender": surrender(nick, params); break;
+            case "insure": insure(nick, params); break;
+            case "split": split(nick, params); break;
+            case "table": table(nick, params); break;
+            case "sum": sum(nick, params); break;
+            case "hand": hand(nick, params); break;
+            case "allhands": allhands(nick, params); break;
+            case "turn": turn(nick, params); break;
+            case "zen": zen(nick, params); break;
+            case "hilo": hilo(nick, params); break;
+            case "red7": red7(nick, params); break;
+            case "count": count(nick, params); break;
+            case "numcards": numcards(nick, params); break;
+            case "numdiscards": numdiscards(nick, params); break;
+            case "numdecks": numdecks(nick, params); break;
+            case "players": players(nick, params); break;
+            case "house": house(nick, params); break;
+            /* Op commands */
+            case "fstart": fstart(user, nick, params); break;
+            case "fstop": fstop(user, nick, params); break;
+            case "fbet": fbet(user, nick, params); break;
+            case "fallin": fallin(user, nick, params); break;
+            case "fhit": fhit(user, nick, params); break;
+            case "fstand": fstand(user, nick, params); break;
+            case "fdoubledown": fdoubledown(user, nick, params); break;
+            case "fsurrender": fsurrender(user, nick, params); break;
+            case "fsplit": fsplit(user, nick, params); break;
+            case "finsure": finsure(user, nick, params); break;
+            case "shuffle": shuffle(user, nick, params); break;
+            case "reload": reload(user, nick, params); break;
+            case "test1": test1(user, nick, params); break;
+            default: super.executeCommand(user, command, params);
         }
     }
 
@@ -331,7 +257,7 @@ public class Blackjack extends CardGame {
         } else if (state.equals(BlackjackState.CONTINUE_ROUND)) {
             informPlayer(nick, getMsg("game_lagging"));
         } else {
-            bet(currentPlayer.getInteger("cash"));
+            bet(currentPlayer.getInt("cash"));
         }
     }
     
@@ -544,7 +470,7 @@ public class Blackjack extends CardGame {
         } else {
             BlackjackPlayer p = (BlackjackPlayer) currentPlayer;
             if (p.has("split")){
-                showTurn(p, p.getInteger("currentindex") + 1);
+                showTurn(p, p.getInt("currentindex") + 1);
             } else {
                 showTurn(p, 0);
             }
@@ -727,6 +653,7 @@ public class Blackjack extends CardGame {
             informPlayer(nick, getMsg("no_start"));
         } else {
             cancelStartRoundTask();
+            cancelResumeRoundTask();
             cancelIdleOutTask();
             for (Player p : joined) {
                 resetPlayer(p);
@@ -781,7 +708,7 @@ public class Blackjack extends CardGame {
         } else if (!state.equals(BlackjackState.BETTING)) {
             informPlayer(nick, getMsg("no_betting"));
         } else {
-            bet(currentPlayer.getInteger("cash"));
+            bet(currentPlayer.getInt("cash"));
         }
     }
     
@@ -945,7 +872,6 @@ public class Blackjack extends CardGame {
             notSimpleList.clear();
             cmdMap.clear();
             opCmdMap.clear();
-            aliasMap.clear();
             msgMap.clear();
             sqlMap.clear();
             loadIni();
@@ -1005,6 +931,7 @@ public class Blackjack extends CardGame {
         if (setting.equals("decks")) {
             cancelIdleShuffleTask();
             deck = new CardDeck(get("decks"));
+            updateRandom();
             deck.shuffleCards();
             loadDBGameStats();
         }
@@ -1029,6 +956,8 @@ public class Blackjack extends CardGame {
         settings.put("autostarts", 10);
         settings.put("startwait", 5);
         settings.put("ping", 600);
+        settings.put("rng", 1);
+        settings.put("seed", 0);
     }
     
     @Override
@@ -1049,6 +978,7 @@ public class Blackjack extends CardGame {
         super.loadIni();
         cancelIdleShuffleTask();
         deck = new CardDeck(get("decks"));
+        updateRandom();
         deck.shuffleCards();
         loadDBGameStats();
     }
@@ -1087,6 +1017,10 @@ public class Blackjack extends CardGame {
             out.println("startwait=" + get("startwait"));
             out.println("#The rate-limit of the ping command");
             out.println("ping=" + get("ping"));
+            out.println("#The random number generator for shuffling: 0 for fast, 1 for secure");
+            out.println("rng=" + get("rng"));
+            out.println("#The seed for the fast generator so deals can be replayed, or 0 for a random seed");
+            out.println("seed=" + get("seed"));
         } catch (IOException e) {
             manager.log("Error creating " + iniFile + "!");
         }
@@ -1103,12 +1037,24 @@ public class Blackjack extends CardGame {
         } else if (isJoined(nick)) {
             return findJoined(nick);
         } else {
+            // Use the cached purse and stats if available
+            PlayerCache cache = manager.getPlayerCache();
+            Record purse = cache.get(nick, PlayerCache.PURSE);
+            Record stats = cache.get(nick, name);
             BlackjackPlayer record = null;
-            try (Connection conn = DriverManager.getConnection(dbURL)) {
+            if (purse != null && stats != null) {
+                record = new BlackjackPlayer("");
+                record.putAll(purse);
+                record.putAll(stats);
+                return record;
+            }
+            
+            // A player evicted from the cache may still have a write queued
+            manager.getPersistenceQueue().flush();
+            try (Connection conn = getDBReadConnection()) {
                 conn.setAutoCommit(false);
                 // Retrieve data from Player table if possible
-                String sql = getSQL("SELECT_BJPLAYERVIEW_BY_NICK");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_BJPLAYERVIEW_BY_NICK")) {
                     ps.setString(1, nick);
                     try (ResultSet rs = ps.executeQuery()) {
                         if (rs.isBeforeFirst()) {
@@ -1129,39 +1075,66 @@ public class Blackjack extends CardGame {
             } catch (SQLException ex) {
                 manager.log("SQL Error: " + ex.getMessage());
             }
+            
+            if (record != null) {
+                cache.load(record.getString("nick"), record.getInteger("id"), PlayerCache.PURSE, record, PlayerCache.PURSE_KEYS);
+                cache.load(record.getString("nick"), record.getInteger("id"), name, record, STAT_KEYS);
+            }
             return record;
         }
     }
     
     @Override
     protected void loadDBPlayerData(Player p) {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        // Initialize
+        p.put("id", 0);
+        p.put("cash", get("cash"));
+        p.put("bank", 0);
+        p.put("bankrupts", 0);
+        p.put("rounds", 0);
+        p.put("winnings", 0);
+        p.put("idles", 0);
+        
+        // Use the cached purse and stats if available
+        PlayerCache cache = manager.getPlayerCache();
+        Record purse = cache.get(p.getNick(), PlayerCache.PURSE);
+        Record stats = cache.get(p.getNick(), name);
+        if (purse != null) {
+            p.put("id", purse.get("id"));
+            p.put("cash", purse.get("cash"));
+            p.put("bank", purse.get("bank"));
+            p.put("bankrupts", purse.get("bankrupts"));
+        }
+        if (stats != null) {
+            p.put("id", stats.get("id"));
+            p.put("rounds", stats.get("rounds"));
+            p.put("winnings", stats.get("winnings"));
+            p.put("idles", stats.get("idles"));
+        }
+        if (purse != null && stats != null) {
+            return;
+        }
+        
+        // A player evicted from the cache may still have a write queued
+        manager.getPersistenceQueue().flush();
+        try (Connection conn = getDBWriteConnection()) {
             conn.setAutoCommit(false);
             
-            // Initialize
-            p.put("id", 0);
-            p.put("cash", get("cash"));
-            p.put("bank", 0);
-            p.put("bankrupts", 0);
-            p.put("rounds", 0);
-            p.put("winnings", 0);
-            p.put("idles", 0);
-            
             // Retrieve data from Player table if possible
-            String sql = getSQL("SELECT_PLAYER_BY_NICK");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, p.getNick());
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        p.put("id", rs.getInt("id"));
+            if (!p.has("id")) {
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_PLAYER_BY_NICK")) {
+                    ps.setString(1, p.getNick());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.isBeforeFirst()) {
+                            p.put("id", rs.getInt("id"));
+                        }
                     }
                 }
             }
             
             // Add new record if not found in Player table
             if (!p.has("id")) {
-                sql = getSQL("INSERT_PLAYER");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_PLAYER")) {
                     ps.setString(1, p.getNick());
                     ps.setLong(2, System.currentTimeMillis() / 1000);
                     ps.executeUpdate();
@@ -1169,58 +1142,58 @@ public class Blackjack extends CardGame {
                 }
             }
             
-            // Retrieve data from Purse table if possible
-            boolean found = false;
-            sql = getSQL("SELECT_PURSE_BY_PLAYER_ID");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, p.getInteger("id"));
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        found = true;
-                        p.put("cash", rs.getInt("cash"));
-                        p.put("bank", rs.getInt("bank"));
-                        p.put("bankrupts", rs.getInt("bankrupts"));
-                    }
-                }
-            }
-            
-            // Add new record if not found in Purse
-            if (!found) {
-                informPlayer(p.getNick(), getMsg("new_player"), getGameNameStr(), get("cash"));
-                sql = getSQL("INSERT_PURSE");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (purse == null) {
+                // Retrieve data from Purse table if possible
+                boolean found = false;
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_PURSE_BY_PLAYER_ID")) {
                     ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, p.getInteger("cash"));
-                    ps.setInt(3, p.getInteger("bank"));
-                    ps.setInt(4, p.getInteger("bankrupts"));
-                    ps.executeUpdate();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.isBeforeFirst()) {
+                            found = true;
+                            p.put("cash", rs.getInt("cash"));
+                            p.put("bank", rs.getInt("bank"));
+                            p.put("bankrupts", rs.getInt("bankrupts"));
+                        }
+                    }
                 }
-            }
-            
-            // Retrieve data from BJPlayerStat table if possible
-            found = false;
-            sql = getSQL("SELECT_BJPLAYERSTAT_BY_PLAYER_ID");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, p.getInteger("id"));
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        found = true;
-                        p.put("rounds", rs.getInt("rounds"));
-                        p.put("winnings", rs.getInt("winnings"));
-                        p.put("idles", rs.getInt("idles"));
+                
+                // Add new record if not found in Purse
+                if (!found) {
+                    informPlayer(p.getNick(), getMsg("new_player"), getGameNameStr(), get("cash"));
+                    try (PreparedStatement ps = prepareSQL(conn, "INSERT_PURSE")) {
+                        ps.setInt(1, p.getInteger("id"));
+                        ps.setInt(2, p.getInt("cash"));
+                        ps.setInt(3, p.getInt("bank"));
+                        ps.setInt(4, p.getInteger("bankrupts"));
+                        ps.executeUpdate();
                     }
                 }
             }
             
-            // Add new record if not found in BJPlayerStat table
-            if (!found) {
-                sql = getSQL("INSERT_BJPLAYERSTAT");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (stats == null) {
+                // Retrieve data from BJPlayerStat table if possible
+                boolean found = false;
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_BJPLAYERSTAT_BY_PLAYER_ID")) {
                     ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, p.getInteger("rounds"));
-                    ps.setInt(3, p.getInteger("winnings"));
-                    ps.setInt(4, p.getInteger("idles"));
-                    ps.executeUpdate();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.isBeforeFirst()) {
+                            found = true;
+                            p.put("rounds", rs.getInt("rounds"));
+                            p.put("winnings", rs.getInt("winnings"));
+                            p.put("idles", rs.getInt("idles"));
+                        }
+                    }
+                }
+                
+                // Add new record if not found in BJPlayerStat table
+                if (!found) {
+                    try (PreparedStatement ps = prepareSQL(conn, "INSERT_BJPLAYERSTAT")) {
+                        ps.setInt(1, p.getInteger("id"));
+                        ps.setInt(2, p.getInteger("rounds"));
+                        ps.setInt(3, p.getInteger("winnings"));
+                        ps.setInt(4, p.getInteger("idles"));
+                        ps.executeUpdate();
+                    }
                 }
             }
             
@@ -1228,40 +1201,77 @@ public class Blackjack extends CardGame {
             logDBWarning(conn.getWarnings());
         } catch (SQLException ex) {
             manager.log("SQL Error: " + ex.getMessage());
+            return;
         }
+        
+        cache.load(p.getNick(), p.getInteger("id"), PlayerCache.PURSE, p, PlayerCache.PURSE_KEYS);
+        cache.load(p.getNick(), p.getInteger("id"), name, p, STAT_KEYS);
     }
     
     @Override
     protected void saveDBPlayerDataBatch(ArrayList<Player> players) {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            
-            for (Player p : players) {
-                // Update data in Purse table
-                String sql  = getSQL("UPDATE_PURSE");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("cash"));
-                    ps.setInt(2, p.getInteger("bank"));
-                    ps.setInt(3, p.getInteger("bankrupts"));
-                    ps.setInt(4, p.getInteger("id"));
-                    ps.executeUpdate();
-                }
+        PlayerCache cache = manager.getPlayerCache();
+        for (Player p : players) {
+            cache.update(p.getNick(), p.getInteger("id"), PlayerCache.PURSE, p, PlayerCache.PURSE_KEYS);
+            cache.update(p.getNick(), p.getInteger("id"), name, p, STAT_KEYS);
+        }
+        final ArrayList<Record> records = cache.takeDirty(name, true);
+        if (records.isEmpty()) {
+            return;
+        }
+        updateLeaderboards(records);
+        
+        manager.getPersistenceQueue().submit(new PersistenceTask() {
+            @Override
+            public void persist(Connection conn) throws SQLException {
+                try (PreparedStatement psPurse = prepareSQL(conn, "UPDATE_PURSE");
+                        PreparedStatement psStat = prepareSQL(conn, "UPDATE_BJPLAYERSTAT")) {
+                    for (Record p : records) {
+                        // Update data in Purse table
+                        if (p.has(PlayerCache.PURSE)) {
+                            psPurse.setInt(1, p.getInt("cash"));
+                            psPurse.setInt(2, p.getInt("bank"));
+                            psPurse.setInt(3, p.getInteger("bankrupts"));
+                            psPurse.setInt(4, p.getInteger("id"));
+                            psPurse.addBatch();
+                        }
 
-                // Update data in BJPlayerStat table
-                sql = getSQL("UPDATE_BJPLAYERSTAT");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("rounds"));
-                    ps.setInt(2, p.getInteger("winnings"));
-                    ps.setInt(3, p.getInteger("idles"));
-                    ps.setInt(4, p.getInteger("id"));
-                    ps.executeUpdate();
+                        // Update data in BJPlayerStat table
+                        if (p.has(name)) {
+                            psStat.setInt(1, p.getInteger("rounds"));
+                            psStat.setInt(2, p.getInteger("winnings"));
+                            psStat.setInt(3, p.getInteger("idles"));
+                            psStat.setInt(4, p.getInteger("id"));
+                            psStat.addBatch();
+                        }
+                    }
+                    psPurse.executeBatch();
+                    psStat.executeBatch();
                 }
+                
+                logDBWarning(conn.getWarnings());
             }
-            
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+        });
+    }
+    
+    @Override
+    protected void indexStats(Record record) {
+        PlayerCache cache = manager.getPlayerCache();
+        int id = record.getInteger("id");
+        String nick = record.getString("nick");
+        int rounds = record.getInteger("rounds");
+        int winnings = record.getInteger("winnings");
+        if (rounds > 0) {
+            cache.getLeaderboard(name, "rounds").put(id, nick, rounds);
+            cache.getLeaderboard(name, "winnings").put(id, nick, winnings);
+        } else {
+            cache.getLeaderboard(name, "rounds").remove(id);
+            cache.getLeaderboard(name, "winnings").remove(id);
+        }
+        if (rounds > 50) {
+            cache.getLeaderboard(name, "winrate").put(id, nick, winnings * 1.0 / rounds);
+        } else {
+            cache.getLeaderboard(name, "winrate").remove(id);
         }
     }
     
@@ -1280,12 +1290,11 @@ public class Blackjack extends CardGame {
         record.put("rounds", 0);
         record.put("winnings", 0);
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        try (Connection conn = getDBWriteConnection()) {
             conn.setAutoCommit(false);
             
-            String sql = getSQL("SELECT_BJHOUSE_BY_SHOE_SIZE");
             boolean found = false;
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            try (PreparedStatement ps = prepareSQL(conn, "SELECT_BJHOUSE_BY_SHOE_SIZE")) {
                 ps.setInt(1, numDecks);
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.isBeforeFirst()) {
@@ -1297,8 +1306,7 @@ public class Blackjack extends CardGame {
             }
             
             if (!found) {
-                sql = getSQL("INSERT_BJHOUSE");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_BJHOUSE")) {
                     ps.setInt(1, numDecks);
                     ps.setInt(2, 0);
                     ps.setInt(3, 0);
@@ -1324,9 +1332,8 @@ public class Blackjack extends CardGame {
         record.put("total_rounds", 0);
         record.put("total_winnings", 0);
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            String sql = getSQL("SELECT_BJGAMETOTALS");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = getDBReadConnection()) {
+            try (PreparedStatement ps = prepareSQL(conn, "SELECT_BJGAMETOTALS")) {
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.isBeforeFirst()) {
                         record.put("total_players", rs.getInt("total_players"));
@@ -1351,105 +1358,122 @@ public class Blackjack extends CardGame {
     
     @Override
     protected void saveDBGameStats() {
-        int roundID, handID;
-        
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            
-            // Insert data into BJRound table
-            String sql = getSQL("INSERT_BJROUND");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setLong(1, startTime);
-                ps.setLong(2, endTime);
-                ps.setString(3, channel.getName());
-                ps.setInt(4, get("decks"));
-                ps.setInt(5, deck.getNumberCards());
-                ps.executeUpdate();
-                roundID = ps.getGeneratedKeys().getInt(1);
+        // Snapshot the round since it is saved after the game moves on
+        final long roundStart = startTime;
+        final long roundEnd = endTime;
+        final String channelName = channel.getName();
+        final int numDecks = get("decks");
+        final int numCards = deck.getNumberCards();
+        final int idle = get("idle");
+        final int idleWarning = get("idlewarning");
+        final int house = houseWinnings;
+        final String dealerHand = dealer.getHand().toStringDB();
+        final boolean dealerBlackjack = dealer.getHand().isBlackjack();
+        final ArrayList<Record> records = new ArrayList<>(joined.size());
+        for (Player p : joined) {
+            Record record = new Record(p);
+            ArrayList<Record> hands = new ArrayList<>();
+            for (BlackjackHand h : ((BlackjackPlayer) p).getAllHands()) {
+                Record hand = new Record();
+                hand.put("hand", h.toStringDB());
+                hand.put("bet", h.getBet());
+                hand.put("result", h.compareTo(dealer.getHand()));
+                hands.add(hand);
             }
-            
-            for (Player p : joined) {
-                // Insert data into BJPlayerChange table
-                sql = getSQL("INSERT_BJPLAYERCHANGE");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, roundID);
-                    ps.setInt(3, p.getInteger("change"));
-                    ps.setInt(4, p.getInteger("cash"));
+            record.put("hands", hands);
+            records.add(record);
+        }
+        
+        manager.getPersistenceQueue().submit(new PersistenceTask() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void persist(Connection conn) throws SQLException {
+                int roundID, handID;
+
+                // Insert data into BJRound table
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_BJROUND")) {
+                    ps.setLong(1, roundStart);
+                    ps.setLong(2, roundEnd);
+                    ps.setString(3, channelName);
+                    ps.setInt(4, numDecks);
+                    ps.setInt(5, numCards);
                     ps.executeUpdate();
+                    roundID = ps.getGeneratedKeys().getInt(1);
                 }
-                
-                if (p.getBoolean("idled")) {
-                    // Insert data into BJPlayerIdle table
-                    sql = getSQL("INSERT_BJPLAYERIDLE");
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setInt(1, p.getInteger("id"));
-                        ps.setInt(2, roundID);
-                        ps.setInt(3, get("idle"));
-                        ps.setInt(4, get("idlewarning"));
-                        ps.executeUpdate();
-                    }
-                }
-                
-                for (BlackjackHand h : ((BlackjackPlayer) p).getAllHands()) {
-                    // Insert data into BJHand table
-                    sql = getSQL("INSERT_BJHAND");
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setInt(1, roundID);
-                        ps.setString(2, h.toStringDB());
-                        ps.executeUpdate();
-                        handID = ps.getGeneratedKeys().getInt(1);
-                    }
-                    
-                    // Insert data into BJPlayerHand table
-                    sql = getSQL("INSERT_BJPLAYERHAND");
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setInt(1, p.getInteger("id"));
-                        ps.setInt(2, handID);
-                        ps.setInt(3, h.getBet());
-                        ps.setBoolean(4, ((BlackjackPlayer) p).has("split"));
-                        ps.setBoolean(5, p.has("surrender"));
-                        ps.setBoolean(6, p.has("doubledown"));
-                        ps.setInt(7, h.compareTo(dealer.getHand()));
-                        ps.executeUpdate();
-                    }
-                    
-                    if (p.has("insurebet")) {
-                        // Insert data into BJPlayerInsurance table
-                        sql = getSQL("INSERT_BJPLAYERINSURANCE");
-                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                            ps.setInt(1, p.getInteger("id"));
-                            ps.setInt(2, roundID);
-                            ps.setInt(3, p.getInteger("insurebet"));
-                            ps.setBoolean(4, dealer.getHand().isBlackjack());
-                            ps.executeUpdate();
+
+                // Hands are inserted one at a time for their generated keys
+                // while the remaining rows are batched
+                try (PreparedStatement psChange = prepareSQL(conn, "INSERT_BJPLAYERCHANGE");
+                        PreparedStatement psIdle = prepareSQL(conn, "INSERT_BJPLAYERIDLE");
+                        PreparedStatement psHand = prepareSQL(conn, "INSERT_BJHAND");
+                        PreparedStatement psPlayerHand = prepareSQL(conn, "INSERT_BJPLAYERHAND");
+                        PreparedStatement psInsurance = prepareSQL(conn, "INSERT_BJPLAYERINSURANCE")) {
+                    for (Record p : records) {
+                        // Insert data into BJPlayerChange table
+                        psChange.setInt(1, p.getInteger("id"));
+                        psChange.setInt(2, roundID);
+                        psChange.setInt(3, p.getInt("change"));
+                        psChange.setInt(4, p.getInt("cash"));
+                        psChange.addBatch();
+
+                        if (p.getBoolean("idled")) {
+                            // Insert data into BJPlayerIdle table
+                            psIdle.setInt(1, p.getInteger("id"));
+                            psIdle.setInt(2, roundID);
+                            psIdle.setInt(3, idle);
+                            psIdle.setInt(4, idleWarning);
+                            psIdle.addBatch();
                         }
+
+                        for (Record h : (ArrayList<Record>) p.get("hands")) {
+                            // Insert data into BJHand table
+                            psHand.setInt(1, roundID);
+                            psHand.setString(2, h.getString("hand"));
+                            psHand.executeUpdate();
+                            handID = psHand.getGeneratedKeys().getInt(1);
+
+                            // Insert data into BJPlayerHand table
+                            psPlayerHand.setInt(1, p.getInteger("id"));
+                            psPlayerHand.setInt(2, handID);
+                            psPlayerHand.setInt(3, h.getInt("bet"));
+                            psPlayerHand.setBoolean(4, p.has("split"));
+                            psPlayerHand.setBoolean(5, p.has("surrender"));
+                            psPlayerHand.setBoolean(6, p.has("doubledown"));
+                            psPlayerHand.setInt(7, h.getInteger("result"));
+                            psPlayerHand.addBatch();
+
+                            if (p.has("insurebet")) {
+                                // Insert data into BJPlayerInsurance table
+                                psInsurance.setInt(1, p.getInteger("id"));
+                                psInsurance.setInt(2, roundID);
+                                psInsurance.setInt(3, p.getInt("insurebet"));
+                                psInsurance.setBoolean(4, dealerBlackjack);
+                                psInsurance.addBatch();
+                            }
+                        }
+
+                        // Insert Dealer's hand into BJHand table
+                        psHand.setInt(1, roundID);
+                        psHand.setString(2, dealerHand);
+                        psHand.executeUpdate();
                     }
+                    psChange.executeBatch();
+                    psIdle.executeBatch();
+                    psPlayerHand.executeBatch();
+                    psInsurance.executeBatch();
                 }
-                
-                // Insert Dealer's hand into BJHand table
-                sql = getSQL("INSERT_BJHAND");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, roundID);
-                    ps.setString(2, dealer.getHand().toStringDB());
+
+                // Update BJHouseStat table
+                try (PreparedStatement ps = prepareSQL(conn, "UPDATE_BJHOUSE")) {
+                    ps.setInt(1, 1);
+                    ps.setInt(2, house);
+                    ps.setInt(3, numDecks);
                     ps.executeUpdate();
                 }
+                
+                logDBWarning(conn.getWarnings());
             }
-            
-            // Update BJHouseStat table
-            sql = getSQL("UPDATE_BJHOUSE");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, 1);
-                ps.setInt(2, houseWinnings);
-                ps.setInt(3, get("decks"));
-                ps.executeUpdate();
-            }
-            
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
-        }
+        });
     }
     
     ///////////////////////////////////////////////
@@ -1512,7 +1536,7 @@ public class Blackjack extends CardGame {
                     stay();
                 }
                 break;
-            case CONTINUE_ROUND: case END_ROUND:
+            case CONTINUE_ROUND: case DEALER_PLAY: case END_ROUND:
                 p.put("quit", true);
                 informPlayer(p.getNick(), getMsg("remove_end_round"));
                 break;
@@ -1540,7 +1564,7 @@ public class Blackjack extends CardGame {
         state = BlackjackState.CONTINUE_ROUND;
         BlackjackPlayer p = (BlackjackPlayer) currentPlayer;
         
-        if (p.getInteger("currentindex") < p.getNumberHands() - 1) {
+        if (p.getInt("currentindex") < p.getNumberHands() - 1) {
             p.getNextHand();
             quickEval();
         } else {
@@ -1553,6 +1577,11 @@ public class Blackjack extends CardGame {
         }
     }
     
+    /**
+     * Ends the round in steps, with a 1 second delay for dramatic effect
+     * between each dealer card and before the insurance results. The
+     * DEALER_PLAY and END_ROUND steps are resumed by resumeRound.
+     */
     @Override
     public void endRound() {
         state = BlackjackState.END_ROUND;
@@ -1560,76 +1589,101 @@ public class Blackjack extends CardGame {
         if (joined.size() >= 1) {
             // Make dealer decisions
             if (needDealerPlay()) {
+                state = BlackjackState.DEALER_PLAY;
                 showTurn(dealer, 0);
+                showPlayerHand(dealer, dealer.getHand(), 0, true);
+            } else {
+                showResults();
+            }
+            setResumeRoundTask(1000);
+        } else {
+            showMsg(getMsg("no_players"));
+            finishRound();
+        }
+    }
+    
+    @Override
+    public void resumeRound() {
+        switch (state) {
+            case DEALER_PLAY:
                 BlackjackHand dHand = dealer.getHand();
-                showPlayerHand(dealer, dHand, 0, true);
-                while (dHand.calcSum() < 17 || (dHand.isSoft17() && has("soft17hit"))) {
-                    // Add a 1 second delay for dramatic effect
-                    try { Thread.sleep(1000); } catch (InterruptedException e){}
+                if (dHand.calcSum() < 17 || (dHand.isSoft17() && has("soft17hit"))) {
                     dealCard(dHand);
                     showPlayerHand(dealer, dHand, 0, true);
+                } else {
+                    state = BlackjackState.END_ROUND;
+                    showResults();
                 }
-                // Add a 1 second delay for dramatic effect
-                try { Thread.sleep(1000); } catch (InterruptedException e){}
-            }
-            
-            // Show results
-            showResults();
-            // Add a 1 second delay for dramatic effect
-            try { Thread.sleep(1000); } catch (InterruptedException e){}
-            if (insuranceBets) {
-                showInsuranceResults();
-            }
-            
-            /* Bookkeeping tasks
-             * 1. Increment the number of rounds played for each player
-             * 2. Increment idles if idled out
-             * 2. Make auto-withdrawals
-             * 3. Save player stats
-             */
-            for (Player p : joined) {
-                p.add("rounds", 1);
-                if (p.getBoolean("idled")) {
-                    p.add("idles", 1);
-                }
-                if (!p.has("cash") && p.has("bank")) {
-                    // Make a withdrawal if the player has a positive bankroll
-                    int amount = Math.min(p.getInteger("bank"), get("cash"));
-                    p.bankTransfer(-amount);
-                    saveDBPlayerBanking(p);
-                    informPlayer(p.getNick(), getMsg("auto_withdraw"), amount);
+                setResumeRoundTask(1000);
+                break;
+            case END_ROUND:
+                if (insuranceBets) {
+                    showInsuranceResults();
                 }
+                settleRound();
+                finishRound();
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Updates and saves player stats after the results have been shown, and
+     * removes players who are bankrupt or leaving.
+     */
+    private void settleRound() {
+        /* Bookkeeping tasks
+         * 1. Increment the number of rounds played for each player
+         * 2. Increment idles if idled out
+         * 2. Make auto-withdrawals
+         * 3. Save player stats
+         */
+        for (Player p : joined) {
+            p.add("rounds", 1);
+            if (p.getBoolean("idled")) {
+                p.add("idles", 1);
             }
-            
-            // Save game stats
-            endTime = System.currentTimeMillis() / 1000;
-            saveDBPlayerDataBatch(joined);
-            saveDBGameStats();
-            
-            /* Clean-up tasks
-             * 1. Remove players who have gone bankrupt and set respawn timers
-             * 2. Remove players who have quit or used the 'last' command
-             * 3. Reset the players
-             */
-            for (int ctr = joined.size()-1; ctr >= 0; ctr--) {
-                BlackjackPlayer p = (BlackjackPlayer) joined.get(ctr);
-                if (!p.has("cash")) {
-                    // Give penalty to players with no cash in their bankroll
-                    p.add("bankrupts", 1);
-                    blacklist.add(p);
-                    removeJoined(p);
-                    showMsg(getMsg("unjoin_bankrupt"), p.getNickStr(), joined.size());
-                    setRespawnTask(p);
-                } else if (p.has("quit") || p.has("last")) {
-                    removeJoined(p.getNick());
-                    showMsg(getMsg("unjoin"), p.getNickStr(), joined.size());
-                }
-                resetPlayer(p);
+            if (!p.has("cash") && p.has("bank")) {
+                // Make a withdrawal if the player has a positive bankroll
+                int amount = Math.min(p.getInt("bank"), get("cash"));
+                p.bankTransfer(-amount);
+                saveDBPlayerBanking(p);
+                informPlayer(p.getNick(), getMsg("auto_withdraw"), amount);
             }
-        } else {
-            showMsg(getMsg("no_players"));
         }
         
+        // Save game stats
+        endTime = System.currentTimeMillis() / 1000;
+        saveDBPlayerDataBatch(joined);
+        saveDBGameStats();
+        
+        /* Clean-up tasks
+         * 1. Remove players who have gone bankrupt and set respawn timers
+         * 2. Remove players who have quit or used the 'last' command
+         * 3. Reset the players
+         */
+        for (int ctr = joined.size()-1; ctr >= 0; ctr--) {
+            BlackjackPlayer p = (BlackjackPlayer) joined.get(ctr);
+            if (!p.has("cash")) {
+                // Give penalty to players with no cash in their bankroll
+                p.add("bankrupts", 1);
+                blacklist.add(p);
+                removeJoined(p);
+                showMsg(getMsg("unjoin_bankrupt"), p.getNickStr(), joined.size());
+                setRespawnTask(p);
+            } else if (p.has("quit") || p.has("last")) {
+                removeJoined(p.getNick());
+                showMsg(getMsg("unjoin"), p.getNickStr(), joined.size());
+            }
+            resetPlayer(p);
+        }
+    }
+    
+    /**
+     * Resets the game and starts the next round if any auto-starts remain.
+     */
+    private void finishRound() {
         resetGame();
         showMsg(getMsg("end_round"), getGameNameStr(), commandChar);
         mergeWaitlist();
@@ -1652,10 +1706,10 @@ public class Blackjack extends CardGame {
     @Override
     public void endGame() {
         cancelStartRoundTask();
+        cancelResumeRoundTask();
         cancelIdleOutTask();
         cancelRespawnTasks();
         cancelIdleShuffleTask();
-        gameTimer.cancel();
         deck = null;
         dealer = null;
         currentPlayer = null;
@@ -1668,7 +1722,6 @@ public class Blackjack extends CardGame {
         blacklist.clear();
         cmdMap.clear();
         opCmdMap.clear();
-        aliasMap.clear();
         msgMap.clear();
         settings.clear();
     }
@@ -1701,7 +1754,7 @@ public class Blackjack extends CardGame {
      */
     public void setIdleShuffleTask() {
         idleShuffleTask = new IdleShuffleTask(this);
-        gameTimer.schedule(idleShuffleTask, get("idleshuffle")*1000);
+        gameTimer.schedule(mailbox, idleShuffleTask, get("idleshuffle")*1000);
     }
     
     /**
@@ -1710,7 +1763,6 @@ public class Blackjack extends CardGame {
     public void cancelIdleShuffleTask() {
         if (idleShuffleTask != null){
             idleShuffleTask.cancel();
-            gameTimer.purge();
         }
     }
 
@@ -1764,7 +1816,7 @@ public class Blackjack extends CardGame {
             p = (BlackjackPlayer) joined.get(ctr);
             dealHand(p);
             h = p.getHand();
-            h.setBet(p.getInteger("initialbet"));
+            h.setBet(p.getInt("initialbet"));
             // Send the player his hand in a hole game
             if (has("hole")) {
                 informPlayer(p.getNick(), getMsg("bj_hand"), p.getHand(), p.getHand().getBet());
@@ -1802,11 +1854,11 @@ public class Blackjack extends CardGame {
         cancelIdleOutTask();    
         BlackjackPlayer p = (BlackjackPlayer) currentPlayer;
         // Check if amount is greater than the player's stack
-        if (amount > p.getInteger("cash")) {
+        if (amount > p.getInt("cash")) {
             informPlayer(p.getNick(), getMsg("bet_too_high"), p.get("cash"));
             setIdleOutTask();
         // Check if the amount is less than minimum bet
-        } else if (amount < get("minbet") && amount < p.getInteger("cash")) {
+        } else if (amount < get("minbet") && amount < p.getInt("cash")) {
             informPlayer(p.getNick(), getMsg("bet_too_low"), get("minbet"));
             setIdleOutTask();
         } else {
@@ -1864,7 +1916,7 @@ public class Blackjack extends CardGame {
         if (h.hasHit()) {
             informPlayer(p.getNick(), getMsg("no_dd"));
             setIdleOutTask();
-        } else if (p.getInteger("initialbet") > p.getInteger("cash")) {
+        } else if (p.getInt("initialbet") > p.getInt("cash")) {
             informPlayer(p.getNick(), getMsg("insufficient_funds"));
             setIdleOutTask();
         } else {			
@@ -1896,10 +1948,10 @@ public class Blackjack extends CardGame {
             informPlayer(p.getNick(), getMsg("no_surr"));
             setIdleOutTask();
         } else {
-            p.add("cash", calcHalf(p.getInteger("initialbet")));
-            p.add("change", calcHalf(p.getInteger("initialbet")));
-            p.add("winnings", calcHalf(p.getInteger("initialbet")));
-            houseWinnings -= calcHalf(p.getInteger("initialbet"));
+            p.add("cash", calcHalf(p.getInt("initialbet")));
+            p.add("change", calcHalf(p.getInt("initialbet")));
+            p.add("winnings", calcHalf(p.getInt("initialbet")));
+            houseWinnings -= calcHalf(p.getInt("initialbet"));
             p.put("surrender", true);
             showMsg(getMsg("bj_surr"), p.getNickStr(false), p.get("cash"));
             continueRound();
@@ -1923,10 +1975,10 @@ public class Blackjack extends CardGame {
             informPlayer(p.getNick(), getMsg("no_insure_has_hit"));
         } else if (p.has("split")){
             informPlayer(p.getNick(), getMsg("no_insure_has_split"));
-        } else if (amount > p.getInteger("cash")) {
+        } else if (amount > p.getInt("cash")) {
             informPlayer(p.getNick(), getMsg("insufficient_funds"));
-        } else if (amount > calcHalf(p.getInteger("initialbet"))) {
-            informPlayer(p.getNick(), getMsg("insure_bet_too_high"), calcHalf(p.getInteger("initialbet")));
+        } else if (amount > calcHalf(p.getInt("initialbet"))) {
+            informPlayer(p.getNick(), getMsg("insure_bet_too_high"), calcHalf(p.getInt("initialbet")));
         } else if (amount <= 0) {
             informPlayer(p.getNick(), getMsg("insure_bet_too_low"));
         } else {
@@ -1952,7 +2004,7 @@ public class Blackjack extends CardGame {
         if (!cHand.isPair()) {
             informPlayer(p.getNick(), getMsg("no_pair"));
             setIdleOutTask();
-        } else if (p.getInteger("cash") < cHand.getBet()) {
+        } else if (p.getInt("cash") < cHand.getBet()) {
             informPlayer(p.getNick(), getMsg("insufficient_funds"));
             setIdleOutTask();
         } else {
@@ -1962,7 +2014,7 @@ public class Blackjack extends CardGame {
             houseWinnings += cHand.getBet();
             p.splitHand();
             dealCard(cHand);
-            nHand = p.getHand(p.getInteger("currentindex") + 1);
+            nHand = p.getHand(p.getInt("currentindex") + 1);
             dealCard(nHand);
             nHand.setBet(cHand.getBet());
             showSplitHands(p);
@@ -1986,7 +2038,7 @@ public class Blackjack extends CardGame {
             stay();
         } else {
             if (p.has("split")) {
-                showTurn(p, p.getInteger("currentindex") + 1);
+                showTurn(p, p.getInt("currentindex") + 1);
             } else {
                 showTurn(p, 0);
             }
@@ -2027,7 +2079,7 @@ public class Blackjack extends CardGame {
      * @return the payout
      */
     private int calcInsurancePayout(BlackjackPlayer p){
-        return 3 * p.getInteger("insurebet");
+        return 3 * p.getInt("insurebet");
     }
     
     /**
@@ -2099,23 +2151,7 @@ public class Blackjack extends CardGame {
      * Contributors: Yky, brrr 
      */
     private int getZen() {
-        int zenCount = 0;
-        String face;
-        for (Card discard : deck.getDiscards()) {
-            face = discard.getFace();
-            if (new StringTokenizer(face, "23").countTokens() == 0) {
-                zenCount++;
-            } else if (new StringTokenizer(face, "456").countTokens() == 0) {
-                zenCount += 2;
-            } else if (face.equals("7")) {
-                zenCount++;
-            } else if (new StringTokenizer(face, "TJQK").countTokens() == 0) {
-                zenCount -= 2;
-            } else if (face.equals("A")) {
-                zenCount--;
-            }
-        }
-        return zenCount;
+        return (int) CountSystem.ZEN.getCount(deck);
     }
     
     /**
@@ -2123,17 +2159,7 @@ public class Blackjack extends CardGame {
      * Contributors: Yky, brrr 
      */
     private int getHiLo() {
-        int hiLo = 0;
-        String face;
-        for (Card discard : deck.getDiscards()) {
-            face = discard.getFace();
-            if (new StringTokenizer(face, "23456").countTokens() == 0) {
-                hiLo++;
-            } else if (new StringTokenizer(face, "TJQKA").countTokens() == 0) {
-                hiLo--;
-            }
-        }
-        return hiLo;
+        return (int) CountSystem.HILO.getCount(deck);
     }
     
     /**
@@ -2141,19 +2167,7 @@ public class Blackjack extends CardGame {
      * Contributors: Yky, brrr
      */
     private double getRed7() {
-        double red7 = -2 * get("decks");
-        String face;
-        for (Card discard : deck.getDiscards()) {
-            face = discard.getFace();
-            if (new StringTokenizer(face, "23456").countTokens() == 0) {
-                red7++;
-            } else if (new StringTokenizer(face, "TJQKA").countTokens() == 0) {
-                red7--;
-            } else if (face.equals("7")) {
-                red7 += 0.5;
-            }
-        }
-        return red7;
+        return CountSystem.RED7.getCount(deck);
     }
     
     //////////////////////////////////////////////
@@ -2274,7 +2288,7 @@ public class Blackjack extends CardGame {
      */
     private void showHitResult(BlackjackPlayer p, BlackjackHand h){
         if (p.has("split")) {
-            showPlayerHand(p, h, p.getInteger("currentindex") + 1, false);
+            showPlayerHand(p, h, p.getInt("currentindex") + 1, false);
         } else {
             showPlayerHand(p, h, 0, false);
         }
@@ -2409,84 +2423,90 @@ public class Blackjack extends CardGame {
     @Override
     public void showPlayerRank(String nick, String stat) throws IllegalArgumentException {
         String statName = "";
+        String section = name;
         String line = Colors.BLACK + ",08";
-        String sql;
         
-        // Build SQL query
+        // Choose leaderboard
         if (stat.equals("cash")) {
-            sql = getSQL("SELECT_RANK_CASH_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "cash";
             line += "Cash: ";
         } else if (stat.equalsIgnoreCase("bank")) {
-            sql = getSQL("SELECT_RANK_BANK_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "bank";
             line += "Bank: ";
         } else if (stat.equalsIgnoreCase("bankrupts")) {
-            sql = getSQL("SELECT_RANK_BANKRUPTS_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "bankrupts";
             line += "Bankrupts: ";
         } else if (stat.equalsIgnoreCase("net") || stat.equals("netcash")) {
-            sql = getSQL("SELECT_RANK_NETCASH_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "netcash";
             line += "Net Cash: ";
         } else if (stat.equalsIgnoreCase("rounds")) {
-            sql = getSQL("SELECT_RANK_BJROUNDS_BY_NICK");
             statName = "rounds";
             line += "Blackjack Rounds (min. 1 round): ";
         } else if (stat.equalsIgnoreCase("winnings")) {
-            sql = getSQL("SELECT_RANK_BJWINNINGS_BY_NICK");
             statName = "winnings";
             line += "Blackjack Winnings (min. 1 round): ";
         } else if (stat.equalsIgnoreCase("winrate")) {
-            sql = getSQL("SELECT_RANK_BJWINRATE_BY_NICK");
             statName = "winrate";
             line += "Blackjack Win Rate (min. 50 rounds): ";
         } else {
             throw new IllegalArgumentException();
         }
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            // Retrieve data from DB if possible
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, nick);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        line += "#" + rs.getInt("rank") + " " + Colors.WHITE + ",04 " + formatNoPing(rs.getString("nick"));
-                        if (statName.equals("winrate")){
-                            if (rs.getInt("rounds") < 50) {
-                                line = String.format("%s (%d) has not played enough rounds of %s. A minimum of 50 rounds must be played to qualify for a win rate ranking.", formatNoPing(rs.getString("nick")), rs.getInt("rounds"), getGameNameStr());
-                            } else {
-                                line += " $" + formatDecimal(rs.getDouble(statName));
-                            }
-                        } else if (statName.equals("rounds")) {
-                            if (rs.getInt("rounds") == 0) {
-                                line = String.format(getMsg("player_no_rounds"), formatNoPing(rs.getString("nick")), getGameNameStr());
-                            } else {
-                                line += " " + formatNumber(rs.getInt(statName));
-                            }
-                        } else if (statName.equals("winnings")) {
-                            if (rs.getInt("rounds") == 0) {
-                                line = String.format(getMsg("player_no_rounds"), formatNoPing(rs.getString("nick")), getGameNameStr());
-                            } else {
-                                line += " $" + formatNumber(rs.getInt(statName));
-                            }
-                        } else if (statName.equals("bankrupts")) {
-                            line += " " + formatNumber(rs.getInt(statName));
-                        } else {
-                            line += " $" + formatNumber(rs.getInt(statName));
-                        }
-                        
-                        // Show rank
-                        showMsg(line);
-                    } else {
-                        showMsg(getMsg("no_data"), formatNoPing(nick));
-                    }
-                }
+        Player record = loadDBPlayerRecord(nick);
+        if (record == null) {
+            showMsg(getMsg("no_data"), formatNoPing(nick));
+            return;
+        }
+        
+        // Players not yet on the leaderboard are ranked by their record
+        double value;
+        if (statName.equals("winrate")) {
+            value = record.getInteger("winnings") * 1.0 / Math.max(1, record.getInteger("rounds"));
+        } else if (statName.equals("netcash")) {
+            value = record.getInt("cash") + record.getInt("bank");
+        } else {
+            value = record.getInteger(statName);
+        }
+        
+        // Players on the leaderboard are shown with the saved value they are
+        // ranked by rather than a joined player's live value
+        Leaderboard board = getLeaderboard(section, statName);
+        int rank;
+        synchronized (board) {
+            value = board.getValue(record.getInteger("id"), value);
+            rank = board.getRank(record.getInteger("id"), value);
+        }
+        line += "#" + rank + " " + Colors.WHITE + ",04 " + formatNoPing(record.getNick());
+        if (statName.equals("winrate")){
+            if (record.getInteger("rounds") < 50) {
+                line = String.format("%s (%d) has not played enough rounds of %s. A minimum of 50 rounds must be played to qualify for a win rate ranking.", formatNoPing(record.getNick()), record.getInteger("rounds"), getGameNameStr());
+            } else {
+                line += " $" + formatDecimal(value);
             }
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+        } else if (statName.equals("rounds")) {
+            if (record.getInteger("rounds") == 0) {
+                line = String.format(getMsg("player_no_rounds"), formatNoPing(record.getNick()), getGameNameStr());
+            } else {
+                line += " " + formatNumber((int) value);
+            }
+        } else if (statName.equals("winnings")) {
+            if (record.getInteger("rounds") == 0) {
+                line = String.format(getMsg("player_no_rounds"), formatNoPing(record.getNick()), getGameNameStr());
+            } else {
+                line += " $" + formatNumber((int) value);
+            }
+        } else if (statName.equals("bankrupts")) {
+            line += " " + formatNumber((int) value);
+        } else {
+            line += " $" + formatNumber((int) value);
         }
+        
+        // Show rank
+        showMsg(line);
     }
     
     @Override
@@ -2498,100 +2518,67 @@ public class Blackjack extends CardGame {
         String title = Colors.BOLD + Colors.BLACK + ",08 Top %,d-%,d";
         String list = Colors.BLACK + ",08";
         String statName = "";
-        String sql = "";
-        String sqlBounds = "";
+        String section = name;
         
         if (stat.equalsIgnoreCase("cash")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_CASH");
+            section = PlayerCache.PURSE;
             statName = "cash";
             title += " Cash ";
         } else if (stat.equalsIgnoreCase("bank")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_BANK");
+            section = PlayerCache.PURSE;
             statName = "bank";
             title += " Bank ";
         } else if (stat.equalsIgnoreCase("bankrupts")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_BANKRUPTS");
+            section = PlayerCache.PURSE;
             statName = "bankrupts";
             title += " Bankrupts ";
         } else if (stat.equalsIgnoreCase("net") || stat.equalsIgnoreCase("netcash")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_NETCASH");
+            section = PlayerCache.PURSE;
             statName = "netcash";
             title += " Net Cash ";
         } else if (stat.equalsIgnoreCase("winnings")){
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_BJWINNINGS");
-            sql = getSQL("SELECT_TOP_BJWINNINGS");
             statName = "winnings";
             title += " Blackjack Winnings (min. 1 round) ";
         } else if (stat.equalsIgnoreCase("rounds")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_BJROUNDS");
-            sql = getSQL("SELECT_TOP_BJROUNDS");
             statName = "rounds";
             title += " Blackjack Rounds (min. 1 round) ";
         } else if (stat.equalsIgnoreCase("winrate")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_BJWINRATE");
-            sql = getSQL("SELECT_TOP_BJWINRATE");
             statName = "winrate";
             title += " Blackjack Win Rate (min. 50 rounds) ";
         } else {
             throw new IllegalArgumentException();
         }
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            int limit = 10;
-            int offset = 0;
-            
-            // Retrieve bounds
-            try (PreparedStatement ps = conn.prepareStatement(sqlBounds)) {
-                ps.setInt(1, n);
-                ps.setInt(2, n);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        limit = rs.getInt("top_limit");
-                        offset = rs.getInt("top_offset");
-                    }
-                }
-            }
-            
-            title = String.format(title, offset+1, offset+limit);
-            
-            // Retrieve data from DB if possible
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, limit);
-                ps.setInt(2, offset);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        int ctr = offset + 1;
-                        // Add the players in the required range
-                        while (rs.next()) {
-                            list += " #" + ctr++ + ": " + Colors.WHITE + ",04 ";
-                            if (statName.equals("winrate")) {
-                                list += formatNoPing(rs.getString("nick")) + " $" + formatDecimal(rs.getDouble(statName));
-                            } else if (statName.equals("rounds") || statName.equals("bankrupts")) {
-                                list += formatNoPing(rs.getString("nick")) + " " + formatNumber(rs.getInt(statName));
-                            } else {
-                                list += formatNoPing(rs.getString("nick")) + " $" + formatNumber(rs.getInt(statName));
-                            }
-                            list += " " + Colors.BLACK + ",08";
-                        }
-                        
-                        // Output title and the list
-                        showMsg(title);
-                        showMsg(list);
-                    } else {
-                        showMsg("No %s data for %s.", statName, getGameNameStr());
-                    }
-                }
+        // Show up to 10 players ending at rank n
+        Leaderboard board = getLeaderboard(section, statName);
+        int size = board.size();
+        int limit = Math.min(Math.min(n, size), 10);
+        int offset = Math.max(0, Math.min(size, n) - 10);
+        ArrayList<Record> top = board.getRange(offset, limit);
+        
+        if (top.isEmpty()) {
+            showMsg("No %s data for %s.", statName, getGameNameStr());
+            return;
+        }
+        
+        title = String.format(title, offset+1, offset+limit);
+        int ctr = offset + 1;
+        // Add the players in the required range
+        for (Record record : top) {
+            list += " #" + ctr++ + ": " + Colors.WHITE + ",04 ";
+            if (statName.equals("winrate")) {
+                list += formatNoPing(record.getString("nick")) + " $" + formatDecimal(record.getDouble("value"));
+            } else if (statName.equals("rounds") || statName.equals("bankrupts")) {
+                list += formatNoPing(record.getString("nick")) + " " + formatNumber(record.getDouble("value").intValue());
+            } else {
+                list += formatNoPing(record.getString("nick")) + " $" + formatNumber(record.getDouble("value").intValue());
             }
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+            list += " " + Colors.BLACK + ",08";
         }
+        
+        // Output title and the list
+        showMsg(title);
+        showMsg(list);
     }
     
     ///////////////////////////
@@ -21,14 +21,30 @@ package irccasino.blackjack;
 
 import irccasino.cardgame.Card;
 import irccasino.cardgame.Hand;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Extends Hand with extra blackjack-related methods.
+ * The hard sum and the number of aces are kept up to date as cards are added
+ * and removed, so the sum of the hand is found without iterating. Any other
+ * change to the hand is caught by comparing modCount and causes a recount.
+ * ArrayList lets a subList view replace cards without changing modCount, so
+ * once a view has been taken the hand is recounted on every use until it is
+ * cleared.
  * @author Yizhe Shen
  */
 class BlackjackHand extends Hand implements Comparable<BlackjackHand>{
     /** Stores the bet on the BlackjackHand. */
     private int bet;
+    /** The sum of the cards with aces valued at 1. */
+    private int hardSum;
+    /** The number of aces in the hand. */
+    private int numAces;
+    /** The modCount when hardSum and numAces were last updated. */
+    private int countedMods;
+    /** Whether a subList view may have changed the hand without a trace. */
+    private boolean untracked;
 
     /**
      * Creates a Blackjack hand with no initial bet.
@@ -37,6 +53,130 @@ class BlackjackHand extends Hand implements Comparable<BlackjackHand>{
     public BlackjackHand(){
         super();
         bet = 0;
+        hardSum = 0;
+        numAces = 0;
+        countedMods = modCount;
+        untracked = false;
+    }
+
+    /* Card tracking methods */
+    @Override
+    public boolean add(Card c){
+        boolean counted = isCounted();
+        super.add(c);
+        if (counted) {
+            count(c, 1);
+        }
+        return true;
+    }
+
+    @Override
+    public void add(int index, Card c){
+        boolean counted = isCounted();
+        super.add(index, c);
+        if (counted) {
+            count(c, 1);
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Card> cards){
+        boolean counted = isCounted();
+        boolean changed = super.addAll(cards);
+        if (counted) {
+            for (Card c : cards) {
+                count(c, 1);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public Card set(int index, Card c){
+        boolean counted = isCounted();
+        Card old = super.set(index, c);
+        if (counted) {
+            count(old, -1);
+            count(c, 1);
+        }
+        return old;
+    }
+
+    @Override
+    public Card remove(int index){
+        boolean counted = isCounted();
+        Card c = super.remove(index);
+        if (counted) {
+            count(c, -1);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean remove(Object o){
+        boolean counted = isCounted();
+        int index = indexOf(o);
+        if (index == -1) {
+            return false;
+        }
+        Card c = super.remove(index);
+        if (counted) {
+            count(c, -1);
+        }
+        return true;
+    }
+
+    @Override
+    public void clear(){
+        super.clear();
+        hardSum = 0;
+        numAces = 0;
+        countedMods = modCount;
+        untracked = false;
+    }
+
+    @Override
+    public List<Card> subList(int fromIndex, int toIndex){
+        untracked = true;
+        return super.subList(fromIndex, toIndex);
+    }
+
+    /**
+     * Determines if hardSum and numAces are up to date.
+     * @return true if no untracked changes have been made
+     */
+    private boolean isCounted(){
+        return !untracked && countedMods == modCount;
+    }
+
+    /**
+     * Adds or subtracts a card from hardSum and numAces.
+     * @param c the card
+     * @param sign 1 to add or -1 to subtract
+     */
+    private void count(Card c, int sign){
+        if (c.isAce()) {
+            numAces += sign;
+            hardSum += sign;
+        } else {
+            hardSum += sign * c.getBlackjackValue();
+        }
+        countedMods = modCount;
+    }
+
+    /**
+     * Recounts hardSum and numAces if the hand was changed in a way that
+     * was not tracked.
+     */
+    private void recount(){
+        if (!isCounted()) {
+            hardSum = 0;
+            numAces = 0;
+            for (Card c : this) {
+                count(c, 1);
+            }
+            countedMods = modCount;
+        }
     }
 
     /* Blackjack specific methods */
@@ -118,45 +258,23 @@ class BlackjackHand extends Hand implements Comparable<BlackjackHand>{
      * @return true if the hand is a soft 17
      */
     protected boolean isSoft17(){
-        if (calcSum() == 17){
-            //Recalculate with aces valued at 1 and check if the sum is lower than 17
-            int sum = 0;
-            for (Card c : this) {
-                if (c.isFace("A")){
-                    sum += 1;
-                } else {
-                    sum += c.getBlackjackValue();
-                }
-            }
-            return sum < 17;
-        }
-        return false;
+        // An ace is valued at 11 if the sum is higher than the hard sum
+        return calcSum() == 17 && hardSum < 17;
     }
 
     /**
      * Calculates the highest non-busting sum of a BlackjackHand.
-     * The highest non-busting sum is returned whenever possible.
+     * The highest non-busting sum is returned whenever possible. At most one
+     * ace can be valued at 11 without busting.
      * 
      * @return the sum of the BlackjackHand.
      */
     protected int calcSum() {
-        int sum = 0, numAces = 0;
-        // Add up all the cards and keep track of the number of aces
-        for (Card c : this) {
-            if (c.isFace("A")) {
-                numAces++;
-            }
-            sum += c.getBlackjackValue();
-        }
-        // Use the lower of each ace while the sum is greater than 21
-        for (int ctr = 0; ctr < numAces; ctr++){
-            if (sum > 21){
-                sum -= 10;
-            } else { 
-                break;
-            }
+        recount();
+        if (numAces > 0 && hardSum + 10 <= 21) {
+            return hardSum + 10;
         }
-        return sum;
+        return hardSum;
     }
 
     /**
@@ -20,6 +20,7 @@
 package irccasino.blackjack;
 
 import irccasino.cardgame.Player;
+import irccasino.cardgame.Record;
 import java.util.ArrayList;
 
 /**
@@ -29,6 +30,8 @@ import java.util.ArrayList;
 class BlackjackPlayer extends Player{
     /** ArrayList containing the player's BlackjackHands. */
     private ArrayList<BlackjackHand> hands;
+    private int initialBet, insureBet, currentIndex;
+    private boolean split, surrender, doubleDown;
 
     /**
      * Creates a new BlackjackPlayer.
@@ -39,22 +42,80 @@ class BlackjackPlayer extends Player{
     public BlackjackPlayer(String nick){
         super(nick);
         hands = new ArrayList<>();
-        put("initialbet", 0);
-        put("insurebet", 0);
-        put("split", false);
-        put("surrender", false);
-        put("doubledown", false);
-        put("currentindex", 0);
+    }
+    
+    @Override
+    protected int fieldType(String key) {
+        switch (key) {
+            case "initialbet": case "insurebet": case "currentindex":
+                return INT_FIELD;
+            case "split": case "surrender": case "doubledown":
+                return BOOLEAN_FIELD;
+            case "netcash": case "winrate":
+                return DERIVED_FIELD;
+            default:
+                return super.fieldType(key);
+        }
+    }
+    
+    @Override
+    protected int getIntField(String key) {
+        switch (key) {
+            case "initialbet": return initialBet;
+            case "insurebet": return insureBet;
+            case "currentindex": return currentIndex;
+            default: return super.getIntField(key);
+        }
+    }
+    
+    @Override
+    protected void setIntField(String key, int value) {
+        switch (key) {
+            case "initialbet": initialBet = value; break;
+            case "insurebet": insureBet = value; break;
+            case "currentindex": currentIndex = value; break;
+            default: super.setIntField(key, value);
+        }
+    }
+    
+    @Override
+    protected boolean getBooleanField(String key) {
+        switch (key) {
+            case "split": return split;
+            case "surrender": return surrender;
+            case "doubledown": return doubleDown;
+            default: return super.getBooleanField(key);
+        }
+    }
+    
+    @Override
+    protected void setBooleanField(String key, boolean value) {
+        switch (key) {
+            case "split": split = value; break;
+            case "surrender": surrender = value; break;
+            case "doubledown": doubleDown = value; break;
+            default: super.setBooleanField(key, value);
+        }
+    }
+    
+    @Override
+    protected void copyFields(Record target) {
+        super.copyFields(target);
+        target.put("initialbet", initialBet);
+        target.put("insurebet", insureBet);
+        target.put("currentindex", currentIndex);
+        target.put("split", split);
+        target.put("surrender", surrender);
+        target.put("doubledown", doubleDown);
     }
 
     @Override
-    public Object get(String key) {
-        if (key.equalsIgnoreCase("netcash")) {
-            return getInteger("cash") + getInteger("bank");
-        } else if (key.equalsIgnoreCase("winrate")) {
-            return getInteger("winnings") * 1.0 / getInteger("rounds");
+    protected Object getDerivedField(String key) {
+        switch (key) {
+            case "netcash": return getIntField("cash") + getIntField("bank");
+            case "winrate": return getIntField("winnings") * 1.0 / getIntField("rounds");
+            default: return super.getDerivedField(key);
         }
-        return super.get(key);
     }
     
     /* Blackjack-specific card/hand manipulation methods */
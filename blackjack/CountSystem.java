@@ -0,0 +1,63 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.blackjack;
+
+import irccasino.cardgame.CardDeck;
+
+/**
+ * Card counting systems defined by a weight for each face. Counts are
+ * calculated from the number of discards of each face, which CardDeck keeps
+ * up to date, so they take constant time. Weights are in units of 1/scale
+ * to allow fractional weights. Another system can be added by listing its
+ * weights in the order of CardDeck.faces.
+ * @author Yizhe Shen
+ */
+enum CountSystem {
+    //    2  3  4  5  6  7  8  9  T   J   Q   K   A
+    HILO(new int[] {1, 1, 1, 1, 1, 0, 0, 0, -1, -1, -1, -1, -1}, 1, 0),
+    RED7(new int[] {2, 2, 2, 2, 2, 1, 0, 0, -2, -2, -2, -2, -2}, 2, -4),
+    ZEN(new int[] {1, 1, 2, 2, 2, 1, 0, 0, -2, -2, -2, -2, -1}, 1, 0);
+
+    /** The weight of each face value. */
+    private final int[] weights;
+    /** The number of weight units in one count. */
+    private final int scale;
+    /** The initial count per deck in weight units. */
+    private final int initial;
+
+    private CountSystem(int[] faceWeights, int weightScale, int initialPerDeck) {
+        weights = faceWeights;
+        scale = weightScale;
+        initial = initialPerDeck;
+    }
+
+    /**
+     * Returns the running count for the discards of a deck.
+     * @param deck the deck
+     * @return the count
+     */
+    public double getCount(CardDeck deck) {
+        int count = initial * deck.getNumberDecks();
+        for (int ctr = 0; ctr < weights.length; ctr++) {
+            count += weights[ctr] * deck.getNumberDiscards(ctr);
+        }
+        return (double) count / scale;
+    }
+}
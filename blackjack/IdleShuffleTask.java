@@ -19,13 +19,13 @@
 
 package irccasino.blackjack;
 
-import java.util.TimerTask;
+import irccasino.cardgame.GameTask;
 
 /**
  * Idle shuffle task for shuffling the shoe when nobody is playing.
  * @author Yizhe Shen
  */
-class IdleShuffleTask extends TimerTask {
+class IdleShuffleTask extends GameTask {
     private final Blackjack game;
     
     public IdleShuffleTask(Blackjack g) {
@@ -22,27 +22,86 @@ package irccasino.cardgame;
 import org.pircbotx.Colors;
 
 /**
- * An object that represents a card. 
+ * An object that represents a card. Cards are immutable and there is only one
+ * instance of each of the 52 cards, so a card can be stored and compared as
+ * its index from 0 to 51.
  * @author Yizhe Shen
  */
 public class Card implements Comparable<Card>{
+    /** The number of distinct cards. */
+    public static final int NUM_CARDS = 52;
+    /** The single instance of each card ordered by suit, then by face. */
+    private static final Card[] cards = new Card[NUM_CARDS];
+    static {
+        for (int ctr = 0; ctr < NUM_CARDS; ctr++) {
+            cards[ctr] = new Card(ctr);
+        }
+    }
+    
+    /** The card's index, which is suitValue * 13 + faceValue. */
+    private final int index;
+    /** The index of the card's face in CardDeck.faces. */
+    private final int faceValue;
+    /** The index of the card's suit in CardDeck.suits. */
+    private final int suitValue;
+    /** The card's blackjack value. */
+    private final int blackjackValue;
     /** The card's suit. */
-    private String suit;
+    private final String suit;
     /** The card's face. */
-    private String face;
+    private final String face;
+    
+    /**
+     * Creates the card with the specified index.
+     * 
+     * @param i Card index.
+     */
+    private Card(int i){
+        index = i;
+        suitValue = i / CardDeck.faces.length;
+        faceValue = i % CardDeck.faces.length;
+        suit = CardDeck.suits[suitValue];
+        face = CardDeck.faces[faceValue];
+        if (face.equals("A")){
+            blackjackValue = 11; // Give aces a default value of 11
+        } else if (faceValue < 8) {
+            blackjackValue = Integer.parseInt(face);
+        } else {
+            blackjackValue = 10;
+        }
+    }
+    
+    /**
+     * Returns the card with the specified index.
+     * 
+     * @param i the index from 0 to 51
+     * @return the card
+     */
+    public static Card valueOf(int i){
+        return cards[i];
+    }
     
     /**
-     * Creates a new Card with suit and face.
+     * Returns the card with the specified suit and face values.
      * 
-     * @param s Card suit.
-     * @param f Card face.
+     * @param suitValue the index in CardDeck.suits
+     * @param faceValue the index in CardDeck.faces
+     * @return the card
      */
-    public Card(String s, String f){
-        suit = s;
-        face = f;
+    public static Card valueOf(int suitValue, int faceValue){
+        return cards[suitValue * CardDeck.faces.length + faceValue];
     }
     
     /* Accessor methods */
+    /**
+     * Returns the card's index, which is unique among the 52 cards.
+     * 
+     * @return the index from 0 to 51
+     */
+    public int getIndex(){
+        return index;
+    }
+    
     /**
      * Returns the card's face.
      * 
@@ -67,47 +126,35 @@ public class Card implements Comparable<Card>{
      * @return 10 for face card, 11 for ace or the parsed Integer of the face
      */
     public int getBlackjackValue() {
-        int num;
-        if (face.equals("A")){
-            num = 11; // Give aces a default value of 11
-        } else {
-            try {
-                num = Integer.parseInt(face);
-            } catch (NumberFormatException e) {
-                num = 10;
-            }
-        }
-        return num;
+        return blackjackValue;
     }
     
     /**
      * Returns the index in the static array CardDeck.faces that matches this
      * card's face.
      * 
-     * @return the index or -1 if not found
+     * @return the index
      */
     public int getFaceValue(){
-        for (int ctr=0; ctr < CardDeck.faces.length; ctr++){
-            if (face.equals(CardDeck.faces[ctr])){
-                return ctr;
-            }
-        }
-        return -1;
+        return faceValue;
     }
     
     /**
      * Returns the index in the static array CardDeck.suits that matches this
      * card's suit.
      * 
-     * @return the index or -1 if not found
+     * @return the index
      */
     public int getSuitValue(){
-        for (int ctr=0; ctr < CardDeck.suits.length; ctr++){
-            if (suit.equals(CardDeck.suits[ctr])){
-                return ctr;
-            }
-        }
-        return -1;
+        return suitValue;
+    }
+    
+    /**
+     * Determines if this card is an ace.
+     * @return true if this card's face is the last in CardDeck.faces
+     */
+    public boolean isAce() {
+        return faceValue == CardDeck.faces.length - 1;
     }
     
     /**
@@ -116,7 +163,7 @@ public class Card implements Comparable<Card>{
      * @return true if they have the same suit
      */
     public boolean sameSuit(Card c) {
-        return isSuit(c.suit);
+        return suitValue == c.suitValue;
     }
     
     /**
@@ -125,7 +172,7 @@ public class Card implements Comparable<Card>{
      * @return true if they have the same face
      */
     public boolean sameFace(Card c) {
-        return isFace(c.face);
+        return faceValue == c.faceValue;
     }
     
     /**
@@ -159,12 +206,10 @@ public class Card implements Comparable<Card>{
         if (c == null) {
             throw new NullPointerException();
         }
-        int valueDiff = getFaceValue() - c.getFaceValue();
-        int suitDiff = getSuitValue() - c.getSuitValue();
-        if (valueDiff == 0){
-            return suitDiff;
+        if (faceValue == c.faceValue){
+            return suitValue - c.suitValue;
         } else {
-            return valueDiff;
+            return faceValue - c.faceValue;
         }
     }
     
@@ -177,11 +222,11 @@ public class Card implements Comparable<Card>{
     @Override
     public String toString(){
         String color;
-        if (suit.equals(CardDeck.suits[0])){
+        if (suitValue == 0){
             color = Colors.RED;
-        } else if ( suit.equals(CardDeck.suits[1])){
+        } else if (suitValue == 1){
             color = Colors.BROWN;
-        } else if ( suit.equals(CardDeck.suits[2])){
+        } else if (suitValue == 2){
             color = Colors.DARK_BLUE;
         } else {
             color = Colors.BLACK;
@@ -203,31 +248,21 @@ public class Card implements Comparable<Card>{
     }
     
     /**
-     * Checks equality based on suit and face.
+     * Checks equality. Each card has a single instance so this is identity.
      * @param o the other Card
      * @return true if the other Card has the same suit and face
      */
     @Override
     public boolean equals(Object o) {
-        if (o != null && o instanceof Card) {
-            Card c = (Card) o;
-            if (face.equals(c.face) && suit.equals(c.suit) &&
-                hashCode() == c.hashCode()) {
-                return true;
-            }
-        }
-        return false;
+        return this == o;
     }
 
     /**
-     * Hash code based on suit and face.
+     * Hash code based on the card's index.
      * @return the hash
      */
     @Override
     public int hashCode() {
-        int hash = 5;
-        hash = 83 * hash + suit.hashCode();
-        hash = 83 * hash + face.hashCode();
-        return hash;
+        return index;
     }
 }
\ No newline at end of file
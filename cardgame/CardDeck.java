@@ -19,11 +19,15 @@
 
 package irccasino.cardgame;
 
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * A class for a deck of playing cards.
+ * A class for a deck of playing cards. The cards are kept in an array with a
+ * cursor marking the next card to be dealt, so dealing does not need to
+ * shift the remaining cards. Discards are kept in a second array until they
+ * are merged back into the deck.
  * @author Yizhe Shen
  */
 public class CardDeck {
@@ -31,14 +35,22 @@ public class CardDeck {
     public static final String[] suits = {"\u2665","\u2666","\u2663","\u2660"};
     /** Card faces with T being 10. */
     public static final String[] faces = {"2","3","4","5","6","7","8","9","T","J","Q","K","A"};
-    /** The main pile of cards. */
-    private ArrayList<Card> cards;
+    /** The main pile of cards. Undealt cards are from cursor to size. */
+    private Card[] cards;
+    /** The index of the next card to be dealt. */
+    private int cursor;
+    /** The end of the undealt cards. */
+    private int size;
     /** The discard pile. */
-    private ArrayList<Card> discards;
+    private Card[] discards;
+    /** The number of cards in the discard pile. */
+    private int numDiscards;
+    /** The number of cards in the discard pile for each face value. */
+    private int[] discardFaces;
     /** The number of sets of cards in this deck. */
     private int numDecks;
     /** Random number generator. */
-    private Random randGen;
+    private RandomSource randGen;
     
     /**
      * Default constructor creates a CardDeck with a single set of cards (52 cards).
@@ -54,10 +66,14 @@ public class CardDeck {
      */
     public CardDeck(int n){
         numDecks = n;
-        cards = new ArrayList<>();
-        discards = new ArrayList<>();
+        cards = new Card[n * Card.NUM_CARDS];
+        discards = new Card[n * Card.NUM_CARDS];
+        cursor = 0;
+        size = 0;
+        numDiscards = 0;
+        discardFaces = new int[faces.length];
         makeCards();
-        randGen = new Random();
+        randGen = RandomSource.create(RandomSource.SECURE, 0);
     }
     
     /* Accessor methods */
@@ -71,62 +87,94 @@ public class CardDeck {
     }
     
     /**
-     * Returns the number of cards in the cards ArrayList.
+     * Returns the number of undealt cards.
      * 
-     * @return the number of cards in the cards ArrayList
+     * @return the number of undealt cards
      */
     public int getNumberCards(){
-        return cards.size();
+        return size - cursor;
     }
     
     /**
-     * Returns the number of cards in the discards ArrayList.
+     * Returns the number of cards in the discard pile.
      * 
-     * @return the number of cards in the discards ArrayList.
+     * @return the number of discards
      */
     public int getNumberDiscards(){
-        return discards.size();
+        return numDiscards;
     }
     
     /**
-     * Returns the cards ArrayList.
+     * Returns the number of cards in the discard pile with a face value.
+     * 
+     * @param faceValue the face value
+     * @return the number of discards with that face value
+     */
+    public int getNumberDiscards(int faceValue){
+        return discardFaces[faceValue];
+    }
+    
+    /**
+     * Returns a read-only view of the undealt cards in the order they will
+     * be dealt. The view is only valid until the deck is next modified.
      * 
      * @return the cards
      */
-    public ArrayList<Card> getCards(){
-        return cards;
+    public List<Card> getCards(){
+        return Collections.unmodifiableList(Arrays.asList(cards).subList(cursor, size));
     }
     
     /**
-     * Returns the discards ArrayList.
+     * Returns a read-only view of the discards in the order they were
+     * discarded. The view is only valid until the deck is next modified.
      * 
      * @return the discards
      */
-    public ArrayList<Card> getDiscards(){
-        return discards;
+    public List<Card> getDiscards(){
+        return Collections.unmodifiableList(Arrays.asList(discards).subList(0, numDiscards));
+    }
+    
+    /**
+     * Sets the random number generator used for shuffling.
+     * 
+     * @param random the generator
+     */
+    public void setRandom(RandomSource random){
+        randGen = random;
     }
     
     /* Card manipulation methods for the deck */
     /**
-     * Takes the first Card from the cards ArrayList.
+     * Takes the next Card from the deck.
      * 
      * @return the card taken
+     * @throws IndexOutOfBoundsException if the deck is empty
      */
     public Card takeCard(){
-        return cards.remove(0);
+        if (cursor == size) {
+            throw new IndexOutOfBoundsException("No cards left in the deck");
+        }
+        Card c = cards[cursor];
+        cards[cursor++] = null;
+        return c;
     }
     
     /**
-     * Takes the Card from this deck that matches the specified card.
+     * Takes the Card from this deck that matches the specified card. The
+     * order of the remaining cards is preserved.
      * @param c the card to match to
      * @return the matched card or null if not found
      */
     public Card takeCard(Card c){
-        int index = cards.indexOf(c);
-        if (index == -1) {
-            return null;
+        for (int ctr = cursor; ctr < size; ctr++) {
+            if (cards[ctr].equals(c)) {
+                Card match = cards[ctr];
+                System.arraycopy(cards, cursor, cards, cursor + 1, ctr - cursor);
+                cards[cursor++] = null;
+                return match;
+            }
         }
-        return cards.remove(index);
+        return null;
     }
     
     /**
@@ -134,26 +182,36 @@ public class CardDeck {
      * @return 
      */
     public Card takeRandomCard() {
-        int index = randGen.nextInt(cards.size());
-        return cards.remove(index);
+        int index = cursor + randGen.nextInt(size - cursor);
+        Card c = cards[index];
+        cards[index] = cards[cursor];
+        cards[cursor++] = null;
+        return c;
     }
     
     /**
      * Returns the Card at the index without removing it from the deck.
-     * @param index the index of the Card
+     * @param index the index of the Card, where 0 is the next card dealt
      * @return the Card at the index
      */
     public Card peekCard(int index) {
-        return cards.get(index);
+        if (index < 0 || index >= size - cursor) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (size - cursor));
+        }
+        return cards[cursor + index];
     }
     
     /**
-     * Adds the specified ArrayList<Card> to the discards.
+     * Adds the specified list of cards to the discards.
      * 
-     * @param cards the ArrayList<Card> to add to discards
+     * @param cards the cards to add to discards
      */
-    public void addToDiscard(ArrayList<Card> cards){
-        discards.addAll(cards);
+    public void addToDiscard(List<Card> cards){
+        ensureDiscardCapacity(numDiscards + cards.size());
+        for (Card c : cards) {
+            discards[numDiscards++] = c;
+            discardFaces[c.getFaceValue()]++;
+        }
     }
     
     /**
@@ -162,33 +220,42 @@ public class CardDeck {
      * @param c the Card to discard
      */
     public void addToDiscard(Card c){
-        discards.add(c);
+        ensureDiscardCapacity(numDiscards + 1);
+        discards[numDiscards++] = c;
+        discardFaces[c.getFaceValue()]++;
     }
     
     /**
-     * Merges the discards back into cards.
+     * Merges the discards back into cards. The undealt cards are moved to
+     * the front of the array and the discards are added after them.
      */
     public void mergeDiscards(){
-        if (discards.size() > 0){
-            cards.addAll(discards);
-            discards.clear();
+        if (numDiscards > 0){
+            int remaining = size - cursor;
+            if (remaining + numDiscards > cards.length) {
+                cards = Arrays.copyOf(cards, remaining + numDiscards);
+            }
+            System.arraycopy(cards, cursor, cards, 0, remaining);
+            System.arraycopy(discards, 0, cards, remaining, numDiscards);
+            Arrays.fill(discards, 0, numDiscards, null);
+            Arrays.fill(discardFaces, 0);
+            cursor = 0;
+            size = remaining + numDiscards;
+            numDiscards = 0;
         }
     }
     
     /**
-     * Shuffles the cards in the deck.
-     * A temporary ArrayList is created with the existing cards. The cards
-     * ArrayList is then emptied. Cards are then randomly drawn one at a time 
-     * from the temporary ArrayList and added back to the cards ArrayList in the 
-     * order they are drawn. 
+     * Shuffles the undealt cards in place with a Fisher-Yates shuffle.
      */
     public void shuffleCards(){
-        ArrayList<Card> tCards = new ArrayList<>(cards);
+        Card temp;
         int index;
-        cards.clear();
-        while(!tCards.isEmpty()){
-            index = randGen.nextInt(tCards.size());
-            cards.add(tCards.remove(index));
+        for (int ctr = size - 1; ctr > cursor; ctr--){
+            index = cursor + randGen.nextInt(ctr - cursor + 1);
+            temp = cards[ctr];
+            cards[ctr] = cards[index];
+            cards[index] = temp;
         }
     }
     
@@ -206,11 +273,19 @@ public class CardDeck {
      */
     private void makeCards(){
         for (int n = 0; n < numDecks; n++){
-            for (String suit : suits) {
-                for (String face : faces) {
-                    cards.add(new Card(suit, face));
-                }
+            for (int ctr = 0; ctr < Card.NUM_CARDS; ctr++) {
+                cards[size++] = Card.valueOf(ctr);
             }
         }
     }
+    
+    /**
+     * Grows the discard array if needed.
+     * @param capacity the number of discards to make room for
+     */
+    private void ensureDiscardCapacity(int capacity){
+        if (capacity > discards.length) {
+            discards = Arrays.copyOf(discards, Math.max(capacity, discards.length * 2));
+        }
+    }
 }
\ No newline at end of file
@@ -26,7 +26,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -37,8 +36,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.StringTokenizer;
-import java.util.Timer;
 import org.pircbotx.Channel;
 import org.pircbotx.Colors;
 import org.pircbotx.PircBotX;
@@ -56,16 +55,65 @@ import org.pircbotx.hooks.events.QuitEvent;
  */
 public abstract class CardGame extends ListenerAdapter<PircBotX> {
     
+    /** The commands common to all games. */
+    protected static final CommandRegistry CARDGAME_COMMANDS = new CommandRegistry()
+            .add("join", "j")
+            .add("quit", "leave", "l", "q")
+            .add("last")
+            .add("stop")
+            .add("cash", "stack")
+            .add("netcash", "net")
+            .add("bank")
+            .add("bankrupts")
+            .add("winnings")
+            .add("winrate")
+            .add("rounds")
+            .add("player", "p")
+            .add("deposit")
+            .add("rathole")
+            .add("withdraw")
+            .add("waitlist")
+            .add("blacklist")
+            .add("rank")
+            .add("top")
+            .add("away")
+            .add("back")
+            .add("ping")
+            .add("simple")
+            .add("stats")
+            .add("grules", "gamerules")
+            .add("ghelp", "gamehelp")
+            .add("gcommands", "gamecommands")
+            .add("game")
+            .add("gversion")
+            .addOp("fjoin", "fj")
+            .addOp("fquit", "fl", "fq", "fleave")
+            .addOp("flast")
+            .addOp("fdeposit")
+            .addOp("fwithdraw")
+            .addOp("cards")
+            .addOp("discards")
+            .addOp("settings")
+            .addOp("set")
+            .addOp("get")
+            .addOp("resetaway")
+            .addOp("resetsimple")
+            .addOp("trim")
+            .addOp("query", "sql")
+            .addOp("migrate")
+            .addOp("dbstats");
+    
     protected GameManager manager;
     protected Channel channel;
     protected char commandChar;
     // Player lists
-    protected ArrayList<Player> joined;
-    protected ArrayList<Player> blacklist;
-    protected ArrayList<Player> waitlist;
+    protected PlayerList joined;
+    protected PlayerList blacklist;
+    protected PlayerList waitlist;
     protected CardDeck deck; //the deck of cards
     protected Player currentPlayer; //stores the player whose turn it is
-    protected Timer gameTimer;
+    protected GameTimer gameTimer;
+    protected GameMailbox mailbox;
     /** INI file settings **/
     protected HashMap<String,Integer> settings;
     // Game properties
@@ -80,10 +128,8 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     protected String helpFile;
     protected String strFile;
     protected String sqlFile;
-    protected String dbURL;
     protected HashMap<String,String> cmdMap;
     protected HashMap<String,String> opCmdMap;
-    protected HashMap<String,String> aliasMap;
     protected HashMap<String,String> sqlMap;
     protected HashMap<String,String> msgMap;
     protected ArrayList<String> awayList;
@@ -92,6 +138,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     protected IdleOutTask idleOutTask;
     protected IdleWarningTask idleWarningTask;
     protected StartRoundTask startRoundTask;
+    protected ResumeRoundTask resumeRoundTask;
     protected ArrayList<RespawnTask> respawnTasks;
 
     public CardGame() {
@@ -137,7 +184,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                 params[ctr] = st.nextToken();
             }
             
-            processCommand(event.getUser(), command, params);
+            handleCommand(event.getUser(), command, params);
         }
     }
     
@@ -148,7 +195,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     @Override
     public void onPart(PartEvent<PircBotX> event){
         if (event.getChannel().equals(channel)){
-            processPart(event.getUser());
+            handlePart(event.getUser());
         }
     }
 
@@ -158,7 +205,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      */
     @Override
     public void onQuit(QuitEvent<PircBotX> event){
-        processQuit(event.getUser());
+        handleQuit(event.getUser());
     }
 
     /**
@@ -167,7 +214,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      */
     @Override
     public void onNickChange(NickChangeEvent<PircBotX> event){
-        processNickChange(event.getUser(), event.getOldNick(), event.getNewNick());
+        handleNickChange(event.getUser(), event.getOldNick(), event.getNewNick());
     }
     
     /**
@@ -177,21 +224,181 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     @Override
     public void onKick(KickEvent<PircBotX> event) {
         if (event.getChannel().equals(channel)) {
-            processKick(event.getRecipient());
+            handleKick(event.getRecipient());
         }
     }
     
+    ///////////////////////////////////////////
+    //// Events routed by the game manager ////
+    ///////////////////////////////////////////
+    /*
+     * A game manager may route events to its games instead of registering
+     * each game as a listener. It must only pass on events for the game
+     * channel, and quits and nick changes of users in the game. Each event
+     * is queued on the game's mailbox and processed after the events before
+     * it, on one of the manager's game workers.
+     */
+    
+    /**
+     * Handles a command that has already been parsed from a message in the
+     * game channel.
+     * 
+     * @param user IRC user who issued the command.
+     * @param command The command that was issued.
+     * @param params A list of parameters that were passed along.
+     */
+    public void handleCommand(final User user, final String command, final String[] params) {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processCommand(user, command, params);
+            }
+        });
+    }
+    
+    /**
+     * Handles a user parting the game channel.
+     * @param user 
+     */
+    public void handlePart(final User user) {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processPart(user);
+            }
+        });
+    }
+    
+    /**
+     * Handles a user disconnecting from the IRC network.
+     * @param user 
+     */
+    public void handleQuit(final User user) {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processQuit(user);
+            }
+        });
+    }
+    
+    /**
+     * Handles a user changing nicks.
+     * @param user The IRC user who has changed nicks.
+     * @param oldNick The old nick of the user.
+     * @param newNick The new nick of the user.
+     */
+    public void handleNickChange(final User user, final String oldNick, final String newNick) {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processNickChange(user, oldNick, newNick);
+            }
+        });
+    }
+    
+    /**
+     * Handles a user being kicked from the game channel.
+     * @param recip 
+     */
+    public void handleKick(final User recip) {
+        mailbox.execute(new Runnable() {
+            @Override
+            public void run() {
+                processKick(recip);
+            }
+        });
+    }
+    
     /////////////////////////////////////////
     //// Methods that process IRC events ////
     /////////////////////////////////////////
     /**
-     * Processes commands in the channel where the game is running.
+     * Processes commands in the channel where the game is running. The
+     * command is looked up in the game's CommandRegistry and run if the user
+     * is allowed to use it.
      * 
      * @param user IRC user who issued the command.
      * @param command The command that was issued.
      * @param params A list of parameters that were passed along.
      */
-    abstract protected void processCommand(User user, String command, String[] params);
+    protected void processCommand(User user, String command, String[] params) {
+        CommandRegistry.Command cmd = getCommandRegistry().find(command);
+        if (cmd == null) {
+            // Not a command for this game
+        } else if (cmd.isOp() && !channel.isOp(user)) {
+            informPlayer(user.getNick(), getMsg("ops_only"));
+        } else {
+            executeCommand(user, cmd.getName(), params);
+        }
+    }
+    
+    /**
+     * Returns the commands of this game.
+     * @return the CommandRegistry shared by all instances of the game
+     */
+    abstract protected CommandRegistry getCommandRegistry();
+    
+    /**
+     * Runs a command in CARDGAME_COMMANDS. Games override this to run their
+     * own commands and pass any others on to this method.
+     * 
+     * @param user IRC user who issued the command.
+     * @param command The name of the command in the CommandRegistry.
+     * @param params A list of parameters that were passed along.
+     */
+    protected void executeCommand(User user, String command, String[] params) {
+        String nick = user.getNick();
+        switch (command) {
+            case "join": join(nick, user.getHostmask()); break;
+            case "quit": leave(nick, params); break;
+            case "last": last(nick, params); break;
+            case "stop": stop(nick, params); break;
+            case "cash": cash(nick, params); break;
+            case "netcash": netcash(nick, params); break;
+            case "bank": bank(nick, params); break;
+            case "bankrupts": bankrupts(nick, params); break;
+            case "winnings": winnings(nick, params); break;
+            case "winrate": winrate(nick, params); break;
+            case "rounds": rounds(nick, params); break;
+            case "player": player(nick, params); break;
+            case "deposit": deposit(nick, params); break;
+            case "rathole": rathole(nick, params); break;
+            case "withdraw": withdraw(nick, params); break;
+            case "waitlist": waitlist(nick, params); break;
+            case "blacklist": blacklist(nick, params); break;
+            case "rank": rank(nick, params); break;
+            case "top": top(nick, params); break;
+            case "away": away(nick, params); break;
+            case "back": back(nick, params); break;
+            case "ping": ping(nick, params); break;
+            case "simple": simple(nick, params); break;
+            case "stats": stats(nick, params); break;
+            case "grules": grules(nick, params); break;
+            case "ghelp": ghelp(nick, params); break;
+            case "gcommands": gcommands(user, nick, params); break;
+            case "game": game(nick, params); break;
+            case "gversion": gversion(nick, params); break;
+            /* Op commands */
+            case "fjoin": fjoin(user, nick, params); break;
+            case "fquit": fleave(user, nick, params); break;
+            case "flast": flast(user, nick, params); break;
+            case "fdeposit": fdeposit(user, nick, params); break;
+            case "fwithdraw": fwithdraw(user, nick, params); break;
+            case "cards": cards(user, nick, params); break;
+            case "discards": discards(user, nick, params); break;
+            case "settings": settings(user, nick, params); break;
+            case "set": set(user, nick, params); break;
+            case "get": get(user, nick, params); break;
+            case "resetaway": resetaway(user, nick, params); break;
+            case "resetsimple": resetsimple(user, nick, params); break;
+            case "trim": trim(user, nick, params); break;
+            case "query": query(user, nick, params); break;
+            case "migrate": migrate(user, nick, params); break;
+            case "dbstats": dbstats(user, nick, params); break;
+            default: break;
+        }
+    }
     
     /**
      * Processes a user part event in the game channel.
@@ -269,25 +476,31 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      * @param host the player's host
      */
     protected void join(String nick, String host) {
-        CardGame game = manager.getGame(nick);
-        if (joined.size() == get("maxplayers")){
-            informPlayer(nick, getMsg("max_players"));
-        } else if (isJoined(nick)) {
-            informPlayer(nick, getMsg("is_joined"));
-        } else if (isBlacklisted(nick)) {
-            Player p = findBlacklisted(nick);
-            long timeLeft = p.getLong("respawn") - System.currentTimeMillis()/1000;
-            informPlayer(nick, getMsg("on_blacklist_time"), timeLeft/60, timeLeft % 60);
-        } else if (manager.isBlacklisted(nick)) {
-            informPlayer(nick, getMsg("on_blacklist"));
-        } else if (game != null) {
-            informPlayer(nick, getMsg("is_joined_other"), game.getGameNameStr(), game.getChannel().getName());
-        } else if (isWaitlisted(nick)) {
-            informPlayer(nick, getMsg("on_waitlist"));
-        } else if (isInProgress()) {
-            addWaitlistPlayer(nick, host);
-        } else {
-            addPlayer(nick, host);
+        // Hold the nick so that no other game can add it at the same time
+        NickIndex nickIndex = manager.getNickIndex();
+        CardGame game = nickIndex.claim(this, nick);
+        try {
+            if (joined.size() == get("maxplayers")){
+                informPlayer(nick, getMsg("max_players"));
+            } else if (isJoined(nick)) {
+                informPlayer(nick, getMsg("is_joined"));
+            } else if (isBlacklisted(nick)) {
+                Player p = findBlacklisted(nick);
+                long timeLeft = p.getLong("respawn") - System.currentTimeMillis()/1000;
+                informPlayer(nick, getMsg("on_blacklist_time"), timeLeft/60, timeLeft % 60);
+            } else if (manager.isBlacklisted(nick)) {
+                informPlayer(nick, getMsg("on_blacklist"));
+            } else if (game != null) {
+                informPlayer(nick, getMsg("is_joined_other"), game.getGameNameStr(), game.getChannel().getName());
+            } else if (isWaitlisted(nick)) {
+                informPlayer(nick, getMsg("on_waitlist"));
+            } else if (isInProgress()) {
+                addWaitlistPlayer(nick, host);
+            } else {
+                addPlayer(nick, host);
+            }
+        } finally {
+            nickIndex.release(this, nick);
         }
     }
     
@@ -479,7 +692,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
             informPlayer(nick, getMsg("wait_round_end"));
         } else {
             Player p = findJoined(nick);
-            transfer(nick, p.getInteger("cash") - 1000);
+            transfer(nick, p.getInt("cash") - 1000);
         }
     }    
 
@@ -738,23 +951,28 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
             while(it.hasNext()){
                 User u = it.next();
                 if (u.getNick().equalsIgnoreCase(fNick)){
-                    CardGame game = manager.getGame(fNick);
-                    if (joined.size() == get("maxplayers")){
-                        informPlayer(nick, getMsg("max_players"));
-                    } else if (isJoined(fNick)) {
-                        informPlayer(nick, getMsg("is_joined_nick"), fNick);
-                    } else if (isBlacklisted(fNick) || manager.isBlacklisted(fNick)) {
-                        informPlayer(nick, getMsg("on_blacklist_nick"), fNick);
-                    } else if (game != null) {
-                        informPlayer(nick, getMsg("is_joined_other_nick"), fNick, game.getGameNameStr(), game.getChannel().getName());
-                    } else if (isInProgress()) {
-                        if (isWaitlisted(fNick)) {
-                            informPlayer(nick, getMsg("on_waitlist_nick"), fNick);
+                    NickIndex nickIndex = manager.getNickIndex();
+                    CardGame game = nickIndex.claim(this, fNick);
+                    try {
+                        if (joined.size() == get("maxplayers")){
+                            informPlayer(nick, getMsg("max_players"));
+                        } else if (isJoined(fNick)) {
+                            informPlayer(nick, getMsg("is_joined_nick"), fNick);
+                        } else if (isBlacklisted(fNick) || manager.isBlacklisted(fNick)) {
+                            informPlayer(nick, getMsg("on_blacklist_nick"), fNick);
+                        } else if (game != null) {
+                            informPlayer(nick, getMsg("is_joined_other_nick"), fNick, game.getGameNameStr(), game.getChannel().getName());
+                        } else if (isInProgress()) {
+                            if (isWaitlisted(fNick)) {
+                                informPlayer(nick, getMsg("on_waitlist_nick"), fNick);
+                            } else {
+                                addWaitlistPlayer(u.getNick(), u.getHostmask());
+                            }
                         } else {
-                            addWaitlistPlayer(u.getNick(), u.getHostmask());
+                            addPlayer(u.getNick(), u.getHostmask());
                         }
-                    } else {
-                        addPlayer(u.getNick(), u.getHostmask());
+                    } finally {
+                        nickIndex.release(this, fNick);
                     }
                     return;
                 }
@@ -1041,7 +1259,9 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         if (!channel.isOp(user)) {
             informPlayer(nick, getMsg("ops_only"));
         } else {
-            try (Connection conn = DriverManager.getConnection(dbURL)) {
+            // Let the query see every round played so far
+            manager.getPersistenceQueue().flush();
+            try (Connection conn = getDBReadConnection()) {
                 // Rebuild query
                 String sql = "";
                 for (String s : params) {
@@ -1084,6 +1304,27 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         }
     }
     
+    /**
+     * Displays the connection pool, statement cache, write queue and player
+     * cache counters for the stats DB.
+     * @param user
+     * @param nick
+     * @param params 
+     */
+    public void dbstats(User user, String nick, String[] params) {
+        if (!channel.isOp(user)) {
+            informPlayer(nick, getMsg("ops_only"));
+        } else {
+            // The counters are already formatted and may contain '%'
+            showMsg("%s", manager.getDBPool().toString());
+            showMsg("%s", manager.getDBPool().getStatementStats());
+            showMsg("%s", manager.getPersistenceQueue().toString());
+            showMsg("%s", manager.getPlayerCache().toString());
+            showMsg("%s", manager.getGameTimer().toString());
+            showMsg("%s", mailbox.toString());
+        }
+    }
+    
     /**
      * Migrates players.txt entries into stats.sqlite3.
      * @param user
@@ -1096,9 +1337,9 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         } else if (manager.gamesInProgress()) {
             informPlayer(nick, getMsg("no_migrate"));
         } else {
-            try (Connection conn = DriverManager.getConnection(dbURL)) {
+            manager.getPersistenceQueue().flush();
+            try (Connection conn = getDBWriteConnection()) {
                 conn.setAutoCommit(false);
-                String sql;
                 
                 // Iterate over records and only migrate players who don't
                 // already exist in stats.sqlite3
@@ -1108,8 +1349,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                     int playerID = -1;
 
                     // Search if player exists
-                    sql = getSQL("SELECT_PLAYER_BY_NICK");
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    try (PreparedStatement ps = prepareSQL(conn, "SELECT_PLAYER_BY_NICK")) {
                         ps.setString(1, record.getString("nick"));
                         try (ResultSet rs = ps.executeQuery()) {
                             if (rs.isBeforeFirst()) {
@@ -1120,8 +1360,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
 
                     if (playerID == -1) {
                         // Add new record if not found in Player table
-                        sql = getSQL("INSERT_PLAYER");
-                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        try (PreparedStatement ps = prepareSQL(conn, "INSERT_PLAYER")) {
                             ps.setString(1, record.getString("nick"));
                             ps.setLong(2, System.currentTimeMillis() / 1000);
                             ps.executeUpdate();
@@ -1129,18 +1368,16 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                         }
 
                         // Add new record in Purse table
-                        sql = getSQL("INSERT_PURSE");
-                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        try (PreparedStatement ps = prepareSQL(conn, "INSERT_PURSE")) {
                             ps.setInt(1, playerID);
-                            ps.setInt(2, record.getInteger("cash"));
-                            ps.setInt(3, record.getInteger("bank"));
+                            ps.setInt(2, record.getInt("cash"));
+                            ps.setInt(3, record.getInt("bank"));
                             ps.setInt(4, record.getInteger("bankrupts"));
                             ps.executeUpdate();
                         }
 
                         // Add new record in TPPlayerStat table
-                        sql = getSQL("INSERT_TPPLAYERSTAT");
-                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        try (PreparedStatement ps = prepareSQL(conn, "INSERT_TPPLAYERSTAT")) {
                             ps.setInt(1, playerID);
                             ps.setInt(2, record.getInteger("tprounds"));
                             ps.setInt(3, record.getInteger("tpwinnings"));
@@ -1149,8 +1386,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                         }
 
                         // Add new record in BJPlayerStat table
-                        sql = getSQL("INSERT_BJPLAYERSTAT");
-                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        try (PreparedStatement ps = prepareSQL(conn, "INSERT_BJPLAYERSTAT")) {
                             ps.setInt(1, playerID);
                             ps.setInt(2, record.getInteger("bjrounds"));
                             ps.setInt(3, record.getInteger("bjwinnings"));
@@ -1159,8 +1395,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                         }
 
                         // Add new record in TTPlayerStat table
-                        sql = getSQL("INSERT_TTPLAYERSTAT");
-                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        try (PreparedStatement ps = prepareSQL(conn, "INSERT_TTPLAYERSTAT")) {
                             ps.setInt(1, playerID);
                             ps.setInt(2, record.getInteger("ttplayed"));
                             ps.setInt(3, record.getInteger("ttwins"));
@@ -1192,16 +1427,14 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                                 boolean shoeExists = false;
 
                                 // Search if shoe size exists
-                                sql = getSQL("SELECT_BJHOUSE_BY_SHOE_SIZE");
-                                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                                try (PreparedStatement ps = prepareSQL(conn, "SELECT_BJHOUSE_BY_SHOE_SIZE")) {
                                     ps.setInt(1, decks);
                                     try (ResultSet rs = ps.executeQuery()) {
                                         shoeExists = rs.isBeforeFirst();
                                     }
                                 }
                                 if (!shoeExists) {
-                                    sql = getSQL("INSERT_BJHOUSE");
-                                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                                    try (PreparedStatement ps = prepareSQL(conn, "INSERT_BJHOUSE")) {
                                         ps.setInt(1, decks);
                                         ps.setInt(2, rounds);
                                         ps.setInt(3, winnings);
@@ -1217,6 +1450,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                 }
 
                 conn.commit();
+                manager.getPlayerCache().resetLeaderboards();
                 showMsg("Migration complete.");
             } catch (SQLException ex) {
                 manager.log("SQL Error: " + ex.getMessage());
@@ -1236,6 +1470,14 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         return channel;
     }
     
+    /**
+     * Returns the mailbox that runs the game's events and timer tasks.
+     * @return the game mailbox
+     */
+    public GameMailbox getMailbox(){
+        return mailbox;
+    }
+    
     /**
      * Public accessor required for GameManager.
      * @return true if a game is in progress
@@ -1260,6 +1502,11 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      */
     abstract protected void endRound();
     
+    /**
+     * Resumes a round after a pause scheduled with setResumeRoundTask.
+     */
+    abstract protected void resumeRound();
+    
     /**
      * Terminates the game.
      */
@@ -1289,14 +1536,15 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      * Initializes the game.
      */
     protected final void initGame() {
-        joined = new ArrayList<>();
-        blacklist = new ArrayList<>();
-        waitlist = new ArrayList<>();
-        gameTimer = new Timer("Game Timer");
+        NickIndex nickIndex = manager.getNickIndex();
+        joined = new PlayerList(nickIndex, this, NickIndex.JOINED);
+        blacklist = new PlayerList(nickIndex, this, NickIndex.BLACKLISTED);
+        waitlist = new PlayerList(nickIndex, this, NickIndex.WAITLISTED);
+        gameTimer = manager.getGameTimer();
+        mailbox = new GameMailbox(manager, manager.getGameWorkers());
         settings = new HashMap<>();
         cmdMap = new HashMap<>();
         opCmdMap = new HashMap<>();
-        aliasMap = new HashMap<>();
         sqlMap = new HashMap<>();
         msgMap = new HashMap<>();
         awayList = new ArrayList<>();
@@ -1304,15 +1552,9 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         respawnTasks = new ArrayList<>();
         strFile = "strlib.txt";
         sqlFile = "sqllib.txt";
-        dbURL = "jdbc:sqlite:stats.sqlite3";
         versionInt = 392;
         version = "0.3.9.2";
         
-        // Load SQLite JDBC driver
-        try {
-            Class.forName("org.sqlite.JDBC");
-        } catch (ClassNotFoundException ex) {}
-        
         loadStrLib();
         loadSQLLib();
         loadHostList("away.txt", awayList);
@@ -1325,7 +1567,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      * Loads the database and creates any necessary tables.
      */
     protected final void initDB() {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        try (Connection conn = getDBWriteConnection()) {
             conn.setAutoCommit(false);
             try (Statement s = conn.createStatement()) {
                 // Create tables
@@ -1371,7 +1613,17 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                     }
                 }
             }
-            if (update) {
+            // Check if the lookup indexes are missing (from v0.3.9.2)
+            boolean addIndexes = true;
+            sql = "SELECT * FROM sqlite_master WHERE type='index' AND name='PlayerNickIndex'";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.isBeforeFirst()) {
+                        addIndexes = false;
+                    }
+                }
+            }
+            if (update || addIndexes) {
                 showMsg("Updating database...");
                 // Check if TPPot needs to be altered (from v0.3.9)
                 boolean modTPPot = true;
@@ -1401,10 +1653,31 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
                         s.execute("PRAGMA writable_schema = OFF");
                     }
                 }
+                
+                // Create indexes for nick lookups, leaderboard loads, round
+                // history and child table joins
+                if (addIndexes) {
+                    try (Statement s = conn.createStatement()) {
+                        s.execute(getSQL("CREATE_INDEX_PLAYER_NICK"));
+                        s.execute(getSQL("CREATE_INDEX_BJPLAYERSTAT_ROUNDS"));
+                        s.execute(getSQL("CREATE_INDEX_TPPLAYERSTAT_ROUNDS"));
+                        s.execute(getSQL("CREATE_INDEX_TTPLAYERSTAT_TOURNEYS"));
+                        s.execute(getSQL("CREATE_INDEX_BJROUND_CHANNEL"));
+                        s.execute(getSQL("CREATE_INDEX_BJHAND_ROUND"));
+                        s.execute(getSQL("CREATE_INDEX_BJPLAYERHAND_HAND"));
+                        s.execute(getSQL("CREATE_INDEX_TPROUND_CHANNEL"));
+                        s.execute(getSQL("CREATE_INDEX_TPPOT_ROUND"));
+                        s.execute(getSQL("CREATE_INDEX_TPPLAYERPOT_POT"));
+                        s.execute(getSQL("CREATE_INDEX_TPHAND_ROUND"));
+                        s.execute(getSQL("CREATE_INDEX_TPPLAYERHAND_HAND"));
+                        s.execute(getSQL("CREATE_INDEX_TTTOURNEY_CHANNEL"));
+                        // Collect statistics for the query planner
+                        s.execute("ANALYZE");
+                    }
+                }
 
                 // Insert database version (current irccasino version)
-                sql = getSQL("INSERT_DBVERSION");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_DBVERSION")) {
                     ps.setLong(1, System.currentTimeMillis() / 1000);
                     ps.setInt(2, versionInt);
                     ps.executeUpdate();
@@ -1436,8 +1709,24 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     protected void set(String setting, int value) throws IllegalArgumentException {
         if (!settings.containsKey(setting)) {
             throw new IllegalArgumentException();
+        } else if (setting.equals("rng") && value != RandomSource.FAST && value != RandomSource.SECURE) {
+            throw new IllegalArgumentException();
         }
         settings.put(setting, value);
+        if (setting.equals("rng") || setting.equals("seed")) {
+            updateRandom();
+        }
+    }
+    
+    /**
+     * Gives the deck a new random number generator based on the rng and
+     * seed settings. A fast generator with a non-zero seed restarts its
+     * sequence, so the following deals can be replayed.
+     */
+    protected void updateRandom() {
+        if (deck != null && settings.containsKey("rng") && settings.containsKey("seed")) {
+            deck.setRandom(RandomSource.create(get("rng"), get("seed")));
+        }
     }
     
     /**
@@ -1522,61 +1811,65 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     }
     
     /**
-     * Loads data from help file.
+     * Loads data from help file. The help file supplies the parameters and
+     * definition of each command, while the commands themselves, their
+     * aliases and whether they are Op commands come from the game's
+     * CommandRegistry.
      */
     protected final void loadHelp() {
+        HashMap<String,String[]> defs = new HashMap<>();
         try (BufferedReader in = new BufferedReader(new FileReader(helpFile))) {
-            String[] st, st2;
-            String str, cmd, params, alias, def, line;
+            String[] st;
+            String str;
             while (in.ready()){
                 str = in.readLine();
                 // Skips all lines that begin with #
                 if (!str.startsWith("#") && str.contains("|")) {
                     st = str.split("\\|");
-                    
-                    // Command name
-                    if (st[0].equals("")) {
-                        cmd = "---";
-                    } else {
-                        cmd = st[0];
-                    }
-                    
-                    // Parameters
-                    if (st[1].equals("")) {
-                        params = "---";
-                    } else {
-                        params = st[1];
-                    }
-                    
-                    // Aliases
-                    if (st[2].equals("")) {
-                        alias = "---";
-                    } else {
-                        alias = st[2];
-                        st2 = st[2].split(",");
-                        for (String a : st2) {
-                            aliasMap.put(a, cmd);
-                        }
-                    }
-                    
-                    // Definition
-                    if (st[3].equals("")) {
-                        def = "---";
-                    } else {
-                        def = st[3];
-                    }
-                    
-                    line = String.format(getMsg("help_def"), cmd, params, alias, def);
-                    if (def.contains("Op command")) {
-                        opCmdMap.put(cmd, line);
-                    } else {
-                        cmdMap.put(cmd, line);
-                    }
+                    defs.put(st[0].toLowerCase(), st);
                 }
             }
         } catch (IOException e) {
             manager.log("Error reading from " + helpFile + "!");
         }
+        
+        String[] st;
+        String params, alias, def, line;
+        for (CommandRegistry.Command cmd : getCommandRegistry().getCommands()) {
+            st = defs.get(cmd.getName());
+            
+            // Parameters
+            if (st == null || st.length < 2 || st[1].equals("")) {
+                params = "---";
+            } else {
+                params = st[1];
+            }
+            
+            // Aliases
+            if (cmd.getAliases().length == 0) {
+                alias = "---";
+            } else {
+                alias = "";
+                for (String a : cmd.getAliases()) {
+                    alias += a + ",";
+                }
+                alias = alias.substring(0, alias.length() - 1);
+            }
+            
+            // Definition
+            if (st == null || st.length < 4 || st[3].equals("")) {
+                def = "---";
+            } else {
+                def = st[3];
+            }
+            
+            line = String.format(getMsg("help_def"), cmd.getName(), params, alias, def);
+            if (cmd.isOp()) {
+                opCmdMap.put(cmd.getName(), line);
+            } else {
+                cmdMap.put(cmd.getName(), line);
+            }
+        }
     }
     
     /**
@@ -1609,13 +1902,13 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      */
     protected void setRespawnTask(Player p) {
         // Calculate extra time penalty for players with debt
-        int penalty = get("respawn") + Math.max(-1 * p.getInteger("bank")/1000 * 60, 0);
+        int penalty = get("respawn") + Math.max(-1 * p.getInt("bank")/1000 * 60, 0);
         informPlayer(p.getNick(), getMsg("bankrupt_info"), penalty/60, penalty%60);
         p.put("respawn", System.currentTimeMillis()/1000 + penalty);
         
         // TimerTasks are scheduled in milliseconds
         RespawnTask task = new RespawnTask(p, this);
-        gameTimer.schedule(task, penalty*1000);
+        gameTimer.schedule(mailbox, task, penalty*1000);
         respawnTasks.add(task);
     }
     
@@ -1627,7 +1920,6 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
             task.cancel();
         }
         respawnTasks.clear();
-        gameTimer.purge();
         // Fast-track loans
         for (Player p : blacklist) {
             p.put("cash", get("cash"));
@@ -1651,7 +1943,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      */
     protected void setStartRoundTask(){
         startRoundTask = new StartRoundTask(this);
-        gameTimer.schedule(startRoundTask, get("startwait") * 1000);
+        gameTimer.schedule(mailbox, startRoundTask, get("startwait") * 1000);
     }
     
     /**
@@ -1660,7 +1952,26 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     protected void cancelStartRoundTask(){
         if (startRoundTask != null){
             startRoundTask.cancel();
-            gameTimer.purge();
+        }
+    }
+    
+    /**
+     * Schedules a new resumeRoundTask. Rounds pause this way rather than
+     * sleeping, so other games and commands are not held up.
+     * @param delay the pause in milliseconds
+     */
+    protected void setResumeRoundTask(long delay){
+        resumeRoundTask = new ResumeRoundTask(this);
+        gameTimer.schedule(mailbox, resumeRoundTask, delay);
+    }
+    
+    /**
+     * Cancels any scheduled resumeRoundTask.
+     */
+    protected void cancelResumeRoundTask(){
+        if (resumeRoundTask != null){
+            resumeRoundTask.cancel();
+            resumeRoundTask = null;
         }
     }
     
@@ -1670,10 +1981,10 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     protected void setIdleOutTask() {
         if (get("idlewarning") < get("idle")) {
             idleWarningTask = new IdleWarningTask(currentPlayer, this);
-            gameTimer.schedule(idleWarningTask, get("idlewarning")*1000);
+            gameTimer.schedule(mailbox, idleWarningTask, get("idlewarning")*1000);
         }
         idleOutTask = new IdleOutTask(currentPlayer, this);
-        gameTimer.schedule(idleOutTask, get("idle")*1000);
+        gameTimer.schedule(mailbox, idleOutTask, get("idle")*1000);
     }
     
     /**
@@ -1683,7 +1994,6 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         if (idleOutTask != null){
             idleWarningTask.cancel();
             idleOutTask.cancel();
-            gameTimer.purge();
         }
     }
     
@@ -1815,12 +2125,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      * @return the Player instance or null if not found
      */
     protected Player findJoined(String nick){
-        for (Player p : joined) {
-            if (p.getNick().equalsIgnoreCase(nick)){
-                return p;
-            }  
-        }
-        return null;
+        return joined.find(nick);
     }
     
     /**
@@ -1829,12 +2134,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      * @return the Player instance or null if not found
      */
     protected Player findWaitlisted(String nick){
-        for (Player p : waitlist) {
-            if (p.getNick().equalsIgnoreCase(nick)){
-                return p;
-            }  
-        }
-        return null;
+        return waitlist.find(nick);
     }
     
     /**
@@ -1843,12 +2143,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      * @return the Player instance or null if not found
      */
     protected Player findBlacklisted(String nick){
-        for (Player p : blacklist) {
-            if (p.getNick().equalsIgnoreCase(nick)){
-                return p;
-            }  
-        }
-        return null;
+        return blacklist.find(nick);
     }
     
     /**
@@ -1885,13 +2180,13 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         if (amount == 0){
             informPlayer(nick, getMsg("no_transaction"));
         // Disallow withdrawals for bankrolls with insufficient funds
-        } else if (amount < 0 && p.getInteger("bank") < -amount){
+        } else if (amount < 0 && p.getInt("bank") < -amount){
             informPlayer(nick, getMsg("no_withdrawal"));
         // Disallow deposits of amounts larger than cash
-        } else if (amount > 0 && amount > p.getInteger("cash")){
+        } else if (amount > 0 && amount > p.getInt("cash")){
             informPlayer(nick, getMsg("no_deposit_cash"));
         // Disallow deposits that leave the player with $0 cash
-        } else if (amount > 0 && amount == p.getInteger("cash")){
+        } else if (amount > 0 && amount == p.getInt("cash")){
             informPlayer(nick, getMsg("no_deposit_bankrupt"));
         } else {
             p.bankTransfer(amount);
@@ -2012,7 +2307,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     abstract protected void loadDBPlayerData(Player p);
     
     /**
-     * Saves a list of players in one transaction.
+     * Queues a snapshot of a list of players to be saved in one transaction.
      * @param players 
      */
     abstract protected void saveDBPlayerDataBatch(ArrayList<Player> players);
@@ -2028,34 +2323,138 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     }
     
     /**
-     * Records a banking transaction into the database.
+     * Queues a banking transaction to be recorded into the database.
      * @param p 
      */
     protected void saveDBPlayerBanking(Player p) {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            // Insert banking transaction into Banking table
-            String sql = getSQL("INSERT_BANKING");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, p.getInteger("id"));
-                ps.setLong(2, System.currentTimeMillis() / 1000);
-                ps.setInt(3, p.getInteger("transaction"));
-                ps.setInt(4, p.getInteger("cash"));
-                ps.setInt(5, p.getInteger("bank"));
-                ps.executeUpdate();
+        final Record record = new Record(p);
+        final long time = System.currentTimeMillis() / 1000;
+        
+        manager.getPersistenceQueue().submit(new PersistenceTask() {
+            @Override
+            public void persist(Connection conn) throws SQLException {
+                // Insert banking transaction into Banking table
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_BANKING")) {
+                    ps.setInt(1, record.getInteger("id"));
+                    ps.setLong(2, time);
+                    ps.setInt(3, record.getInt("transaction"));
+                    ps.setInt(4, record.getInt("cash"));
+                    ps.setInt(5, record.getInt("bank"));
+                    ps.executeUpdate();
+                }
+                
+                logDBWarning(conn.getWarnings());
             }
-            
+        });
+    }
+    
+    /**
+     * Returns the leaderboard for a stat. The leaderboards for a section are
+     * loaded from the database on first use and then updated in memory as
+     * players are saved.
+     * @param section the section name
+     * @param stat the stat name
+     * @return the Leaderboard
+     */
+    protected Leaderboard getLeaderboard(String section, String stat) {
+        PlayerCache cache = manager.getPlayerCache();
+        synchronized (cache) {
+            if (!cache.isIndexed(section)) {
+                loadDBLeaderboards(section);
+                cache.setIndexed(section);
+            }
+            return cache.getLeaderboard(section, stat);
+        }
+    }
+    
+    /**
+     * Loads the leaderboards for a section from every player in the
+     * database.
+     * @param section the section name
+     */
+    private void loadDBLeaderboards(String section) {
+        // Snapshots taken before the section was indexed were not applied to
+        // the leaderboards, so they must be in the table before it is read
+        manager.getPersistenceQueue().flush();
+        try (Connection conn = getDBReadConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = prepareSQL(conn, "SELECT_LEADERBOARD_" + section.toUpperCase());
+                    ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData rsmd = rs.getMetaData();
+                while (rs.next()) {
+                    Record record = new Record();
+                    for (int ctr = 1; ctr <= rsmd.getColumnCount(); ctr++) {
+                        String column = rsmd.getColumnName(ctr);
+                        if (column.equals("nick")) {
+                            record.put(column, rs.getString(ctr));
+                        } else {
+                            record.put(column, rs.getInt(ctr));
+                        }
+                    }
+                    if (section.equals(PlayerCache.PURSE)) {
+                        indexPurse(record);
+                    } else {
+                        indexStats(record);
+                    }
+                }
+            }
+            conn.commit();
             logDBWarning(conn.getWarnings());
         } catch (SQLException ex) {
             manager.log("SQL Error: " + ex.getMessage());
         }
     }
     
+    /**
+     * Updates the loaded leaderboards with snapshots of saved players.
+     * @param records the snapshots returned by PlayerCache.takeDirty()
+     */
+    protected void updateLeaderboards(ArrayList<Record> records) {
+        PlayerCache cache = manager.getPlayerCache();
+        synchronized (cache) {
+            boolean purse = cache.isIndexed(PlayerCache.PURSE);
+            boolean stats = cache.isIndexed(name);
+            for (Record record : records) {
+                if (purse && record.has(PlayerCache.PURSE)) {
+                    indexPurse(record);
+                }
+                if (stats && record.has(name)) {
+                    indexStats(record);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Adds a player's purse to the cash, bank, bankrupts and netcash
+     * leaderboards.
+     * @param record the player's id, nick and purse
+     */
+    protected void indexPurse(Record record) {
+        PlayerCache cache = manager.getPlayerCache();
+        int id = record.getInteger("id");
+        String nick = record.getString("nick");
+        int cash = record.getInt("cash");
+        int bank = record.getInt("bank");
+        cache.getLeaderboard(PlayerCache.PURSE, "cash").put(id, nick, cash);
+        cache.getLeaderboard(PlayerCache.PURSE, "bank").put(id, nick, bank);
+        cache.getLeaderboard(PlayerCache.PURSE, "bankrupts").put(id, nick, record.getInteger("bankrupts"));
+        cache.getLeaderboard(PlayerCache.PURSE, "netcash").put(id, nick, cash + bank);
+    }
+    
+    /**
+     * Adds a player to the game's stat leaderboards, or removes the player
+     * from those that the player does not qualify for.
+     * @param record the player's id, nick and stats
+     */
+    abstract protected void indexStats(Record record);
+    
     ////////////////////////////////////////
     //// Game stats management methods. ////
     ////////////////////////////////////////
     
     /**
-     * saves game stats to the database.
+     * Queues a snapshot of the game stats to be saved to the database.
      */
     abstract protected void saveDBGameStats();
     
@@ -2297,7 +2696,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         }
         int cardIndex=0, numOut, n;
         String cardStr;
-        ArrayList<Card> tCards;
+        List<Card> tCards;
         if (type == 'c'){
             tCards = deck.getCards();
         } else {
@@ -2340,7 +2739,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     abstract protected String getGameStatsStr();
     
     /**
-     * Returns a list of commands for this game based on its help file.
+     * Returns a list of commands for this game.
      * @return a list of commands
      */
     protected String getCommandsStr() {
@@ -2354,7 +2753,7 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
     }
     
     /**
-     * Returns a list of Op commands for this game based on its help file.
+     * Returns a list of Op commands for this game.
      * @return a list of Op commands
      */
     protected String getOpCommandsStr() {
@@ -2434,16 +2833,11 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
      * @return the help data for the command
      */
     protected String getCommandHelp(String command){
-        if (cmdMap.containsKey(command)){
-            return cmdMap.get(command);
-        } else if (opCmdMap.containsKey(command)) {
-            return opCmdMap.get(command);
-        } else if (aliasMap.containsKey(command)) {
-            if (cmdMap.containsKey(aliasMap.get(command))) {
-                return cmdMap.get(aliasMap.get(command));
-            } else {
-                return opCmdMap.get(aliasMap.get(command));
-            }
+        CommandRegistry.Command cmd = getCommandRegistry().find(command);
+        if (cmd != null && cmdMap.containsKey(cmd.getName())){
+            return cmdMap.get(cmd.getName());
+        } else if (cmd != null && opCmdMap.containsKey(cmd.getName())) {
+            return opCmdMap.get(cmd.getName());
         } else {
             return "Error: Help for \'" + command + "\' not found!";
         }
@@ -2462,6 +2856,41 @@ public abstract class CardGame extends ListenerAdapter<PircBotX> {
         }
     }
 
+    /**
+     * Borrows a read connection from the DB pool. Writes still waiting in
+     * the persistence queue are not visible, so reads that depend on them
+     * must flush the queue first.
+     * @return a read-only connection
+     * @throws SQLException 
+     */
+    protected Connection getDBReadConnection() throws SQLException {
+        return manager.getDBPool().getReadConnection();
+    }
+    
+    /**
+     * Borrows the write connection from the DB pool. Writes still waiting in
+     * the persistence queue are not visible, so reads that depend on them
+     * must flush the queue first.
+     * @return the writer connection
+     * @throws SQLException 
+     */
+    protected Connection getDBWriteConnection() throws SQLException {
+        return manager.getDBPool().getWriteConnection();
+    }
+    
+    /**
+     * Returns a prepared statement for the SQL statement with the specified
+     * key. Statements are cached with the pooled connection and closing the
+     * returned statement only resets it for the next use.
+     * @param conn a connection borrowed from the DB pool
+     * @param sqlKey
+     * @return the prepared statement
+     * @throws SQLException 
+     */
+    protected PreparedStatement prepareSQL(Connection conn, String sqlKey) throws SQLException {
+        return manager.getDBPool().prepareStatement(conn, sqlKey, getSQL(sqlKey));
+    }
+    
     /**
      * Returns the SQL statement based on the specified key.
      * @param sqlKey
@@ -0,0 +1,177 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The commands of a game. Each command has a name, which the game uses to
+ * run it, any number of aliases and whether it is only for channel Ops.
+ * Names and aliases are looked up ignoring case. A registry is built once
+ * for each game class, and a subclass can start from a copy of its parent's
+ * registry and then add, replace or remove commands.
+ * @author Yizhe Shen
+ */
+public class CommandRegistry {
+
+    private final LinkedHashMap<String,Command> commands;
+    private final HashMap<String,Command> lookup;
+
+    /**
+     * A registered command.
+     */
+    public static class Command {
+        private final String name;
+        private final String[] aliases;
+        private final boolean op;
+
+        public Command(String cmdName, boolean opOnly, String[] cmdAliases) {
+            name = cmdName;
+            op = opOnly;
+            aliases = cmdAliases;
+        }
+
+        /**
+         * Returns the name the game uses to run this command.
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the other names of this command.
+         * @return the aliases
+         */
+        public String[] getAliases() {
+            return aliases.clone();
+        }
+
+        /**
+         * Returns whether only channel Ops may use this command.
+         * @return true for Op commands
+         */
+        public boolean isOp() {
+            return op;
+        }
+    }
+
+    /**
+     * Creates an empty registry.
+     */
+    public CommandRegistry() {
+        commands = new LinkedHashMap<>();
+        lookup = new HashMap<>();
+    }
+
+    /**
+     * Creates a registry with the commands of another registry.
+     * @param parent the registry to copy
+     */
+    public CommandRegistry(CommandRegistry parent) {
+        commands = new LinkedHashMap<>(parent.commands);
+        lookup = new HashMap<>(parent.lookup);
+    }
+
+    /**
+     * Adds a command for players, replacing any command with the same name.
+     * @param name the name
+     * @param aliases the aliases
+     * @return this registry
+     */
+    public CommandRegistry add(String name, String... aliases) {
+        return put(name, false, aliases);
+    }
+
+    /**
+     * Adds a command for channel Ops, replacing any command with the same
+     * name.
+     * @param name the name
+     * @param aliases the aliases
+     * @return this registry
+     */
+    public CommandRegistry addOp(String name, String... aliases) {
+        return put(name, true, aliases);
+    }
+
+    /**
+     * Removes a command and its aliases.
+     * @param name the name of the command
+     * @return this registry
+     */
+    public CommandRegistry remove(String name) {
+        Command command = commands.remove(name.toLowerCase());
+        if (command != null) {
+            unmap(command.name, command);
+            for (String alias : command.aliases) {
+                unmap(alias, command);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the command with a name or alias.
+     * @param command the name or alias in any case
+     * @return the Command or null if not found
+     */
+    public Command find(String command) {
+        return lookup.get(command.toLowerCase());
+    }
+
+    /**
+     * Returns the commands in the order they were added.
+     * @return the commands
+     */
+    public List<Command> getCommands() {
+        return new ArrayList<>(commands.values());
+    }
+
+    /**
+     * Adds a command after removing any command with the same name.
+     */
+    private CommandRegistry put(String name, boolean op, String[] aliases) {
+        String key = name.toLowerCase();
+        String[] keys = new String[aliases.length];
+        for (int ctr = 0; ctr < aliases.length; ctr++) {
+            keys[ctr] = aliases[ctr].toLowerCase();
+        }
+        remove(key);
+        Command command = new Command(key, op, keys);
+        commands.put(key, command);
+        lookup.put(key, command);
+        for (String alias : keys) {
+            lookup.put(alias, command);
+        }
+        return this;
+    }
+
+    /**
+     * Removes a lookup key if it still refers to a command.
+     */
+    private void unmap(String key, Command command) {
+        if (lookup.get(key) == command) {
+            lookup.remove(key);
+        }
+    }
+}
@@ -0,0 +1,513 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * A pool of long-lived connections to the stats database shared by all games.
+ * The pool holds a single writer connection and up to a fixed number of
+ * read-only connections. The database is opened in WAL mode so that readers
+ * are not blocked by the writer. Borrowed connections are returned to the pool
+ * when closed. Each connection also keeps a cache of prepared statements keyed
+ * by their sqllib.txt key.
+ * @author Yizhe Shen
+ */
+public class ConnectionPool {
+
+    /** Milliseconds to wait for a connection before giving up. */
+    private static final long BORROW_TIMEOUT = 10000;
+    /** Seconds SQLite waits on a locked database before failing. */
+    private static final int BUSY_TIMEOUT = 5;
+
+    private final String dbURL;
+    private final int maxReaders;
+    private final Semaphore writeLock;
+    private final ArrayBlockingQueue<CachedConnection> idleReaders;
+    private final AtomicInteger openReaders;
+    private volatile CachedConnection writer;
+    private volatile boolean closed;
+    // Counters
+    private final AtomicLong borrows;
+    private final AtomicLong borrowTime;
+    private final AtomicLong maxBorrowTime;
+    private final AtomicLong waitTime;
+    private final AtomicLong statementHits;
+    private final AtomicLong statementMisses;
+    private final AtomicInteger cachedStatements;
+    private final AtomicLong executions;
+
+    /**
+     * Creates a new pool for the specified database. No connections are
+     * opened until they are first requested.
+     * @param url the JDBC URL of the database
+     * @param readers the maximum number of read connections
+     */
+    public ConnectionPool(String url, int readers) {
+        dbURL = url;
+        maxReaders = readers;
+        writeLock = new Semaphore(1, true);
+        idleReaders = new ArrayBlockingQueue<>(readers);
+        openReaders = new AtomicInteger();
+        closed = false;
+        borrows = new AtomicLong();
+        borrowTime = new AtomicLong();
+        maxBorrowTime = new AtomicLong();
+        waitTime = new AtomicLong();
+        statementHits = new AtomicLong();
+        statementMisses = new AtomicLong();
+        cachedStatements = new AtomicInteger();
+        executions = new AtomicLong();
+
+        // Load SQLite JDBC driver
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException ex) {}
+    }
+
+    /**
+     * Borrows the writer connection. Only one thread may hold the writer at
+     * a time. The connection must be closed to return it to the pool.
+     * @return the writer connection
+     * @throws SQLException if the pool is closed or the writer is unavailable
+     */
+    public Connection getWriteConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!writeLock.tryAcquire(BORROW_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for the write connection.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the write connection.");
+        }
+
+        try {
+            checkOpen();
+            if (writer == null || writer.conn.isClosed()) {
+                writer = openConnection(false);
+            }
+            waitTime.addAndGet(System.nanoTime() - start);
+            return wrap(writer, true);
+        } catch (SQLException ex) {
+            writeLock.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Borrows a read-only connection. A new connection is opened if none are
+     * idle and the maximum has not been reached, otherwise waits for one to be
+     * returned. The connection must be closed to return it to the pool.
+     * @return a read-only connection
+     * @throws SQLException if the pool is closed or no reader is available
+     */
+    public Connection getReadConnection() throws SQLException {
+        long start = System.nanoTime();
+        checkOpen();
+        CachedConnection conn = idleReaders.poll();
+
+        if (conn == null) {
+            if (openReaders.incrementAndGet() <= maxReaders) {
+                try {
+                    conn = openConnection(true);
+                } catch (SQLException ex) {
+                    openReaders.decrementAndGet();
+                    throw ex;
+                }
+            } else {
+                openReaders.decrementAndGet();
+                try {
+                    conn = idleReaders.poll(BORROW_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                if (conn == null) {
+                    throw new SQLException("Timed out waiting for a read connection.");
+                }
+            }
+        }
+
+        waitTime.addAndGet(System.nanoTime() - start);
+        return wrap(conn, false);
+    }
+
+    /**
+     * Closes all idle connections and the writer. Connections that are
+     * currently borrowed are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        CachedConnection conn;
+        while ((conn = idleReaders.poll()) != null) {
+            conn.close();
+            openReaders.decrementAndGet();
+        }
+        if (writeLock.tryAcquire()) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            writeLock.release();
+        }
+    }
+
+    /**
+     * Returns a prepared statement for a borrowed connection. If the
+     * connection came from this pool, the statement is taken from the
+     * connection's cache or prepared and cached on a miss. Closing the
+     * returned statement resets it instead of closing it.
+     * @param conn a connection borrowed from this pool
+     * @param key the sqllib.txt key of the statement
+     * @param sql the SQL for the key
+     * @return the prepared statement
+     * @throws SQLException
+     */
+    public PreparedStatement prepareStatement(Connection conn, String key, String sql) throws SQLException {
+        if (!Proxy.isProxyClass(conn.getClass()) ||
+                !(Proxy.getInvocationHandler(conn) instanceof PooledConnection)) {
+            return conn.prepareStatement(sql);
+        }
+        return ((PooledConnection) Proxy.getInvocationHandler(conn)).prepareCached(key, sql);
+    }
+
+    /**
+     * Returns the number of physical connections currently open.
+     * @return the number of open connections
+     */
+    public int getOpenConnections() {
+        return openReaders.get() + (writer == null ? 0 : 1);
+    }
+
+    /**
+     * Returns the number of connections that have been borrowed.
+     * @return the total number of borrows
+     */
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    /**
+     * Returns the average time a connection was held by a borrower.
+     * @return the average borrow time in milliseconds
+     */
+    public double getAverageBorrowTime() {
+        long n = borrows.get();
+        return n == 0 ? 0 : borrowTime.get() / 1000000.0 / n;
+    }
+
+    /**
+     * Returns the longest time a connection was held by a borrower.
+     * @return the maximum borrow time in milliseconds
+     */
+    public double getMaxBorrowTime() {
+        return maxBorrowTime.get() / 1000000.0;
+    }
+
+    /**
+     * Returns the average time spent waiting to borrow a connection.
+     * @return the average wait time in milliseconds
+     */
+    public double getAverageWaitTime() {
+        long n = borrows.get();
+        return n == 0 ? 0 : waitTime.get() / 1000000.0 / n;
+    }
+
+    /**
+     * Returns the number of statements served from a connection's cache.
+     * @return the number of cache hits
+     */
+    public long getStatementHits() {
+        return statementHits.get();
+    }
+
+    /**
+     * Returns the number of statements that had to be prepared.
+     * @return the number of cache misses
+     */
+    public long getStatementMisses() {
+        return statementMisses.get();
+    }
+
+    /**
+     * Returns the number of times a cached statement was executed. A batch
+     * counts as a single execution.
+     * @return the number of cached statement executions
+     */
+    public long getStatementExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * Returns a summary of the prepared statement cache counters.
+     * @return the statement cache counters as a String
+     */
+    public String getStatementStats() {
+        long hits = getStatementHits();
+        long total = hits + getStatementMisses();
+        return String.format("Cached statements: %d, Hits: %,d, Misses: %,d, Hit rate: %.1f%%, Executions: %,d",
+                cachedStatements.get(), hits, getStatementMisses(),
+                total == 0 ? 0 : hits * 100.0 / total, getStatementExecutions());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Open connections: %d (%d/%d readers), Borrows: %,d, Avg. held: %.2fms, Max held: %.2fms, Avg. wait: %.2fms",
+                getOpenConnections(), openReaders.get(), maxReaders, getBorrowCount(),
+                getAverageBorrowTime(), getMaxBorrowTime(), getAverageWaitTime());
+    }
+
+    /**
+     * Opens a new physical connection and configures it for WAL access.
+     * @param readOnly whether the connection should reject writes
+     * @return the new connection
+     * @throws SQLException
+     */
+    private CachedConnection openConnection(boolean readOnly) throws SQLException {
+        // Readers are opened read-only by the driver, since SQLite 3.7.2 has
+        // no query_only pragma
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(readOnly);
+        Connection conn = DriverManager.getConnection(dbURL, config.toProperties());
+        try (Statement s = conn.createStatement()) {
+            // The driver applies a query timeout as the connection's busy
+            // timeout, which the busy_timeout pragma does not set in 3.7.2
+            s.setQueryTimeout(BUSY_TIMEOUT);
+            if (!readOnly) {
+                s.execute("PRAGMA journal_mode = WAL");
+                s.execute("PRAGMA synchronous = NORMAL");
+            }
+        } catch (SQLException ex) {
+            closeQuietly(conn);
+            throw ex;
+        }
+        return new CachedConnection(conn);
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Any uncommitted transaction
+     * is rolled back. Broken connections are discarded.
+     * @param cached the physical connection
+     * @param isWriter whether conn is the writer connection
+     * @param borrowed the System.nanoTime() when the connection was borrowed
+     */
+    private void release(CachedConnection cached, boolean isWriter, long borrowed) {
+        long held = System.nanoTime() - borrowed;
+        borrows.incrementAndGet();
+        borrowTime.addAndGet(held);
+        long max = maxBorrowTime.get();
+        while (held > max && !maxBorrowTime.compareAndSet(max, held)) {
+            max = maxBorrowTime.get();
+        }
+
+        Connection conn = cached.conn;
+        boolean healthy;
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            conn.clearWarnings();
+            healthy = !conn.isClosed();
+        } catch (SQLException ex) {
+            healthy = false;
+        }
+
+        if (isWriter) {
+            if (!healthy || closed) {
+                cached.close();
+                writer = null;
+            }
+            writeLock.release();
+        } else if (!healthy || closed || !idleReaders.offer(cached)) {
+            cached.close();
+            openReaders.decrementAndGet();
+        }
+    }
+
+    /**
+     * Wraps a physical connection so that closing it returns it to the pool.
+     * @param conn the physical connection
+     * @param isWriter whether conn is the writer connection
+     * @return the wrapped connection
+     */
+    private Connection wrap(CachedConnection conn, boolean isWriter) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new PooledConnection(conn, isWriter));
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ex) {}
+    }
+
+    /**
+     * A physical connection along with its prepared statements. A statement
+     * is re-prepared if the SQL for its key changes, e.g. after a reload.
+     */
+    private class CachedConnection {
+        private final Connection conn;
+        private final HashMap<String,PreparedStatement> statements;
+        private final HashMap<String,String> statementSQL;
+
+        public CachedConnection(Connection c) {
+            conn = c;
+            statements = new HashMap<>();
+            statementSQL = new HashMap<>();
+        }
+
+        public PreparedStatement prepare(String key, String sql) throws SQLException {
+            PreparedStatement ps = statements.get(key);
+            if (ps != null && sql.equals(statementSQL.get(key)) && !ps.isClosed()) {
+                statementHits.incrementAndGet();
+                return ps;
+            }
+
+            statementMisses.incrementAndGet();
+            if (ps != null) {
+                closeStatement(key);
+            }
+            ps = conn.prepareStatement(sql);
+            statements.put(key, ps);
+            statementSQL.put(key, sql);
+            cachedStatements.incrementAndGet();
+            return ps;
+        }
+
+        private void closeStatement(String key) {
+            try {
+                statements.remove(key).close();
+            } catch (SQLException ex) {}
+            statementSQL.remove(key);
+            cachedStatements.decrementAndGet();
+        }
+
+        public void close() {
+            for (String key : new ArrayList<>(statements.keySet())) {
+                closeStatement(key);
+            }
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Handler for borrowed connections. Calls are passed through to the
+     * physical connection except for close(), which returns it to the pool.
+     */
+    private class PooledConnection implements InvocationHandler {
+        private final CachedConnection cached;
+        private final Connection conn;
+        private final boolean isWriter;
+        private final long borrowed;
+        private boolean released;
+
+        public PooledConnection(CachedConnection c, boolean writer) {
+            cached = c;
+            conn = c.conn;
+            isWriter = writer;
+            borrowed = System.nanoTime();
+            released = false;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if (methodName.equals("close")) {
+                if (!released) {
+                    released = true;
+                    release(cached, isWriter, borrowed);
+                }
+                return null;
+            } else if (methodName.equals("isClosed")) {
+                return released || conn.isClosed();
+            } else if (released) {
+                throw new SQLException("Connection has been returned to the pool.");
+            }
+
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        public PreparedStatement prepareCached(String key, String sql) throws SQLException {
+            if (released) {
+                throw new SQLException("Connection has been returned to the pool.");
+            }
+            PreparedStatement ps = cached.prepare(key, sql);
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, new PooledStatement(ps));
+        }
+    }
+
+    /**
+     * Handler for cached statements. Calls are passed through to the cached
+     * statement except for close(), which clears its parameters and batch.
+     * Executions are counted so the number of round-trips can be monitored.
+     */
+    private class PooledStatement implements InvocationHandler {
+        private final PreparedStatement ps;
+
+        public PooledStatement(PreparedStatement s) {
+            ps = s;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("close")) {
+                ps.clearParameters();
+                ps.clearBatch();
+                return null;
+            } else if (method.getName().startsWith("execute")) {
+                executions.incrementAndGet();
+            }
+
+            try {
+                return method.invoke(ps, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
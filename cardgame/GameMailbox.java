@@ -0,0 +1,284 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package irccasino.cardgame;
+
+import irccasino.GameManager;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue of IRC events and timer tasks for one game. Messages are run in
+ * the order they were queued, one at a time, on a worker thread shared by
+ * all games, so a game's state is only ever touched by one thread while
+ * different games run in parallel. Queueing blocks while the mailbox is full,
+ * except through offer, which the shared timer uses so that one backed-up
+ * game cannot hold up the timers of the others. Once closed, the mailbox
+ * drops any message that has not started.
+ * @author Yizhe Shen
+ */
+public class GameMailbox implements Runnable {
+
+    /** The maximum number of messages waiting to run. */
+    private static final int CAPACITY = 256;
+    /** The number of messages run before the worker moves to other games. */
+    private static final int BATCH = 32;
+
+    private final GameManager manager;
+    private final Executor workers;
+    private final ArrayBlockingQueue<Message> queue;
+    private final AtomicBoolean scheduled;
+    private volatile Thread owner;
+    private volatile boolean closed;
+    // Counters
+    private final AtomicInteger maxDepth;
+    private final AtomicLong messages;
+    private final AtomicLong totalLatency;
+    private final AtomicLong maxLatency;
+    private final AtomicLong failures;
+
+    /**
+     * A queued message and the time it was queued.
+     */
+    private static class Message {
+        private final Runnable task;
+        private final long queued;
+
+        public Message(Runnable r) {
+            task = r;
+            queued = System.nanoTime();
+        }
+    }
+
+    /**
+     * Creates an empty mailbox.
+     * @param parent the manager used for logging
+     * @param gameWorkers the threads that run the messages of all games
+     */
+    public GameMailbox(GameManager parent, Executor gameWorkers) {
+        manager = parent;
+        workers = gameWorkers;
+        queue = new ArrayBlockingQueue<>(CAPACITY);
+        scheduled = new AtomicBoolean(false);
+        closed = false;
+        maxDepth = new AtomicInteger();
+        messages = new AtomicLong();
+        totalLatency = new AtomicLong();
+        maxLatency = new AtomicLong();
+        failures = new AtomicLong();
+    }
+
+    /**
+     * Queues a message to be run after those already waiting. Blocks while
+     * the mailbox is full.
+     * @param task the message
+     * @return false if the mailbox is closed and the message was dropped
+     */
+    public boolean execute(Runnable task) {
+        if (closed) {
+            return false;
+        }
+        try {
+            queue.put(new Message(task));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        queued();
+        return true;
+    }
+
+    /**
+     * Queues a message to be run after those already waiting, without
+     * blocking.
+     * @param task the message
+     * @return false if the mailbox is full or closed and the message was
+     *         not queued
+     */
+    public boolean offer(Runnable task) {
+        if (closed || !queue.offer(new Message(task))) {
+            return false;
+        }
+        queued();
+        return true;
+    }
+
+    /**
+     * Queues a message and waits for it to finish. If called while running
+     * a message of this mailbox, the message is run immediately instead.
+     * @param task the message
+     * @return false if the mailbox was closed before the message could run
+     */
+    public boolean executeAndWait(final Runnable task) {
+        if (Thread.currentThread() == owner) {
+            task.run();
+            return true;
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean queued = execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        if (!queued) {
+            return false;
+        }
+        try {
+            // A message dropped by close() never counts down, so stop
+            // waiting once the mailbox is closed
+            while (!done.await(100, TimeUnit.MILLISECONDS)) {
+                if (closed && owner == null) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Stops the mailbox. Messages that have not started are dropped.
+     */
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    /**
+     * Returns whether the mailbox has been closed.
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the number of messages waiting to run.
+     * @return the queue depth
+     */
+    public int getDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the average time from queueing a message to finishing it.
+     * @return the average latency in milliseconds
+     */
+    public double getAverageLatency() {
+        long n = messages.get();
+        return n == 0 ? 0 : totalLatency.get() / 1000000.0 / n;
+    }
+
+    /**
+     * Returns the longest time from queueing a message to finishing it.
+     * @return the maximum latency in milliseconds
+     */
+    public double getMaxLatency() {
+        return maxLatency.get() / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Event queue: %d/%d queued (max %d), Messages: %,d, Latency: %.2f ms avg, %.2f ms max, Failures: %,d",
+                getDepth(), CAPACITY, maxDepth.get(), messages.get(),
+                getAverageLatency(), getMaxLatency(), failures.get());
+    }
+
+    /**
+     * Runs a batch of waiting messages on a worker thread. The mailbox is
+     * handed back to the workers if messages remain, so a busy game does not
+     * hold a worker.
+     */
+    @Override
+    public void run() {
+        owner = Thread.currentThread();
+        try {
+            Message m;
+            for (int ctr = 0; ctr < BATCH && !closed && (m = queue.poll()) != null; ctr++) {
+                process(m);
+            }
+        } finally {
+            owner = null;
+            scheduled.set(false);
+        }
+        if (!queue.isEmpty() && !closed) {
+            schedule();
+        }
+    }
+
+    /**
+     * Records the queue depth after a message is queued and makes sure a
+     * worker will run it.
+     */
+    private void queued() {
+        int depth = queue.size();
+        int max = maxDepth.get();
+        while (depth > max && !maxDepth.compareAndSet(max, depth)) {
+            max = maxDepth.get();
+        }
+        schedule();
+    }
+
+    /**
+     * Hands the mailbox to the workers unless it is already waiting for or
+     * running on one.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(this);
+            } catch (RejectedExecutionException ex) {
+                scheduled.set(false);
+                manager.log("Game Error: workers are shut down.");
+            }
+        }
+    }
+
+    /**
+     * Runs one message and records its latency.
+     * @param m the message
+     */
+    private void process(Message m) {
+        try {
+            m.task.run();
+        } catch (RuntimeException ex) {
+            failures.incrementAndGet();
+            manager.log("Game Error: " + ex);
+        }
+        long latency = System.nanoTime() - m.queued;
+        messages.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package irccasino.cardgame;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A task scheduled on the GameTimer. Cancelling a task removes it from the
+ * timer's queue right away, so tasks that are re-armed often, such as idle
+ * timers, do not pile up. A task that is due is run through its game's
+ * mailbox, and is skipped there if it was cancelled in the meantime.
+ * @author Yizhe Shen
+ */
+public abstract class GameTask implements Runnable {
+    private volatile ScheduledFuture<?> future;
+    private volatile boolean cancelled;
+
+    /**
+     * Records the pending run of this task.
+     * @param scheduled the future returned by the timer
+     */
+    void setFuture(ScheduledFuture<?> scheduled) {
+        future = scheduled;
+    }
+
+    /**
+     * Cancels this task. A task that has not started will not run.
+     */
+    public void cancel() {
+        cancelled = true;
+        ScheduledFuture<?> f = future;
+        if (f != null) {
+            f.cancel(false);
+        }
+    }
+
+    /**
+     * Returns whether this task has been cancelled.
+     * @return true if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package irccasino.cardgame;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A timer shared by all games. A single daemon thread waits for tasks to
+ * become due and passes each one to its game's mailbox to be run, and
+ * cancelled tasks are removed from the queue immediately rather than waiting
+ * for their scheduled time. The timer thread never waits on a mailbox. If a
+ * game's mailbox is full, the hand-off is tried again a little later.
+ * @author Yizhe Shen
+ */
+public class GameTimer {
+
+    /** Milliseconds to wait before handing a task to a full mailbox again. */
+    private static final long RETRY_DELAY = 50;
+
+    private final ScheduledThreadPoolExecutor executor;
+    // Counters
+    private final AtomicLong scheduled;
+    private final AtomicLong retries;
+
+    /**
+     * Creates a timer and its thread.
+     */
+    public GameTimer() {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Game Timer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduled = new AtomicLong();
+        retries = new AtomicLong();
+    }
+
+    /**
+     * Schedules a task to run once after a delay.
+     * @param mailbox the mailbox of the game that owns the task
+     * @param task the task
+     * @param delay the delay in milliseconds
+     */
+    public void schedule(final GameMailbox mailbox, final GameTask task, long delay) {
+        scheduled.incrementAndGet();
+        task.setFuture(executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (task.isCancelled() || mailbox.isClosed()) {
+                    return;
+                }
+                boolean queued = mailbox.offer(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!task.isCancelled()) {
+                            task.run();
+                        }
+                    }
+                });
+                if (!queued) {
+                    retries.incrementAndGet();
+                    try {
+                        executor.schedule(this, RETRY_DELAY, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException ex) {
+                        // The timer has been closed
+                    }
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Returns the number of tasks waiting to run.
+     * @return the number of pending tasks
+     */
+    public int getPending() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Cancels all pending tasks and stops the timer thread.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Game timer: %d pending, Scheduled: %,d, Retries: %,d",
+                getPending(), scheduled.get(), retries.get());
+    }
+}
\ No newline at end of file
@@ -19,13 +19,11 @@
 
 package irccasino.cardgame;
 
-import java.util.TimerTask;
-
 /**
  * Idle task for removing idle players.
  * @author Yizhe Shen
  */
-public class IdleOutTask extends TimerTask {
+public class IdleOutTask extends GameTask {
     private final Player player;
     private final CardGame game;
     
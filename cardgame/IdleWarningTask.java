@@ -19,13 +19,11 @@
 
 package irccasino.cardgame;
 
-import java.util.TimerTask;
-
 /**
  * Idle warning task for reminding players they are about to idle out.
  * @author Yizhe Shen
  */
-public class IdleWarningTask extends TimerTask {
+public class IdleWarningTask extends GameTask {
     private final Player player;
     private final CardGame game;
     
@@ -0,0 +1,261 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Ranks players by the value of one stat in descending order. Players are
+ * stored in a treap where each node also counts the size of its subtree, so
+ * updates, ranks and the start of a top list are found in O(log N).
+ * @author Yizhe Shen
+ */
+public class Leaderboard {
+
+    /**
+     * A player on the leaderboard.
+     */
+    private static class Node {
+        private final int id;
+        private final String nick;
+        private final double value;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size;
+
+        public Node(int playerID, String playerNick, double playerValue, int nodePriority) {
+            id = playerID;
+            nick = playerNick;
+            value = playerValue;
+            priority = nodePriority;
+            size = 1;
+        }
+
+        /**
+         * Determines if this node is ranked ahead of another node. Ties are
+         * broken by player ID.
+         * @param node the other node
+         * @return true if this node comes first
+         */
+        public boolean before(Node node) {
+            return value > node.value || (value == node.value && id < node.id);
+        }
+    }
+
+    private final HashMap<Integer,Node> nodes;
+    private final Random random;
+    private Node root;
+
+    /**
+     * Creates an empty leaderboard.
+     */
+    public Leaderboard() {
+        nodes = new HashMap<>();
+        random = new Random();
+        root = null;
+    }
+
+    /**
+     * Adds a player or updates the player's value.
+     * @param id the player's ID
+     * @param nick the player's nick
+     * @param value the stat value
+     */
+    public synchronized void put(int id, String nick, double value) {
+        remove(id);
+        Node node = new Node(id, nick, value, random.nextInt());
+        root = insert(root, node);
+        nodes.put(id, node);
+    }
+
+    /**
+     * Removes a player from the leaderboard.
+     * @param id the player's ID
+     */
+    public synchronized void remove(int id) {
+        Node node = nodes.remove(id);
+        if (node != null) {
+            root = delete(root, node);
+        }
+    }
+
+    /**
+     * Returns the number of players on the leaderboard.
+     * @return the size
+     */
+    public synchronized int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the value a player is ranked by.
+     * @param id the player's ID
+     * @param value the value to return if the player is not on the leaderboard
+     * @return the player's value on the leaderboard or the specified value
+     */
+    public synchronized double getValue(int id, double value) {
+        Node node = nodes.get(id);
+        return node == null ? value : node.value;
+    }
+
+    /**
+     * Returns a player's rank, which is one more than the number of players
+     * with a higher value. Players that are not on the leaderboard are ranked
+     * by the specified value instead.
+     * @param id the player's ID
+     * @param value the value to use if the player is not on the leaderboard
+     * @return the rank
+     */
+    public synchronized int getRank(int id, double value) {
+        Node node = nodes.get(id);
+        if (node != null) {
+            value = node.value;
+        }
+        int count = 0;
+        Node t = root;
+        while (t != null) {
+            if (t.value > value) {
+                count += size(t.left) + 1;
+                t = t.right;
+            } else {
+                t = t.left;
+            }
+        }
+        return count + 1;
+    }
+
+    /**
+     * Returns the players in a range of the leaderboard. Each Record contains
+     * the player's id, nick and value.
+     * @param offset the number of players to skip
+     * @param limit the maximum number of players to return
+     * @return the players in order
+     */
+    public synchronized ArrayList<Record> getRange(int offset, int limit) {
+        ArrayList<Record> list = new ArrayList<>();
+        collect(root, offset, offset + limit, list);
+        return list;
+    }
+
+    private static int size(Node t) {
+        return t == null ? 0 : t.size;
+    }
+
+    private static void update(Node t) {
+        t.size = size(t.left) + size(t.right) + 1;
+    }
+
+    private static Node rotateRight(Node t) {
+        Node l = t.left;
+        t.left = l.right;
+        l.right = t;
+        update(t);
+        update(l);
+        return l;
+    }
+
+    private static Node rotateLeft(Node t) {
+        Node r = t.right;
+        t.right = r.left;
+        r.left = t;
+        update(t);
+        update(r);
+        return r;
+    }
+
+    private static Node insert(Node t, Node node) {
+        if (t == null) {
+            return node;
+        }
+        if (node.before(t)) {
+            t.left = insert(t.left, node);
+            update(t);
+            if (t.left.priority > t.priority) {
+                t = rotateRight(t);
+            }
+        } else {
+            t.right = insert(t.right, node);
+            update(t);
+            if (t.right.priority > t.priority) {
+                t = rotateLeft(t);
+            }
+        }
+        return t;
+    }
+
+    private static Node delete(Node t, Node node) {
+        if (t == null) {
+            return null;
+        }
+        if (t == node) {
+            return merge(t.left, t.right);
+        }
+        if (node.before(t)) {
+            t.left = delete(t.left, node);
+        } else {
+            t.right = delete(t.right, node);
+        }
+        update(t);
+        return t;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+
+    /**
+     * Adds the nodes of a subtree with in-order positions from inclusive to
+     * exclusive to a list.
+     */
+    private static void collect(Node t, int from, int to, ArrayList<Record> list) {
+        if (t == null || from >= to) {
+            return;
+        }
+        int leftSize = size(t.left);
+        if (from < leftSize) {
+            collect(t.left, from, Math.min(to, leftSize), list);
+        }
+        if (from <= leftSize && leftSize < to) {
+            Record record = new Record();
+            record.put("id", t.id);
+            record.put("nick", t.nick);
+            record.put("value", t.value);
+            list.add(record);
+        }
+        if (to > leftSize + 1) {
+            collect(t.right, Math.max(0, from - leftSize - 1), to - leftSize - 1, list);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.util.HashMap;
+
+/**
+ * An index of the players in every game, shared by all games. Entries are
+ * keyed by lower-case nick and record, for each game the nick is in, the
+ * player on each of the game's player lists. The index is kept up to date by
+ * the PlayerList instances of each game, so lookups by nick do not need to
+ * scan the lists of every game. A game may also claim a nick while it
+ * decides whether to add the player, so that two games cannot add the same
+ * nick at once.
+ * @author Yizhe Shen
+ */
+public class NickIndex {
+
+    /** The list of joined players. */
+    public static final int JOINED = 0;
+    /** The list of players waiting for the next round. */
+    public static final int WAITLISTED = 1;
+    /** The list of bankrupt or eliminated players. */
+    public static final int BLACKLISTED = 2;
+
+    private final HashMap<String,Entry> entries;
+
+    /**
+     * The players with one nick in one game. Entries for the same nick in
+     * other games are chained in the order they were added.
+     */
+    private static class Entry {
+        private final CardGame game;
+        private final Player[] players;
+        private boolean claimed;
+        private Entry next;
+
+        public Entry(CardGame cardGame) {
+            game = cardGame;
+            players = new Player[3];
+        }
+
+        private boolean isEmpty() {
+            return players[JOINED] == null && players[WAITLISTED] == null &&
+                    players[BLACKLISTED] == null && !claimed;
+        }
+    }
+
+    /**
+     * Creates an empty index.
+     */
+    public NickIndex() {
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Returns the player with a nick on one of a game's lists.
+     * @param game the game
+     * @param list JOINED, WAITLISTED or BLACKLISTED
+     * @param nick the player's nick
+     * @return the Player or null if not found
+     */
+    public synchronized Player find(CardGame game, int list, String nick) {
+        for (Entry e = entries.get(nick.toLowerCase()); e != null; e = e.next) {
+            if (e.game == game) {
+                return e.players[list];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the game in which a nick has joined or is on the waitlist.
+     * @param nick the player's nick
+     * @return the CardGame or null if not joined or waitlisted
+     */
+    public synchronized CardGame getGame(String nick) {
+        for (Entry e = entries.get(nick.toLowerCase()); e != null; e = e.next) {
+            if (e.players[JOINED] != null || e.players[WAITLISTED] != null) {
+                return e.game;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claims a nick for a game unless it has joined or is on the waitlist of
+     * any game, or is claimed by another game. The check and the claim are
+     * made together, so only one game can hold a nick at a time. A claim
+     * must be released with release() once the player has been added or
+     * turned away.
+     * @param game the game
+     * @param nick the player's nick
+     * @return the game holding the nick, or null if it was claimed
+     */
+    public synchronized CardGame claim(CardGame game, String nick) {
+        String key = nick.toLowerCase();
+        for (Entry e = entries.get(key); e != null; e = e.next) {
+            if (e.players[JOINED] != null || e.players[WAITLISTED] != null ||
+                    (e.claimed && e.game != game)) {
+                return e.game;
+            }
+        }
+        entry(key, game).claimed = true;
+        return null;
+    }
+
+    /**
+     * Releases a game's claim on a nick. Does nothing if the game does not
+     * hold a claim.
+     * @param game the game
+     * @param nick the player's nick
+     */
+    public synchronized void release(CardGame game, String nick) {
+        String key = nick.toLowerCase();
+        Entry prev = null;
+        for (Entry e = entries.get(key); e != null; prev = e, e = e.next) {
+            if (e.game == game) {
+                e.claimed = false;
+                if (e.isEmpty()) {
+                    unlink(key, prev, e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks if a nick is on the blacklist of any game.
+     * @param nick the player's nick
+     * @return true if blacklisted in any game
+     */
+    public synchronized boolean isBlacklisted(String nick) {
+        for (Entry e = entries.get(nick.toLowerCase()); e != null; e = e.next) {
+            if (e.players[BLACKLISTED] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the player indexed for its nick on one of a game's lists.
+     * @param game the game
+     * @param list JOINED, WAITLISTED or BLACKLISTED
+     * @param p the player
+     */
+    public synchronized void put(CardGame game, int list, Player p) {
+        entry(p.getNick().toLowerCase(), game).players[list] = p;
+    }
+
+    /**
+     * Returns a game's entry for a nick, adding one if there is none.
+     */
+    private Entry entry(String key, CardGame game) {
+        Entry e = entries.get(key);
+        Entry last = null;
+        while (e != null && e.game != game) {
+            last = e;
+            e = e.next;
+        }
+        if (e == null) {
+            e = new Entry(game);
+            if (last == null) {
+                entries.put(key, e);
+            } else {
+                last.next = e;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Removes the player indexed for a nick on one of a game's lists.
+     * @param game the game
+     * @param list JOINED, WAITLISTED or BLACKLISTED
+     * @param nick the player's nick
+     */
+    public synchronized void remove(CardGame game, int list, String nick) {
+        String key = nick.toLowerCase();
+        Entry prev = null;
+        for (Entry e = entries.get(key); e != null; prev = e, e = e.next) {
+            if (e.game == game) {
+                e.players[list] = null;
+                if (e.isEmpty()) {
+                    unlink(key, prev, e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes every player of a game from the index.
+     * @param game the game
+     */
+    public synchronized void removeGame(CardGame game) {
+        for (String key : entries.keySet().toArray(new String[0])) {
+            Entry prev = null;
+            for (Entry e = entries.get(key); e != null; prev = e, e = e.next) {
+                if (e.game == game) {
+                    unlink(key, prev, e);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an entry from the chain for its nick.
+     */
+    private void unlink(String key, Entry prev, Entry e) {
+        if (prev != null) {
+            prev.next = e.next;
+        } else if (e.next != null) {
+            entries.put(key, e.next);
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of nicks in the index.
+     * @return the number of nicks
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,275 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import irccasino.GameManager;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write-behind queue for the stats database. Tasks are applied in order by
+ * a single background thread, which groups whatever is waiting into one
+ * transaction. Submitting blocks when the queue is full.
+ * @author Yizhe Shen
+ */
+public class PersistenceQueue implements Runnable {
+
+    /** The maximum number of tasks waiting to be written. */
+    private static final int CAPACITY = 256;
+    /** The maximum number of tasks in one commit. */
+    private static final int MAX_GROUP = 64;
+    /** Marks the end of the queue. */
+    private static final PersistenceTask STOP = new PersistenceTask() {
+        @Override
+        public void persist(Connection conn) {}
+    };
+
+    private final GameManager manager;
+    private final ConnectionPool pool;
+    private final ArrayBlockingQueue<PersistenceTask> queue;
+    private final Thread writerThread;
+    private final Object lock;
+    private int pending;
+    private volatile boolean closed;
+    // Counters
+    private long tasks;
+    private long commits;
+    private long failures;
+
+    /**
+     * Creates a queue and starts its writer thread.
+     * @param parent the manager used for logging
+     * @param dbPool the pool that provides the writer connection
+     */
+    public PersistenceQueue(GameManager parent, ConnectionPool dbPool) {
+        manager = parent;
+        pool = dbPool;
+        queue = new ArrayBlockingQueue<>(CAPACITY);
+        lock = new Object();
+        pending = 0;
+        closed = false;
+        writerThread = new Thread(this, "DB Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a task to be written. Blocks while the queue is full. If the
+     * queue has been closed, the task is written immediately instead.
+     * @param task the task
+     */
+    public void submit(PersistenceTask task) {
+        boolean queued;
+        synchronized (lock) {
+            // close() waits for every task counted here, so a task accepted
+            // before the queue closed is never stranded behind the marker
+            queued = !closed;
+            if (queued) {
+                pending++;
+            }
+        }
+        if (queued) {
+            try {
+                queue.put(task);
+                return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                finish(1);
+            }
+        }
+        write(task);
+    }
+
+    /**
+     * Blocks until every task submitted so far has been written. Returns
+     * immediately if nothing is waiting.
+     */
+    public void flush() {
+        if (Thread.currentThread() == writerThread) {
+            return;
+        }
+        synchronized (lock) {
+            while (pending > 0 && writerThread.isAlive()) {
+                try {
+                    lock.wait(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all waiting tasks and stops the writer thread. Tasks submitted
+     * afterwards are written on the caller's thread.
+     */
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            queue.put(STOP);
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Write anything that raced past the marker, including tasks that
+        // were accepted before closing but are still being put
+        while (getPending() > 0) {
+            PersistenceTask task;
+            try {
+                task = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task != null && task != STOP) {
+                write(task);
+                finish(1);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting to be written.
+     * @return the queue depth
+     */
+    public int getPending() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return String.format("Write queue: %d/%d pending, Tasks: %,d, Commits: %,d, Failures: %,d",
+                    pending, CAPACITY, tasks, commits, failures);
+        }
+    }
+
+    @Override
+    public void run() {
+        ArrayList<PersistenceTask> group = new ArrayList<>(MAX_GROUP);
+        boolean stop = false;
+
+        while (!stop) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            queue.drainTo(group, MAX_GROUP - 1);
+            if (group.remove(STOP)) {
+                // Drain anything that was queued ahead of the marker
+                stop = true;
+                queue.drainTo(group);
+            }
+
+            writeGroup(group);
+            finish(group.size());
+            group.clear();
+        }
+    }
+
+    /**
+     * Writes a group of tasks in one transaction. If the transaction fails,
+     * each task is retried on its own so one bad snapshot does not discard
+     * the others.
+     * @param group the tasks
+     */
+    private void writeGroup(ArrayList<PersistenceTask> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            for (PersistenceTask task : group) {
+                task.persist(conn);
+            }
+            conn.commit();
+            synchronized (lock) {
+                tasks += group.size();
+                commits++;
+            }
+            return;
+        } catch (SQLException ex) {
+            manager.log("SQL Error: " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            manager.log("Game Error: " + ex);
+        }
+
+        if (group.size() > 1) {
+            for (PersistenceTask task : group) {
+                write(task);
+            }
+        } else {
+            synchronized (lock) {
+                failures++;
+            }
+        }
+    }
+
+    /**
+     * Writes a single task in its own transaction.
+     * @param task the task
+     */
+    private void write(PersistenceTask task) {
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            task.persist(conn);
+            conn.commit();
+            synchronized (lock) {
+                tasks++;
+                commits++;
+            }
+        } catch (SQLException ex) {
+            manager.log("SQL Error: " + ex.getMessage());
+            synchronized (lock) {
+                failures++;
+            }
+        } catch (RuntimeException ex) {
+            // A bad snapshot must not kill the writer thread
+            manager.log("Game Error: " + ex);
+            synchronized (lock) {
+                failures++;
+            }
+        }
+    }
+
+    /**
+     * Marks tasks as written and wakes any threads waiting in flush().
+     * @param n the number of tasks
+     */
+    private void finish(int n) {
+        synchronized (lock) {
+            pending -= n;
+            lock.notifyAll();
+        }
+    }
+}
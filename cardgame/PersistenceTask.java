@@ -0,0 +1,40 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A write to the stats database that is applied by the PersistenceQueue.
+ * Implementations must only hold snapshot data, never live game state, since
+ * they run after the game has moved on.
+ * @author Yizhe Shen
+ */
+public interface PersistenceTask {
+
+    /**
+     * Writes the snapshot to the database. The connection is in a transaction
+     * that may be shared with other tasks and must not be committed here.
+     * @param conn the writer connection
+     * @throws SQLException
+     */
+    public void persist(Connection conn) throws SQLException;
+}
@@ -23,9 +23,26 @@ import org.pircbotx.Colors;
 
 /**
  * A player class with common methods and members for all types of players.
+ * Frequently used stats are kept in typed fields rather than in the Record
+ * map so that betting and bookkeeping do not box values. The Record methods
+ * still work with these keys, and subclasses add their own typed keys by
+ * extending fieldType() and the field accessors.
  * @author Yizhe Shen
  */
 public class Player extends Record{
+    /** Returned by fieldType() for keys kept in the Record map. */
+    protected static final int MAP_FIELD = 0;
+    /** Returned by fieldType() for keys kept in int fields. */
+    protected static final int INT_FIELD = 1;
+    /** Returned by fieldType() for keys kept in boolean fields. */
+    protected static final int BOOLEAN_FIELD = 2;
+    /** Returned by fieldType() for read-only keys computed from other stats. */
+    protected static final int DERIVED_FIELD = 3;
+    
+    private String nick;
+    private int id, cash, bank, bankrupts, winnings, rounds, idles;
+    private int change, transaction;
+    private boolean last, quit, idled;
 
     /**
      * Creates a new Player.
@@ -34,22 +51,239 @@ public class Player extends Record{
      */
     public Player(String nick){
         super();
-        put("nick", nick);
-        put("change", 0);
-        put("transaction", 0);
-        put("last", false);
-        put("quit", false);
-        put("idled", false);
+        this.nick = nick;
+    }
+    
+    /* Typed field methods */
+    /**
+     * Returns where the value of a key is stored. Subclasses with their own
+     * typed fields should check their keys before calling this method.
+     * 
+     * @param key the key
+     * @return INT_FIELD, BOOLEAN_FIELD, DERIVED_FIELD or MAP_FIELD
+     */
+    protected int fieldType(String key) {
+        switch (key) {
+            case "id": case "cash": case "bank": case "bankrupts":
+            case "winnings": case "rounds": case "idles":
+            case "change": case "transaction":
+                return INT_FIELD;
+            case "last": case "quit": case "idled":
+                return BOOLEAN_FIELD;
+            case "exists":
+                return DERIVED_FIELD;
+            default:
+                return MAP_FIELD;
+        }
+    }
+    
+    /**
+     * Returns the value of an int field.
+     * 
+     * @param key a key for which fieldType() returns INT_FIELD
+     * @return the value
+     */
+    protected int getIntField(String key) {
+        switch (key) {
+            case "id": return id;
+            case "cash": return cash;
+            case "bank": return bank;
+            case "bankrupts": return bankrupts;
+            case "winnings": return winnings;
+            case "rounds": return rounds;
+            case "idles": return idles;
+            case "change": return change;
+            case "transaction": return transaction;
+            default: throw new IllegalArgumentException("Not an int field: " + key);
+        }
+    }
+    
+    /**
+     * Sets the value of an int field.
+     * 
+     * @param key a key for which fieldType() returns INT_FIELD
+     * @param value the new value
+     */
+    protected void setIntField(String key, int value) {
+        switch (key) {
+            case "id": id = value; break;
+            case "cash": cash = value; break;
+            case "bank": bank = value; break;
+            case "bankrupts": bankrupts = value; break;
+            case "winnings": winnings = value; break;
+            case "rounds": rounds = value; break;
+            case "idles": idles = value; break;
+            case "change": change = value; break;
+            case "transaction": transaction = value; break;
+            default: throw new IllegalArgumentException("Not an int field: " + key);
+        }
+    }
+    
+    /**
+     * Returns the value of a boolean field.
+     * 
+     * @param key a key for which fieldType() returns BOOLEAN_FIELD
+     * @return the value
+     */
+    protected boolean getBooleanField(String key) {
+        switch (key) {
+            case "last": return last;
+            case "quit": return quit;
+            case "idled": return idled;
+            default: throw new IllegalArgumentException("Not a boolean field: " + key);
+        }
+    }
+    
+    /**
+     * Sets the value of a boolean field.
+     * 
+     * @param key a key for which fieldType() returns BOOLEAN_FIELD
+     * @param value the new value
+     */
+    protected void setBooleanField(String key, boolean value) {
+        switch (key) {
+            case "last": last = value; break;
+            case "quit": quit = value; break;
+            case "idled": idled = value; break;
+            default: throw new IllegalArgumentException("Not a boolean field: " + key);
+        }
+    }
+    
+    /**
+     * Returns the value of a derived stat.
+     * 
+     * @param key a key for which fieldType() returns DERIVED_FIELD
+     * @return the value
+     */
+    protected Object getDerivedField(String key) {
+        switch (key) {
+            case "exists": return true;
+            default: throw new IllegalArgumentException("Not a derived field: " + key);
+        }
     }
     
+    @Override
+    protected void copyFields(Record target) {
+        target.put("nick", nick);
+        target.put("id", id);
+        target.put("cash", cash);
+        target.put("bank", bank);
+        target.put("bankrupts", bankrupts);
+        target.put("winnings", winnings);
+        target.put("rounds", rounds);
+        target.put("idles", idles);
+        target.put("change", change);
+        target.put("transaction", transaction);
+        target.put("last", last);
+        target.put("quit", quit);
+        target.put("idled", idled);
+    }
+    
+    /* Record methods routed to the typed fields */
     @Override
     public Object get(String key) {
-        if (key.equalsIgnoreCase("exists")) {
-            return true;
-        }        
+        switch (fieldType(key)) {
+            case INT_FIELD:
+                return getIntField(key);
+            case BOOLEAN_FIELD:
+                return getBooleanField(key);
+            case DERIVED_FIELD:
+                return getDerivedField(key);
+        }
+        if (key.equals("nick")) {
+            return nick;
+        }
         return super.get(key);
     }
     
+    @Override
+    public int getInt(String key) {
+        if (fieldType(key) == INT_FIELD) {
+            return getIntField(key);
+        }
+        return super.getInt(key);
+    }
+    
+    @Override
+    public boolean has(String key) {
+        switch (fieldType(key)) {
+            case INT_FIELD:
+                return getIntField(key) > 0;
+            case BOOLEAN_FIELD:
+                return getBooleanField(key);
+        }
+        return super.has(key);
+    }
+    
+    @Override
+    public void put(String stat, Object value) {
+        switch (fieldType(stat)) {
+            case INT_FIELD:
+                setIntField(stat, value == null ? 0 : (Integer) value);
+                return;
+            case BOOLEAN_FIELD:
+                setBooleanField(stat, value != null && (Boolean) value);
+                return;
+        }
+        if (stat.equals("nick")) {
+            nick = (String) value;
+        } else {
+            super.put(stat, value);
+        }
+    }
+    
+    @Override
+    public void put(String stat, int value) {
+        if (fieldType(stat) == INT_FIELD) {
+            setIntField(stat, value);
+        } else {
+            super.put(stat, value);
+        }
+    }
+    
+    @Override
+    public void put(String stat, boolean value) {
+        if (fieldType(stat) == BOOLEAN_FIELD) {
+            setBooleanField(stat, value);
+        } else {
+            super.put(stat, value);
+        }
+    }
+    
+    @Override
+    public void add(String key, int value) {
+        if (fieldType(key) == INT_FIELD) {
+            setIntField(key, getIntField(key) + value);
+        } else {
+            super.add(key, value);
+        }
+    }
+    
+    @Override
+    public void clear(String key) {
+        switch (fieldType(key)) {
+            case INT_FIELD:
+                setIntField(key, 0);
+                break;
+            case BOOLEAN_FIELD:
+                setBooleanField(key, false);
+                break;
+            default:
+                super.clear(key);
+        }
+    }
+    
+    @Override
+    public boolean exists(String key) {
+        int type = fieldType(key);
+        if (type == INT_FIELD || type == BOOLEAN_FIELD) {
+            return true;
+        } else if (key.equals("nick")) {
+            return nick != null;
+        }
+        return super.exists(key);
+    }
+    
     /* Player info methods */
     /**
      * Returns the Player's nick.
@@ -66,7 +300,6 @@ public class Player extends Record{
      * @return the Player's nick
      */
     public String getNick(boolean ping) {
-        String nick = getString("nick");
         if (ping) {
             return nick;
         } else {
@@ -99,9 +332,9 @@ public class Player extends Record{
      * @param amount the amount to transfer
      */
     public void bankTransfer(int amount){
-        add("bank", amount);
-        add("cash", -1 * amount);
-        put("transaction", -1 * amount);
+        bank += amount;
+        cash -= amount;
+        transaction = -1 * amount;
     }
     
     /**
@@ -113,7 +346,7 @@ public class Player extends Record{
     public boolean equals(Object o) {
         if (o != null && o instanceof Player) {
             Player p = (Player) o;
-            if (get("nick").equals(p.get("nick")) && 
+            if (nick.equals(p.nick) && 
                     hashCode() == p.hashCode()) {
                 return true;
             }
@@ -128,7 +361,7 @@ public class Player extends Record{
     @Override
     public int hashCode() {
         int hash = 5;
-        hash = 29 * hash + get("nick").hashCode();
+        hash = 29 * hash + nick.hashCode();
         return hash;
     }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * An in-memory cache of player data shared by all games. Entries are keyed by
+ * lower-case nick and split into sections: the purse, which every game with
+ * cash shares, and one section of stats per game. Sections that have been
+ * modified are marked dirty until they are taken to be saved. Once the cache
+ * is full, the least recently used clean entries are evicted, skipping over
+ * dirty ones, so the cache only grows past its capacity while more entries
+ * than that are waiting to be saved.
+ * <p>
+ * The cache also holds the leaderboards for each section, which are loaded
+ * once and then kept up to date as players are saved.
+ * @author Yizhe Shen
+ */
+public class PlayerCache {
+
+    /** The section name for a player's purse. */
+    public static final String PURSE = "purse";
+    /** The keys stored in the purse section. */
+    public static final String[] PURSE_KEYS = {"cash", "bank", "bankrupts"};
+
+    private final int capacity;
+    private final LinkedHashMap<String,CachedPlayer> entries;
+    private final HashMap<String,Leaderboard> leaderboards;
+    private final HashSet<String> indexed;
+    // Counters
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * A cached player.
+     */
+    private static class CachedPlayer {
+        private int id;
+        private String nick;
+        private final HashMap<String,Record> sections;
+        private final HashSet<String> dirty;
+
+        public CachedPlayer(int playerID, String playerNick) {
+            id = playerID;
+            nick = playerNick;
+            sections = new HashMap<>();
+            dirty = new HashSet<>();
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     * @param maxEntries the number of entries before clean ones are evicted
+     */
+    public PlayerCache(int maxEntries) {
+        capacity = maxEntries;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        leaderboards = new HashMap<>();
+        indexed = new HashSet<>();
+    }
+
+    /**
+     * Returns a copy of a cached section along with the player's id and nick.
+     * @param nick the player's nick
+     * @param section the section name
+     * @return the section data or null if not cached
+     */
+    public synchronized Record get(String nick, String section) {
+        CachedPlayer entry = entries.get(nick.toLowerCase());
+        if (entry == null || !entry.sections.containsKey(section)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        Record record = new Record(entry.sections.get(section));
+        record.put("id", entry.id);
+        record.put("nick", entry.nick);
+        return record;
+    }
+
+    /**
+     * Caches a section that was read from the database. A dirty section is
+     * newer than the database and is not replaced.
+     * @param nick the player's nick
+     * @param id the player's ID
+     * @param section the section name
+     * @param data the Record containing the values
+     * @param keys the keys of data that belong to the section
+     */
+    public synchronized void load(String nick, int id, String section, Record data, String[] keys) {
+        CachedPlayer entry = getEntry(nick, id);
+        if (!entry.dirty.contains(section)) {
+            entry.sections.put(section, copy(data, keys));
+        }
+        trim();
+    }
+
+    /**
+     * Stores a modified section and marks it dirty.
+     * @param nick the player's nick
+     * @param id the player's ID
+     * @param section the section name
+     * @param data the Record containing the values
+     * @param keys the keys of data that belong to the section
+     */
+    public synchronized void update(String nick, int id, String section, Record data, String[] keys) {
+        CachedPlayer entry = getEntry(nick, id);
+        entry.sections.put(section, copy(data, keys));
+        entry.dirty.add(section);
+        trim();
+    }
+
+    /**
+     * Returns a snapshot of every entry with a dirty stats section for the
+     * specified game or, optionally, a dirty purse. Each snapshot holds the
+     * player's id and nick, the values of the dirty sections and a true flag
+     * under each dirty section's name. The returned sections are marked clean.
+     * @param section the stats section name
+     * @param withPurse whether to include dirty purses
+     * @return the dirty snapshots
+     */
+    public synchronized ArrayList<Record> takeDirty(String section, boolean withPurse) {
+        ArrayList<Record> list = new ArrayList<>();
+        for (CachedPlayer entry : entries.values()) {
+            Record record = null;
+            if (withPurse && entry.dirty.remove(PURSE)) {
+                record = new Record(entry.sections.get(PURSE));
+                record.put(PURSE, true);
+            }
+            if (entry.dirty.remove(section)) {
+                if (record == null) {
+                    record = new Record();
+                }
+                record.putAll(entry.sections.get(section));
+                record.put(section, true);
+            }
+            if (record != null) {
+                record.put("id", entry.id);
+                record.put("nick", entry.nick);
+                list.add(record);
+            }
+        }
+        trim();
+        return list;
+    }
+
+    /**
+     * Returns the leaderboard for a stat, creating an empty one if needed.
+     * @param section the section name
+     * @param stat the stat name
+     * @return the Leaderboard
+     */
+    public synchronized Leaderboard getLeaderboard(String section, String stat) {
+        String key = section + "." + stat;
+        Leaderboard board = leaderboards.get(key);
+        if (board == null) {
+            board = new Leaderboard();
+            leaderboards.put(key, board);
+        }
+        return board;
+    }
+
+    /**
+     * Determines if the leaderboards for a section have been loaded.
+     * @param section the section name
+     * @return true if loaded
+     */
+    public synchronized boolean isIndexed(String section) {
+        return indexed.contains(section);
+    }
+
+    /**
+     * Marks the leaderboards for a section as loaded.
+     * @param section the section name
+     */
+    public synchronized void setIndexed(String section) {
+        indexed.add(section);
+    }
+
+    /**
+     * Discards all leaderboards so that they are loaded again on next use.
+     */
+    public synchronized void resetLeaderboards() {
+        leaderboards.clear();
+        indexed.clear();
+    }
+
+    /**
+     * Returns the number of cached players.
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        int dirty = 0;
+        for (CachedPlayer entry : entries.values()) {
+            if (!entry.dirty.isEmpty()) {
+                dirty++;
+            }
+        }
+        return String.format("Player cache: %d/%d entries (%d dirty), Hits: %,d, Misses: %,d, Evictions: %,d",
+                entries.size(), capacity, dirty, hits, misses, evictions);
+    }
+
+    /**
+     * Evicts the least recently used clean entries until the cache is back
+     * within its capacity.
+     */
+    private void trim() {
+        Iterator<CachedPlayer> it = entries.values().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            if (it.next().dirty.isEmpty()) {
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private CachedPlayer getEntry(String nick, int id) {
+        String key = nick.toLowerCase();
+        CachedPlayer entry = entries.get(key);
+        if (entry == null) {
+            entry = new CachedPlayer(id, nick);
+            entries.put(key, entry);
+        } else if (id != 0) {
+            entry.id = id;
+            entry.nick = nick;
+        }
+        return entry;
+    }
+
+    private static Record copy(Record data, String[] keys) {
+        Record record = new Record();
+        for (String key : keys) {
+            record.put(key, data.get(key));
+        }
+        return record;
+    }
+}
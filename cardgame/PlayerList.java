@@ -0,0 +1,321 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A list of players in seat order that keeps the bot's NickIndex up to date
+ * as players are added and removed. If a nick appears more than once, the
+ * index holds the first player with that nick, as a scan of the list would.
+ * Every method that changes the list, including those of its iterators,
+ * updates the index. Views from subList() are read-only.
+ * @author Yizhe Shen
+ */
+public class PlayerList extends ArrayList<Player> {
+    private static final long serialVersionUID = 1L;
+    private final NickIndex index;
+    private final CardGame game;
+    private final int list;
+
+    /**
+     * Creates an empty list.
+     * @param nickIndex the index to update
+     * @param cardGame the game that owns the list
+     * @param listType NickIndex.JOINED, WAITLISTED or BLACKLISTED
+     */
+    public PlayerList(NickIndex nickIndex, CardGame cardGame, int listType) {
+        super();
+        index = nickIndex;
+        game = cardGame;
+        list = listType;
+    }
+
+    /**
+     * Searches for a player by nick, ignoring case.
+     * @param nick the player's nick
+     * @return the Player or null if not found
+     */
+    public Player find(String nick) {
+        return index.find(game, list, nick);
+    }
+
+    @Override
+    public boolean add(Player p) {
+        super.add(p);
+        added(p);
+        return true;
+    }
+
+    @Override
+    public void add(int pos, Player p) {
+        super.add(pos, p);
+        added(p);
+    }
+
+    @Override
+    public Player set(int pos, Player p) {
+        Player old = super.set(pos, p);
+        removed(old);
+        added(p);
+        return old;
+    }
+
+    @Override
+    public Player remove(int pos) {
+        Player old = super.remove(pos);
+        removed(old);
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int pos = indexOf(o);
+        if (pos == -1) {
+            return false;
+        }
+        remove(pos);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Player p : this) {
+            index.remove(game, list, p.getNick());
+        }
+        super.clear();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Player> c) {
+        boolean changed = super.addAll(c);
+        for (Player p : c) {
+            added(p);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean addAll(int pos, Collection<? extends Player> c) {
+        boolean changed = super.addAll(pos, c);
+        for (Player p : c) {
+            added(p);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        ArrayList<Player> before = new ArrayList<>(this);
+        boolean changed = super.removeAll(c);
+        if (changed) {
+            removed(before);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        ArrayList<Player> before = new ArrayList<>(this);
+        boolean changed = super.retainAll(c);
+        if (changed) {
+            removed(before);
+        }
+        return changed;
+    }
+
+    @Override
+    protected void removeRange(int from, int to) {
+        ArrayList<Player> gone = new ArrayList<>(super.subList(from, to));
+        super.removeRange(from, to);
+        removed(gone);
+    }
+
+    /**
+     * Returns a read-only view of part of the list. ArrayList's views write
+     * to the backing array directly, which would bypass the index.
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @return the view
+     */
+    @Override
+    public List<Player> subList(int from, int to) {
+        return Collections.unmodifiableList(super.subList(from, to));
+    }
+
+    @Override
+    public Iterator<Player> iterator() {
+        return new Itr(0);
+    }
+
+    @Override
+    public ListIterator<Player> listIterator() {
+        return new Itr(0);
+    }
+
+    @Override
+    public ListIterator<Player> listIterator(int pos) {
+        if (pos < 0 || pos > size()) {
+            throw new IndexOutOfBoundsException("Index: " + pos);
+        }
+        return new Itr(pos);
+    }
+
+    /**
+     * Indexes a newly added player, unless an earlier player has its nick.
+     */
+    private void added(Player p) {
+        Player current = find(p.getNick());
+        if (current == null || current == p) {
+            index.put(game, list, p);
+        } else {
+            reindex(p.getNick());
+        }
+    }
+
+    /**
+     * Updates the index after a player is removed.
+     */
+    private void removed(Player p) {
+        if (find(p.getNick()) == p) {
+            reindex(p.getNick());
+        }
+    }
+
+    /**
+     * Updates the index after any of the specified players are removed.
+     */
+    private void removed(ArrayList<Player> players) {
+        for (Player p : players) {
+            removed(p);
+        }
+    }
+
+    /**
+     * Indexes the first player in the list with a nick.
+     */
+    private void reindex(String nick) {
+        for (Player p : this) {
+            if (p.getNick().equalsIgnoreCase(nick)) {
+                index.put(game, list, p);
+                return;
+            }
+        }
+        index.remove(game, list, nick);
+    }
+
+    /**
+     * An iterator that changes the list through the methods above, so the
+     * index is updated.
+     */
+    private class Itr implements ListIterator<Player> {
+        private int cursor;
+        private int last;
+        private int expectedModCount;
+
+        public Itr(int pos) {
+            cursor = pos;
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size();
+        }
+
+        @Override
+        public Player next() {
+            checkModCount();
+            if (cursor >= size()) {
+                throw new NoSuchElementException();
+            }
+            last = cursor++;
+            return get(last);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return cursor > 0;
+        }
+
+        @Override
+        public Player previous() {
+            checkModCount();
+            if (cursor <= 0) {
+                throw new NoSuchElementException();
+            }
+            last = --cursor;
+            return get(last);
+        }
+
+        @Override
+        public int nextIndex() {
+            return cursor;
+        }
+
+        @Override
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            checkModCount();
+            PlayerList.this.remove(last);
+            cursor = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(Player p) {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            checkModCount();
+            PlayerList.this.set(last, p);
+        }
+
+        @Override
+        public void add(Player p) {
+            checkModCount();
+            PlayerList.this.add(cursor++, p);
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
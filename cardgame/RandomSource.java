@@ -0,0 +1,74 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+/**
+ * A source of random numbers for shuffling and simulations. Instances are
+ * not thread-safe. Code that draws numbers on several threads should give
+ * each thread its own instance with split().
+ * @author Yizhe Shen
+ */
+public abstract class RandomSource {
+
+    /** Setting value for the fast, seedable generator. */
+    public static final int FAST = 0;
+    /** Setting value for the cryptographically strong generator. */
+    public static final int SECURE = 1;
+
+    /**
+     * Creates a generator of the specified type. A fast generator with a
+     * non-zero seed always produces the same sequence, which allows deals
+     * and simulations to be replayed.
+     * @param type FAST or SECURE
+     * @param seed the seed for a fast generator, or 0 for a random seed
+     * @return the generator
+     * @throws IllegalArgumentException if the type is not valid
+     */
+    public static RandomSource create(int type, long seed) {
+        if (type == SECURE) {
+            return new SecureRandomSource();
+        } else if (type == FAST) {
+            return seed == 0 ? new XoshiroRandom() : new XoshiroRandom(seed);
+        }
+        throw new IllegalArgumentException("Unknown random source " + type);
+    }
+
+    /**
+     * Returns a uniformly distributed int from 0 (inclusive) to bound
+     * (exclusive).
+     * @param bound the upper bound, which must be positive
+     * @return the random int
+     */
+    public abstract int nextInt(int bound);
+
+    /**
+     * Returns a uniformly distributed long.
+     * @return the random long
+     */
+    public abstract long nextLong();
+
+    /**
+     * Returns a new generator of the same type for use on another thread.
+     * The new generator is seeded from this one, so a seeded generator
+     * splits into seeded generators.
+     * @return the new generator
+     */
+    public abstract RandomSource split();
+}
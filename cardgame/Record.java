@@ -35,6 +35,15 @@ public class Record {
         map = new HashMap<>();
     }
     
+    /**
+     * Initializes a Record with a copy of the data in another Record.
+     * @param record the Record to copy
+     */
+    public Record(Record record){
+        map = new HashMap<>(record.map);
+        record.copyFields(this);
+    }
+    
     /**
      * Wrapper for HashMap.get() method with some additions.
      * @param key
@@ -71,6 +80,16 @@ public class Record {
         return (Integer) get(key);
     }
     
+    /**
+     * Primitive int wrapper for get.
+     * @param key
+     * @return the value or 0 if the key does not exist
+     */
+    public int getInt(String key) {
+        Integer value = getInteger(key);
+        return value == null ? 0 : value;
+    }
+    
     /**
      * Long wrapper for get.
      * @param key
@@ -115,6 +134,45 @@ public class Record {
         map.put(stat, value);
     }
     
+    /**
+     * Primitive int version of put. Subclasses with typed fields override
+     * this to avoid boxing.
+     * @param stat
+     * @param value 
+     */
+    public void put(String stat, int value) {
+        put(stat, (Object) value);
+    }
+    
+    /**
+     * Primitive boolean version of put. Subclasses with typed fields
+     * override this to avoid boxing.
+     * @param stat
+     * @param value 
+     */
+    public void put(String stat, boolean value) {
+        put(stat, (Object) value);
+    }
+    
+    /**
+     * Wrapper for HashMap.putAll() method.
+     * @param record the Record to copy data from
+     */
+    public void putAll(Record record) {
+        for (String key : record.map.keySet()) {
+            put(key, record.map.get(key));
+        }
+        record.copyFields(this);
+    }
+    
+    /**
+     * Puts any data that a subclass keeps outside of the map into another
+     * Record. Called when this Record is copied.
+     * @param target the Record to copy data to
+     */
+    protected void copyFields(Record target) {
+    }
+    
     /**
      * Adds the specified value to the value stored at the specified key.
      * @param key
@@ -129,6 +187,16 @@ public class Record {
         }
     }
     
+    /**
+     * Primitive int version of add. Subclasses with typed fields override
+     * this to avoid boxing.
+     * @param key
+     * @param value 
+     */
+    public void add(String key, int value) {
+        add(key, (Object) value);
+    }
+    
     /**
      * Resets the value at a key to its default value.
      * @param key
@@ -19,13 +19,11 @@
 
 package irccasino.cardgame;
 
-import java.util.TimerTask;
-
 /**
  * Respawn task for giving loans after bankruptcies.
  * @author Yizhe Shen
  */
-public class RespawnTask extends TimerTask {
+public class RespawnTask extends GameTask {
     private final Player player;
     private final CardGame game;
     
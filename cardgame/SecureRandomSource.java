@@ -0,0 +1,51 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.security.SecureRandom;
+
+/**
+ * A cryptographically strong generator for live deals, so that players
+ * cannot predict the deck from cards they have seen. It cannot be seeded.
+ * @author Yizhe Shen
+ */
+public class SecureRandomSource extends RandomSource {
+
+    private final SecureRandom random;
+
+    public SecureRandomSource() {
+        random = new SecureRandom();
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    @Override
+    public RandomSource split() {
+        return new SecureRandomSource();
+    }
+}
@@ -19,13 +19,11 @@
 
 package irccasino.cardgame;
 
-import java.util.TimerTask;
-
 /**
  * Start round task to be performed after post-start waiting period.
  * @author Yizhe Shen
  */
-public class StartRoundTask extends TimerTask{
+public class StartRoundTask extends GameTask{
     private final CardGame game;
     
     public StartRoundTask(CardGame g){
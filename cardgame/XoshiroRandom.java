@@ -0,0 +1,98 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.cardgame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fast generator using the xoshiro256** algorithm by Blackman and Vigna.
+ * The 256-bit state is filled from a 64-bit seed with SplitMix64.
+ * @author Yizhe Shen
+ */
+public class XoshiroRandom extends RandomSource {
+
+    /** Varies the seeds of generators created at the same time. */
+    private static final AtomicLong seedUniquifier = new AtomicLong(0x2545F4914F6CDD1DL);
+
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    /**
+     * Creates a generator with a random seed.
+     */
+    public XoshiroRandom() {
+        this(seedUniquifier.addAndGet(0x9E3779B97F4A7C15L) ^ System.nanoTime());
+    }
+
+    /**
+     * Creates a generator with the specified seed.
+     * @param seed the seed
+     */
+    public XoshiroRandom(long seed) {
+        s0 = splitMix(seed += 0x9E3779B97F4A7C15L);
+        s1 = splitMix(seed += 0x9E3779B97F4A7C15L);
+        s2 = splitMix(seed += 0x9E3779B97F4A7C15L);
+        s3 = splitMix(seed + 0x9E3779B97F4A7C15L);
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // Same rejection method as java.util.Random to avoid bias
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return (int) ((bound * (long) r) >> 31);
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33));
+        return r;
+    }
+
+    @Override
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    @Override
+    public RandomSource split() {
+        return new XoshiroRandom(nextLong());
+    }
+
+    /**
+     * Returns the SplitMix64 output for a state.
+     */
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
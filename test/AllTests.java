@@ -0,0 +1,43 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package irccasino;
+
+/**
+ * Runs every check in the test directory. Stops at the first failure.
+ * @author Yizhe Shen
+ */
+public class AllTests {
+
+    public static void main(String[] args) throws Exception {
+        String[] none = new String[0];
+        irccasino.blackjack.BlackjackHandTest.main(none);
+        irccasino.blackjack.BlackjackTest.main(none);
+        irccasino.cardgame.DBStatsTest.main(none);
+        irccasino.cardgame.PersistenceQueueTest.main(none);
+        irccasino.cardgame.PlayerCacheTest.main(none);
+        irccasino.cardgame.PlayerListTest.main(none);
+        irccasino.cardgame.ResumeRoundTaskTest.main(none);
+        irccasino.texaspoker.HandEvaluatorTest.main(none);
+        irccasino.texaspoker.PokerPotTest.main(none);
+        irccasino.texaspoker.PokerSimulatorTest.main(none);
+        irccasino.texaspoker.TexasPokerTest.main(none);
+        System.out.println("All tests passed");
+    }
+}
\ No newline at end of file
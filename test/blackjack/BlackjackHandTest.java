@@ -0,0 +1,183 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.blackjack;
+
+import irccasino.cardgame.Card;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Checks the running totals of BlackjackHand against a sum counted from the
+ * cards, the way calcSum and isSoft17 worked before the totals were kept.
+ * Covers soft and hard totals, soft 17, hands with several aces and every
+ * way the hand can be changed, including ones that bypass the tracking.
+ * @author Yizhe Shen
+ */
+public class BlackjackHandTest {
+
+    private static final int ACE = 12;
+    private static final int KING = 11;
+
+    public static void main(String[] args) {
+        // Soft and hard totals
+        expect(hand(ACE, 4), 17, true, false, false);
+        expect(hand(ACE, 4, KING), 17, false, false, false);
+        expect(hand(KING, 4, ACE), 17, false, false, false);
+        expect(hand(ACE, 3), 16, false, false, false);
+        expect(hand(ACE, 5), 18, false, false, false);
+        expect(hand(ACE, KING), 21, false, true, false);
+        expect(hand(ACE, 3, 3), 21, false, false, false);
+        expect(hand(KING, KING, 0), 22, false, false, true);
+
+        // Several aces, of which at most one counts as 11
+        expect(hand(ACE, ACE), 12, false, false, false);
+        expect(hand(ACE, ACE, 3), 17, true, false, false);
+        expect(hand(ACE, ACE, ACE, 2), 17, true, false, false);
+        expect(hand(ACE, ACE, 7), 21, false, false, false);
+        expect(hand(ACE, ACE, ACE, ACE, KING, 5), 21, false, false, false);
+        expect(hand(ACE, ACE, KING, KING), 22, false, false, true);
+
+        // Every hand of up to five cards, built one card at a time
+        int[] faces = new int[5];
+        for (int n = 1; n <= faces.length; n++) {
+            enumerate(faces, 0, n);
+        }
+
+        // Changes made through every path, tracked or not
+        Random random = new Random(17);
+        BlackjackHand h = new BlackjackHand();
+        for (int ctr = 0; ctr < 20000; ctr++) {
+            change(h, random);
+            compare(h, "after change " + ctr);
+        }
+        System.out.println("BlackjackHandTest passed");
+    }
+
+    /**
+     * Builds every hand of n cards from the faces chosen so far and checks
+     * it against the counted sum.
+     */
+    private static void enumerate(int[] faces, int depth, int n) {
+        if (depth == n) {
+            BlackjackHand h = new BlackjackHand();
+            for (int ctr = 0; ctr < n; ctr++) {
+                h.add(Card.valueOf(ctr % 4, faces[ctr]));
+                compare(h, h.toString());
+            }
+            return;
+        }
+        for (int face = 0; face <= ACE; face++) {
+            faces[depth] = face;
+            enumerate(faces, depth + 1, n);
+        }
+    }
+
+    /**
+     * Changes a hand in one of the ways a List can be changed.
+     */
+    private static void change(BlackjackHand h, Random random) {
+        Card c = Card.valueOf(random.nextInt(52));
+        int size = h.size();
+        switch (random.nextInt(12)) {
+            case 0: h.add(c); break;
+            case 1: h.add(random.nextInt(size + 1), c); break;
+            case 2: h.addAll(hand(random.nextInt(ACE + 1), random.nextInt(ACE + 1))); break;
+            case 3: if (size > 0) { h.set(random.nextInt(size), c); } break;
+            case 4: if (size > 0) { h.remove(random.nextInt(size)); } break;
+            case 5: h.remove(size > 0 ? h.get(random.nextInt(size)) : c); break;
+            case 6: Collections.sort(h); Collections.reverse(h); break;
+            case 7: Collections.shuffle(h, random); break;
+            case 8:
+                Iterator<Card> it = h.iterator();
+                while (it.hasNext()) {
+                    if (it.next().isAce()) {
+                        it.remove();
+                    }
+                }
+                break;
+            case 9: if (size > 1) { h.subList(0, size / 2).set(0, c); } break;
+            case 10: if (size > 1) { h.subList(size / 2, size).clear(); } break;
+            default: if (size > 6 || random.nextInt(4) == 0) { h.clear(); } break;
+        }
+    }
+
+    private static void expect(BlackjackHand h, int sum, boolean soft17, boolean blackjack, boolean bust) {
+        check(h.calcSum() == sum, h + " should total " + sum + ", got " + h.calcSum());
+        check(h.isSoft17() == soft17, h + " soft 17 should be " + soft17);
+        check(h.isBlackjack() == blackjack, h + " blackjack should be " + blackjack);
+        check(h.isBust() == bust, h + " bust should be " + bust);
+        compare(h, h.toString());
+    }
+
+    private static void compare(BlackjackHand h, String where) {
+        int sum = countedSum(h);
+        check(h.calcSum() == sum, where + ": sum " + h.calcSum() + ", counted " + sum);
+        check(h.isSoft17() == countedSoft17(h), where + ": soft 17");
+        check(h.isBust() == (sum > 21), where + ": bust");
+        check(h.isBlackjack() == (sum == 21 && h.size() == 2), where + ": blackjack");
+    }
+
+    /**
+     * The sum as calcSum counted it from the cards.
+     */
+    private static int countedSum(BlackjackHand h) {
+        int sum = 0, numAces = 0;
+        for (Card c : h) {
+            if (c.isAce()) {
+                numAces++;
+            }
+            sum += c.getBlackjackValue();
+        }
+        for (int ctr = 0; ctr < numAces && sum > 21; ctr++) {
+            sum -= 10;
+        }
+        return sum;
+    }
+
+    /**
+     * Soft 17 as isSoft17 counted it from the cards.
+     */
+    private static boolean countedSoft17(BlackjackHand h) {
+        if (countedSum(h) != 17) {
+            return false;
+        }
+        int sum = 0;
+        for (Card c : h) {
+            sum += c.isAce() ? 1 : c.getBlackjackValue();
+        }
+        return sum < 17;
+    }
+
+    private static BlackjackHand hand(int... faces) {
+        BlackjackHand h = new BlackjackHand();
+        for (int ctr = 0; ctr < faces.length; ctr++) {
+            h.add(Card.valueOf(ctr % 4, faces[ctr]));
+        }
+        return h;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
\ No newline at end of file
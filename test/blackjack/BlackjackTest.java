@@ -0,0 +1,188 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.blackjack;
+
+import irccasino.cardgame.CardDeck;
+import irccasino.cardgame.CountingPool;
+import irccasino.cardgame.NickIndex;
+import irccasino.cardgame.Player;
+import irccasino.cardgame.PlayerList;
+import irccasino.cardgame.TestManager;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Checks the number of statements Blackjack sends to the stats database to
+ * save a round at a full table. Rows for the players are batched, so only
+ * the inserts that need a generated key grow with the table. Also checks
+ * that a player's rank is shown with the saved value it was ranked by. Reads
+ * sqllib.txt from the run directory.
+ * @author Yizhe Shen
+ */
+public class BlackjackTest {
+
+    /** Number of players at the table. */
+    private static final int PLAYERS = 10;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        File db = File.createTempFile("blackjack", ".sqlite3");
+        CountingPool pool = new CountingPool("jdbc:sqlite:" + db.getPath());
+        TestManager manager = new TestManager(pool);
+        try {
+            Table table = new Table(manager);
+            for (int ctr = 0; ctr < PLAYERS; ctr++) {
+                table.seat("player" + ctr);
+            }
+            table.play();
+
+            // One batch each for the purses and stats
+            pool.reset();
+            table.saveDBPlayerDataBatch(table.getPlayers());
+            manager.getPersistenceQueue().flush();
+            check(pool.getBatches() == 2, "player data batches: " + pool.getBatches());
+            check(pool.getUpdates() == 0, "player data updates: " + pool.getUpdates());
+
+            // The round, each player's hand, the dealer's hand after each
+            // player and the house are single updates. The player changes,
+            // idles, player hands and insurance bets are one batch each.
+            pool.reset();
+            table.saveDBGameStats();
+            manager.getPersistenceQueue().flush();
+            check(pool.getBatches() == 4, "game stats batches: " + pool.getBatches());
+            check(pool.getUpdates() == 1 + 2 * PLAYERS + 1, "game stats updates: " + pool.getUpdates());
+
+            check(count(pool, "BJRound") == 1, "rounds saved");
+            check(count(pool, "BJPlayerChange") == PLAYERS, "player changes saved");
+            check(count(pool, "BJPlayerHand") == PLAYERS, "player hands saved");
+            check(count(pool, "BJHand") == 2 * PLAYERS, "hands saved");
+
+            // A joined player's unsaved cash is neither shown nor ranked
+            Player first = table.getPlayers().get(0);
+            int saved = first.getInt("cash");
+            int rank = 1;
+            for (Player p : table.getPlayers()) {
+                if (p.getInt("cash") > saved) {
+                    rank++;
+                }
+            }
+            first.add("cash", 1000000);
+            manager.messages.clear();
+            table.showPlayerRank(first.getNick(), "cash");
+            String line = manager.messages.get(manager.messages.size() - 1);
+            check(line.contains("#" + rank + " "), "rank of saved cash: " + line);
+            check(line.endsWith("$" + Blackjack.formatNumber(saved)), "saved cash: " + line);
+        } finally {
+            manager.close();
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                new File(db.getPath() + suffix).delete();
+            }
+        }
+        System.out.println("BlackjackTest passed");
+    }
+
+    private static int count(CountingPool pool, String table) throws SQLException {
+        try (Connection conn = pool.getReadConnection();
+                Statement s = conn.createStatement();
+                ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.getInt(1);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A Blackjack game with only what saving a round needs: the SQL library,
+     * the settings and the database.
+     */
+    private static class Table extends Blackjack {
+
+        public Table(TestManager parent) {
+            super();
+            manager = parent;
+            channel = TestManager.newChannel("#blackjack");
+            name = "blackjack";
+            versionInt = 392;
+            sqlFile = "sqllib.txt";
+            sqlMap = new HashMap<>();
+            msgMap = new HashMap<>();
+            settings = new HashMap<>();
+            joined = new PlayerList(parent.getNickIndex(), this, NickIndex.JOINED);
+            blacklist = new PlayerList(parent.getNickIndex(), this, NickIndex.BLACKLISTED);
+            dealer = new BlackjackPlayer("Dealer");
+            loadSQLLib();
+            initSettings();
+            initDB();
+            deck = new CardDeck(get("decks"));
+        }
+
+        /**
+         * Adds a player with a record in the database.
+         * @param nick the player's nick
+         */
+        public void seat(String nick) {
+            BlackjackPlayer p = new BlackjackPlayer(nick);
+            loadDBPlayerData(p);
+            joined.add(p);
+        }
+
+        public ArrayList<Player> getPlayers() {
+            return new ArrayList<Player>(joined);
+        }
+
+        /**
+         * Deals two cards to every player and the dealer and settles the
+         * bets without playing the hands out.
+         */
+        public void play() {
+            startTime = System.currentTimeMillis() / 1000;
+            for (Player p : joined) {
+                BlackjackPlayer bp = (BlackjackPlayer) p;
+                bp.addHand();
+                bp.getHand().setBet(10);
+                dealCard(bp.getHand());
+                dealCard(bp.getHand());
+            }
+            dealer.addHand();
+            dealCard(dealer.getHand());
+            dealCard(dealer.getHand());
+            for (Player p : joined) {
+                BlackjackPlayer bp = (BlackjackPlayer) p;
+                int change = bp.getHand().compareTo(dealer.getHand()) * 10;
+                bp.add("cash", change);
+                bp.put("change", change);
+                bp.add("rounds", 1);
+                bp.add("winnings", change);
+                houseWinnings -= change;
+            }
+            endTime = System.currentTimeMillis() / 1000;
+        }
+    }
+}
\ No newline at end of file
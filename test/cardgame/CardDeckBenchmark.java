@@ -0,0 +1,138 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+
+/**
+ * Times shuffling and dealing shoes of 1 to 8 decks with the old
+ * ArrayList-backed deck and with CardDeck. Each cycle merges the discards,
+ * shuffles and deals every card to the discard pile. Both decks use the same
+ * fast generator so only the deck itself is compared. This is not a check
+ * and is not run by AllTests. The optional argument sets the number of
+ * cycles per shoe size.
+ * @author Yizhe Shen
+ */
+public class CardDeckBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int MAX_DECKS = 8;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        System.out.println("Decks  Shuffle old/new (us)   Deal old/new (ns/card)");
+        long sink = 0;
+        for (int decks = 1; decks <= MAX_DECKS; decks++) {
+            OldDeck oldDeck = new OldDeck(decks);
+            oldDeck.randGen = RandomSource.create(RandomSource.FAST, 5);
+            CardDeck newDeck = new CardDeck(decks);
+            newDeck.setRandom(RandomSource.create(RandomSource.FAST, 5));
+            int numCards = decks * Card.NUM_CARDS;
+
+            // The first rounds warm up the JIT and the last one is reported
+            long oldShuffle = 0, oldDeal = 0, newShuffle = 0, newDeal = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                oldShuffle = 0;
+                oldDeal = 0;
+                for (int ctr = 0; ctr < n; ctr++) {
+                    long start = System.nanoTime();
+                    oldDeck.mergeDiscards();
+                    oldDeck.shuffleCards();
+                    long dealt = System.nanoTime();
+                    while (!oldDeck.cards.isEmpty()) {
+                        Card c = oldDeck.takeCard();
+                        sink += c.hashCode();
+                        oldDeck.addToDiscard(c);
+                    }
+                    long end = System.nanoTime();
+                    oldShuffle += dealt - start;
+                    oldDeal += end - dealt;
+                }
+
+                newShuffle = 0;
+                newDeal = 0;
+                for (int ctr = 0; ctr < n; ctr++) {
+                    long start = System.nanoTime();
+                    newDeck.refillDeck();
+                    long dealt = System.nanoTime();
+                    while (newDeck.getNumberCards() > 0) {
+                        Card c = newDeck.takeCard();
+                        sink += c.hashCode();
+                        newDeck.addToDiscard(c);
+                    }
+                    long end = System.nanoTime();
+                    newShuffle += dealt - start;
+                    newDeal += end - dealt;
+                }
+            }
+            System.out.printf("%5d  %9.2f / %-9.2f  %9.2f / %-9.2f%n", decks,
+                    oldShuffle / 1e3 / n, newShuffle / 1e3 / n,
+                    oldDeal * 1.0 / n / numCards, newDeal * 1.0 / n / numCards);
+        }
+        System.out.println("Checksum " + sink);
+    }
+
+    /**
+     * The deck as it was before it was backed by arrays: dealing removes the
+     * first card of a list and shuffling rebuilds the list by removing cards
+     * at random.
+     */
+    private static class OldDeck {
+        private final ArrayList<Card> cards;
+        private final ArrayList<Card> discards;
+        private RandomSource randGen;
+
+        public OldDeck(int numDecks) {
+            cards = new ArrayList<>();
+            discards = new ArrayList<>();
+            for (int n = 0; n < numDecks; n++) {
+                for (int ctr = 0; ctr < Card.NUM_CARDS; ctr++) {
+                    cards.add(Card.valueOf(ctr));
+                }
+            }
+        }
+
+        public Card takeCard() {
+            return cards.remove(0);
+        }
+
+        public void addToDiscard(Card c) {
+            discards.add(c);
+        }
+
+        public void mergeDiscards() {
+            if (discards.size() > 0) {
+                cards.addAll(discards);
+                discards.clear();
+            }
+        }
+
+        public void shuffleCards() {
+            ArrayList<Card> tCards = new ArrayList<>(cards);
+            int index;
+            cards.clear();
+            while (!tCards.isEmpty()) {
+                index = randGen.nextInt(tCards.size());
+                cards.add(tCards.remove(index));
+            }
+        }
+    }
+}
\ No newline at end of file
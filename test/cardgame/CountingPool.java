@@ -0,0 +1,123 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A connection pool for the checks that counts the round-trips made by the
+ * statements prepared on its connections. Statements are not cached, since
+ * the borrowed connections are wrapped once more to be counted.
+ * @author Yizhe Shen
+ */
+public class CountingPool extends ConnectionPool {
+
+    private final AtomicInteger batches;
+    private final AtomicInteger updates;
+
+    /**
+     * Creates a pool for the database at the specified JDBC URL.
+     * @param url the JDBC URL of the database
+     */
+    public CountingPool(String url) {
+        super(url, 2);
+        batches = new AtomicInteger();
+        updates = new AtomicInteger();
+    }
+
+    @Override
+    public Connection getWriteConnection() throws SQLException {
+        return count(super.getWriteConnection());
+    }
+
+    @Override
+    public Connection getReadConnection() throws SQLException {
+        return count(super.getReadConnection());
+    }
+
+    /**
+     * Returns the number of executeBatch() calls since the last reset.
+     * @return the number of batches
+     */
+    public int getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the number of executeUpdate() calls since the last reset.
+     * @return the number of updates
+     */
+    public int getUpdates() {
+        return updates.get();
+    }
+
+    /**
+     * Sets the counters back to zero.
+     */
+    public void reset() {
+        batches.set(0);
+        updates.set(0);
+    }
+
+    private Connection count(final Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = pass(conn, method, args);
+                if (method.getName().equals("prepareStatement")) {
+                    return count((PreparedStatement) result);
+                }
+                return result;
+            }
+        });
+    }
+
+    private PreparedStatement count(final PreparedStatement ps) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("executeBatch")) {
+                    batches.incrementAndGet();
+                } else if (method.getName().equals("executeUpdate")) {
+                    updates.incrementAndGet();
+                }
+                return pass(ps, method, args);
+            }
+        });
+    }
+
+    private static Object pass(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Times player lookups by nick and round lookups by channel on a stats
+ * database filled with BJRound and TPRound rows, before and after the index
+ * migration in initDB. This is not a check and is not run by AllTests. Run
+ * it from the project run directory, since it reads sqllib.txt. The optional
+ * argument sets the number of rounds per game.
+ * @author Yizhe Shen
+ */
+public class DBIndexBenchmark {
+
+    private static final int ROUNDS = 3;
+    private static final int PLAYERS = 100000;
+    private static final int CHANNELS = 20;
+    private static final int NICK_LOOKUPS = 200;
+    private static final int CHANNEL_LOOKUPS = 20;
+    /** The latest rounds played in a channel, as an op would look them up. */
+    private static final String[] CHANNEL_SQL = {
+        "SELECT * FROM BJRound WHERE channel = ? ORDER BY start_time DESC LIMIT 10",
+        "SELECT * FROM TPRound WHERE channel = ? ORDER BY start_time DESC LIMIT 10"
+    };
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        File db = File.createTempFile("stats", ".sqlite3");
+        TestManager manager = new TestManager("jdbc:sqlite:" + db.getPath());
+        try {
+            HashMap<String,String> sql = loadSQL("sqllib.txt");
+            long start = System.nanoTime();
+            fill(manager.getDBPool(), sql, n);
+            System.out.printf("Filled %,d players and %,d rounds per game in %.1fs%n",
+                    PLAYERS, n, (System.nanoTime() - start) / 1e9);
+
+            double[] before = time(manager.getDBPool(), sql.get("SELECT_PLAYER_BY_NICK"));
+            start = System.nanoTime();
+            new MigrateGame(manager, sql).migrate();
+            System.out.printf("Index migration: %.1fs%n", (System.nanoTime() - start) / 1e9);
+            double[] after = time(manager.getDBPool(), sql.get("SELECT_PLAYER_BY_NICK"));
+
+            String[] names = {"Player by nick:", "BJRound by channel:", "TPRound by channel:"};
+            for (int ctr = 0; ctr < names.length; ctr++) {
+                System.out.printf("%-19s %8.3f ms before, %6.3f ms after, %.0fx%n",
+                        names[ctr], before[ctr], after[ctr], before[ctr] / after[ctr]);
+            }
+        } finally {
+            manager.close();
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                new File(db.getPath() + suffix).delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the average time in milliseconds of a nick lookup and of a
+     * round lookup in each game's channel. The first rounds warm up the JIT
+     * and the page cache and the last one is reported.
+     */
+    private static double[] time(ConnectionPool pool, String nickSQL) throws SQLException {
+        double[] result = new double[1 + CHANNEL_SQL.length];
+        Random random = new Random(7);
+        int sink = 0;
+        try (Connection conn = pool.getReadConnection()) {
+            for (int round = 0; round < ROUNDS; round++) {
+                try (PreparedStatement ps = conn.prepareStatement(nickSQL)) {
+                    long start = System.nanoTime();
+                    for (int ctr = 0; ctr < NICK_LOOKUPS; ctr++) {
+                        // Nicks are matched without case like IRC does
+                        ps.setString(1, "PLAYER" + random.nextInt(PLAYERS));
+                        try (ResultSet rs = ps.executeQuery()) {
+                            sink += rs.getInt("id");
+                        }
+                    }
+                    result[0] = (System.nanoTime() - start) / 1e6 / NICK_LOOKUPS;
+                }
+                for (int game = 0; game < CHANNEL_SQL.length; game++) {
+                    try (PreparedStatement ps = conn.prepareStatement(CHANNEL_SQL[game])) {
+                        long start = System.nanoTime();
+                        for (int ctr = 0; ctr < CHANNEL_LOOKUPS; ctr++) {
+                            ps.setString(1, "#casino" + random.nextInt(CHANNELS));
+                            try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                    sink += rs.getInt("id");
+                                }
+                            }
+                        }
+                        result[1 + game] = (System.nanoTime() - start) / 1e6 / CHANNEL_LOOKUPS;
+                    }
+                }
+            }
+        }
+        if (sink == 0) {
+            System.out.println("No rows found.");
+        }
+        return result;
+    }
+
+    /**
+     * Creates the tables without indexes and fills them with players and
+     * rounds spread over the channels in the order they were played.
+     */
+    private static void fill(ConnectionPool pool, HashMap<String,String> sql, int n) throws SQLException {
+        try (Connection conn = pool.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement s = conn.createStatement()) {
+                for (String key : sql.keySet()) {
+                    if (key.startsWith("CREATE_TABLE_")) {
+                        s.execute(sql.get(key));
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(sql.get("INSERT_PLAYER"))) {
+                for (int ctr = 0; ctr < PLAYERS; ctr++) {
+                    ps.setString(1, "player" + ctr);
+                    ps.setLong(2, ctr);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement psBJ = conn.prepareStatement(sql.get("INSERT_BJROUND"));
+                    PreparedStatement psTP = conn.prepareStatement(sql.get("INSERT_TPROUND"))) {
+                for (int ctr = 0; ctr < n; ctr++) {
+                    String channel = "#casino" + (ctr % CHANNELS);
+                    psBJ.setLong(1, ctr);
+                    psBJ.setLong(2, ctr + 1);
+                    psBJ.setString(3, channel);
+                    psBJ.setInt(4, 8);
+                    psBJ.setInt(5, 416);
+                    psBJ.addBatch();
+                    psTP.setLong(1, ctr);
+                    psTP.setLong(2, ctr + 1);
+                    psTP.setString(3, channel);
+                    psTP.setString(4, "");
+                    psTP.addBatch();
+                    if (ctr % 10000 == 9999) {
+                        psBJ.executeBatch();
+                        psTP.executeBatch();
+                    }
+                }
+                psBJ.executeBatch();
+                psTP.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    private static HashMap<String,String> loadSQL(String file) throws IOException {
+        HashMap<String,String> sql = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String str;
+            while ((str = in.readLine()) != null) {
+                int split = str.indexOf('|');
+                if (!str.startsWith("#") && split != -1) {
+                    sql.put(str.substring(0, split), str.substring(split + 1));
+                }
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * A game that only runs initDB, which adds the missing indexes.
+     */
+    private static class MigrateGame extends CardGame {
+
+        public MigrateGame(TestManager parent, HashMap<String,String> sql) {
+            super();
+            manager = parent;
+            channel = TestManager.newChannel("#casino");
+            sqlMap = sql;
+            versionInt = 392;
+        }
+
+        public void migrate() {
+            initDB();
+        }
+
+        @Override public boolean isInProgress() { return false; }
+        @Override protected CommandRegistry getCommandRegistry() { return null; }
+        @Override protected void startRound() {}
+        @Override protected void continueRound() {}
+        @Override protected void endRound() {}
+        @Override protected void resumeRound() {}
+        @Override public void endGame() {}
+        @Override protected void resetGame() {}
+        @Override protected void saveIniFile() {}
+        @Override protected void initSettings() {}
+        @Override protected void initCustom() {}
+        @Override protected void leave(String nick) {}
+        @Override protected void addPlayer(String nick, String host) {}
+        @Override protected void addWaitlistPlayer(String nick, String host) {}
+        @Override protected void resetPlayer(Player p) {}
+        @Override protected Player loadDBPlayerRecord(String nick) { return null; }
+        @Override protected void loadDBPlayerData(Player p) {}
+        @Override protected void saveDBPlayerDataBatch(ArrayList<Player> players) {}
+        @Override protected void indexStats(Record record) {}
+        @Override protected void saveDBGameStats() {}
+        @Override protected void showPlayerRank(String nick, String stat) {}
+        @Override protected void showTopPlayers(String stat, int n) {}
+        @Override public String getGameNameStr() { return "Migrate"; }
+        @Override protected String getGameRulesStr() { return ""; }
+        @Override protected String getGameStatsStr() { return ""; }
+    }
+}
\ No newline at end of file
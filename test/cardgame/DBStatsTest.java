@@ -0,0 +1,99 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+import org.pircbotx.User;
+
+/**
+ * Checks that dbstats shows every counter line, including lines that
+ * contain '%' once formatted.
+ * @author Yizhe Shen
+ */
+public class DBStatsTest {
+
+    public static void main(String[] args) {
+        TestManager manager = new TestManager("jdbc:sqlite::memory:");
+        try {
+            User op = TestManager.newUser("op");
+            StatsGame game = new StatsGame(manager, op);
+            game.dbstats(op, op.getNick(), new String[0]);
+
+            ArrayList<String> lines = new ArrayList<>(manager.messages);
+            check(lines.size() == 6, "expected 6 lines, got " + lines);
+            check(lines.get(0).equals(manager.getDBPool().toString()), "pool line: " + lines.get(0));
+            check(lines.get(1).equals(manager.getDBPool().getStatementStats()), "statement line: " + lines.get(1));
+            check(lines.get(1).contains("%"), "hit rate lost its '%': " + lines.get(1));
+            check(lines.get(2).equals(manager.getPersistenceQueue().toString()), "queue line: " + lines.get(2));
+            check(lines.get(3).equals(manager.getPlayerCache().toString()), "cache line: " + lines.get(3));
+            check(lines.get(4).equals(manager.getGameTimer().toString()), "timer line: " + lines.get(4));
+            check(lines.get(5).equals(game.getMailbox().toString()), "mailbox line: " + lines.get(5));
+        } finally {
+            manager.close();
+        }
+        System.out.println("DBStatsTest passed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A game that only answers commands in a channel where the user is op.
+     */
+    private static class StatsGame extends CardGame {
+
+        public StatsGame(TestManager parent, User op) {
+            super();
+            manager = parent;
+            channel = TestManager.newChannel("#test", op);
+            mailbox = new GameMailbox(parent, parent.getGameWorkers());
+        }
+
+        @Override public boolean isInProgress() { return false; }
+        @Override protected CommandRegistry getCommandRegistry() { return null; }
+        @Override protected void startRound() {}
+        @Override protected void continueRound() {}
+        @Override protected void endRound() {}
+        @Override protected void resumeRound() {}
+        @Override public void endGame() {}
+        @Override protected void resetGame() {}
+        @Override protected void saveIniFile() {}
+        @Override protected void initSettings() {}
+        @Override protected void initCustom() {}
+        @Override protected void leave(String nick) {}
+        @Override protected void addPlayer(String nick, String host) {}
+        @Override protected void addWaitlistPlayer(String nick, String host) {}
+        @Override protected void resetPlayer(Player p) {}
+        @Override protected Player loadDBPlayerRecord(String nick) { return null; }
+        @Override protected void loadDBPlayerData(Player p) {}
+        @Override protected void saveDBPlayerDataBatch(ArrayList<Player> players) {}
+        @Override protected void indexStats(Record record) {}
+        @Override protected void saveDBGameStats() {}
+        @Override protected void showPlayerRank(String nick, String stat) {}
+        @Override protected void showTopPlayers(String stat, int n) {}
+        @Override public String getGameNameStr() { return "Stats"; }
+        @Override protected String getGameRulesStr() { return ""; }
+        @Override protected String getGameStatsStr() { return ""; }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the writer thread survives a task that throws and that every
+ * task submitted while the queue is closing is still written.
+ * @author Yizhe Shen
+ */
+public class PersistenceQueueTest {
+
+    /** Number of submitting threads racing close(). */
+    private static final int THREADS = 8;
+    /** Tasks submitted by each thread. */
+    private static final int TASKS = 500;
+
+    public static void main(String[] args) throws InterruptedException {
+        // A throwing task is counted as a failure and later tasks are written
+        TestManager manager = new TestManager("jdbc:sqlite::memory:");
+        final AtomicInteger written = new AtomicInteger();
+        try {
+            PersistenceQueue queue = manager.getPersistenceQueue();
+            queue.submit(new PersistenceTask() {
+                @Override
+                public void persist(Connection conn) {
+                    throw new IllegalStateException("bad snapshot");
+                }
+            });
+            queue.flush();
+            queue.submit(new CountingTask(written));
+            queue.flush();
+            check(written.get() == 1, "task after a failure was not written");
+            check(queue.getPending() == 0, "pending: " + queue.getPending());
+            check(queue.toString().contains("Failures: 1"), queue.toString());
+        } finally {
+            manager.close();
+        }
+
+        // Tasks submitted while the queue closes are all written
+        manager = new TestManager("jdbc:sqlite::memory:");
+        written.set(0);
+        try {
+            final PersistenceQueue queue = manager.getPersistenceQueue();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[THREADS];
+            for (int ctr = 0; ctr < THREADS; ctr++) {
+                threads[ctr] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                        for (int n = 0; n < TASKS; n++) {
+                            queue.submit(new CountingTask(written));
+                        }
+                    }
+                };
+                threads[ctr].start();
+            }
+            start.countDown();
+            Thread.sleep(1);
+            queue.close();
+            for (Thread t : threads) {
+                t.join();
+            }
+            check(written.get() == THREADS * TASKS,
+                    "written " + written.get() + " of " + THREADS * TASKS);
+            check(queue.getPending() == 0, "pending after close: " + queue.getPending());
+        } finally {
+            manager.close();
+        }
+        System.out.println("PersistenceQueueTest passed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A task that only counts how often it was written.
+     */
+    private static class CountingTask implements PersistenceTask {
+        private final AtomicInteger count;
+
+        public CountingTask(AtomicInteger counter) {
+            count = counter;
+        }
+
+        @Override
+        public void persist(Connection conn) {
+            count.incrementAndGet();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+/**
+ * Checks that a PlayerCache stays within its capacity while some of its
+ * entries are dirty, and that dirty entries are never evicted.
+ * @author Yizhe Shen
+ */
+public class PlayerCacheTest {
+
+    private static final String SECTION = "blackjack";
+    private static final String[] KEYS = {"rounds"};
+
+    public static void main(String[] args) {
+        // A dirty eldest entry must not stop clean entries being evicted
+        PlayerCache cache = new PlayerCache(3);
+        cache.update("dirty", 1, SECTION, stats(5), KEYS);
+        for (int ctr = 0; ctr < 10; ctr++) {
+            cache.load("clean" + ctr, ctr + 2, SECTION, stats(ctr), KEYS);
+            check(cache.size() <= 3, "cache grew to " + cache.size() + " with a dirty eldest entry");
+        }
+        check(cache.get("dirty", SECTION) != null, "dirty entry was evicted");
+        check(cache.get("clean9", SECTION) != null, "newest clean entry was evicted");
+        check(cache.get("clean0", SECTION) == null, "oldest clean entry was kept");
+
+        // More dirty entries than the capacity are all kept until taken
+        cache = new PlayerCache(3);
+        for (int ctr = 0; ctr < 5; ctr++) {
+            cache.update("dirty" + ctr, ctr + 1, SECTION, stats(ctr), KEYS);
+        }
+        check(cache.size() == 5, "dirty entries were evicted");
+        check(cache.takeDirty(SECTION, false).size() == 5, "dirty entries were lost");
+        check(cache.size() == 3, "cache not trimmed after its entries were taken");
+        System.out.println("PlayerCacheTest passed");
+    }
+
+    private static Record stats(int rounds) {
+        Record record = new Record();
+        record.put("rounds", rounds);
+        return record;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
\ No newline at end of file
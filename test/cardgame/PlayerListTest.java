@@ -0,0 +1,168 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.Random;
+
+/**
+ * Checks that every way of changing a PlayerList keeps the NickIndex in step
+ * with a scan of the list, including duplicate nicks, bulk changes and
+ * changes through iterators, and that subList views are read-only.
+ * @author Yizhe Shen
+ */
+public class PlayerListTest {
+
+    /** Nicks that differ only by case share an index entry. */
+    private static final String[] NICKS = {"alice", "Bob", "bob", "carol", "Dave", "ALICE"};
+
+    public static void main(String[] args) {
+        NickIndex index = new NickIndex();
+        PlayerList list = new PlayerList(index, null, NickIndex.JOINED);
+        Random random = new Random(3);
+        for (int ctr = 0; ctr < 20000; ctr++) {
+            change(list, random);
+            verify(list, "after change " + ctr);
+        }
+
+        list.clear();
+        for (String nick : NICKS) {
+            list.add(new Player(nick));
+        }
+        try {
+            list.subList(0, 2).clear();
+            throw new AssertionError("subList view was writable");
+        } catch (UnsupportedOperationException ex) {}
+        check(list.size() == NICKS.length, "subList clear changed the list");
+        verify(list, "after subList clear");
+        System.out.println("PlayerListTest passed");
+    }
+
+    /**
+     * Changes the list in one of the ways that could bypass the index.
+     */
+    private static void change(PlayerList list, Random random) {
+        int size = list.size();
+        switch (random.nextInt(12)) {
+            case 0:
+                list.add(newPlayer(random));
+                break;
+            case 1:
+                list.add(random.nextInt(size + 1), newPlayer(random));
+                break;
+            case 2:
+                if (size > 0) {
+                    list.set(random.nextInt(size), newPlayer(random));
+                }
+                break;
+            case 3:
+                if (size > 0) {
+                    list.remove(random.nextInt(size));
+                }
+                break;
+            case 4:
+                if (size > 0) {
+                    list.remove(list.get(random.nextInt(size)));
+                }
+                break;
+            case 5:
+                list.addAll(newPlayers(random));
+                break;
+            case 6:
+                list.addAll(random.nextInt(size + 1), newPlayers(random));
+                break;
+            case 7:
+                list.removeAll(sample(list, random));
+                break;
+            case 8:
+                list.retainAll(sample(list, random));
+                break;
+            case 9:
+                for (Iterator<Player> it = list.iterator(); it.hasNext();) {
+                    it.next();
+                    if (random.nextInt(3) == 0) {
+                        it.remove();
+                    }
+                }
+                break;
+            case 10:
+                for (ListIterator<Player> it = list.listIterator(); it.hasNext();) {
+                    it.next();
+                    int op = random.nextInt(4);
+                    if (op == 0) {
+                        it.set(newPlayer(random));
+                    } else if (op == 1) {
+                        it.add(newPlayer(random));
+                    }
+                }
+                break;
+            default:
+                if (random.nextInt(10) == 0) {
+                    list.clear();
+                }
+        }
+    }
+
+    private static Player newPlayer(Random random) {
+        return new Player(NICKS[random.nextInt(NICKS.length)]);
+    }
+
+    private static ArrayList<Player> newPlayers(Random random) {
+        ArrayList<Player> players = new ArrayList<>();
+        for (int ctr = random.nextInt(4); ctr > 0; ctr--) {
+            players.add(newPlayer(random));
+        }
+        return players;
+    }
+
+    private static ArrayList<Player> sample(PlayerList list, Random random) {
+        ArrayList<Player> players = new ArrayList<>();
+        for (int ctr = 0; ctr < list.size(); ctr++) {
+            if (random.nextInt(3) == 0) {
+                players.add(list.get(ctr));
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Checks that the index holds the first player in the list for each nick.
+     */
+    private static void verify(PlayerList list, String when) {
+        for (String nick : NICKS) {
+            Player first = null;
+            for (int ctr = 0; ctr < list.size() && first == null; ctr++) {
+                if (list.get(ctr).getNick().equalsIgnoreCase(nick)) {
+                    first = list.get(ctr);
+                }
+            }
+            check(list.find(nick) == first, when + ": wrong player for " + nick);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
\ No newline at end of file
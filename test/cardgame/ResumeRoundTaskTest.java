@@ -0,0 +1,181 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that a round paused with setResumeRoundTask is resumed by the game
+ * timer through the game's mailbox, step by step and in order, then starts
+ * the next round. Other games must keep being served during the pauses, even
+ * with a single worker thread.
+ * @author Yizhe Shen
+ */
+public class ResumeRoundTaskTest {
+
+    /** Pause between reveal steps in milliseconds. */
+    private static final long PAUSE = 50;
+    /** Number of reveal steps, like the dealer's play in Blackjack. */
+    private static final int STEPS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        GameTimer timer = new GameTimer();
+        ExecutorService workers = Executors.newFixedThreadPool(1);
+        try {
+            final RevealGame a = new RevealGame("a", timer, workers, log);
+            final RevealGame b = new RevealGame("b", timer, workers, log);
+
+            // Start a's reveal and give b a command during the first pause
+            a.getMailbox().execute(new Runnable() {
+                @Override
+                public void run() {
+                    a.endRound();
+                }
+            });
+            Thread.sleep(PAUSE / 2);
+            b.getMailbox().execute(new Runnable() {
+                @Override
+                public void run() {
+                    log.add("b command");
+                }
+            });
+            check(a.started.await(2, TimeUnit.SECONDS), "next round never started");
+
+            ArrayList<String> expected = new ArrayList<>();
+            for (int ctr = 1; ctr <= STEPS; ctr++) {
+                expected.add("a reveal " + ctr);
+            }
+            expected.add("a settle");
+            expected.add("a start");
+            ArrayList<String> actual = new ArrayList<>(log);
+            check(actual.remove("b command"), "b was not served");
+            check(actual.equals(expected), "steps out of order: " + actual);
+            int command = log.indexOf("b command");
+            check(command > log.indexOf("a reveal 1") && command < log.indexOf("a reveal 2"),
+                    "b was not served during a's first pause: " + log);
+
+            // A cancelled pause never resumes
+            log.clear();
+            b.getMailbox().executeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    b.endRound();
+                    b.cancelResumeRoundTask();
+                }
+            });
+            Thread.sleep(PAUSE * 3);
+            check(log.size() == 1 && log.get(0).equals("b reveal 1"), "cancelled pause resumed: " + log);
+            check(!b.started.await(0, TimeUnit.MILLISECONDS), "cancelled game started a round");
+        } finally {
+            timer.close();
+            workers.shutdown();
+        }
+        System.out.println("ResumeRoundTaskTest passed");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A game that only reveals a round in timed steps and starts the next.
+     */
+    private static class RevealGame extends CardGame {
+        private final String id;
+        private final List<String> log;
+        private final CountDownLatch started;
+        private int step;
+
+        public RevealGame(String name, GameTimer timer, ExecutorService workers, List<String> steps) {
+            super();
+            id = name;
+            log = steps;
+            started = new CountDownLatch(1);
+            gameTimer = timer;
+            mailbox = new GameMailbox(null, workers);
+            settings = new HashMap<>();
+            settings.put("startwait", 0);
+        }
+
+        @Override
+        public boolean isInProgress() {
+            return step > 0;
+        }
+
+        @Override
+        protected void endRound() {
+            step = 1;
+            log.add(id + " reveal " + step);
+            setResumeRoundTask(PAUSE);
+        }
+
+        @Override
+        protected void resumeRound() {
+            if (step < STEPS) {
+                step++;
+                log.add(id + " reveal " + step);
+                setResumeRoundTask(PAUSE);
+            } else {
+                step = 0;
+                log.add(id + " settle");
+                setStartRoundTask();
+            }
+        }
+
+        @Override
+        protected void startRound() {
+            log.add(id + " start");
+            started.countDown();
+        }
+
+        @Override protected CommandRegistry getCommandRegistry() { return null; }
+        @Override protected void continueRound() {}
+        @Override public void endGame() {}
+        @Override protected void resetGame() {}
+        @Override protected void saveIniFile() {}
+        @Override protected void initSettings() {}
+        @Override protected void initCustom() {}
+        @Override protected void leave(String nick) {}
+        @Override protected void addPlayer(String nick, String host) {}
+        @Override protected void addWaitlistPlayer(String nick, String host) {}
+        @Override protected void resetPlayer(Player p) {}
+        @Override protected Player loadDBPlayerRecord(String nick) { return null; }
+        @Override protected void loadDBPlayerData(Player p) {}
+        @Override protected void saveDBPlayerDataBatch(ArrayList<Player> players) {}
+        @Override protected void indexStats(Record record) {}
+        @Override protected void saveDBGameStats() {}
+        @Override protected void showPlayerRank(String nick, String stat) {}
+        @Override protected void showTopPlayers(String stat, int n) {}
+        @Override public String getGameNameStr() { return id; }
+        @Override protected String getGameRulesStr() { return ""; }
+        @Override protected String getGameStatsStr() { return ""; }
+    }
+}
\ No newline at end of file
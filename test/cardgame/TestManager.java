@@ -0,0 +1,135 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.cardgame;
+
+import irccasino.GameManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.pircbotx.Channel;
+import org.pircbotx.User;
+
+/**
+ * A GameManager without an IRC connection for the checks. Messages sent to
+ * channels and users are recorded instead, and the only users of a channel
+ * are its ops.
+ * @author Yizhe Shen
+ */
+public class TestManager implements GameManager {
+
+    /** Every message, notice and log line sent, in order. */
+    public final List<String> messages;
+    private final ConnectionPool dbPool;
+    private final PersistenceQueue persistenceQueue;
+    private final PlayerCache playerCache;
+    private final NickIndex nickIndex;
+    private final GameTimer gameTimer;
+    private final ExecutorService gameWorkers;
+
+    /**
+     * Creates a manager for the database at the specified JDBC URL.
+     * @param url the JDBC URL of the stats database
+     */
+    public TestManager(String url) {
+        messages = Collections.synchronizedList(new ArrayList<String>());
+        dbPool = new ConnectionPool(url, 2);
+        persistenceQueue = new PersistenceQueue(this, dbPool);
+        playerCache = new PlayerCache(1000);
+        nickIndex = new NickIndex();
+        gameTimer = new GameTimer();
+        gameWorkers = Executors.newFixedThreadPool(1);
+    }
+
+    /**
+     * Creates a manager that uses the specified pool for the stats database.
+     * @param pool the connection pool
+     */
+    public TestManager(ConnectionPool pool) {
+        messages = Collections.synchronizedList(new ArrayList<String>());
+        dbPool = pool;
+        persistenceQueue = new PersistenceQueue(this, dbPool);
+        playerCache = new PlayerCache(1000);
+        nickIndex = new NickIndex();
+        gameTimer = new GameTimer();
+        gameWorkers = Executors.newFixedThreadPool(1);
+    }
+
+    /**
+     * Creates a channel without a bot. The specified users are ops.
+     * @param name the channel name
+     * @param chanOps the ops of the channel
+     * @return the channel
+     */
+    public static Channel newChannel(String name, final User... chanOps) {
+        return new Channel(null, name) {
+            {
+                Collections.addAll(ops, chanOps);
+            }
+        };
+    }
+
+    /**
+     * Creates a user without a bot.
+     * @param nick the user's nick
+     * @return the user
+     */
+    public static User newUser(String nick) {
+        return new User(null, nick) {};
+    }
+
+    /**
+     * Stops the writer, timer and workers and closes the pool.
+     */
+    public void close() {
+        persistenceQueue.close();
+        gameTimer.close();
+        gameWorkers.shutdown();
+        dbPool.close();
+    }
+
+    @Override public boolean hasGame(Channel channel) { return false; }
+    @Override public boolean hasGames() { return false; }
+    @Override public CardGame getGame(Channel channel) { return null; }
+    @Override public CardGame getGame(String nick) { return null; }
+    @Override public List<CardGame> getGames() { return new ArrayList<>(); }
+    @Override public boolean isBlacklisted(String nick) { return false; }
+    @Override public boolean gamesInProgress() { return false; }
+    @Override public void startGame(CardGame game) {}
+    @Override public void endGame(CardGame game) {}
+    @Override public void endAllGames() {}
+    @Override public ConnectionPool getDBPool() { return dbPool; }
+    @Override public PersistenceQueue getPersistenceQueue() { return persistenceQueue; }
+    @Override public PlayerCache getPlayerCache() { return playerCache; }
+    @Override public NickIndex getNickIndex() { return nickIndex; }
+    @Override public GameTimer getGameTimer() { return gameTimer; }
+    @Override public ExecutorService getGameWorkers() { return gameWorkers; }
+    @Override public void sendMessage(Channel channel, String msg) { messages.add(msg); }
+    @Override public void sendMessage(String target, String msg) { messages.add(msg); }
+    @Override public void sendNotice(String target, String msg) { messages.add(msg); }
+    @Override public void voice(Channel channel, User user) {}
+    @Override public void deVoice(Channel channel, User user) {}
+    @Override public void log(String line) { messages.add(line); }
+    @Override public Set<User> getUsers(Channel channel) { return channel.getOps(); }
+    @Override public void sendRawLine(String line) {}
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.texaspoker;
+
+import irccasino.cardgame.Card;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Times the showdown comparison of random 7-card hands with the old
+ * arrange-and-compare ranking and with HandEvaluator. This is not a check
+ * and is not run by AllTests. The optional argument sets the number of
+ * hands.
+ * @author Yizhe Shen
+ */
+public class HandEvaluatorBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Random random = new Random(11);
+        ArrayList<ArrayList<Card>> hands = new ArrayList<>(n);
+        for (int ctr = 0; ctr < n; ctr++) {
+            ArrayList<Card> cards = new ArrayList<>(7);
+            for (int index : HandEvaluatorTest.deal(random, 7)) {
+                cards.add(Card.valueOf(index));
+            }
+            hands.add(cards);
+        }
+
+        // The first rounds warm up the JIT and the last one is reported
+        long oldTime = 0;
+        long newTime = 0;
+        int sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            PokerHand prev = null;
+            for (ArrayList<Card> cards : hands) {
+                PokerHand h = new PokerHand();
+                h.addAll(cards);
+                Collections.sort(h);
+                Collections.reverse(h);
+                h.getValue();
+                if (prev != null) {
+                    sink += HandEvaluatorTest.oldCompare(h, prev);
+                }
+                prev = h;
+            }
+            oldTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int prevStrength = 0;
+            for (ArrayList<Card> cards : hands) {
+                int strength = HandEvaluator.evaluate(HandEvaluator.getMask(cards));
+                sink += Integer.compare(strength, prevStrength);
+                prevStrength = strength;
+            }
+            newTime = System.nanoTime() - start;
+        }
+        System.out.printf("PokerHand (old): %.1f ns/hand%n", oldTime * 1.0 / n);
+        System.out.printf("HandEvaluator:   %.1f ns/hand%n", newTime * 1.0 / n);
+        System.out.printf("Speedup: %.1fx (checksum %d)%n", oldTime * 1.0 / newTime, sink);
+    }
+}
\ No newline at end of file
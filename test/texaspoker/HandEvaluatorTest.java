@@ -0,0 +1,170 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.texaspoker;
+
+import irccasino.cardgame.Card;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Checks HandEvaluator against the ranking PokerHand used before it, which
+ * sorted and arranged the cards with getValue() and then compared faces. All
+ * 5-card hands must have the same hand value and fall into the same order,
+ * and random 7-card hands must compare the same way.
+ * @author Yizhe Shen
+ */
+public class HandEvaluatorTest {
+
+    public static void main(String[] args) {
+        // Every 5-card hand, with one hand kept for each strength
+        HashMap<Integer,PokerHand> classes = new HashMap<>();
+        int hands = 0;
+        for (int a = 0; a < 52; a++) {
+            for (int b = a + 1; b < 52; b++) {
+                for (int c = b + 1; c < 52; c++) {
+                    for (int d = c + 1; d < 52; d++) {
+                        for (int e = d + 1; e < 52; e++) {
+                            PokerHand h = arrange(a, b, c, d, e);
+                            int strength = HandEvaluator.evaluate(HandEvaluator.getMask(h));
+                            check(HandEvaluator.getValue(strength) == h.getValue(), "hand value differs for " + h);
+                            PokerHand first = classes.get(strength);
+                            if (first == null) {
+                                classes.put(strength, h);
+                            } else {
+                                check(oldCompare(h, first) == 0, h + " and " + first + " should tie");
+                            }
+                            hands++;
+                        }
+                    }
+                }
+            }
+        }
+        check(hands == 2598960, "counted " + hands + " hands");
+        check(classes.size() == 7462, "found " + classes.size() + " strengths");
+
+        // The old comparison must put the strengths in the same order
+        ArrayList<Integer> strengths = new ArrayList<>(classes.keySet());
+        Collections.sort(strengths);
+        for (int ctr = 1; ctr < strengths.size(); ctr++) {
+            PokerHand lower = classes.get(strengths.get(ctr - 1));
+            PokerHand higher = classes.get(strengths.get(ctr));
+            check(oldCompare(lower, higher) < 0, lower + " should lose to " + higher);
+        }
+
+        // Random 7-card hands
+        Random random = new Random(7);
+        for (int ctr = 0; ctr < 200000; ctr++) {
+            int[] cards = deal(random, 14);
+            PokerHand x = arrange(cards[0], cards[1], cards[2], cards[3], cards[4], cards[5], cards[6]);
+            PokerHand y = arrange(cards[7], cards[8], cards[9], cards[10], cards[11], cards[12], cards[13]);
+            check(Integer.signum(x.compareTo(y)) == Integer.signum(oldCompare(x, y)), x + " vs " + y);
+        }
+        System.out.println("HandEvaluatorTest passed");
+    }
+
+    /**
+     * Returns a PokerHand of the specified card indexes, sorted and arranged
+     * by getValue() as the old comparison requires.
+     */
+    static PokerHand arrange(int... indexes) {
+        PokerHand h = new PokerHand();
+        for (int index : indexes) {
+            h.add(Card.valueOf(index));
+        }
+        Collections.sort(h);
+        Collections.reverse(h);
+        h.getValue();
+        return h;
+    }
+
+    /**
+     * Returns distinct random card indexes.
+     */
+    static int[] deal(Random random, int n) {
+        int[] deck = new int[52];
+        for (int ctr = 0; ctr < 52; ctr++) {
+            deck[ctr] = ctr;
+        }
+        for (int ctr = 0; ctr < n; ctr++) {
+            int pick = ctr + random.nextInt(52 - ctr);
+            int tmp = deck[ctr];
+            deck[ctr] = deck[pick];
+            deck[pick] = tmp;
+        }
+        int[] cards = new int[n];
+        System.arraycopy(deck, 0, cards, 0, n);
+        return cards;
+    }
+
+    /**
+     * The comparison PokerHand.compareTo made before HandEvaluator. Both
+     * hands must have been arranged by getValue().
+     */
+    static int oldCompare(PokerHand x, PokerHand y) {
+        int xValue = x.getValue();
+        int yValue = y.getValue();
+        if (xValue != yValue) {
+            return xValue - yValue;
+        }
+        int[] comps = new int[5];
+        for (int ctr = 0; ctr < 5; ctr++) {
+            comps[ctr] = x.get(ctr).getFaceValue() - y.get(ctr).getFaceValue();
+        }
+        switch (xValue) {
+            case 9: case 8: case 4:
+                return comps[0];
+            case 7:
+                return comps[0] == 0 ? comps[4] : comps[0];
+            case 6:
+                return comps[0] == 0 ? comps[3] : comps[0];
+            case 3:
+                return comps[0] == 0 ? firstNonZero(comps, 3) : comps[0];
+            case 2:
+                if (comps[0] != 0) {
+                    return comps[0];
+                } else if (comps[2] != 0) {
+                    return comps[2];
+                }
+                return comps[4];
+            case 1:
+                return comps[0] == 0 ? firstNonZero(comps, 2) : comps[0];
+            default:
+                return firstNonZero(comps, 0);
+        }
+    }
+
+    private static int firstNonZero(int[] comps, int start) {
+        for (int ctr = start; ctr < 5; ctr++) {
+            if (comps[ctr] != 0) {
+                return comps[ctr];
+            }
+        }
+        return 0;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
\ No newline at end of file
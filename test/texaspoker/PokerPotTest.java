@@ -0,0 +1,261 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.texaspoker;
+
+import irccasino.cardgame.Player;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks PokerPot.addBets against the layered loop that TexasPoker used
+ * before it, which took the lowest remaining bet from every bettor one layer
+ * at a time. Covers multi-way all-ins, folded contributors, the refund of an
+ * uncalled bet and pots carried over from earlier streets, then compares the
+ * two on random tables.
+ * @author Yizhe Shen
+ */
+public class PokerPotTest {
+
+    public static void main(String[] args) {
+        // Three all-ins at different levels against two callers
+        Table t = new Table(new int[] {100, 250, 400, 400, 40}, new boolean[] {false, false, false, false, true});
+        t.run(400);
+        t.checkPots(400 + 40, 450, 300);
+        t.checkEligible(0, true, true, true, true, false);
+        t.checkEligible(1, false, true, true, true, false);
+        t.checkEligible(2, false, false, true, true, false);
+
+        // A folded player's bet stays in the pot without making it eligible
+        t = new Table(new int[] {50, 200, 200}, new boolean[] {true, false, false});
+        t.run(200);
+        t.checkPots(450);
+        t.checkEligible(0, false, true, true);
+
+        // The part of a bet nobody could call goes back to the bettor
+        t = new Table(new int[] {100, 300, 20}, new boolean[] {false, false, true});
+        t.run(300);
+        t.checkPots(220);
+        check(t.players.get(1).getInt("cash") == 900, "uncalled bet was not refunded");
+        check(t.players.get(1).getInt("bet") == 0, "refunded bet was not reset");
+
+        // A player all in on an earlier street forces a side pot
+        t = new Table(new int[] {100, 100, 100}, new boolean[] {false, false, false});
+        t.run(100);
+        t.set(new int[] {0, 200, 200}, new boolean[] {false, false, false});
+        t.run(200);
+        t.checkPots(300, 400);
+        t.checkEligible(1, false, true, true);
+
+        // Random tables over several streets
+        Random random = new Random(42);
+        for (int ctr = 0; ctr < 20000; ctr++) {
+            compareRandom(random, ctr);
+        }
+        System.out.println("PokerPotTest passed");
+    }
+
+    /**
+     * Plays random streets on two copies of a table, one with each
+     * implementation, and compares the pots and players after each street.
+     */
+    private static void compareRandom(Random random, int game) {
+        int n = 2 + random.nextInt(9);
+        Table table = new Table(new int[n], new boolean[n]);
+        Table layered = new Table(new int[n], new boolean[n]);
+        boolean[] folded = new boolean[n];
+        boolean[] allin = new boolean[n];
+        int streets = 1 + random.nextInt(4);
+        for (int street = 0; street < streets; street++) {
+            int currentBet = 1 + random.nextInt(500);
+            int[] bets = new int[n];
+            for (int seat = 0; seat < n; seat++) {
+                if (folded[seat] || allin[seat]) {
+                    continue;
+                }
+                switch (random.nextInt(4)) {
+                    case 0:
+                        folded[seat] = true;
+                        bets[seat] = random.nextInt(currentBet + 1);
+                        break;
+                    case 1:
+                        allin[seat] = true;
+                        bets[seat] = random.nextInt(currentBet + 1);
+                        break;
+                    default:
+                        bets[seat] = currentBet;
+                }
+            }
+            table.set(bets, folded);
+            layered.set(bets, folded);
+            table.run(currentBet);
+            layered.runLayered(currentBet);
+            table.compare(layered, "game " + game + " street " + street);
+        }
+    }
+
+    /**
+     * The loop TexasPoker.addBetsToPot used before PokerPot.addBets.
+     */
+    private static PokerPot layeredAddBets(List<Player> players, List<PokerPot> pots, PokerPot currentPot, int currentBet) {
+        int lowBet;
+        while (currentBet != 0) {
+            lowBet = currentBet;
+            int bettors = 0;
+            for (Player p : players) {
+                if (p.has("bet")) {
+                    bettors++;
+                }
+            }
+            if (bettors > 1) {
+                if (currentPot == null) {
+                    currentPot = new PokerPot();
+                    pots.add(currentPot);
+                } else {
+                    for (PokerPlayer p : currentPot.getEligibles()) {
+                        if (!p.has("bet") && currentBet != 0 && !p.has("fold")) {
+                            currentPot = new PokerPot();
+                            pots.add(currentPot);
+                            break;
+                        }
+                    }
+                }
+                for (Player p : players) {
+                    if (p.getInt("bet") < lowBet && p.has("bet")) {
+                        lowBet = p.getInt("bet");
+                    }
+                }
+                for (Player p : players) {
+                    if (p.has("bet")) {
+                        currentPot.contribute((PokerPlayer) p, lowBet);
+                        if (p.has("fold")) {
+                            currentPot.disqualify((PokerPlayer) p);
+                        }
+                        p.add("cash", -1 * lowBet);
+                        p.add("winnings", -1 * lowBet);
+                        p.add("bet", -1 * lowBet);
+                        p.add("change", -1 * lowBet);
+                    }
+                }
+                currentBet -= lowBet;
+            } else {
+                for (Player p : players) {
+                    if (p.getInt("bet") != 0) {
+                        p.clear("bet");
+                        break;
+                    }
+                }
+                currentBet = 0;
+                break;
+            }
+        }
+        return currentPot;
+    }
+
+    /**
+     * Players and pots for one hand.
+     */
+    private static class Table {
+        private final ArrayList<Player> players;
+        private final ArrayList<PokerPot> pots;
+        private PokerPot currentPot;
+
+        public Table(int[] bets, boolean[] folded) {
+            players = new ArrayList<>();
+            pots = new ArrayList<>();
+            for (int seat = 0; seat < bets.length; seat++) {
+                PokerPlayer p = new PokerPlayer("p" + seat);
+                p.put("cash", 1000);
+                players.add(p);
+            }
+            set(bets, folded);
+        }
+
+        public void set(int[] bets, boolean[] folded) {
+            for (int seat = 0; seat < bets.length; seat++) {
+                players.get(seat).put("bet", bets[seat]);
+                players.get(seat).put("fold", folded[seat]);
+            }
+        }
+
+        public void run(int currentBet) {
+            currentPot = PokerPot.addBets(players, pots, currentPot, currentBet);
+        }
+
+        public void runLayered(int currentBet) {
+            currentPot = layeredAddBets(players, pots, currentPot, currentBet);
+        }
+
+        public void checkPots(int... totals) {
+            check(pots.size() == totals.length, "expected " + totals.length + " pots, got " + pots.size());
+            for (int ctr = 0; ctr < totals.length; ctr++) {
+                check(pots.get(ctr).getTotal() == totals[ctr],
+                        "pot " + ctr + " has " + pots.get(ctr).getTotal() + ", expected " + totals[ctr]);
+            }
+            int paid = 0;
+            for (Player p : players) {
+                paid += 1000 - p.getInt("cash");
+            }
+            int total = 0;
+            for (PokerPot pot : pots) {
+                total += pot.getTotal();
+            }
+            check(paid == total, "players paid " + paid + " into pots holding " + total);
+        }
+
+        public void checkEligible(int pot, boolean... eligible) {
+            for (int seat = 0; seat < eligible.length; seat++) {
+                check(pots.get(pot).isEligible((PokerPlayer) players.get(seat)) == eligible[seat],
+                        "seat " + seat + " eligibility for pot " + pot);
+            }
+        }
+
+        public void compare(Table other, String where) {
+            check(pots.size() == other.pots.size(), where + ": pot count " + pots.size() + " vs " + other.pots.size());
+            check(pots.indexOf(currentPot) == other.pots.indexOf(other.currentPot), where + ": current pot");
+            for (int ctr = 0; ctr < pots.size(); ctr++) {
+                PokerPot a = pots.get(ctr);
+                PokerPot b = other.pots.get(ctr);
+                check(a.getTotal() == b.getTotal(), where + ": pot " + ctr + " total");
+                check(a.getNumDonors() == b.getNumDonors(), where + ": pot " + ctr + " donors");
+                for (int seat = 0; seat < players.size(); seat++) {
+                    PokerPlayer p = (PokerPlayer) players.get(seat);
+                    PokerPlayer q = (PokerPlayer) other.players.get(seat);
+                    check(a.getContribution(p) == b.getContribution(q), where + ": pot " + ctr + " seat " + seat + " contribution");
+                    check(a.isEligible(p) == b.isEligible(q), where + ": pot " + ctr + " seat " + seat + " eligibility");
+                }
+            }
+            for (int seat = 0; seat < players.size(); seat++) {
+                Player p = players.get(seat);
+                Player q = other.players.get(seat);
+                for (String stat : new String[] {"cash", "winnings", "change", "bet"}) {
+                    check(p.getInt(stat) == q.getInt(stat), where + ": seat " + seat + " " + stat);
+                }
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package irccasino.texaspoker;
+
+import irccasino.cardgame.Card;
+import irccasino.cardgame.Hand;
+import java.util.ArrayList;
+
+/**
+ * Checks that a PokerSimulator credits wins and ties to the right players
+ * when it is printed and run again, as TexasPoker does on every street.
+ * @author Yizhe Shen
+ */
+public class PokerSimulatorTest {
+
+    public static void main(String[] args) {
+        ArrayList<PokerPlayer> players = new ArrayList<>();
+        players.add(newPlayer("weak", card(0, 0), card(1, 5)));
+        players.add(newPlayer("aces", card(0, 12), card(1, 12)));
+        players.add(newPlayer("kings", card(2, 11), card(3, 11)));
+        Hand flop = newHand(card(2, 3), card(3, 7), card(0, 9));
+        Hand turn = newHand(card(2, 3), card(3, 7), card(0, 9), card(1, 11));
+
+        // Run, print and run again on the same flop
+        PokerSimulator kept = new PokerSimulator();
+        kept.addPlayers(players);
+        kept.addCommunity(flop);
+        kept.run();
+        double[] first = getWinPcts(kept, players);
+        kept.toString();
+        kept.reset();
+        kept.run();
+        double[] second = getWinPcts(kept, players);
+        for (int ctr = 0; ctr < players.size(); ctr++) {
+            check(first[ctr] == second[ctr], players.get(ctr).getNick() + " changed after printing on the flop");
+        }
+
+        // Print again and move to the turn, then compare with a new simulator
+        kept.toString();
+        kept.reset();
+        kept.addCommunity(turn);
+        kept.run();
+        PokerSimulator fresh = new PokerSimulator();
+        fresh.addPlayers(players);
+        fresh.addCommunity(turn);
+        fresh.run();
+        double[] keptPcts = getWinPcts(kept, players);
+        double[] freshPcts = getWinPcts(fresh, players);
+        for (int ctr = 0; ctr < players.size(); ctr++) {
+            check(keptPcts[ctr] == freshPcts[ctr], players.get(ctr).getNick() + " differs from a new simulator on the turn");
+            check(kept.getTiePct(players.get(ctr)) == fresh.getTiePct(players.get(ctr)),
+                    players.get(ctr).getNick() + " ties differ from a new simulator on the turn");
+        }
+        check(keptPcts[2] > keptPcts[1], "kings should lead aces after the turn");
+        System.out.println("PokerSimulatorTest passed");
+    }
+
+    private static double[] getWinPcts(PokerSimulator sim, ArrayList<PokerPlayer> players) {
+        double[] pcts = new double[players.size()];
+        for (int ctr = 0; ctr < pcts.length; ctr++) {
+            pcts[ctr] = sim.getWinPct(players.get(ctr));
+        }
+        return pcts;
+    }
+
+    private static PokerPlayer newPlayer(String nick, Card... cards) {
+        PokerPlayer p = new PokerPlayer(nick);
+        for (Card c : cards) {
+            p.getHand().add(c);
+        }
+        return p;
+    }
+
+    private static Hand newHand(Card... cards) {
+        Hand h = new Hand();
+        for (Card c : cards) {
+            h.add(c);
+        }
+        return h;
+    }
+
+    private static Card card(int suit, int face) {
+        return Card.valueOf(suit, face);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package irccasino.texaspoker;
+
+import irccasino.cardgame.CardDeck;
+import irccasino.cardgame.CountingPool;
+import irccasino.cardgame.Hand;
+import irccasino.cardgame.NickIndex;
+import irccasino.cardgame.Player;
+import irccasino.cardgame.PlayerList;
+import irccasino.cardgame.TestManager;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Checks the number of statements TexasPoker sends to the stats database to
+ * save a round at a full table. Rows for the players are batched, so only
+ * the inserts that need a generated key grow with the table. Reads
+ * sqllib.txt from the run directory.
+ * @author Yizhe Shen
+ */
+public class TexasPokerTest {
+
+    /** Number of players at the table. */
+    private static final int PLAYERS = 10;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        File db = File.createTempFile("texaspoker", ".sqlite3");
+        CountingPool pool = new CountingPool("jdbc:sqlite:" + db.getPath());
+        TestManager manager = new TestManager(pool);
+        try {
+            Table table = new Table(manager);
+            for (int ctr = 0; ctr < PLAYERS; ctr++) {
+                table.seat("player" + ctr);
+            }
+            table.play();
+
+            // One batch each for the purses and stats
+            pool.reset();
+            table.saveDBPlayerDataBatch(table.getPlayers());
+            manager.getPersistenceQueue().flush();
+            check(pool.getBatches() == 2, "player data batches: " + pool.getBatches());
+            check(pool.getUpdates() == 0, "player data updates: " + pool.getUpdates());
+
+            // The round, each player's hand and the pot are single updates.
+            // The player changes, player hands, idles and pot shares are one
+            // batch each.
+            pool.reset();
+            table.saveDBGameStats();
+            manager.getPersistenceQueue().flush();
+            check(pool.getBatches() == 4, "game stats batches: " + pool.getBatches());
+            check(pool.getUpdates() == 1 + PLAYERS + 1, "game stats updates: " + pool.getUpdates());
+
+            check(count(pool, "TPRound") == 1, "rounds saved");
+            check(count(pool, "TPPlayerChange") == PLAYERS, "player changes saved");
+            check(count(pool, "TPPlayerHand") == PLAYERS, "player hands saved");
+            check(count(pool, "TPPlayerPot") == PLAYERS, "pot shares saved");
+        } finally {
+            manager.close();
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                new File(db.getPath() + suffix).delete();
+            }
+        }
+        System.out.println("TexasPokerTest passed");
+    }
+
+    private static int count(CountingPool pool, String table) throws SQLException {
+        try (Connection conn = pool.getReadConnection();
+                Statement s = conn.createStatement();
+                ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.getInt(1);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A TexasPoker game with only what saving a round needs: the SQL
+     * library, the settings and the database.
+     */
+    private static class Table extends TexasPoker {
+
+        public Table(TestManager parent) {
+            super();
+            manager = parent;
+            channel = TestManager.newChannel("#texaspoker");
+            name = "texaspoker";
+            versionInt = 392;
+            sqlFile = "sqllib.txt";
+            sqlMap = new HashMap<>();
+            msgMap = new HashMap<>();
+            settings = new HashMap<>();
+            joined = new PlayerList(parent.getNickIndex(), this, NickIndex.JOINED);
+            deck = new CardDeck();
+            pots = new ArrayList<>();
+            community = new Hand();
+            loadSQLLib();
+            initSettings();
+            initDB();
+        }
+
+        /**
+         * Adds a player with a record in the database.
+         * @param nick the player's nick
+         */
+        public void seat(String nick) {
+            PokerPlayer p = new PokerPlayer(nick);
+            loadDBPlayerData(p);
+            joined.add(p);
+        }
+
+        public ArrayList<Player> getPlayers() {
+            return new ArrayList<Player>(joined);
+        }
+
+        /**
+         * Deals every player in, runs the board out and gives the only pot
+         * to the first player.
+         */
+        public void play() {
+            startTime = System.currentTimeMillis() / 1000;
+            PokerPot pot = new PokerPot();
+            for (Player p : joined) {
+                PokerPlayer pp = (PokerPlayer) p;
+                dealCard(pp.getHand());
+                dealCard(pp.getHand());
+                pot.contribute(pp, 10);
+                pp.add("cash", -10);
+                pp.put("change", -10);
+                pp.add("rounds", 1);
+            }
+            for (int ctr = 0; ctr < 5; ctr++) {
+                dealCard(community);
+            }
+            PokerPlayer winner = (PokerPlayer) joined.get(0);
+            pot.setWinner(winner);
+            winner.add("cash", pot.getTotal());
+            winner.add("change", pot.getTotal());
+            pots.add(pot);
+            for (Player p : joined) {
+                p.add("winnings", p.getInt("change"));
+            }
+            endTime = System.currentTimeMillis() / 1000;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.texaspoker;
+
+import irccasino.cardgame.Card;
+import java.util.List;
+
+/**
+ * A table-driven poker hand evaluator. A set of cards is represented as a
+ * 52-bit mask where bit n is set for the card with index n, which places the
+ * 13 faces of each suit in their own group of bits. The strength of the best
+ * 5-card hand is found from lookup tables indexed by 13-bit face masks and
+ * returned as a single int, so that stronger hands have larger values.
+ * <p>
+ * The strength holds the hand value used by PokerHand (0 for high card to 9
+ * for a royal flush) in bits 20 and up, followed by up to five face values of
+ * 4 bits each in order of significance.
+ * @author Yizhe Shen
+ */
+public final class HandEvaluator {
+
+    /** The number of faces in a suit. */
+    private static final int FACES = 13;
+    /** Mask for the faces of one suit. */
+    private static final int FACE_MASK = (1 << FACES) - 1;
+    /** The top face of the highest straight for each face mask, or -1. */
+    private static final int[] straights = new int[1 << FACES];
+    /** The five highest faces for each face mask, encoded 4 bits apiece. */
+    private static final int[] topFive = new int[1 << FACES];
+
+    static {
+        for (int mask = 0; mask <= FACE_MASK; mask++) {
+            // Find the highest straight, with aces also counting low
+            straights[mask] = -1;
+            for (int top = FACES - 1; top >= 4; top--) {
+                int run = 0x1F << (top - 4);
+                if ((mask & run) == run) {
+                    straights[mask] = top;
+                    break;
+                }
+            }
+            if (straights[mask] == -1 && (mask & 0x100F) == 0x100F) {
+                straights[mask] = 3;
+            }
+
+            // Encode the five highest faces
+            int value = 0;
+            int count = 0;
+            for (int face = FACES - 1; face >= 0 && count < 5; face--) {
+                if ((mask & (1 << face)) != 0) {
+                    value |= face << (4 * (4 - count));
+                    count++;
+                }
+            }
+            topFive[mask] = value;
+        }
+    }
+
+    private HandEvaluator() {}
+
+    /**
+     * Returns the card mask for a list of cards.
+     * @param cards the cards
+     * @return a mask with the bit for each card's index set
+     */
+    public static long getMask(List<Card> cards) {
+        long mask = 0L;
+        for (Card c : cards) {
+            mask |= 1L << c.getIndex();
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the hand value of a strength, which matches the value
+     * returned by PokerHand.getValue().
+     * @param strength a strength returned by evaluate()
+     * @return the hand value from 0 to 9
+     */
+    public static int getValue(int strength) {
+        return strength >>> 20;
+    }
+
+    /**
+     * Returns the strength of the best 5-card hand in a set of cards.
+     * @param cards the card mask
+     * @return the strength, which is greater for better hands
+     */
+    public static int evaluate(long cards) {
+        int s0 = (int) cards & FACE_MASK;
+        int s1 = (int) (cards >>> FACES) & FACE_MASK;
+        int s2 = (int) (cards >>> (2 * FACES)) & FACE_MASK;
+        int s3 = (int) (cards >>> (3 * FACES)) & FACE_MASK;
+
+        // Faces that appear at least once, twice, three and four times
+        int ones = s0 | s1 | s2 | s3;
+        int twos = (s0 & s1) | (s0 & s2) | (s0 & s3) | (s1 & s2) | (s1 & s3) | (s2 & s3);
+        int threes = (s0 & s1 & s2) | (s0 & s1 & s3) | (s0 & s2 & s3) | (s1 & s2 & s3);
+        int fours = s0 & s1 & s2 & s3;
+
+        // Flushes and straight flushes
+        int flush = 0;
+        if (Integer.bitCount(s0) >= 5) {
+            flush = s0;
+        } else if (Integer.bitCount(s1) >= 5) {
+            flush = s1;
+        } else if (Integer.bitCount(s2) >= 5) {
+            flush = s2;
+        } else if (Integer.bitCount(s3) >= 5) {
+            flush = s3;
+        }
+        if (flush != 0) {
+            int top = straights[flush];
+            if (top == FACES - 1) {
+                return (9 << 20) | (top << 16);
+            } else if (top >= 0) {
+                return (8 << 20) | (top << 16);
+            }
+        }
+
+        if (fours != 0) {
+            int quad = highest(fours);
+            return (7 << 20) | (quad << 16) | (highest(ones & ~(1 << quad)) << 12);
+        }
+
+        if (threes != 0) {
+            int trip = highest(threes);
+            int pairs = twos & ~(1 << trip);
+            if (pairs != 0) {
+                return (6 << 20) | (trip << 16) | (highest(pairs) << 12);
+            }
+        }
+
+        if (flush != 0) {
+            return (5 << 20) | topFive[flush];
+        }
+
+        if (straights[ones] >= 0) {
+            return (4 << 20) | (straights[ones] << 16);
+        }
+
+        if (threes != 0) {
+            int trip = highest(threes);
+            return (3 << 20) | (trip << 16) | ((topFive[ones & ~(1 << trip)] >>> 12) << 8);
+        }
+
+        if (twos != 0) {
+            int high = highest(twos);
+            int rest = twos & ~(1 << high);
+            if (rest != 0) {
+                int low = highest(rest);
+                int kicker = ones & ~(1 << high) & ~(1 << low);
+                return (2 << 20) | (high << 16) | (low << 12) | (highest(kicker) << 8);
+            }
+            return (1 << 20) | (high << 16) | ((topFive[ones & ~(1 << high)] >>> 8) << 4);
+        }
+
+        return topFive[ones];
+    }
+
+    /**
+     * Returns the highest face in a face mask.
+     * @param mask the face mask
+     * @return the face value or 0 if the mask is empty
+     */
+    private static int highest(int mask) {
+        return mask == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(mask);
+    }
+}
@@ -31,6 +31,8 @@ import java.util.Collections;
 public class PokerHand extends Hand implements Comparable<PokerHand>{
     /** Stores the calculated value of the PokerHand. */
     private int value;
+    /** Stores the strength of the PokerHand for comparisons. */
+    private int strength;
 
     /** Names of Poker hands indexed according to value. */
     private final String[] handNames = {"High Card","Pair","Two Pairs",
@@ -44,19 +46,17 @@ public class PokerHand extends Hand implements Comparable<PokerHand>{
     public PokerHand(){
         super();
         value = -1;
+        strength = -1;
     }
 
     /**
-     * Compares this PokerHand to another based on hand-type and cards.
-     * Comparisons require that both hands be sorted in descending order and
-     * that the cards representing the hand value be at the beginning of the
-     * hand. This means that getValue() must be called before making
-     * any comparisons. If the two PokerHands have the same value, individual
-     * cards must then me examined.
+     * Compares this PokerHand to another based on the strength of the best
+     * 5 cards in each hand. Unlike getValue(), this does not require the
+     * cards to be sorted or arranged.
      * 
      * @param h the PokerHand to compare
-     * @return -1 if this hand's value is less, zero for a tie, or 1 
-     * if this hand's value is greater
+     * @return a negative number if this hand is weaker, zero for a tie, or a
+     * positive number if this hand is stronger
      * @throws NullPointerException if the specified PokerHand is null
      */
     @Override
@@ -64,82 +64,26 @@ public class PokerHand extends Hand implements Comparable<PokerHand>{
         if (h == null) {
             throw new NullPointerException();
         }
-        int thisValue = this.getValue();
-        int otherValue = h.getValue();
-
-        // Check if hands have same value
-        if (thisValue == otherValue){
-            // Calculate comparisons for each card
-            int[] comps = new int[5];
-            for (int ctr = 0; ctr < 5; ctr++){
-                comps[ctr] = get(ctr).getFaceValue() - h.get(ctr).getFaceValue();
-            }
+        int thisStrength = this.getStrength();
+        int otherStrength = h.getStrength();
+        if (thisStrength < otherStrength) {
+            return -1;
+        } else if (thisStrength > otherStrength) {
+            return 1;
+        }
+        return 0;
+    }
 
-            switch (value) {
-                // Straight Flush and Straight: check top card of straight
-                case 9: case 8: case 4:
-                    return comps[0];
-                // 4 of a Kind: compare 4 of a kind, then kicker
-                case 7: 
-                    if (comps[0] == 0){
-                        return comps[4];
-                    }
-                    return comps[0];
-                // Full House: check triplet, then pair
-                case 6:	
-                    if (comps[0] == 0){
-                        return comps[3];
-                    }
-                    return comps[0];
-                // Flush: check highest non-common card
-                case 5: 
-                    for (int ctr = 0; ctr < 5; ctr++){
-                        if (comps[ctr] != 0){
-                            return comps[ctr];
-                        }
-                    }
-                    return 0;
-                // Three of a Kind: check triplet, then check kickers
-                case 3:
-                    if (comps[0] == 0){
-                        for (int ctr = 3; ctr < 5; ctr++){
-                            if (comps[ctr] != 0){
-                                return comps[ctr];
-                            }
-                        }
-                        return 0;
-                    }
-                    return comps[0];
-                // Two pair: check each pair, then check kicker
-                case 2: 
-                    if (comps[0] != 0){
-                        return comps[0];
-                    } else if (comps[2] != 0){
-                        return comps[2];
-                    }
-                    return comps[4];
-                // Pair: check pair, then check highest non-common card
-                case 1:
-                    if (comps[0] == 0){
-                        for (int ctr = 2; ctr < 5; ctr++){
-                            if (comps[ctr] != 0){
-                                return comps[ctr];
-                            }
-                        }
-                        return 0;
-                    }
-                    return comps[0];
-                // High Card: check highest non-common card
-                default:
-                    for (int ctr = 0; ctr < 5; ctr++){
-                        if (comps[ctr] != 0){
-                            return comps[ctr];
-                        }
-                    }
-                    return 0;
-            }
+    /**
+     * Returns the strength of this PokerHand as calculated by HandEvaluator.
+     * The strength is cached until resetValue() is called.
+     * @return the strength
+     */
+    public int getStrength(){
+        if (strength == -1){
+            strength = HandEvaluator.evaluate(HandEvaluator.getMask(this));
         }
-        return thisValue - otherValue;
+        return strength;
     }
 
     /**
@@ -159,6 +103,7 @@ public class PokerHand extends Hand implements Comparable<PokerHand>{
      */
     public void resetValue(){
         value = -1;
+        strength = -1;
     }
 
     /**
@@ -217,7 +162,7 @@ public class PokerHand extends Hand implements Comparable<PokerHand>{
     public int calcValue(){
         // Always check the hands in order of descending value
         if (hasStraightFlush()){	
-            if (get(0).isFace("A")){
+            if (get(0).isAce()){
                 return 9; // Royal flush = 9
             }
             return 8;   // Straight flush = 8
@@ -319,7 +264,7 @@ public class PokerHand extends Hand implements Comparable<PokerHand>{
          */
         boolean[] cardValues = new boolean[CardDeck.faces.length+1];
         for (Card c : this) {
-            if (c.isFace("A")){
+            if (c.isAce()){
                 cardValues[0] = true;
             }
             cardValues[c.getFaceValue()+1] = true;
@@ -333,7 +278,7 @@ public class PokerHand extends Hand implements Comparable<PokerHand>{
                 for (int ctr2 = 0; ctr2 < 5; ctr2++){
                     for (int ctr3 = 0; ctr3 < size(); ctr3++){
                         c = get(ctr3);
-                        if ((ctr-ctr2 == 0 && c.getFace().equals("A")) || c.getFaceValue()+1 == ctr-ctr2){
+                        if ((ctr-ctr2 == 0 && c.isAce()) || c.getFaceValue()+1 == ctr-ctr2){
                             remove(c);
                             add(ctr2, c);
                             break;
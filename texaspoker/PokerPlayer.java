@@ -21,6 +21,7 @@ package irccasino.texaspoker;
 
 import irccasino.cardgame.Hand;
 import irccasino.cardgame.Player;
+import irccasino.cardgame.Record;
 
 /**
  * Extends the Player class for players playing Poker games.
@@ -31,6 +32,8 @@ public class PokerPlayer extends Player implements Comparable<PokerPlayer> {
     private Hand hand;
     /** The player's cards plus any community cards. */
     private PokerHand pHand;
+    private int bet;
+    private boolean fold, allin;
 
     /**
      * Creates a new PokerPlayer.
@@ -40,21 +43,71 @@ public class PokerPlayer extends Player implements Comparable<PokerPlayer> {
      */
     public PokerPlayer(String nick){
         super(nick);
-        put("bet", 0);
-        put("fold", false);
-        put("allin", false);
         hand = new Hand();
         pHand = new PokerHand();
     }
     
     @Override
-    public Object get(String key) {
-        if (key.equalsIgnoreCase("netcash")) {
-            return getInteger("cash") + getInteger("bank");
-        } else if (key.equalsIgnoreCase("winrate")) {
-            return getInteger("winnings") * 1.0 / getInteger("rounds");
+    protected int fieldType(String key) {
+        switch (key) {
+            case "bet":
+                return INT_FIELD;
+            case "fold": case "allin":
+                return BOOLEAN_FIELD;
+            case "netcash": case "winrate":
+                return DERIVED_FIELD;
+            default:
+                return super.fieldType(key);
+        }
+    }
+    
+    @Override
+    protected int getIntField(String key) {
+        return key.equals("bet") ? bet : super.getIntField(key);
+    }
+    
+    @Override
+    protected void setIntField(String key, int value) {
+        if (key.equals("bet")) {
+            bet = value;
+        } else {
+            super.setIntField(key, value);
+        }
+    }
+    
+    @Override
+    protected boolean getBooleanField(String key) {
+        switch (key) {
+            case "fold": return fold;
+            case "allin": return allin;
+            default: return super.getBooleanField(key);
+        }
+    }
+    
+    @Override
+    protected void setBooleanField(String key, boolean value) {
+        switch (key) {
+            case "fold": fold = value; break;
+            case "allin": allin = value; break;
+            default: super.setBooleanField(key, value);
+        }
+    }
+    
+    @Override
+    protected void copyFields(Record target) {
+        super.copyFields(target);
+        target.put("bet", bet);
+        target.put("fold", fold);
+        target.put("allin", allin);
+    }
+    
+    @Override
+    protected Object getDerivedField(String key) {
+        switch (key) {
+            case "netcash": return getIntField("cash") + getIntField("bank");
+            case "winrate": return getIntField("winnings") * 1.0 / getIntField("rounds");
+            default: return super.getDerivedField(key);
         }
-        return super.get(key);
     }
     
     /**
@@ -19,25 +19,34 @@
 
 package irccasino.texaspoker;
 
+import irccasino.cardgame.Player;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * A pot class to handle bets and payouts in Texas Hold'em Poker.
+ * A pot class to handle bets and payouts in Texas Hold'em Poker. Donors are
+ * kept in parallel arrays in the order they first contributed.
  * @author Yizhe Shen
  */
 public class PokerPot {
-    private HashMap<PokerPlayer,Boolean> eligibles;
-    private HashMap<PokerPlayer,Integer> donations;
-    private HashMap<PokerPlayer,Boolean> winners;
+    private PokerPlayer[] donors;
+    private int[] donations;
+    private boolean[] eligibles;
+    private boolean[] winners;
+    private int numDonors;
+    private int total;
 
     /**
-     * Initializes eligibles and donations ArrayLists.
+     * Initializes the donor arrays.
      */
     public PokerPot(){
-        eligibles = new HashMap<>();
-        donations = new HashMap<>();
-        winners = new HashMap<>();
+        donors = new PokerPlayer[10];
+        donations = new int[10];
+        eligibles = new boolean[10];
+        winners = new boolean[10];
+        numDonors = 0;
+        total = 0;
     }
 
     /**
@@ -46,13 +55,21 @@ public class PokerPot {
      * @param amount 
      */
     public void contribute(PokerPlayer p, int amount) {
-        if (eligibles.containsKey(p)) {
-            donations.put(p, donations.get(p) + amount);
-        } else {
-            eligibles.put(p, Boolean.TRUE);
-            donations.put(p, amount);
-            winners.put(p, false);
+        int index = indexOf(p);
+        if (index == -1) {
+            if (numDonors == donors.length) {
+                int capacity = numDonors * 2;
+                donors = Arrays.copyOf(donors, capacity);
+                donations = Arrays.copyOf(donations, capacity);
+                eligibles = Arrays.copyOf(eligibles, capacity);
+                winners = Arrays.copyOf(winners, capacity);
+            }
+            index = numDonors++;
+            donors[index] = p;
+            eligibles[index] = true;
         }
+        donations[index] += amount;
+        total += amount;
     }
     
     /**
@@ -60,7 +77,10 @@ public class PokerPot {
      * @param p 
      */
     public void disqualify(PokerPlayer p) {
-        eligibles.put(p, Boolean.FALSE);
+        int index = indexOf(p);
+        if (index != -1) {
+            eligibles[index] = false;
+        }
     }
     
     /**
@@ -68,7 +88,10 @@ public class PokerPot {
      * @param p 
      */
     public void setWinner(PokerPlayer p) {
-        winners.put(p, Boolean.TRUE);
+        int index = indexOf(p);
+        if (index != -1) {
+            winners[index] = true;
+        }
     }
     
     /**
@@ -77,7 +100,8 @@ public class PokerPot {
      * @return 
      */
     public int getContribution(PokerPlayer p) {
-        return donations.get(p);
+        int index = indexOf(p);
+        return index == -1 ? 0 : donations[index];
     }
     
     /**
@@ -86,7 +110,8 @@ public class PokerPot {
      * @return 
      */
     public boolean isEligible(PokerPlayer p) {
-        return eligibles.containsKey(p) && eligibles.get(p);
+        int index = indexOf(p);
+        return index != -1 && eligibles[index];
     }
     
     /**
@@ -95,7 +120,8 @@ public class PokerPot {
      * @return 
      */
     public boolean isWinner(PokerPlayer p) {
-        return winners.get(p);
+        int index = indexOf(p);
+        return index != -1 && winners[index];
     }
     
     /**
@@ -103,10 +129,6 @@ public class PokerPot {
      * @return 
      */
     public int getTotal(){
-        int total = 0;
-        for (Integer amount : donations.values()) {
-            total += amount;
-        }
         return total;
     }
     
@@ -115,10 +137,10 @@ public class PokerPot {
      * @return 
      */
     public ArrayList<PokerPlayer> getEligibles(){
-        ArrayList<PokerPlayer> list = new ArrayList<>();
-        for (PokerPlayer p : eligibles.keySet()) {
-            if (eligibles.get(p)) {
-                list.add(p);
+        ArrayList<PokerPlayer> list = new ArrayList<>(numDonors);
+        for (int ctr = 0; ctr < numDonors; ctr++) {
+            if (eligibles[ctr]) {
+                list.add(donors[ctr]);
             }
         }
         return list;
@@ -129,7 +151,7 @@ public class PokerPot {
      * @return 
      */
     public ArrayList<PokerPlayer> getDonors() {
-        return new ArrayList<>(donations.keySet());
+        return new ArrayList<>(Arrays.asList(donors).subList(0, numDonors));
     }
     
     /**
@@ -137,10 +159,10 @@ public class PokerPot {
      * @return 
      */
     public ArrayList<PokerPlayer> getWinners() {
-       ArrayList<PokerPlayer> list = new ArrayList<>();
-       for (PokerPlayer p : winners.keySet()) {
-            if (winners.get(p)) {
-                list.add(p);
+        ArrayList<PokerPlayer> list = new ArrayList<>();
+        for (int ctr = 0; ctr < numDonors; ctr++) {
+            if (winners[ctr]) {
+                list.add(donors[ctr]);
             }
         }
         return list;
@@ -151,13 +173,13 @@ public class PokerPot {
      * @return 
      */
     public int getNumEligible(){
-        int total = 0;
-        for (Boolean b : eligibles.values()) {
-            if (b) {
-                total++;
+        int count = 0;
+        for (int ctr = 0; ctr < numDonors; ctr++) {
+            if (eligibles[ctr]) {
+                count++;
             }
         }
-        return total;
+        return count;
     }
     
     /**
@@ -165,6 +187,117 @@ public class PokerPot {
      * @return 
      */
     public int getNumDonors() {
-        return donations.size();
+        return numDonors;
+    }
+    
+    /**
+     * Returns the index of a donor or -1 if the player has not contributed.
+     */
+    private int indexOf(PokerPlayer p) {
+        for (int ctr = 0; ctr < numDonors; ctr++) {
+            if (donors[ctr] == p) {
+                return ctr;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Moves the bets from a round of betting into the pots. The bets are
+     * sorted once and each distinct bet level forms a layer that goes into
+     * the current pot, or into a new side pot if a player who is still in
+     * the hand has nothing left to contribute to it. The bet left over by
+     * the last remaining bettor is returned to that player.
+     * <p>
+     * Each contribution is deducted from the player's cash, winnings and
+     * change, and every player's bet is reset.
+     * 
+     * @param players the players in seat order
+     * @param pots the pots of the round, to which new pots are appended
+     * @param currentPot the pot receiving bets or null if there is none
+     * @param currentBet the highest bet of the round of betting
+     * @return the new current pot
+     */
+    public static PokerPot addBets(List<Player> players, List<PokerPot> pots, PokerPot currentPot, int currentBet) {
+        int n = players.size();
+        int[] bets = new int[n];
+        boolean[] folded = new boolean[n];
+        boolean[] inPot = new boolean[n];
+        int[] order = new int[n];
+        for (int seat = 0; seat < n; seat++) {
+            PokerPlayer p = (PokerPlayer) players.get(seat);
+            bets[seat] = p.getInt("bet");
+            folded[seat] = p.has("fold");
+            inPot[seat] = currentPot != null && currentPot.isEligible(p);
+            order[seat] = seat;
+        }
+        
+        // Sort seats by bet with insertion sort, since tables are small
+        for (int ctr = 1; ctr < n; ctr++) {
+            int seat = order[ctr];
+            int pos = ctr;
+            while (pos > 0 && bets[order[pos - 1]] > bets[seat]) {
+                order[pos] = order[pos - 1];
+                pos--;
+            }
+            order[pos] = seat;
+        }
+        
+        // Walk the bet levels from lowest to highest
+        int consumed = 0;
+        int next = 0;
+        int refunded = -1;
+        while (currentBet != 0) {
+            while (next < n && bets[order[next]] <= consumed) {
+                next++;
+            }
+            if (n - next > 1) {
+                // A new pot is needed if anybody eligible for the current
+                // pot has no bet left to contribute but is still in the game
+                boolean newPot = currentPot == null;
+                for (int seat = 0; seat < n && !newPot; seat++) {
+                    newPot = inPot[seat] && bets[seat] <= consumed && !folded[seat];
+                }
+                if (newPot) {
+                    currentPot = new PokerPot();
+                    pots.add(currentPot);
+                    Arrays.fill(inPot, false);
+                }
+                
+                int lowBet = Math.min(currentBet, bets[order[next]] - consumed);
+                for (int seat = 0; seat < n; seat++) {
+                    if (bets[seat] > consumed) {
+                        PokerPlayer p = (PokerPlayer) players.get(seat);
+                        currentPot.contribute(p, lowBet);
+                        if (folded[seat]) {
+                            currentPot.disqualify(p);
+                        } else {
+                            inPot[seat] = true;
+                        }
+                    }
+                }
+                consumed += lowBet;
+                currentBet -= lowBet;
+            } else {
+                // Only one player has any bet left, which is not contributed
+                if (next < n) {
+                    refunded = order[next];
+                }
+                currentBet = 0;
+            }
+        }
+        
+        // Settle each player's contributions and remaining bet
+        for (int seat = 0; seat < n; seat++) {
+            int contribution = Math.min(bets[seat], consumed);
+            Player p = players.get(seat);
+            if (contribution > 0) {
+                p.add("cash", -1 * contribution);
+                p.add("winnings", -1 * contribution);
+                p.add("change", -1 * contribution);
+            }
+            p.put("bet", seat == refunded ? 0 : bets[seat] - Math.max(contribution, 0));
+        }
+        return currentPot;
     }
 }
\ No newline at end of file
@@ -23,27 +23,86 @@ import irccasino.cardgame.Card;
 import irccasino.cardgame.CardDeck;
 import irccasino.cardgame.Hand;
 import irccasino.cardgame.Player;
+import irccasino.cardgame.RandomSource;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
- * Game simulator for calculating winning percentages.
+ * Game simulator for calculating winning percentages. Simulations are split
+ * into tasks that run on a shared ForkJoinPool. Each task keeps its own win
+ * and tie counts, which are merged once all tasks have finished.
+ * <p>
+ * Monte Carlo simulations can either run a fixed number of trials or run in
+ * steps until the 95% confidence margin of every percentage is within a
+ * target, which lets lopsided matchups finish much sooner than close ones.
+ * Heads-up preflop matchups are looked up in the PreflopTable instead, if
+ * one has been generated.
+ * <p>
+ * On the flop, the winners of every turn and river runout are recorded so
+ * that the turn and river percentages are found by filtering those
+ * runouts instead of simulating again.
  * @author Yizhe Shen
  */
 public class PokerSimulator {
+    /** The maximum number of Monte Carlo trials per simulation. */
+    private static final int MONTE_TRIALS = 100000;
+    /** The number of Monte Carlo trials between checks of the margin. */
+    private static final int MONTE_STEP = 10000;
+    /** The most Monte Carlo trials that a single task will run. */
+    private static final int MONTE_BATCH = 2500;
+    /** The z-score for a 95% confidence interval. */
+    private static final double CONFIDENCE_Z = 1.96;
+    /** The pool shared by all simulators. */
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
     private CardDeck simDeck;
     private ArrayList<PokerPlayer> simList;
     private Hand simComm;
     private int rounds;
-    private Random randGen;
+    private long[] holeMasks;
+    private int maxError;
+    private RandomSource randGen;
+    // Runouts recorded on the flop
+    private long flopMask;
+    private long[] runoutCards;
+    private long[] runoutWinners;
 
+    /**
+     * Creates a simulator that runs a fixed number of Monte Carlo trials.
+     */
     public PokerSimulator() {
+        this(0);
+    }
+    
+    /**
+     * Creates a simulator with adaptive Monte Carlo simulations.
+     * @param error the target margin in tenths of a percent, or 0 to run a
+     *              fixed number of trials
+     */
+    public PokerSimulator(int error) {
+        this(error, 0);
+    }
+    
+    /**
+     * Creates a simulator with adaptive Monte Carlo simulations and a
+     * seeded generator, so that the same simulations give the same results.
+     * @param error the target margin in tenths of a percent, or 0 to run a
+     *              fixed number of trials
+     * @param seed the seed, or 0 for a random seed
+     */
+    public PokerSimulator(int error, long seed) {
+        maxError = error;
+        randGen = RandomSource.create(RandomSource.FAST, seed);
         simDeck = new CardDeck(1);
         simList = new ArrayList<>();
         simComm = new Hand();
-        randGen = new Random();
         rounds = 0;
+        holeMasks = new long[0];
+        flopMask = 0L;
+        runoutCards = null;
+        runoutWinners = null;
     }
     
     /**
@@ -75,6 +134,12 @@ public class PokerSimulator {
                 simList.add(simP);
             }
         }
+        
+        // Store the hole cards as masks for HandEvaluator
+        holeMasks = new long[simList.size()];
+        for (int ctr = 0; ctr < simList.size(); ctr++) {
+            holeMasks[ctr] = HandEvaluator.getMask(simList.get(ctr).getHand());
+        }
     }
     
     /**
@@ -89,109 +154,375 @@ public class PokerSimulator {
     }
     
     /**
-     * Simulates games by sequentially adding cards to simComm until full
-     * and determining winners and ties. Uses a recursive algorithm.
-     * The number of rounds generated will be nCr, where n is the number of
-     * cards remaining in the simDeck and r is the number of cards required
-     * to fill simComm.
-     * @param index the index in simDeck from which to start adding cards
-     *              to simComm
+     * Runs the simulation based on the number of cards in the community.
+     * Every possible runout is enumerated once the flop is out. Before that,
+     * heads-up matchups are looked up in the PreflopTable and others are
+     * found with a Monte Carlo simulation.
      */
-    private void bruteSim(int index) {
-        // Add another card if the simulated community isn't full
-        if (simComm.size() < 5) {
-            for (int ctr = index; ctr < simDeck.getNumberCards(); ctr++) {
-                Card c = simDeck.peekCard(ctr);
-                simComm.add(c);
-                bruteSim(ctr + 1);
-                simComm.remove(c);
+    public void run() {
+        // Convert the remaining cards to masks
+        long[] deck = new long[simDeck.getNumberCards()];
+        for (int ctr = 0; ctr < deck.length; ctr++) {
+            deck[ctr] = 1L << simDeck.peekCard(ctr).getIndex();
+        }
+        long comm = HandEvaluator.getMask(simComm);
+        int need = 5 - simComm.size();
+        
+        // Run simulation
+        long[] results = null;
+        if (simComm.size() == 0) {
+            PreflopTable table = PreflopTable.getDefault();
+            if (table != null && holeMasks.length == 2) {
+                results = table.lookup(holeMasks[0], holeMasks[1]);
+            }
+            if (results == null) {
+                results = monteSim(deck, comm, need);
             }
+        } else if (simComm.size() == 3) {
+            recordRunouts(deck, comm);
+            results = filterRunouts(comm);
+        } else if (runoutWinners != null && (comm & flopMask) == flopMask) {
+            results = filterRunouts(comm);
         } else {
-            findWinners();
+            results = pool.invoke(new BruteTask(deck, comm, need, holeMasks, 0, deck.length - need + 1));
+        }
+        
+        // Store the merged results
+        int n = simList.size();
+        rounds += (int) results[0];
+        for (int ctr = 0; ctr < n; ctr++) {
+            simList.get(ctr).add("wins", (int) results[1 + ctr]);
+            simList.get(ctr).add("ties", (int) results[1 + n + ctr]);
         }
     }
     
     /**
-     * Runs a Monte Carlo simulation to determine win and tie percentages. The
-     * number of trials is hard-coded to produce results with a good degree
-     * of accuracy (+/-1%) while running reasonably fast. 
+     * Records the winners of every turn and river runout for a flop. The
+     * winners of the runout with the cards at indices i and j of the deck
+     * are stored at i * n + j and j * n + i, where n is the size of the deck.
+     * @param deck the remaining card masks
+     * @param flop the flop mask
      */
-    private void monteSim() {
-        ArrayList<Integer> indices = new ArrayList<>();
-        int origSize = simComm.size();
+    private void recordRunouts(long[] deck, long flop) {
+        int n = deck.length;
+        int[] strengths = new int[holeMasks.length];
+        flopMask = flop;
+        runoutCards = deck;
+        runoutWinners = new long[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                long winners = getWinners(holeMasks, flop | deck[i] | deck[j], strengths);
+                runoutWinners[i * n + j] = winners;
+                runoutWinners[j * n + i] = winners;
+            }
+        }
+    }
+    
+    /**
+     * Adds up the recorded runouts that match a flop, turn or river.
+     * @param comm the community card mask
+     * @return the results
+     */
+    private long[] filterRunouts(long comm) {
+        int n = runoutCards.length;
+        long[] results = newResults(holeMasks.length);
         
-        for (int trial = 0; trial < 100000; trial++) {
-            // Pick random cards to complete the simulated community
-            for (int ctr = origSize; ctr < 5; ctr++) {
-                int newIndex = randGen.nextInt(simDeck.getNumberCards());
-                while (indices.contains(newIndex)) {
-                    newIndex = randGen.nextInt(simDeck.getNumberCards());
+        // Find the deck indices of the turn and river, if dealt
+        int turn = -1;
+        int river = -1;
+        for (int ctr = 0; ctr < n; ctr++) {
+            if ((comm & runoutCards[ctr]) != 0) {
+                if (turn == -1) {
+                    turn = ctr;
+                } else {
+                    river = ctr;
                 }
-                indices.add(newIndex);
-                simComm.add(simDeck.peekCard(newIndex));
             }
-            
-            findWinners();
-            
-            // Remove the randomly picked cards
-            indices.clear();
-            for (int ctr = 4; ctr >= origSize; ctr--) {
-                simComm.remove(ctr);
+        }
+        
+        if (river != -1) {
+            addWinners(runoutWinners[turn * n + river], results);
+        } else if (turn != -1) {
+            for (int ctr = 0; ctr < n; ctr++) {
+                if (ctr != turn) {
+                    addWinners(runoutWinners[turn * n + ctr], results);
+                }
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    addWinners(runoutWinners[i * n + j], results);
+                }
             }
         }
+        return results;
     }
     
     /**
-     * Runs the simulation based on the number of cards in the community.
+     * Enumerates every runout for a set of hole cards and a partial
+     * community.
+     * @param holes the hole card masks of each player
+     * @param comm the community card mask
+     * @return the results
      */
-    public void run() {
-        // Run simulation
-        if (simComm.size() == 0) {
-            monteSim();
-        } else {
-            bruteSim(0);
+    static long[] enumerate(long[] holes, long comm) {
+        long used = comm;
+        for (long hole : holes) {
+            used |= hole;
+        }
+        long[] deck = new long[Card.NUM_CARDS - Long.bitCount(used)];
+        int n = 0;
+        for (int ctr = 0; ctr < Card.NUM_CARDS; ctr++) {
+            if ((used & (1L << ctr)) == 0) {
+                deck[n++] = 1L << ctr;
+            }
+        }
+        int need = 5 - Long.bitCount(comm);
+        return pool.invoke(new BruteTask(deck, comm, need, holes, 0, deck.length - need + 1));
+    }
+    
+    /**
+     * Runs a Monte Carlo simulation. If a target margin has been set, trials
+     * are run in steps until each player's win and tie percentages are
+     * within the margin or the maximum number of trials has been reached.
+     * @param deck the remaining card masks
+     * @param comm the community card mask
+     * @param need the number of cards required to fill the community
+     * @return the results
+     */
+    private long[] monteSim(long[] deck, long comm, int need) {
+        if (maxError <= 0) {
+            return pool.invoke(new MonteTask(deck, comm, need, holeMasks, MONTE_TRIALS, randGen.split()));
+        }
+        long[] results = newResults(holeMasks.length);
+        while (results[0] < MONTE_TRIALS) {
+            int trials = (int) Math.min(MONTE_STEP, MONTE_TRIALS - results[0]);
+            merge(results, pool.invoke(new MonteTask(deck, comm, need, holeMasks, trials, randGen.split())));
+            if (getMargin(results) <= maxError / 10.0) {
+                break;
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Returns the largest 95% confidence margin of the win and tie
+     * percentages in a set of results.
+     * @param results the results
+     * @return the margin in percent
+     */
+    private static double getMargin(long[] results) {
+        double rounds = results[0];
+        double margin = 0;
+        for (int ctr = 1; ctr < results.length; ctr++) {
+            double p = results[ctr] / rounds;
+            margin = Math.max(margin, CONFIDENCE_Z * Math.sqrt(p * (1 - p) / rounds) * 100);
+        }
+        return margin;
+    }
+    
+    /**
+     * Creates an empty results array for the specified number of players.
+     * The first element is the number of rounds, followed by the wins and
+     * then the ties of each player.
+     * @param players the number of players
+     * @return the results array
+     */
+    private static long[] newResults(int players) {
+        return new long[1 + 2 * players];
+    }
+    
+    /**
+     * Adds the results of one task to another.
+     * @param results the results to add to
+     * @param other the results to add
+     */
+    private static void merge(long[] results, long[] other) {
+        for (int ctr = 0; ctr < results.length; ctr++) {
+            results[ctr] += other[ctr];
         }
     }
     
     /**
-     * Determines the winners for a full simulated community.
+     * Determines the winners for a full community and adds them to the
+     * results. Hands are compared by their strengths from HandEvaluator, so
+     * no PokerHands need to be built or sorted.
+     * @param holes the hole card masks of each player
+     * @param comm the community card mask
+     * @param strengths space to store each player's strength
+     * @param results the results to add to
      */
-    private void findWinners() {
-        rounds++;
-        int winners = 1;
+    private static void findWinners(long[] holes, long comm, int[] strengths, long[] results) {
+        addWinners(getWinners(holes, comm, strengths), results);
+    }
+    
+    /**
+     * Returns the players with the best hand for a full community.
+     * @param holes the hole card masks of each player
+     * @param comm the community card mask
+     * @param strengths space to store each player's strength
+     * @return a mask with the bit for each winning player set
+     */
+    private static long getWinners(long[] holes, long comm, int[] strengths) {
+        int best = -1;
         
-        // Create PokerHands
-        for (PokerPlayer p : simList) {
-            p.getPokerHand().addAll(p.getHand());
-            p.getPokerHand().addAll(simComm);
-            Collections.sort(p.getPokerHand());
-            Collections.reverse(p.getPokerHand());
+        // Find the best strength
+        for (int ctr = 0; ctr < holes.length; ctr++) {
+            strengths[ctr] = HandEvaluator.evaluate(holes[ctr] | comm);
+            if (strengths[ctr] > best) {
+                best = strengths[ctr];
+            }
         }
 
-        // Sort players by PokerHand
-        Collections.sort(simList);
-        Collections.reverse(simList);
+        // Mark the players that have it
+        long winners = 0L;
+        for (int ctr = 0; ctr < holes.length; ctr++) {
+            if (strengths[ctr] == best) {
+                winners |= 1L << ctr;
+            }
+        }
+        return winners;
+    }
+    
+    /**
+     * Adds a win to the results if there is one winner, otherwise a tie for
+     * each winner.
+     * @param winners a mask with the bit for each winning player set
+     * @param results the results to add to
+     */
+    private static void addWinners(long winners, long[] results) {
+        int players = (results.length - 1) / 2;
+        int offset = Long.bitCount(winners) == 1 ? 1 : 1 + players;
+        while (winners != 0) {
+            results[offset + Long.numberOfTrailingZeros(winners)]++;
+            winners &= winners - 1;
+        }
+        results[0]++;
+    }
+    
+    /**
+     * Simulates games by adding every combination of the remaining cards to
+     * the community and determining winners and ties. The number of rounds
+     * generated will be nCr, where n is the number of cards remaining in the
+     * deck and r is the number of cards required to fill the community.
+     * Tasks are split by the index of the first card that is added.
+     */
+    private static class BruteTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+        private final long[] deck;
+        private final long comm;
+        private final int need;
+        private final long[] holes;
+        private final int from;
+        private final int to;
 
-        // Determine number of winners
-        for (int ctr = 1; ctr < simList.size(); ctr++){
-            if (simList.get(0).compareTo(simList.get(ctr)) == 0){
-                winners++;
+        public BruteTask(long[] deck, long comm, int need, long[] holes, int from, int to) {
+            this.deck = deck;
+            this.comm = comm;
+            this.need = need;
+            this.holes = holes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            long[] results = newResults(holes.length);
+            int[] strengths = new int[holes.length];
+            
+            // Nothing to add if the community is already full
+            if (need == 0) {
+                findWinners(holes, comm, strengths, results);
+                return results;
             }
+            
+            // Split the range of first cards between two tasks
+            if (need > 1 && to - from > 1) {
+                int mid = (from + to) >>> 1;
+                BruteTask left = new BruteTask(deck, comm, need, holes, from, mid);
+                left.fork();
+                long[] right = new BruteTask(deck, comm, need, holes, mid, to).compute();
+                merge(right, left.join());
+                return right;
+            }
+            
+            for (int ctr = from; ctr < to; ctr++) {
+                enumerate(ctr + 1, need - 1, comm | deck[ctr], strengths, results);
+            }
+            return results;
         }
 
-        // Increment win count for winners
-        if (winners == 1) {
-            simList.get(0).add("wins", 1);
-        } else {
-            for (int ctr = 0; ctr < winners; ctr++){
-                simList.get(ctr).add("ties", 1);
+        /**
+         * Recursively adds cards to the community until it is full.
+         * @param index the index in deck from which to start adding cards
+         * @param left the number of cards still needed
+         * @param board the community card mask
+         * @param strengths space to store each player's strength
+         * @param results the results to add to
+         */
+        private void enumerate(int index, int left, long board, int[] strengths, long[] results) {
+            if (left == 0) {
+                findWinners(holes, board, strengths, results);
+                return;
+            }
+            for (int ctr = index; ctr <= deck.length - left; ctr++) {
+                enumerate(ctr + 1, left - 1, board | deck[ctr], strengths, results);
             }
         }
+    }
+    
+    /**
+     * Runs Monte Carlo trials to determine win and tie percentages. Tasks are
+     * split until each runs at most MONTE_BATCH trials. Each task splits off
+     * its own generator, so threads never share one. Cards are drawn with a
+     * partial Fisher-Yates shuffle of a copy of the deck.
+     */
+    private static class MonteTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+        private final long[] deck;
+        private final long comm;
+        private final int need;
+        private final long[] holes;
+        private final int trials;
+        private final RandomSource randGen;
 
-        // Clear PokerHands
-        for (PokerPlayer p : simList) {
-            p.getPokerHand().clear();
-            p.getPokerHand().resetValue();
+        public MonteTask(long[] deck, long comm, int need, long[] holes, int trials, RandomSource randGen) {
+            this.deck = deck;
+            this.comm = comm;
+            this.need = need;
+            this.holes = holes;
+            this.trials = trials;
+            this.randGen = randGen;
+        }
+
+        @Override
+        protected long[] compute() {
+            // Split the trials between two tasks
+            if (trials > MONTE_BATCH) {
+                int half = trials / 2;
+                MonteTask left = new MonteTask(deck, comm, need, holes, half, randGen.split());
+                left.fork();
+                long[] right = new MonteTask(deck, comm, need, holes, trials - half, randGen).compute();
+                merge(right, left.join());
+                return right;
+            }
+            
+            long[] results = newResults(holes.length);
+            int[] strengths = new int[holes.length];
+            long[] cards = deck.clone();
+            for (int trial = 0; trial < trials; trial++) {
+                // Swap random cards to the front to complete the community
+                long board = comm;
+                for (int ctr = 0; ctr < need; ctr++) {
+                    int index = ctr + randGen.nextInt(cards.length - ctr);
+                    long card = cards[index];
+                    cards[index] = cards[ctr];
+                    cards[ctr] = card;
+                    board |= card;
+                }
+                findWinners(holes, board, strengths, results);
+            }
+            return results;
         }
     }
 
@@ -225,14 +556,16 @@ public class PokerSimulator {
 
     /**
      * Produces a String that contains every player's cards and their
-     * percentages for wins and splits.
+     * percentages for wins and splits. Players are listed by wins, but the
+     * order of simList is left alone because run() credits results by index.
      * @return a ready-to-display String
      */
     @Override
     public String toString() {
-        Collections.sort(simList, Player.getComparator("wins"));
+        ArrayList<PokerPlayer> sorted = new ArrayList<>(simList);
+        Collections.sort(sorted, Player.getComparator("wins"));
         String out = "Showdown: ";
-        for (PokerPlayer p : simList) {
+        for (PokerPlayer p : sorted) {
             out += p.getNick() + " (" + p.getHand() + ", " + Math.round(getWinPct(p)) + "%%, " + Math.round(getTiePct(p)) + "%%), ";
         }
         return out.substring(0, out.length() - 2);
@@ -0,0 +1,269 @@
+/*
+    Copyright (C) 2013-2014 Yizhe Shen <brrr@live.ca>
+
+    This file is part of irccasino.
+
+    irccasino is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    irccasino is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with irccasino.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package irccasino.texaspoker;
+
+import irccasino.cardgame.Card;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+
+/**
+ * Exact heads-up preflop equities for every pair of hole cards. Matchups
+ * that only differ by a relabelling of suits or by the order of the players
+ * share one entry, keyed by the smallest key among those variants. The table
+ * is generated offline by running this class and is memory-mapped when used.
+ * <p>
+ * The file holds a magic number and the number of entries, followed by the
+ * key, first player's wins and ties of each entry in ascending key order,
+ * all as big-endian ints.
+ * @author Yizhe Shen
+ */
+public class PreflopTable {
+
+    /** The default table file in the run directory. */
+    public static final String DEFAULT_FILE = "preflop.dat";
+    /** The number of possible boards for two players, 48 choose 5. */
+    public static final int BOARDS = 1712304;
+    /** Identifies a table file. */
+    private static final int MAGIC = 0x50464551;
+    /** Every permutation of the four suits. */
+    private static final int[][] suitPerms = new int[24][];
+
+    private static PreflopTable defaultTable;
+    private static boolean defaultLoaded = false;
+
+    private final IntBuffer data;
+    private final int size;
+
+    static {
+        int n = 0;
+        for (int a = 0; a < 4; a++) {
+            for (int b = 0; b < 4; b++) {
+                for (int c = 0; c < 4; c++) {
+                    int d = 6 - a - b - c;
+                    if (a != b && a != c && b != c && d != a && d != b && d != c) {
+                        suitPerms[n++] = new int[] {a, b, c, d};
+                    }
+                }
+            }
+        }
+    }
+
+    private PreflopTable(IntBuffer buffer) {
+        data = buffer;
+        size = buffer.get(1);
+    }
+
+    /**
+     * Returns the table in DEFAULT_FILE, loading it on first use.
+     * @return the table or null if it is missing or invalid
+     */
+    public static synchronized PreflopTable getDefault() {
+        if (!defaultLoaded) {
+            defaultLoaded = true;
+            try {
+                defaultTable = load(new File(DEFAULT_FILE));
+            } catch (IOException e) {
+                defaultTable = null;
+            }
+        }
+        return defaultTable;
+    }
+
+    /**
+     * Memory-maps a table file.
+     * @param file the table file
+     * @return the table or null if the file does not exist
+     * @throws IOException if the file cannot be read or is not a valid table
+     */
+    public static PreflopTable load(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            IntBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+            if (buffer.limit() < 2 || buffer.get(0) != MAGIC || buffer.limit() != 2 + 3 * buffer.get(1)) {
+                throw new IOException("Invalid preflop table " + file);
+            }
+            return new PreflopTable(buffer);
+        }
+    }
+
+    /**
+     * Returns the results of a heads-up matchup in the format used by
+     * PokerSimulator: the number of boards, each player's wins and then each
+     * player's ties.
+     * @param hole1 the first player's hole card mask
+     * @param hole2 the second player's hole card mask
+     * @return the results or null if the matchup is not in the table
+     */
+    public long[] lookup(long hole1, long hole2) {
+        int key = getKey(hole1, hole2);
+        boolean swapped = key < 0;
+        key &= Integer.MAX_VALUE;
+
+        // Binary search for the key
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = data.get(2 + 3 * mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                long wins = data.get(3 + 3 * mid);
+                long ties = data.get(4 + 3 * mid);
+                long losses = BOARDS - wins - ties;
+                if (swapped) {
+                    return new long[] {BOARDS, losses, wins, ties, ties};
+                }
+                return new long[] {BOARDS, wins, losses, ties, ties};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the key for a matchup. The sign bit is set if the players were
+     * swapped to form the key.
+     * @param hole1 the first player's hole card mask
+     * @param hole2 the second player's hole card mask
+     * @return the key
+     */
+    static int getKey(long hole1, long hole2) {
+        int a1 = Long.numberOfTrailingZeros(hole1);
+        int a2 = 63 - Long.numberOfLeadingZeros(hole1);
+        int b1 = Long.numberOfTrailingZeros(hole2);
+        int b2 = 63 - Long.numberOfLeadingZeros(hole2);
+        int best = Integer.MAX_VALUE;
+        boolean swapped = false;
+        for (int[] perm : suitPerms) {
+            int hand1 = encode(relabel(a1, perm), relabel(a2, perm));
+            int hand2 = encode(relabel(b1, perm), relabel(b2, perm));
+            int key = (hand1 << 12) | hand2;
+            if (key < best) {
+                best = key;
+                swapped = false;
+            }
+            key = (hand2 << 12) | hand1;
+            if (key < best) {
+                best = key;
+                swapped = true;
+            }
+        }
+        return swapped ? best | Integer.MIN_VALUE : best;
+    }
+
+    /**
+     * Returns the card index after relabelling its suit.
+     */
+    private static int relabel(int index, int[] perm) {
+        return perm[index / 13] * 13 + index % 13;
+    }
+
+    /**
+     * Encodes two card indices as 12 bits with the higher index first.
+     */
+    private static int encode(int c1, int c2) {
+        return c1 > c2 ? (c1 << 6) | c2 : (c2 << 6) | c1;
+    }
+
+    /**
+     * Returns the hole card mask of one player in a key.
+     * @param key the key without the sign bit
+     * @param first whether to return the first player's hole cards
+     * @return the mask
+     */
+    static long getHole(int key, boolean first) {
+        int hand = first ? key >>> 12 : key & 0xFFF;
+        return (1L << (hand >>> 6)) | (1L << (hand & 0x3F));
+    }
+
+    /**
+     * Writes a table file.
+     * @param file the file to write
+     * @param keys the keys in ascending order
+     * @param wins the first player's wins for each key
+     * @param ties the ties for each key
+     * @throws IOException if the file cannot be written
+     */
+    static void write(File file, int[] keys, int[] wins, int[] ties) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(keys.length);
+            for (int ctr = 0; ctr < keys.length; ctr++) {
+                out.writeInt(keys[ctr]);
+                out.writeInt(wins[ctr]);
+                out.writeInt(ties[ctr]);
+            }
+        }
+    }
+
+    /**
+     * Generates the table by enumerating every board for each distinct
+     * matchup. This takes a long time and only needs to be done once.
+     * @param args the output file, which defaults to DEFAULT_FILE
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        File file = new File(args.length > 0 ? args[0] : DEFAULT_FILE);
+
+        // Find the distinct matchups
+        TreeSet<Integer> keySet = new TreeSet<>();
+        for (int a1 = 0; a1 < Card.NUM_CARDS; a1++) {
+            for (int a2 = a1 + 1; a2 < Card.NUM_CARDS; a2++) {
+                for (int b1 = 0; b1 < Card.NUM_CARDS; b1++) {
+                    for (int b2 = b1 + 1; b2 < Card.NUM_CARDS; b2++) {
+                        if (b1 != a1 && b1 != a2 && b2 != a1 && b2 != a2) {
+                            long hole1 = (1L << a1) | (1L << a2);
+                            long hole2 = (1L << b1) | (1L << b2);
+                            keySet.add(getKey(hole1, hole2) & Integer.MAX_VALUE);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Enumerate the boards for each matchup
+        int[] keys = new int[keySet.size()];
+        int[] wins = new int[keys.length];
+        int[] ties = new int[keys.length];
+        int n = 0;
+        for (int key : keySet) {
+            long[] results = PokerSimulator.enumerate(new long[] {getHole(key, true), getHole(key, false)}, 0L);
+            keys[n] = key;
+            wins[n] = (int) results[1];
+            ties[n] = (int) results[3];
+            if (++n % 1000 == 0) {
+                System.out.println(n + "/" + keys.length + " matchups");
+            }
+        }
+        write(file, keys, wins, ties);
+        System.out.println("Wrote " + keys.length + " matchups to " + file);
+    }
+}
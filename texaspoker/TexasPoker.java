@@ -22,15 +22,18 @@ package irccasino.texaspoker;
 import irccasino.cardgame.CardDeck;
 import irccasino.GameManager;
 import irccasino.cardgame.CardGame;
+import irccasino.cardgame.CommandRegistry;
 import irccasino.cardgame.Hand;
+import irccasino.cardgame.Leaderboard;
+import irccasino.cardgame.PersistenceTask;
 import irccasino.cardgame.Player;
+import irccasino.cardgame.PlayerCache;
 import irccasino.cardgame.Record;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -38,6 +41,32 @@ import java.util.*;
 import org.pircbotx.*;
 
 public class TexasPoker extends CardGame{
+    /** The commands of Texas Hold'em Poker. */
+    protected static final CommandRegistry POKER_COMMANDS = new CommandRegistry(CARDGAME_COMMANDS)
+            .add("start", "go")
+            .add("bet", "b")
+            .add("call", "c", "ca")
+            .add("check", "x", "ch")
+            .add("fold", "f")
+            .add("raise", "r")
+            .add("allin", "a")
+            .add("community", "comm")
+            .add("hand")
+            .add("turn")
+            .add("players")
+            .addOp("fstart", "fgo")
+            .addOp("fstop")
+            .addOp("fbet", "fb")
+            .addOp("fallin", "fa")
+            .addOp("fraise", "fr")
+            .addOp("fcall", "fc", "fca")
+            .addOp("fcheck", "fx", "fch")
+            .addOp("ffold", "ff")
+            .addOp("shuffle")
+            .addOp("reload")
+            .addOp("test1")
+            .addOp("test2")
+            .addOp("test3");
     
     public enum PokerState {
         NONE, PRE_START, BLINDS, BETTING, SHOWDOWN, CONTINUE_ROUND, END_ROUND
@@ -52,6 +81,9 @@ public class TexasPoker extends CardGame{
         }
     }
     
+    /** The keys of the Texas Hold'em stats kept in the player cache. */
+    private static final String[] STAT_KEYS = {"rounds", "winnings", "idles"};
+    
     protected ArrayList<PokerPot> pots;
     protected PokerPot currentPot;
     protected PokerPlayer dealer;
@@ -64,6 +96,7 @@ public class TexasPoker extends CardGame{
     protected PokerBet betState;
     protected int currentBet;
     protected int minRaise;
+    protected PokerSimulator showdownSim;
     
     public TexasPoker() {
         super();
@@ -97,148 +130,42 @@ public class TexasPoker extends CardGame{
     //// Methods that process IRC events ////
     /////////////////////////////////////////
     @Override
-    public void processCommand(User user, String command, String[] params){
+    protected CommandRegistry getCommandRegistry() {
+        return POKER_COMMANDS;
+    }
+    
+    @Override
+    protected void executeCommand(User user, String command, String[] params){
         String nick = user.getNick();
-        String host = user.getHostmask();
         
         // Commands available in TexasPoker.
-        if (command.equalsIgnoreCase("join") || command.equalsIgnoreCase("j")){
-            join(nick, host);
-        } else if (command.equalsIgnoreCase("leave") || command.equalsIgnoreCase("quit") || command.equalsIgnoreCase("l") || command.equalsIgnoreCase("q")){
-            leave(nick, params);
-        } else if (command.equalsIgnoreCase("last")) {
-            last(nick, params);
-        } else if (command.equalsIgnoreCase("start") || command.equalsIgnoreCase("go")) {
-            start(nick, params);
-        } else if (command.equalsIgnoreCase("stop")) {
-            stop(nick, params);
-        } else if (command.equalsIgnoreCase("bet") || command.equalsIgnoreCase("b")) {
-            bet(nick, params);
-        } else if (command.equalsIgnoreCase("c") || command.equalsIgnoreCase("ca") || command.equalsIgnoreCase("call")) {
-            call(nick, params);
-        } else if (command.equalsIgnoreCase("x") || command.equalsIgnoreCase("ch") || command.equalsIgnoreCase("check")) {
-            check(nick, params);
-        } else if (command.equalsIgnoreCase("fold") || command.equalsIgnoreCase("f")) {
-            fold(nick, params);
-        } else if (command.equalsIgnoreCase("raise") || command.equalsIgnoreCase("r")) {
-            raise(nick, params);
-        } else if (command.equalsIgnoreCase("allin") || command.equalsIgnoreCase("a")){
-            allin(nick, params);
-        } else if (command.equalsIgnoreCase("community") || command.equalsIgnoreCase("comm")){
-            community(nick, params);
-        } else if (command.equalsIgnoreCase("hand")) {
-            hand(nick, params);
-        } else if (command.equalsIgnoreCase("turn")) {
-            turn(nick, params);
-        } else if (command.equalsIgnoreCase("cash") || command.equalsIgnoreCase("stack")) {
-            cash(nick, params);
-        } else if (command.equalsIgnoreCase("netcash") || command.equalsIgnoreCase("net")) {
-            netcash(nick, params);
-        } else if (command.equalsIgnoreCase("bank")) {
-            bank(nick, params);
-        } else if (command.equalsIgnoreCase("bankrupts")) {
-            bankrupts(nick, params);
-        } else if (command.equalsIgnoreCase("winnings")) {
-            winnings(nick, params);
-        } else if (command.equalsIgnoreCase("winrate")) {
-            winrate(nick, params);
-        } else if (command.equalsIgnoreCase("rounds")) {
-            rounds(nick, params);
-        } else if (command.equalsIgnoreCase("player") || command.equalsIgnoreCase("p")){
-            player(nick, params);
-        } else if (command.equalsIgnoreCase("deposit")) {
-            deposit(nick, params);
-        } else if (command.equalsIgnoreCase("rathole")) {
-            rathole(nick, params);
-        } else if (command.equalsIgnoreCase("withdraw")) {
-            withdraw(nick, params);
-        } else if (command.equalsIgnoreCase("players")) {
-            players(nick, params);
-        } else if (command.equalsIgnoreCase("waitlist")) {
-            waitlist(nick, params);
-        } else if (command.equalsIgnoreCase("blacklist")) {
-            blacklist(nick, params);
-        } else if (command.equalsIgnoreCase("rank")) {
-            rank(nick, params);
-        } else if (command.equalsIgnoreCase("top")) {
-            top(nick, params);
-        } else if (command.equalsIgnoreCase("away")){
-            away(nick, params);
-        } else if (command.equalsIgnoreCase("back")){
-            back(nick, params);
-        } else if (command.equalsIgnoreCase("ping")) {
-            ping(nick, params);
-        } else if (command.equalsIgnoreCase("simple")) {
-            simple(nick, params);
-        } else if (command.equalsIgnoreCase("stats")){
-            stats(nick, params);
-        } else if (command.equalsIgnoreCase("grules") || command.equalsIgnoreCase("gamerules")) {
-            grules(nick, params);
-        } else if (command.equalsIgnoreCase("ghelp") || command.equalsIgnoreCase("gamehelp")) {
-            ghelp(nick, params);
-        } else if (command.equalsIgnoreCase("gcommands") || command.equalsIgnoreCase("gamecommands")) {
-            gcommands(user, nick, params);
-        } else if (command.equalsIgnoreCase("game")) {
-            game(nick, params);
-        } else if (command.equalsIgnoreCase("gversion")) {
-            gversion(nick, params);
-        /* Op commands */
-        } else if (command.equalsIgnoreCase("fj") || command.equalsIgnoreCase("fjoin")){
-            fjoin(user, nick, params);
-        } else if (command.equalsIgnoreCase("fl") || command.equalsIgnoreCase("fq") || command.equalsIgnoreCase("fquit") || command.equalsIgnoreCase("fleave")){
-            fleave(user, nick, params);
-        } else if (command.equalsIgnoreCase("flast")) {
-            flast(user, nick, params);
-        } else if (command.equalsIgnoreCase("fstart") || command.equalsIgnoreCase("fgo")){
-            fstart(user, nick, params);
-        } else if (command.equalsIgnoreCase("fstop")){
-            fstop(user, nick, params);
-        } else if (command.equalsIgnoreCase("fb") || command.equalsIgnoreCase("fbet")){
-            fbet(user, nick, params);
-        } else if (command.equalsIgnoreCase("fa") || command.equalsIgnoreCase("fallin")){
-            fallin(user, nick, params);
-        } else if (command.equalsIgnoreCase("fr") || command.equalsIgnoreCase("fraise")){
-            fraise(user, nick, params);
-        } else if (command.equalsIgnoreCase("fc") || command.equalsIgnoreCase("fca") || command.equalsIgnoreCase("fcall")){
-            fcall(user, nick, params);
-        } else if (command.equalsIgnoreCase("fx") || command.equalsIgnoreCase("fch") || command.equalsIgnoreCase("fcheck")){
-            fcheck(user, nick, params);
-        } else if (command.equalsIgnoreCase("ff") || command.equalsIgnoreCase("ffold")){
-            ffold(user, nick, params);
-        } else if (command.equalsIgnoreCase("fdeposit")) {
-            fdeposit(user, nick, params);
-        } else if (command.equalsIgnoreCase("fwithdraw")) {
-            fwithdraw(user, nick, params);
-        } else if (command.equalsIgnoreCase("shuffle")){
-            shuffle(user, nick, params);
-        } else if (command.equalsIgnoreCase("cards")) {
-            cards(user, nick, params);
-        } else if (command.equalsIgnoreCase("discards")) {
-            discards(user, nick, params);
-        } else if (command.equalsIgnoreCase("settings")) {
-            settings(user, nick, params);
-        } else if (command.equalsIgnoreCase("set")){
-            set(user, nick, params);
-        } else if (command.equalsIgnoreCase("get")) {
-            get(user, nick, params);
-        } else if (command.equalsIgnoreCase("resetaway")){
-            resetaway(user, nick, params);
-        } else if (command.equalsIgnoreCase("resetsimple")) {
-            resetsimple(user, nick, params);
-        } else if (command.equalsIgnoreCase("reload")) {
-            reload(user, nick, params);
-        } else if (command.equalsIgnoreCase("trim")) {
-            trim(user, nick, params);
-        } else if (command.equalsIgnoreCase("query") || command.equalsIgnoreCase("sql")) {
-            query(user, nick, params);
-        } else if (command.equalsIgnoreCase("migrate")) {
-            migrate(user, nick, params);
-        } else if (command.equalsIgnoreCase("test1")) {
-            test1(user, nick, params);
-        } else if (command.equalsIgnoreCase("test2")) {
-            test2(user, nick, params);
-        } else if (command.equalsIgnoreCase("test3")){
-            test3(user, nick, params);
+        switch (command) {
+            case "start": start(nick, params); break;
+            case "bet": bet(nick, params); break;
+            case "call": call(nick, params); break;
+            case "check": check(nick, params); break;
+            case "fold": fold(nick, params); break;
+            case "raise": raise(nick, params); break;
+            case "allin": allin(nick, params); break;
+            case "community": community(nick, params); break;
+            case "hand": hand(nick, params); break;
+            case "turn": turn(nick, params); break;
+            case "players": players(nick, params); break;
+            /* Op commands */
+            case "fstart": fstart(user, nick, params); break;
+            case "fstop": fstop(user, nick, params); break;
+            case "fbet": fbet(user, nick, params); break;
+            case "fallin": fallin(user, nick, params); break;
+            case "fraise": fraise(user, nick, params); break;
+            case "fcall": fcall(user, nick, params); break;
+            case "fcheck": fcheck(user, nick, params); break;
+            case "ffold": ffold(user, nick, params); break;
+            case "shuffle": shuffle(user, nick, params); break;
+            case "reload": reload(user, nick, params); break;
+            case "test1": test1(user, nick, params); break;
+            case "test2": test2(user, nick, params); break;
+            case "test3": test3(user, nick, params); break;
+            default: super.executeCommand(user, command, params);
         }
     }
 
@@ -397,7 +324,7 @@ public class TexasPoker extends CardGame{
         } else if (state.equals(PokerState.CONTINUE_ROUND)) {
             informPlayer(nick, getMsg("game_lagging"));
         } else {
-            bet(currentPlayer.getInteger("cash"));
+            bet(currentPlayer.getInt("cash"));
         }
     }
     
@@ -446,9 +373,9 @@ public class TexasPoker extends CardGame{
             informPlayer(nick, getMsg("nobody_turn"));
         } else {
             showMsg(getMsg("tp_turn"), currentPlayer.getNickStr(), 
-                    currentBet-currentPlayer.getInteger("bet"), 
-                    currentPlayer.getInteger("bet"), currentBet, getCashInPlay(), 
-                    currentPlayer.getInteger("cash")-currentPlayer.getInteger("bet"));
+                    currentBet-currentPlayer.getInt("bet"), 
+                    currentPlayer.getInt("bet"), currentBet, getCashInPlay(), 
+                    currentPlayer.getInt("cash")-currentPlayer.getInt("bet"));
         }
     }
     
@@ -505,6 +432,7 @@ public class TexasPoker extends CardGame{
             informPlayer(nick, getMsg("no_start"));
         } else {
             cancelStartRoundTask();
+            cancelResumeRoundTask();
             cancelIdleOutTask();
             for (Player p : joined) {
                 resetPlayer((PokerPlayer) p);
@@ -559,7 +487,7 @@ public class TexasPoker extends CardGame{
         } else if (state.equals(PokerState.CONTINUE_ROUND)) {
             informPlayer(nick, getMsg("game_lagging"));
         } else {
-            bet(currentPlayer.getInteger("cash"));
+            bet(currentPlayer.getInt("cash"));
         }
     }
     
@@ -681,7 +609,6 @@ public class TexasPoker extends CardGame{
             notSimpleList.clear();
             cmdMap.clear();
             opCmdMap.clear();
-            aliasMap.clear();
             msgMap.clear();
             sqlMap.clear();
             loadIni();
@@ -835,7 +762,7 @@ public class TexasPoker extends CardGame{
                     throw new NumberFormatException();
                 }
                 ArrayList<PokerPlayer> peeps = new ArrayList<>();
-                PokerSimulator sim = new PokerSimulator();
+                PokerSimulator sim = new PokerSimulator(get("simerror"), get("seed"));
                 
                 // Generate players and deal cards
                 for (int ctr = 0; ctr < number; ctr++) {
@@ -970,27 +897,7 @@ public class TexasPoker extends CardGame{
                 // If showdown, show player hands and their win/tie 
                 // probabilities immediately and each time additional community
                 // cards are revealed. Adds a dramatic delay between each reveal.
-                state = PokerState.SHOWDOWN;
-                PokerSimulator sim = new PokerSimulator();
-                ArrayList<PokerPlayer> list = pots.get(0).getEligibles();
-                sim.addPlayers(list);
-                
-                while (!betState.equals(PokerBet.RIVER)) {
-                    sim.addCommunity(community);
-                    sim.run();
-                    showShowdown(list, sim);
-                    sim.reset();
-                    
-                    // Add a delay for dramatic effect
-                    try { Thread.sleep(get("showdown") * 1000); } catch (InterruptedException e){}
-
-                    // Deal some community cards
-                    burnCard();
-                    dealCommunity();
-                    betState = betState.next();
-                    showCommunityCards(false);
-                }
-                endRound();
+                startShowdown();
             } else {
                 burnCard();
                 dealCommunity();
@@ -1003,13 +910,56 @@ public class TexasPoker extends CardGame{
             state = PokerState.BETTING;
             currentPlayer = nextPlayer;
             showMsg(getMsg("tp_turn"), currentPlayer.getNickStr(), 
-                    currentBet - currentPlayer.getInteger("bet"), 
-                    currentPlayer.getInteger("bet"), currentBet, getCashInPlay(), 
-                    currentPlayer.getInteger("cash") - currentPlayer.getInteger("bet"));
+                    currentBet - currentPlayer.getInt("bet"), 
+                    currentPlayer.getInt("bet"), currentBet, getCashInPlay(), 
+                    currentPlayer.getInt("cash") - currentPlayer.getInt("bet"));
             setIdleOutTask();
         }
     }
     
+    /**
+     * Starts a showdown, when fewer than two players can still bet.
+     */
+    protected void startShowdown() {
+        state = PokerState.SHOWDOWN;
+        showdownSim = new PokerSimulator(get("simerror"), get("seed"));
+        showdownSim.addPlayers(pots.get(0).getEligibles());
+        showShowdownOdds();
+    }
+    
+    /**
+     * Shows the hands of the players in a showdown and their win/tie
+     * probabilities, then schedules the next community cards to be dealt
+     * after a delay for dramatic effect.
+     */
+    protected void showShowdownOdds() {
+        showdownSim.addCommunity(community);
+        showdownSim.run();
+        showShowdown(pots.get(0).getEligibles(), showdownSim);
+        showdownSim.reset();
+        setResumeRoundTask(get("showdown") * 1000);
+    }
+    
+    /**
+     * Deals the next community cards of a showdown. The round ends once all
+     * community cards have been dealt.
+     */
+    @Override
+    public void resumeRound() {
+        if (state.equals(PokerState.SHOWDOWN)) {
+            burnCard();
+            dealCommunity();
+            betState = betState.next();
+            showCommunityCards(false);
+            
+            if (betState.equals(PokerBet.RIVER)) {
+                endRound();
+            } else {
+                showShowdownOdds();
+            }
+        }
+    }
+    
     @Override
     public void endRound() {
         state = PokerState.END_ROUND;
@@ -1045,7 +995,7 @@ public class TexasPoker extends CardGame{
                     p.add("idles", 1);
                 }
                 if (!p.has("cash") && p.has("bank")) {
-                    int amount = Math.min(p.getInteger("bank"), get("cash"));
+                    int amount = Math.min(p.getInt("bank"), get("cash"));
                     p.bankTransfer(-amount);
                     saveDBPlayerBanking(p);
                     informPlayer(p.getNick(), getMsg("auto_withdraw"), amount);
@@ -1106,9 +1056,9 @@ public class TexasPoker extends CardGame{
     @Override
     public void endGame() {
         cancelStartRoundTask();
+        cancelResumeRoundTask();
         cancelIdleOutTask();
         cancelRespawnTasks();
-        gameTimer.cancel();
         deck = null;
         community = null;
         pots.clear();
@@ -1127,7 +1077,6 @@ public class TexasPoker extends CardGame{
         notSimpleList.clear();
         cmdMap.clear();
         opCmdMap.clear();
-        aliasMap.clear();
         msgMap.clear();
         settings.clear();
     }
@@ -1143,6 +1092,7 @@ public class TexasPoker extends CardGame{
         bigBlind = null;
         smallBlind = null;
         topBettor = null;
+        showdownSim = null;
         deck.refillDeck();
     }
     
@@ -1232,17 +1182,17 @@ public class TexasPoker extends CardGame{
      */
     protected void setBlindBets(){
         // Set the small blind
-        if (get("minbet")/2 >= smallBlind.getInteger("cash")) {
+        if (get("minbet")/2 >= smallBlind.getInt("cash")) {
             smallBlind.put("allin", true);
-            smallBlind.put("bet", smallBlind.getInteger("cash"));
+            smallBlind.put("bet", smallBlind.getInt("cash"));
         } else {
             smallBlind.put("bet", get("minbet")/2);
         }
         
         // Set the big blind
-        if (get("minbet") >= bigBlind.getInteger("cash")) {
+        if (get("minbet") >= bigBlind.getInt("cash")) {
             bigBlind.put("allin", true);
-            bigBlind.put("bet", bigBlind.getInteger("cash"));
+            bigBlind.put("bet", bigBlind.getInt("cash"));
         } else {
             bigBlind.put("bet", get("minbet"));
         }
@@ -1275,7 +1225,10 @@ public class TexasPoker extends CardGame{
         settings.put("startwait", 5);
         settings.put("showdown", 10);
         settings.put("revealcommunity", 0);
+        settings.put("simerror", 5);
         settings.put("ping", 600);
+        settings.put("rng", 1);
+        settings.put("seed", 0);
     }
     
     @Override
@@ -1283,13 +1236,14 @@ public class TexasPoker extends CardGame{
         name = "texaspoker";
         helpFile = "texaspoker.help";
         deck = new CardDeck();
-        deck.shuffleCards();
         pots = new ArrayList<>();
         community = new Hand();
         
         initSettings();
         loadHelp();
         loadIni();
+        updateRandom();
+        deck.shuffleCards();
         state = PokerState.NONE;
         betState = PokerBet.NONE;
         showMsg(getMsg("game_start"), getGameNameStr());
@@ -1319,8 +1273,14 @@ public class TexasPoker extends CardGame{
             out.println("showdown=" + get("showdown"));
             out.println("#Whether or not to reveal community when not required");
             out.println("revealcommunity=" + get("revealcommunity"));
+            out.println("#The margin of showdown percentages in tenths of a percent, or 0 for fixed trials");
+            out.println("simerror=" + get("simerror"));
             out.println("#The rate-limit of the ping command");
             out.println("ping=" + get("ping"));
+            out.println("#The random number generator for shuffling: 0 for fast, 1 for secure");
+            out.println("rng=" + get("rng"));
+            out.println("#The seed for the fast generator so deals can be replayed, or 0 for a random seed");
+            out.println("seed=" + get("seed"));
         } catch (IOException e) {
             manager.log("Error creating " + iniFile + "!");
         }
@@ -1337,12 +1297,24 @@ public class TexasPoker extends CardGame{
         } else if (isJoined(nick)) {
             return findJoined(nick);
         } else {
+            // Use the cached purse and stats if available
+            PlayerCache cache = manager.getPlayerCache();
+            Record purse = cache.get(nick, PlayerCache.PURSE);
+            Record stats = cache.get(nick, name);
             PokerPlayer record = null;
-            try (Connection conn = DriverManager.getConnection(dbURL)) {
+            if (purse != null && stats != null) {
+                record = new PokerPlayer("");
+                record.putAll(purse);
+                record.putAll(stats);
+                return record;
+            }
+            
+            // A player evicted from the cache may still have a write queued
+            manager.getPersistenceQueue().flush();
+            try (Connection conn = getDBReadConnection()) {
                 conn.setAutoCommit(false);
                 // Retrieve data from Player table if possible
-                String sql = getSQL("SELECT_TPPLAYERVIEW_BY_NICK");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_TPPLAYERVIEW_BY_NICK")) {
                     ps.setString(1, nick);
                     try (ResultSet rs = ps.executeQuery()) {
                         if (rs.isBeforeFirst()) {
@@ -1363,39 +1335,66 @@ public class TexasPoker extends CardGame{
             } catch (SQLException ex) {
                 manager.log("SQL Error: " + ex.getMessage());
             }
+            
+            if (record != null) {
+                cache.load(record.getString("nick"), record.getInteger("id"), PlayerCache.PURSE, record, PlayerCache.PURSE_KEYS);
+                cache.load(record.getString("nick"), record.getInteger("id"), name, record, STAT_KEYS);
+            }
             return record;
         }
     }
     
     @Override
     protected void loadDBPlayerData(Player p) {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        // Initialize
+        p.put("id", 0);
+        p.put("cash", get("cash"));
+        p.put("bank", 0);
+        p.put("bankrupts", 0);
+        p.put("rounds", 0);
+        p.put("winnings", 0);
+        p.put("idles", 0);
+        
+        // Use the cached purse and stats if available
+        PlayerCache cache = manager.getPlayerCache();
+        Record purse = cache.get(p.getNick(), PlayerCache.PURSE);
+        Record stats = cache.get(p.getNick(), name);
+        if (purse != null) {
+            p.put("id", purse.get("id"));
+            p.put("cash", purse.get("cash"));
+            p.put("bank", purse.get("bank"));
+            p.put("bankrupts", purse.get("bankrupts"));
+        }
+        if (stats != null) {
+            p.put("id", stats.get("id"));
+            p.put("rounds", stats.get("rounds"));
+            p.put("winnings", stats.get("winnings"));
+            p.put("idles", stats.get("idles"));
+        }
+        if (purse != null && stats != null) {
+            return;
+        }
+        
+        // A player evicted from the cache may still have a write queued
+        manager.getPersistenceQueue().flush();
+        try (Connection conn = getDBWriteConnection()) {
             conn.setAutoCommit(false);
             
-            // Initialize
-            p.put("id", 0);
-            p.put("cash", get("cash"));
-            p.put("bank", 0);
-            p.put("bankrupts", 0);
-            p.put("rounds", 0);
-            p.put("winnings", 0);
-            p.put("idles", 0);
-            
             // Retrieve data from Player table if possible
-            String sql = getSQL("SELECT_PLAYER_BY_NICK");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, p.getNick());
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        p.put("id", rs.getInt("id"));
+            if (!p.has("id")) {
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_PLAYER_BY_NICK")) {
+                    ps.setString(1, p.getNick());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.isBeforeFirst()) {
+                            p.put("id", rs.getInt("id"));
+                        }
                     }
                 }
             }
             
             // Add new record if not found in Player table
             if (!p.has("id")) {
-                sql = getSQL("INSERT_PLAYER");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_PLAYER")) {
                     ps.setString(1, p.getNick());
                     ps.setLong(2, System.currentTimeMillis() / 1000);
                     ps.executeUpdate();
@@ -1403,58 +1402,58 @@ public class TexasPoker extends CardGame{
                 }
             }
             
-            // Retrieve data from Purse table if possible
-            boolean found = false;
-            sql = getSQL("SELECT_PURSE_BY_PLAYER_ID");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, p.getInteger("id"));
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        found = true;
-                        p.put("cash", rs.getInt("cash"));
-                        p.put("bank", rs.getInt("bank"));
-                        p.put("bankrupts", rs.getInt("bankrupts"));
-                    }
-                }
-            }
-            
-            // Add new record if not found in Purse
-            if (!found) {
-                informPlayer(p.getNick(), getMsg("new_player"), getGameNameStr(), get("cash"));
-                sql = getSQL("INSERT_PURSE");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (purse == null) {
+                // Retrieve data from Purse table if possible
+                boolean found = false;
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_PURSE_BY_PLAYER_ID")) {
                     ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, p.getInteger("cash"));
-                    ps.setInt(3, p.getInteger("bank"));
-                    ps.setInt(4, p.getInteger("bankrupts"));
-                    ps.executeUpdate();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.isBeforeFirst()) {
+                            found = true;
+                            p.put("cash", rs.getInt("cash"));
+                            p.put("bank", rs.getInt("bank"));
+                            p.put("bankrupts", rs.getInt("bankrupts"));
+                        }
+                    }
                 }
-            }
-
-            // Retrieve data from TPPlayerStat table if possible
-            found = false;
-            sql = getSQL("SELECT_TPPLAYERSTAT_BY_PLAYER_ID");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, p.getInteger("id"));
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        found = true;
-                        p.put("rounds", rs.getInt("rounds"));
-                        p.put("winnings", rs.getInt("winnings"));
-                        p.put("idles", rs.getInt("idles"));
+                
+                // Add new record if not found in Purse
+                if (!found) {
+                    informPlayer(p.getNick(), getMsg("new_player"), getGameNameStr(), get("cash"));
+                    try (PreparedStatement ps = prepareSQL(conn, "INSERT_PURSE")) {
+                        ps.setInt(1, p.getInteger("id"));
+                        ps.setInt(2, p.getInt("cash"));
+                        ps.setInt(3, p.getInt("bank"));
+                        ps.setInt(4, p.getInteger("bankrupts"));
+                        ps.executeUpdate();
                     }
                 }
             }
             
-            // Add new record if not found in TPPlayerStat table
-            if (!found) {
-                sql = getSQL("INSERT_TPPLAYERSTAT");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (stats == null) {
+                // Retrieve data from TPPlayerStat table if possible
+                boolean found = false;
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_TPPLAYERSTAT_BY_PLAYER_ID")) {
                     ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, p.getInteger("rounds"));
-                    ps.setInt(3, p.getInteger("winnings"));
-                    ps.setInt(4, p.getInteger("idles"));
-                    ps.executeUpdate();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.isBeforeFirst()) {
+                            found = true;
+                            p.put("rounds", rs.getInt("rounds"));
+                            p.put("winnings", rs.getInt("winnings"));
+                            p.put("idles", rs.getInt("idles"));
+                        }
+                    }
+                }
+                
+                // Add new record if not found in TPPlayerStat table
+                if (!found) {
+                    try (PreparedStatement ps = prepareSQL(conn, "INSERT_TPPLAYERSTAT")) {
+                        ps.setInt(1, p.getInteger("id"));
+                        ps.setInt(2, p.getInteger("rounds"));
+                        ps.setInt(3, p.getInteger("winnings"));
+                        ps.setInt(4, p.getInteger("idles"));
+                        ps.executeUpdate();
+                    }
                 }
             }
             
@@ -1462,40 +1461,77 @@ public class TexasPoker extends CardGame{
             logDBWarning(conn.getWarnings());
         } catch (SQLException ex) {
             manager.log("SQL Error: " + ex.getMessage());
+            return;
         }
+        
+        cache.load(p.getNick(), p.getInteger("id"), PlayerCache.PURSE, p, PlayerCache.PURSE_KEYS);
+        cache.load(p.getNick(), p.getInteger("id"), name, p, STAT_KEYS);
     }
     
     @Override
-    protected void saveDBPlayerDataBatch(ArrayList<Player> players) {        
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            
-            for (Player p : players) {
-                // Update data in Purse table
-                String sql = getSQL("UPDATE_PURSE");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("cash"));
-                    ps.setInt(2, p.getInteger("bank"));
-                    ps.setInt(3, p.getInteger("bankrupts"));
-                    ps.setInt(4, p.getInteger("id"));
-                    ps.executeUpdate();
-                }
+    protected void saveDBPlayerDataBatch(ArrayList<Player> players) {
+        PlayerCache cache = manager.getPlayerCache();
+        for (Player p : players) {
+            cache.update(p.getNick(), p.getInteger("id"), PlayerCache.PURSE, p, PlayerCache.PURSE_KEYS);
+            cache.update(p.getNick(), p.getInteger("id"), name, p, STAT_KEYS);
+        }
+        final ArrayList<Record> records = cache.takeDirty(name, true);
+        if (records.isEmpty()) {
+            return;
+        }
+        updateLeaderboards(records);
+        
+        manager.getPersistenceQueue().submit(new PersistenceTask() {
+            @Override
+            public void persist(Connection conn) throws SQLException {
+                try (PreparedStatement psPurse = prepareSQL(conn, "UPDATE_PURSE");
+                        PreparedStatement psStat = prepareSQL(conn, "UPDATE_TPPLAYERSTAT")) {
+                    for (Record p : records) {
+                        // Update data in Purse table
+                        if (p.has(PlayerCache.PURSE)) {
+                            psPurse.setInt(1, p.getInt("cash"));
+                            psPurse.setInt(2, p.getInt("bank"));
+                            psPurse.setInt(3, p.getInteger("bankrupts"));
+                            psPurse.setInt(4, p.getInteger("id"));
+                            psPurse.addBatch();
+                        }
 
-                // Update data in TPPlayerStat table
-                sql = getSQL("UPDATE_TPPLAYERSTAT");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("rounds"));
-                    ps.setInt(2, p.getInteger("winnings"));
-                    ps.setInt(3, p.getInteger("idles"));
-                    ps.setInt(4, p.getInteger("id"));
-                    ps.executeUpdate();
+                        // Update data in TPPlayerStat table
+                        if (p.has(name)) {
+                            psStat.setInt(1, p.getInteger("rounds"));
+                            psStat.setInt(2, p.getInteger("winnings"));
+                            psStat.setInt(3, p.getInteger("idles"));
+                            psStat.setInt(4, p.getInteger("id"));
+                            psStat.addBatch();
+                        }
+                    }
+                    psPurse.executeBatch();
+                    psStat.executeBatch();
                 }
+                
+                logDBWarning(conn.getWarnings());
             }
-            
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+        });
+    }
+    
+    @Override
+    protected void indexStats(Record record) {
+        PlayerCache cache = manager.getPlayerCache();
+        int id = record.getInteger("id");
+        String nick = record.getString("nick");
+        int rounds = record.getInteger("rounds");
+        int winnings = record.getInteger("winnings");
+        if (rounds > 0) {
+            cache.getLeaderboard(name, "rounds").put(id, nick, rounds);
+            cache.getLeaderboard(name, "winnings").put(id, nick, winnings);
+        } else {
+            cache.getLeaderboard(name, "rounds").remove(id);
+            cache.getLeaderboard(name, "winnings").remove(id);
+        }
+        if (rounds > 50) {
+            cache.getLeaderboard(name, "winrate").put(id, nick, winnings * 1.0 / rounds);
+        } else {
+            cache.getLeaderboard(name, "winrate").remove(id);
         }
     }
     
@@ -1512,9 +1548,8 @@ public class TexasPoker extends CardGame{
         record.put("total_players", 0);
         record.put("total_rounds", 0);
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {            
-            String sql = getSQL("SELECT_TPGAMETOTALS");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = getDBReadConnection()) {            
+            try (PreparedStatement ps = prepareSQL(conn, "SELECT_TPGAMETOTALS")) {
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.isBeforeFirst()) {
                         record.put("total_players", rs.getInt("total_players"));
@@ -1531,93 +1566,116 @@ public class TexasPoker extends CardGame{
     
     @Override
     protected void saveDBGameStats() {
-        int roundID, handID, potID;
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            
-            // Insert data into TPRound table
-            String sql = getSQL("INSERT_TPROUND");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setLong(1, startTime);
-                ps.setLong(2, endTime);
-                ps.setString(3, channel.getName());
-                ps.setString(4, community.toStringDB());
-                ps.executeUpdate();
-                roundID = ps.getGeneratedKeys().getInt(1);
+        // Snapshot the round since it is saved after the game moves on
+        final long roundStart = startTime;
+        final long roundEnd = endTime;
+        final String channelName = channel.getName();
+        final String communityCards = community.toStringDB();
+        final int idle = get("idle");
+        final int idleWarning = get("idlewarning");
+        final ArrayList<Record> records = new ArrayList<>(joined.size());
+        for (Player p : joined) {
+            Record record = new Record(p);
+            record.put("hand", ((PokerPlayer) p).getHand().toStringDB());
+            records.add(record);
+        }
+        final ArrayList<Record> potRecords = new ArrayList<>(pots.size());
+        for (PokerPot pot : pots) {
+            Record potRecord = new Record();
+            ArrayList<Record> donors = new ArrayList<>();
+            for (PokerPlayer p : pot.getDonors()) {
+                Record donor = new Record();
+                donor.put("id", p.getInteger("id"));
+                donor.put("contribution", pot.getContribution(p));
+                donor.put("winner", pot.isWinner(p));
+                donors.add(donor);
             }
-            
-            
-            for (Player p : joined) {
-                // Insert data into TPPlayerChange table
-                sql = getSQL("INSERT_TPPLAYERCHANGE");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, roundID);
-                    ps.setInt(3, p.getInteger("change"));
-                    ps.setInt(4, p.getInteger("cash"));
-                    ps.executeUpdate();
-                }
-                
-                // Insert data into TPHand table
-                sql = getSQL("INSERT_TPHAND");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, roundID);
-                    ps.setString(2, ((PokerPlayer) p).getHand().toStringDB());
-                    ps.executeUpdate();
-                    handID = ps.getGeneratedKeys().getInt(1);
-                }
-                
-                // Insert data into TPPlayerHand table
-                sql = getSQL("INSERT_TPPLAYERHAND");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, handID);
-                    ps.setBoolean(3, p.getBoolean("fold"));
-                    ps.setBoolean(4, p.getBoolean("allin"));
+            potRecord.put("total", pot.getTotal());
+            potRecord.put("donors", donors);
+            potRecords.add(potRecord);
+        }
+        
+        manager.getPersistenceQueue().submit(new PersistenceTask() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void persist(Connection conn) throws SQLException {
+                int roundID, handID, potID;
+
+                // Insert data into TPRound table
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_TPROUND")) {
+                    ps.setLong(1, roundStart);
+                    ps.setLong(2, roundEnd);
+                    ps.setString(3, channelName);
+                    ps.setString(4, communityCards);
                     ps.executeUpdate();
+                    roundID = ps.getGeneratedKeys().getInt(1);
                 }
-                
-                if (p.getBoolean("idled")) {
-                    // Insert data into TPPlayerIdle table
-                    sql = getSQL("INSERT_TPPLAYERIDLE");
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setInt(1, p.getInteger("id"));
-                        ps.setInt(2, roundID);
-                        ps.setInt(3, get("idle"));
-                        ps.setInt(4, get("idlewarning"));
-                        ps.executeUpdate();
+
+                // Hands and pots are inserted one at a time for their generated
+                // keys while the remaining rows are batched
+                try (PreparedStatement psChange = prepareSQL(conn, "INSERT_TPPLAYERCHANGE");
+                        PreparedStatement psHand = prepareSQL(conn, "INSERT_TPHAND");
+                        PreparedStatement psPlayerHand = prepareSQL(conn, "INSERT_TPPLAYERHAND");
+                        PreparedStatement psIdle = prepareSQL(conn, "INSERT_TPPLAYERIDLE")) {
+                    for (Record p : records) {
+                        // Insert data into TPPlayerChange table
+                        psChange.setInt(1, p.getInteger("id"));
+                        psChange.setInt(2, roundID);
+                        psChange.setInt(3, p.getInt("change"));
+                        psChange.setInt(4, p.getInt("cash"));
+                        psChange.addBatch();
+
+                        // Insert data into TPHand table
+                        psHand.setInt(1, roundID);
+                        psHand.setString(2, p.getString("hand"));
+                        psHand.executeUpdate();
+                        handID = psHand.getGeneratedKeys().getInt(1);
+
+                        // Insert data into TPPlayerHand table
+                        psPlayerHand.setInt(1, p.getInteger("id"));
+                        psPlayerHand.setInt(2, handID);
+                        psPlayerHand.setBoolean(3, p.getBoolean("fold"));
+                        psPlayerHand.setBoolean(4, p.getBoolean("allin"));
+                        psPlayerHand.addBatch();
+
+                        if (p.getBoolean("idled")) {
+                            // Insert data into TPPlayerIdle table
+                            psIdle.setInt(1, p.getInteger("id"));
+                            psIdle.setInt(2, roundID);
+                            psIdle.setInt(3, idle);
+                            psIdle.setInt(4, idleWarning);
+                            psIdle.addBatch();
+                        }
                     }
+                    psChange.executeBatch();
+                    psPlayerHand.executeBatch();
+                    psIdle.executeBatch();
                 }
-            }
-            
-            for (PokerPot pot : pots) {
-                // Insert data into TPPot table
-                sql = getSQL("INSERT_TPPOT");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, roundID);
-                    ps.setInt(2, pot.getTotal());
-                    ps.executeUpdate();
-                    potID = ps.getGeneratedKeys().getInt(1);
-                }
-                
-                // Insert data into TPPlayerPot table
-                for (PokerPlayer p : pot.getDonors()) {
-                    sql = getSQL("INSERT_TPPLAYERPOT");
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setInt(1, p.getInteger("id"));
-                        ps.setInt(2, potID);
-                        ps.setInt(3, pot.getContribution(p));
-                        ps.setBoolean(4, pot.isWinner(p));
-                        ps.executeUpdate();
+
+                try (PreparedStatement psPot = prepareSQL(conn, "INSERT_TPPOT");
+                        PreparedStatement psPlayerPot = prepareSQL(conn, "INSERT_TPPLAYERPOT")) {
+                    for (Record pot : potRecords) {
+                        // Insert data into TPPot table
+                        psPot.setInt(1, roundID);
+                        psPot.setInt(2, pot.getInteger("total"));
+                        psPot.executeUpdate();
+                        potID = psPot.getGeneratedKeys().getInt(1);
+
+                        // Insert data into TPPlayerPot table
+                        for (Record donor : (ArrayList<Record>) pot.get("donors")) {
+                            psPlayerPot.setInt(1, donor.getInteger("id"));
+                            psPlayerPot.setInt(2, potID);
+                            psPlayerPot.setInt(3, donor.getInteger("contribution"));
+                            psPlayerPot.setBoolean(4, donor.getBoolean("winner"));
+                            psPlayerPot.addBatch();
+                        }
                     }
+                    psPlayerPot.executeBatch();
                 }
+                
+                logDBWarning(conn.getWarnings());
             }
-            
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
-        }
+        });
     }
     
     /////////////////////////////////////////////////////////
@@ -1699,7 +1757,7 @@ public class TexasPoker extends CardGame{
         PokerPlayer p = (PokerPlayer) currentPlayer;
         
         // A bet that's an all-in (takes precedence)
-        if (amount == p.getInteger("cash")){
+        if (amount == p.getInt("cash")){
             if (amount > currentBet || topBettor == null){
                 topBettor = p;
             }
@@ -1713,7 +1771,7 @@ public class TexasPoker extends CardGame{
             p.put("allin", true);
             continueRound();
         // A bet that's larger than a player's stack
-        } else if (amount > p.getInteger("cash")) {
+        } else if (amount > p.getInt("cash")) {
             informPlayer(p.getNick(), getMsg("insufficient_funds"));
             setIdleOutTask();
         // A bet that's lower than the current bet
@@ -1750,7 +1808,7 @@ public class TexasPoker extends CardGame{
         cancelIdleOutTask();
         PokerPlayer p = (PokerPlayer) currentPlayer;
         
-        if (currentBet == 0 || p.getInteger("bet") == currentBet){
+        if (currentBet == 0 || p.getInt("bet") == currentBet){
             if (topBettor == null){
                 topBettor = p;
             }
@@ -1769,12 +1827,12 @@ public class TexasPoker extends CardGame{
     public void call(){
         cancelIdleOutTask();
         PokerPlayer p = (PokerPlayer) currentPlayer;
-        int total = Math.min(p.getInteger("cash"), currentBet);
+        int total = Math.min(p.getInt("cash"), currentBet);
         
         if (topBettor == null){
             topBettor = p;
         }
-        if (total == p.getInteger("cash")){
+        if (total == p.getInt("cash")){
             p.put("allin", true);
         }
         
@@ -1864,7 +1922,7 @@ public class TexasPoker extends CardGame{
         
         // Add in the amounts currently being betted
         for (Player p : joined) {
-            total += p.getInteger("bet");
+            total += p.getInt("bet");
         }
         
         return total;
@@ -1875,66 +1933,8 @@ public class TexasPoker extends CardGame{
      * If no pot exists, a new one is created. Sidepots are created as necessary.
      */
     protected void addBetsToPot(){
-        int lowBet;
-        while(currentBet != 0){
-            lowBet = currentBet;
-            // Only add bets to a pot if more than one player has made a bet
-            if (getNumberBettors() > 1) {
-                // Create a new pot if currentPot is set to null
-                if (currentPot == null){
-                    currentPot = new PokerPot();
-                    pots.add(currentPot);
-                } else {
-                    // Determine if anybody in the current pot has no more bet
-                    // left to contribute but is still in the game. If so, 
-                    // then a new pot will be required.
-                    for (PokerPlayer p : currentPot.getEligibles()) {
-                        if (!p.has("bet") && currentBet != 0 && !p.has("fold")) {
-                            currentPot = new PokerPot();
-                            pots.add(currentPot);
-                            break;
-                        }
-                    }
-                }
-
-                // Determine the lowest non-zero bet
-                for (Player p : joined) {
-                    if (p.getInteger("bet") < lowBet && p.has("bet")){
-                        lowBet = p.getInteger("bet");
-                    }
-                }
-                
-                // Subtract lowBet from each player's (non-zero) bet and add to pot.
-                for (Player p : joined) {
-                    if (p.has("bet")){
-                        // Add a lowBet pot contribution for the player
-                        currentPot.contribute((PokerPlayer) p, lowBet);
-                        if (p.has("fold")) {
-                            currentPot.disqualify((PokerPlayer) p);
-                        }
-                        p.add("cash", -1 * lowBet);
-                        p.add("winnings", -1 * lowBet);
-                        p.add("bet", -1 * lowBet);
-                        p.add("change", -1 * lowBet);
-                    }
-                }
-                // Update currentbet
-                currentBet -= lowBet;
-            
-            // If only one player has any bet left then it should not be
-            // contributed to the current pot and his bet and currentBet should
-            // be reset.
-            } else {
-                for (Player p : joined) {
-                    if (p.getInteger("bet") != 0){
-                        p.clear("bet");
-                        break;
-                    }
-                }
-                currentBet = 0;
-                break;
-            }
-        }
+        currentPot = PokerPot.addBets(joined, pots, currentPot, currentBet);
+        currentBet = 0;
     }
     
     ////////////////////////////////////////////////////////
@@ -2085,84 +2085,90 @@ public class TexasPoker extends CardGame{
     @Override
     public void showPlayerRank(String nick, String stat) throws IllegalArgumentException {
         String statName = "";
+        String section = name;
         String line = Colors.BLACK + ",08";
-        String sql;
         
-        // Build SQL query
+        // Choose leaderboard
         if (stat.equals("cash")) {
-            sql = getSQL("SELECT_RANK_CASH_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "cash";
             line += "Cash: ";
         } else if (stat.equalsIgnoreCase("bank")) {
-            sql = getSQL("SELECT_RANK_BANK_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "bank";
             line += "Bank: ";
         } else if (stat.equalsIgnoreCase("bankrupts")) {
-            sql = getSQL("SELECT_RANK_BANKRUPTS_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "bankrupts";
             line += "Bankrupts: ";
         } else if (stat.equalsIgnoreCase("net") || stat.equals("netcash")) {
-            sql = getSQL("SELECT_RANK_NETCASH_BY_NICK");
+            section = PlayerCache.PURSE;
             statName = "netcash";
             line += "Net Cash: ";
         } else if (stat.equalsIgnoreCase("rounds")) {
-            sql = getSQL("SELECT_RANK_TPROUNDS_BY_NICK");
             statName = "rounds";
             line += "Texas Hold'em Rounds (min. 1 round): ";
         } else if (stat.equalsIgnoreCase("winnings")) {
-            sql = getSQL("SELECT_RANK_TPWINNINGS_BY_NICK");
             statName = "winnings";
             line += "Texas Hold'em Winnings (min. 1 round): ";
         } else if (stat.equalsIgnoreCase("winrate")) {
-            sql = getSQL("SELECT_RANK_TPWINRATE_BY_NICK");
             statName = "winrate";
             line += "Texas Hold'em Win Rate (min. 50 rounds): ";
         } else {
             throw new IllegalArgumentException();
         }
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            // Retrieve data from DB if possible
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, nick);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        line += "#" + rs.getInt("rank") + " " + Colors.WHITE + ",04 " + formatNoPing(rs.getString("nick"));
-                        if (statName.equals("winrate")){
-                            if (rs.getInt("rounds") < 50) {
-                                line = String.format("%s (%d) has not played enough rounds of %s. A minimum of 50 rounds must be played to qualify for a win rate ranking.", formatNoPing(rs.getString("nick")), rs.getInt("rounds"), getGameNameStr());
-                            } else {
-                                line += " $" + formatDecimal(rs.getDouble(statName));
-                            }
-                        } else if (statName.equals("rounds")) {
-                            if (rs.getInt("rounds") == 0) {
-                                line = String.format(getMsg("player_no_rounds"), formatNoPing(rs.getString("nick")), getGameNameStr());
-                            } else {
-                                line += " " + formatNumber(rs.getInt(statName));
-                            }
-                        } else if (statName.equals("winnings")) {
-                            if (rs.getInt("rounds") == 0) {
-                                line = String.format(getMsg("player_no_rounds"), formatNoPing(rs.getString("nick")), getGameNameStr());
-                            } else {
-                                line += " $" + formatNumber(rs.getInt(statName));
-                            }
-                        } else if (statName.equals("bankrupts")) {
-                            line += " " + formatNumber(rs.getInt(statName));
-                        } else {
-                            line += " $" + formatNumber(rs.getInt(statName));
-                        }
-                        
-                        // Show rank
-                        showMsg(line);
-                    } else {
-                        showMsg(getMsg("no_data"), formatNoPing(nick));
-                    }
-                }
+        Player record = loadDBPlayerRecord(nick);
+        if (record == null) {
+            showMsg(getMsg("no_data"), formatNoPing(nick));
+            return;
+        }
+        
+        // Players not yet on the leaderboard are ranked by their record
+        double value;
+        if (statName.equals("winrate")) {
+            value = record.getInteger("winnings") * 1.0 / Math.max(1, record.getInteger("rounds"));
+        } else if (statName.equals("netcash")) {
+            value = record.getInt("cash") + record.getInt("bank");
+        } else {
+            value = record.getInteger(statName);
+        }
+        
+        // Players on the leaderboard are shown with the saved value they are
+        // ranked by rather than a joined player's live value
+        Leaderboard board = getLeaderboard(section, statName);
+        int rank;
+        synchronized (board) {
+            value = board.getValue(record.getInteger("id"), value);
+            rank = board.getRank(record.getInteger("id"), value);
+        }
+        line += "#" + rank + " " + Colors.WHITE + ",04 " + formatNoPing(record.getNick());
+        if (statName.equals("winrate")){
+            if (record.getInteger("rounds") < 50) {
+                line = String.format("%s (%d) has not played enough rounds of %s. A minimum of 50 rounds must be played to qualify for a win rate ranking.", formatNoPing(record.getNick()), record.getInteger("rounds"), getGameNameStr());
+            } else {
+                line += " $" + formatDecimal(value);
             }
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+        } else if (statName.equals("rounds")) {
+            if (record.getInteger("rounds") == 0) {
+                line = String.format(getMsg("player_no_rounds"), formatNoPing(record.getNick()), getGameNameStr());
+            } else {
+                line += " " + formatNumber((int) value);
+            }
+        } else if (statName.equals("winnings")) {
+            if (record.getInteger("rounds") == 0) {
+                line = String.format(getMsg("player_no_rounds"), formatNoPing(record.getNick()), getGameNameStr());
+            } else {
+                line += " $" + formatNumber((int) value);
+            }
+        } else if (statName.equals("bankrupts")) {
+            line += " " + formatNumber((int) value);
+        } else {
+            line += " $" + formatNumber((int) value);
         }
+        
+        // Show rank
+        showMsg(line);
     }
     
     @Override
@@ -2174,100 +2180,67 @@ public class TexasPoker extends CardGame{
         String title = Colors.BOLD + Colors.BLACK + ",08 Top %,d-%,d";
         String list = Colors.BLACK + ",08";
         String statName = "";
-        String sql = "";
-        String sqlBounds = "";
+        String section = name;
         
         if (stat.equalsIgnoreCase("cash")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_CASH");
+            section = PlayerCache.PURSE;
             statName = "cash";
             title += " Cash ";
         } else if (stat.equalsIgnoreCase("bank")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_BANK");
+            section = PlayerCache.PURSE;
             statName = "bank";
             title += " Bank ";
         } else if (stat.equalsIgnoreCase("bankrupts")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_BANKRUPTS");
+            section = PlayerCache.PURSE;
             statName = "bankrupts";
             title += " Bankrupts ";
         } else if (stat.equalsIgnoreCase("net") || stat.equalsIgnoreCase("netcash")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_PURSE");
-            sql = getSQL("SELECT_TOP_NETCASH");
+            section = PlayerCache.PURSE;
             statName = "netcash";
             title += " Net Cash ";
         } else if (stat.equalsIgnoreCase("winnings")){
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_TPWINNINGS");
-            sql = getSQL("SELECT_TOP_TPWINNINGS");
             statName = "winnings";
             title += " Texas Hold'em Winnings (min. 1 round) ";
         } else if (stat.equalsIgnoreCase("rounds")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_TPROUNDS");
-            sql = getSQL("SELECT_TOP_TPROUNDS");
             statName = "rounds";
             title += " Texas Hold'em Rounds (min. 1 round) ";
         } else if (stat.equalsIgnoreCase("winrate")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_TPWINRATE");
-            sql = getSQL("SELECT_TOP_TPWINRATE");
             statName = "winrate";
             title += " Texas Hold'em Win Rate (min. 50 rounds) ";
         } else {
             throw new IllegalArgumentException();
         }
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            int limit = 10;
-            int offset = 0;
-            
-            // Retrieve offset
-            try (PreparedStatement ps = conn.prepareStatement(sqlBounds)) {
-                ps.setInt(1, n);
-                ps.setInt(2, n);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        limit = rs.getInt("top_limit");
-                        offset = rs.getInt("top_offset");
-                    }
-                }
-            }
-            
-            title = String.format(title, offset+1, offset+limit);
-            
-            // Retrieve data from DB if possible
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, limit);
-                ps.setInt(2, offset);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        int ctr = offset + 1;
-                        // Add the players in the required range
-                        while (rs.next()) {
-                            list += " #" + ctr++ + ": " + Colors.WHITE + ",04 ";
-                            if (statName.equals("winrate")) {
-                                list += formatNoPing(rs.getString("nick")) + " $" + formatDecimal(rs.getDouble(statName));
-                            } else if (statName.equals("rounds") || statName.equals("bankrupts")) {
-                                list += formatNoPing(rs.getString("nick")) + " " + formatNumber(rs.getInt(statName));
-                            } else {
-                                list += formatNoPing(rs.getString("nick")) + " $" + formatNumber(rs.getInt(statName));
-                            }
-                            list += " " + Colors.BLACK + ",08";
-                        }
-                        
-                        // Output title and the list
-                        showMsg(title);
-                        showMsg(list);
-                    } else {
-                        showMsg("No %s data for %s.", statName, getGameNameStr());
-                    }
-                }
+        // Show up to 10 players ending at rank n
+        Leaderboard board = getLeaderboard(section, statName);
+        int size = board.size();
+        int limit = Math.min(Math.min(n, size), 10);
+        int offset = Math.max(0, Math.min(size, n) - 10);
+        ArrayList<Record> top = board.getRange(offset, limit);
+        
+        if (top.isEmpty()) {
+            showMsg("No %s data for %s.", statName, getGameNameStr());
+            return;
+        }
+        
+        title = String.format(title, offset+1, offset+limit);
+        int ctr = offset + 1;
+        // Add the players in the required range
+        for (Record record : top) {
+            list += " #" + ctr++ + ": " + Colors.WHITE + ",04 ";
+            if (statName.equals("winrate")) {
+                list += formatNoPing(record.getString("nick")) + " $" + formatDecimal(record.getDouble("value"));
+            } else if (statName.equals("rounds") || statName.equals("bankrupts")) {
+                list += formatNoPing(record.getString("nick")) + " " + formatNumber(record.getDouble("value").intValue());
+            } else {
+                list += formatNoPing(record.getString("nick")) + " $" + formatNumber(record.getDouble("value").intValue());
             }
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+            list += " " + Colors.BLACK + ",08";
         }
+        
+        // Output title and the list
+        showMsg(title);
+        showMsg(list);
     }
     
     /**
@@ -2279,14 +2252,14 @@ public class TexasPoker extends CardGame{
         Collections.sort(list, Player.getComparator("cash"));
         
         for (Player p : list) {
-            msg += p.getNick(false) + " (" + formatBold("$" + formatNumber(p.getInteger("cash")));
+            msg += p.getNick(false) + " (" + formatBold("$" + formatNumber(p.getInt("cash")));
             // Add player stack change
-            if (p.getInteger("change") > 0) {
-                msg += "[" + Colors.DARK_GREEN + Colors.BOLD + "$" + formatNumber(p.getInteger("change")) + Colors.NORMAL + "]";
-            } else if (p.getInteger("change") < 0) {
-                msg += "[" + Colors.RED + Colors.BOLD + "$" + formatNumber(p.getInteger("change")) + Colors.NORMAL + "]";
+            if (p.getInt("change") > 0) {
+                msg += "[" + Colors.DARK_GREEN + Colors.BOLD + "$" + formatNumber(p.getInt("change")) + Colors.NORMAL + "]";
+            } else if (p.getInt("change") < 0) {
+                msg += "[" + Colors.RED + Colors.BOLD + "$" + formatNumber(p.getInt("change")) + Colors.NORMAL + "]";
             } else {
-                msg += "[" + Colors.BOLD + "$" + formatNumber(p.getInteger("change")) + Colors.NORMAL + "]";
+                msg += "[" + Colors.BOLD + "$" + formatNumber(p.getInt("change")) + Colors.NORMAL + "]";
             }
             msg += "), ";
         }
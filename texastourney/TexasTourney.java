@@ -22,19 +22,22 @@ package irccasino.texastourney;
 import irccasino.cardgame.CardDeck;
 import irccasino.GameManager;
 import irccasino.cardgame.CardGame;
+import irccasino.cardgame.CommandRegistry;
 import irccasino.cardgame.Hand;
+import irccasino.cardgame.Leaderboard;
+import irccasino.cardgame.NickIndex;
+import irccasino.cardgame.PersistenceTask;
 import irccasino.cardgame.Player;
+import irccasino.cardgame.PlayerCache;
 import irccasino.cardgame.Record;
 import irccasino.texaspoker.PokerPot;
 import irccasino.texaspoker.PokerPlayer;
-import irccasino.texaspoker.PokerSimulator;
 import irccasino.texaspoker.TexasPoker;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -46,6 +49,36 @@ import org.pircbotx.*;
  * @author Yizhe Shen
  */
 public class TexasTourney extends TexasPoker {
+    /** The commands of a Texas Hold'em tournament. */
+    private static final CommandRegistry TOURNEY_COMMANDS = new CommandRegistry(POKER_COMMANDS)
+            .remove("last")
+            .remove("netcash")
+            .remove("bank")
+            .remove("bankrupts")
+            .remove("winnings")
+            .remove("rounds")
+            .remove("deposit")
+            .remove("rathole")
+            .remove("withdraw")
+            .remove("waitlist")
+            .remove("flast")
+            .remove("fdeposit")
+            .remove("fwithdraw")
+            .remove("cards")
+            .remove("discards")
+            .remove("test1")
+            .remove("test2")
+            .remove("test3")
+            .add("stop", "cancel")
+            .add("cash")
+            .add("tourneys", "rounds")
+            .add("wins")
+            .add("grules")
+            .add("ghelp")
+            .add("gcommands");
+    
+    /** The keys of the tournament stats kept in the player cache. */
+    private static final String[] STAT_KEYS = {"tourneys", "points", "idles"};
     
     ArrayList<Player> newOutList;
     int tourneyRounds;
@@ -85,116 +118,19 @@ public class TexasTourney extends TexasPoker {
     /////////////////////////////////////////
     
     @Override
-    public void processCommand(User user, String command, String[] params){
+    protected CommandRegistry getCommandRegistry() {
+        return TOURNEY_COMMANDS;
+    }
+    
+    @Override
+    protected void executeCommand(User user, String command, String[] params){
         String nick = user.getNick();
-        String host = user.getHostmask();
         
-        // Commands available in TexasTourney.
-        if (command.equalsIgnoreCase("join") || command.equalsIgnoreCase("j")){
-            join(nick, host);
-        } else if (command.equalsIgnoreCase("leave") || command.equalsIgnoreCase("quit") || command.equalsIgnoreCase("l") || command.equalsIgnoreCase("q")){
-            leave(nick, params);
-        } else if (command.equalsIgnoreCase("start") || command.equalsIgnoreCase("go")) {
-            start(nick, params);
-        } else if (command.equalsIgnoreCase("stop") || command.equalsIgnoreCase("cancel")) {
-            stop(nick, params);
-        } else if (command.equalsIgnoreCase("cash")) {
-            cash(nick, params);
-        } else if (command.equalsIgnoreCase("tourneys") || command.equalsIgnoreCase("rounds")) {
-            rounds(nick, params);
-        } else if (command.equalsIgnoreCase("wins")) {
-            wins(nick, params);
-        } else if (command.equalsIgnoreCase("winrate")) {
-            winrate(nick, params);
-        } else if (command.equalsIgnoreCase("player") || command.equalsIgnoreCase("p")){
-            player(nick, params);
-        } else if (command.equalsIgnoreCase("bet") || command.equalsIgnoreCase("b")) {
-            bet(nick, params);
-        } else if (command.equalsIgnoreCase("c") || command.equalsIgnoreCase("ca") || command.equalsIgnoreCase("call")) {
-            call(nick, params);
-        } else if (command.equalsIgnoreCase("x") || command.equalsIgnoreCase("ch") || command.equalsIgnoreCase("check")) {
-            check(nick, params);
-        } else if (command.equalsIgnoreCase("fold") || command.equalsIgnoreCase("f")) {
-            fold(nick, params);
-        } else if (command.equalsIgnoreCase("raise") || command.equalsIgnoreCase("r")) {
-            raise(nick, params);
-        } else if (command.equalsIgnoreCase("allin") || command.equalsIgnoreCase("a")){
-            allin(nick, params);
-        } else if (command.equalsIgnoreCase("community") || command.equalsIgnoreCase("comm")){
-            community(nick, params);
-        } else if (command.equalsIgnoreCase("hand")) {
-            hand(nick, params);
-        } else if (command.equalsIgnoreCase("turn")) {
-            turn(nick, params);
-        } else if (command.equalsIgnoreCase("players")) {
-            players(nick, params);
-        } else if (command.equalsIgnoreCase("blacklist")) {
-            blacklist(nick, params);
-        } else if (command.equalsIgnoreCase("rank")) {
-            rank(nick, params);
-        } else if (command.equalsIgnoreCase("top")) {
-            top(nick, params);
-        } else if (command.equalsIgnoreCase("away")){
-            away(nick, params);
-        } else if (command.equalsIgnoreCase("back")){
-            back(nick, params);
-        } else if (command.equalsIgnoreCase("ping")) {
-            ping(nick, params);
-        } else if (command.equalsIgnoreCase("simple")) {
-            simple(nick, params);
-        } else if (command.equalsIgnoreCase("stats")){
-            stats(nick, params);
-        } else if (command.equalsIgnoreCase("grules")) {
-            grules(nick, params);
-        } else if (command.equalsIgnoreCase("ghelp")) {
-            ghelp(nick, params);
-        } else if (command.equalsIgnoreCase("gcommands")) {
-            gcommands(user, nick, params);
-        } else if (command.equalsIgnoreCase("game")) {
-            game(nick, params);
-        } else if (command.equalsIgnoreCase("gversion")) {
-            gversion(nick, params);
-        /* Op commands */
-        } else if (command.equalsIgnoreCase("fj") || command.equalsIgnoreCase("fjoin")){
-            fjoin(user, nick, params);
-        } else if (command.equalsIgnoreCase("fl") || command.equalsIgnoreCase("fq") || command.equalsIgnoreCase("fquit") || command.equalsIgnoreCase("fleave")){
-            fleave(user, nick, params);
-        } else if (command.equalsIgnoreCase("fstart") || command.equalsIgnoreCase("fgo")){
-            fstart(user, nick, params);
-        } else if (command.equalsIgnoreCase("fstop")){
-            fstop(user, nick, params);
-        } else if (command.equalsIgnoreCase("fb") || command.equalsIgnoreCase("fbet")){
-            fbet(user, nick, params);
-        } else if (command.equalsIgnoreCase("fa") || command.equalsIgnoreCase("fallin")){
-            fallin(user, nick, params);
-        } else if (command.equalsIgnoreCase("fr") || command.equalsIgnoreCase("fraise")){
-            fraise(user, nick, params);
-        } else if (command.equalsIgnoreCase("fc") || command.equalsIgnoreCase("fca") || command.equalsIgnoreCase("fcall")){
-            fcall(user, nick, params);
-        } else if (command.equalsIgnoreCase("fx") || command.equalsIgnoreCase("fch") || command.equalsIgnoreCase("fcheck")){
-            fcheck(user, nick, params);
-        } else if (command.equalsIgnoreCase("ff") || command.equalsIgnoreCase("ffold")){
-            ffold(user, nick, params);
-        } else if (command.equalsIgnoreCase("shuffle")){
-            shuffle(user, nick, params);
-        } else if (command.equalsIgnoreCase("reload")) {
-            reload(user, nick, params);
-        } else if (command.equalsIgnoreCase("settings")) {
-            settings(user, nick, params);
-        } else if (command.equalsIgnoreCase("set")){
-            set(user, nick, params);
-        } else if (command.equalsIgnoreCase("get")) {
-            get(user, nick, params);
-        } else if (command.equalsIgnoreCase("resetaway")){
-            resetaway(user, nick, params);
-        } else if (command.equalsIgnoreCase("resetsimple")) {
-            resetsimple(user, nick, params);
-        } else if (command.equalsIgnoreCase("trim")) {
-            trim(user, nick, params);
-        } else if (command.equalsIgnoreCase("query") || command.equalsIgnoreCase("sql")) {
-            query(user, nick, params);
-        } else if (command.equalsIgnoreCase("migrate")) {
-            migrate(user, nick, params);
+        // Commands available only in TexasTourney.
+        switch (command) {
+            case "tourneys": rounds(nick, params); break;
+            case "wins": wins(nick, params); break;
+            default: super.executeCommand(user, command, params);
         }
     }
     
@@ -237,19 +173,24 @@ public class TexasTourney extends TexasPoker {
     
     @Override
     public void join(String nick, String host) {
-        CardGame game = manager.getGame(nick);
-        if (joined.size() == get("maxplayers")){
-            informPlayer(nick, getMsg("max_players"));
-        } else if (isJoined(nick)) {
-            informPlayer(nick, getMsg("is_joined"));
-        } else if (isBlacklisted(nick) || manager.isBlacklisted(nick)) {
-            informPlayer(nick, getMsg("on_blacklist"));
-        } else if (game != null) {
-            informPlayer(nick, getMsg("is_joined_other"), game.getGameNameStr(), game.getChannel().getName());
-        } else if (isInProgress()) {
-            informPlayer(nick, getMsg("tt_started_unable_join"));
-        } else {
-            addPlayer(nick, host);
+        NickIndex nickIndex = manager.getNickIndex();
+        CardGame game = nickIndex.claim(this, nick);
+        try {
+            if (joined.size() == get("maxplayers")){
+                informPlayer(nick, getMsg("max_players"));
+            } else if (isJoined(nick)) {
+                informPlayer(nick, getMsg("is_joined"));
+            } else if (isBlacklisted(nick) || manager.isBlacklisted(nick)) {
+                informPlayer(nick, getMsg("on_blacklist"));
+            } else if (game != null) {
+                informPlayer(nick, getMsg("is_joined_other"), game.getGameNameStr(), game.getChannel().getName());
+            } else if (isInProgress()) {
+                informPlayer(nick, getMsg("tt_started_unable_join"));
+            } else {
+                addPlayer(nick, host);
+            }
+        } finally {
+            nickIndex.release(this, nick);
         }
     }
     
@@ -438,7 +379,7 @@ public class TexasTourney extends TexasPoker {
         } else if (state.equals(PokerState.CONTINUE_ROUND)) {
             informPlayer(nick, getMsg("game_lagging"));
         } else {
-            bet(currentPlayer.getInteger("cash"));
+            bet(currentPlayer.getInt("cash"));
         }
     }
     
@@ -473,9 +414,9 @@ public class TexasTourney extends TexasPoker {
             informPlayer(nick, getMsg("nobody_turn"));
         } else {
             showMsg(getMsg("tp_turn"), currentPlayer.getNickStr(), 
-                    currentBet - currentPlayer.getInteger("bet"), 
-                    currentPlayer.getInteger("bet"), currentBet, getCashInPlay(), 
-                    currentPlayer.getInteger("cash") - currentPlayer.getInteger("bet"));
+                    currentBet - currentPlayer.getInt("bet"), 
+                    currentPlayer.getInt("bet"), currentBet, getCashInPlay(), 
+                    currentPlayer.getInt("cash") - currentPlayer.getInt("bet"));
         }
     }
     
@@ -556,19 +497,24 @@ public class TexasTourney extends TexasPoker {
             while(it.hasNext()){
                 User u = it.next();
                 if (u.getNick().equalsIgnoreCase(fNick)){
-                    CardGame game = manager.getGame(fNick);
-                    if (joined.size() == get("maxplayers")){
-                        informPlayer(nick, getMsg("max_players"));
-                    } else if (isJoined(fNick)) {
-                        informPlayer(nick, getMsg("is_joined_nick"), fNick);
-                    } else if (isBlacklisted(fNick) || manager.isBlacklisted(fNick)) {
-                        informPlayer(nick, getMsg("on_blacklist_nick"), fNick);
-                    } else if (game != null) {
-                        informPlayer(nick, getMsg("is_joined_other_nick"), fNick, game.getGameNameStr(), game.getChannel().getName());
-                    } else if (isInProgress()) {
-                        informPlayer(nick, getMsg("tt_started_unable_join"));
-                    } else {
-                        addPlayer(u.getNick(), u.getHostmask());
+                    NickIndex nickIndex = manager.getNickIndex();
+                    CardGame game = nickIndex.claim(this, fNick);
+                    try {
+                        if (joined.size() == get("maxplayers")){
+                            informPlayer(nick, getMsg("max_players"));
+                        } else if (isJoined(fNick)) {
+                            informPlayer(nick, getMsg("is_joined_nick"), fNick);
+                        } else if (isBlacklisted(fNick) || manager.isBlacklisted(fNick)) {
+                            informPlayer(nick, getMsg("on_blacklist_nick"), fNick);
+                        } else if (game != null) {
+                            informPlayer(nick, getMsg("is_joined_other_nick"), fNick, game.getGameNameStr(), game.getChannel().getName());
+                        } else if (isInProgress()) {
+                            informPlayer(nick, getMsg("tt_started_unable_join"));
+                        } else {
+                            addPlayer(u.getNick(), u.getHostmask());
+                        }
+                    } finally {
+                        nickIndex.release(this, fNick);
                     }
                     return;
                 }
@@ -620,6 +566,7 @@ public class TexasTourney extends TexasPoker {
             informPlayer(nick, getMsg("tt_no_start"));
         } else {
             cancelStartRoundTask();
+            cancelResumeRoundTask();
             cancelIdleOutTask();
             for (Player p : joined) {
                 resetPlayer(p);
@@ -663,7 +610,7 @@ public class TexasTourney extends TexasPoker {
         } else if (state.equals(PokerState.CONTINUE_ROUND)) {
             informPlayer(nick, getMsg("game_lagging"));
         } else {
-            bet(currentPlayer.getInteger("cash"));
+            bet(currentPlayer.getInt("cash"));
         }
     }
     
@@ -755,7 +702,6 @@ public class TexasTourney extends TexasPoker {
             notSimpleList.clear();
             cmdMap.clear();
             opCmdMap.clear();
-            aliasMap.clear();
             msgMap.clear();
             sqlMap.clear();
             loadIni();
@@ -1001,27 +947,7 @@ public class TexasTourney extends TexasPoker {
                  * probabilities immediately and each time additional community
                  * cards are revealed. Adds a dramatic delay between each reveal.
                  */
-                state = PokerState.SHOWDOWN;
-                PokerSimulator sim = new PokerSimulator();
-                ArrayList<PokerPlayer> list = pots.get(0).getEligibles();
-                sim.addPlayers(list);
-                
-                while (!betState.equals(PokerBet.RIVER)) {
-                    sim.addCommunity(community);
-                    sim.run();
-                    showShowdown(list, sim);
-                    sim.reset();
-
-                   // Add a delay for dramatic effect
-                   try { Thread.sleep(get("showdown") * 1000); } catch (InterruptedException e){}
-                   
-                   // Deal some community cards
-                   burnCard();
-                   dealCommunity();
-                   betState = betState.next();
-                   showCommunityCards(false);
-                }
-                endRound();
+                startShowdown();
             } else {
                 burnCard();
                 dealCommunity();
@@ -1034,9 +960,9 @@ public class TexasTourney extends TexasPoker {
             state = PokerState.BETTING;
             currentPlayer = nextPlayer;
             showMsg(getMsg("tp_turn"), currentPlayer.getNickStr(), 
-                    currentBet - currentPlayer.getInteger("bet"), 
-                    currentPlayer.getInteger("bet"), currentBet, getCashInPlay(), 
-                    currentPlayer.getInteger("cash") - currentPlayer.getInteger("bet"));
+                    currentBet - currentPlayer.getInt("bet"), 
+                    currentPlayer.getInt("bet"), currentBet, getCashInPlay(), 
+                    currentPlayer.getInt("cash") - currentPlayer.getInt("bet"));
             setIdleOutTask();
         }
     }
@@ -1098,8 +1024,8 @@ public class TexasTourney extends TexasPoker {
     @Override
     public void endGame() {
         cancelStartRoundTask();
+        cancelResumeRoundTask();
         cancelIdleOutTask();
-        gameTimer.cancel();
         deck = null;
         community = null;
         pots.clear();
@@ -1118,7 +1044,6 @@ public class TexasTourney extends TexasPoker {
         notSimpleList.clear();
         cmdMap.clear();
         opCmdMap.clear();
-        aliasMap.clear();
         msgMap.clear();
         settings.clear();
     }
@@ -1134,6 +1059,7 @@ public class TexasTourney extends TexasPoker {
         bigBlind = null;
         smallBlind = null;
         topBettor = null;
+        showdownSim = null;
         deck.refillDeck();
     }
     
@@ -1232,7 +1158,7 @@ public class TexasTourney extends TexasPoker {
         int newBlind = (int) (get("minbet")*(Math.pow(2, tourneyRounds/get("doubleblinds") + numOuts)));
         
         // Set the small blind
-        if (newBlind/2 >= smallBlind.getInteger("cash")) {
+        if (newBlind/2 >= smallBlind.getInt("cash")) {
             smallBlind.put("allin", true);
             smallBlind.put("bet", smallBlind.get("cash"));
         } else {
@@ -1240,7 +1166,7 @@ public class TexasTourney extends TexasPoker {
         }
         
         // Set the big blind
-        if (newBlind >= bigBlind.getInteger("cash")) {
+        if (newBlind >= bigBlind.getInt("cash")) {
             bigBlind.put("allin", true);
             bigBlind.put("bet", bigBlind.get("cash"));
         } else {
@@ -1274,6 +1200,7 @@ public class TexasTourney extends TexasPoker {
             
             // If we get down here, then cancel the tournament
             cancelStartRoundTask();
+            cancelResumeRoundTask();
             cancelIdleOutTask();
             showMsg(getMsg("tt_cancel_tourney"));
             for (Player pp : joined) {
@@ -1303,9 +1230,12 @@ public class TexasTourney extends TexasPoker {
         settings.put("startwait", 5);
         settings.put("showdown", 10);
         settings.put("revealcommunity", 0);
+        settings.put("simerror", 5);
         settings.put("doubleblinds", 10);
         settings.put("doubleonbankrupt", 0);
         settings.put("ping", 600);
+        settings.put("rng", 1);
+        settings.put("seed", 0);
     }
     
     @Override
@@ -1314,13 +1244,14 @@ public class TexasTourney extends TexasPoker {
         helpFile = "texastourney.help";
         newOutList = new ArrayList<>();
         deck = new CardDeck();
-        deck.shuffleCards();
         pots = new ArrayList<>();
         community = new Hand();
         
         initSettings();
         loadHelp();
         loadIni();
+        updateRandom();
+        deck.shuffleCards();
         state = PokerState.NONE;
         betState = PokerBet.NONE;
         showMsg(getMsg("game_start"), getGameNameStr());
@@ -1348,12 +1279,18 @@ public class TexasTourney extends TexasPoker {
             out.println("showdown=" + get("showdown"));
             out.println("#Whether or not to reveal community when not required");
             out.println("revealcommunity=" + get("revealcommunity"));
+            out.println("#The margin of showdown percentages in tenths of a percent, or 0 for fixed trials");
+            out.println("simerror=" + get("simerror"));
             out.println("#The number of rounds in between doubling of blinds");
             out.println("doubleblinds=" + get("doubleblinds"));
             out.println("#Whether or not to double blinds when a player goes out");
             out.println("doubleonbankrupt=" + get("doubleonbankrupt"));
             out.println("#The rate-limit of the ping command");
             out.println("ping=" + get("ping"));
+            out.println("#The random number generator for shuffling: 0 for fast, 1 for secure");
+            out.println("rng=" + get("rng"));
+            out.println("#The seed for the fast generator so deals can be replayed, or 0 for a random seed");
+            out.println("seed=" + get("seed"));
         } catch (IOException e) {
             manager.log("Error creating " + iniFile + "!");
         }
@@ -1370,12 +1307,22 @@ public class TexasTourney extends TexasPoker {
         } else if (isJoined(nick)) {
             return findJoined(nick);
         } else {
+            // Use the cached stats if available
+            PlayerCache cache = manager.getPlayerCache();
+            Record stats = cache.get(nick, name);
             TourneyPokerPlayer record = null;
-            try (Connection conn = DriverManager.getConnection(dbURL)) {
+            if (stats != null) {
+                record = new TourneyPokerPlayer("");
+                record.putAll(stats);
+                return record;
+            }
+            
+            // A player evicted from the cache may still have a write queued
+            manager.getPersistenceQueue().flush();
+            try (Connection conn = getDBReadConnection()) {
                 conn.setAutoCommit(false);
                 // Retrieve data from Player table if possible
-                String sql = getSQL("SELECT_TTPLAYERVIEW_BY_NICK");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "SELECT_TTPLAYERVIEW_BY_NICK")) {
                     ps.setString(1, nick);
                     try (ResultSet rs = ps.executeQuery()) {
                         if (rs.isBeforeFirst()) {
@@ -1393,25 +1340,41 @@ public class TexasTourney extends TexasPoker {
             } catch (SQLException ex) {
                 manager.log("SQL Error: " + ex.getMessage());
             }
+            
+            if (record != null) {
+                cache.load(record.getString("nick"), record.getInteger("id"), name, record, STAT_KEYS);
+            }
             return record;
         }
     }
     
     @Override
     protected void loadDBPlayerData(Player p) {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        // Initialize
+        p.put("id", 0);
+        p.put("cash", get("cash"));
+        p.put("tourneys", 0);
+        p.put("points", 0);
+        p.put("idles", 0);
+        
+        // Use the cached stats if available
+        PlayerCache cache = manager.getPlayerCache();
+        Record stats = cache.get(p.getNick(), name);
+        if (stats != null) {
+            p.put("id", stats.get("id"));
+            p.put("tourneys", stats.get("tourneys"));
+            p.put("points", stats.get("points"));
+            p.put("idles", stats.get("idles"));
+            return;
+        }
+        
+        // A player evicted from the cache may still have a write queued
+        manager.getPersistenceQueue().flush();
+        try (Connection conn = getDBWriteConnection()) {
             conn.setAutoCommit(false);
             
-            // Initialize
-            p.put("id", 0);
-            p.put("cash", get("cash"));
-            p.put("tourneys", 0);
-            p.put("points", 0);
-            p.put("idles", 0);
-            
             // Retrieve data from Player table if possible
-            String sql = getSQL("SELECT_PLAYER_BY_NICK");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            try (PreparedStatement ps = prepareSQL(conn, "SELECT_PLAYER_BY_NICK")) {
                 ps.setString(1, p.getNick());
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.isBeforeFirst()) {
@@ -1422,8 +1385,7 @@ public class TexasTourney extends TexasPoker {
             
             // Add new player if not found in Player table
             if (!p.has("id")) {
-                sql = getSQL("INSERT_PLAYER");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_PLAYER")) {
                     ps.setString(1, p.getNick());
                     ps.setLong(2, System.currentTimeMillis() / 1000);
                     ps.executeUpdate();
@@ -1433,8 +1395,7 @@ public class TexasTourney extends TexasPoker {
             
             // Retrieve data from TTPlayerStat table if possible
             boolean found = false;
-            sql = getSQL("SELECT_TTPLAYERSTAT_BY_PLAYER_ID");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            try (PreparedStatement ps = prepareSQL(conn, "SELECT_TTPLAYERSTAT_BY_PLAYER_ID")) {
                 ps.setInt(1, p.getInteger("id"));
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.isBeforeFirst()) {
@@ -1448,8 +1409,7 @@ public class TexasTourney extends TexasPoker {
             
             // Add new record if not found in TPPlayerStat table
             if (!found) {
-                sql = getSQL("INSERT_TTPLAYERSTAT");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_TTPLAYERSTAT")) {
                     ps.setInt(1, p.getInteger("id"));
                     ps.setInt(2, p.getInteger("tourneys"));
                     ps.setInt(3, p.getInteger("points"));
@@ -1462,30 +1422,62 @@ public class TexasTourney extends TexasPoker {
             logDBWarning(conn.getWarnings());
         } catch (SQLException ex) {
             manager.log("SQL Error: " + ex.getMessage());
+            return;
         }
+        
+        cache.load(p.getNick(), p.getInteger("id"), name, p, STAT_KEYS);
     }
     
     @Override
     protected void saveDBPlayerDataBatch(ArrayList<Player> players) {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            
-            for (Player p : players) {
-                // Update data in TTPlayerStat table
-                String sql = getSQL("UPDATE_TTPLAYERSTAT");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("tourneys"));
-                    ps.setInt(2, p.getInteger("points"));
-                    ps.setInt(3, p.getInteger("idles"));
-                    ps.setInt(4, p.getInteger("id"));
-                    ps.executeUpdate();
+        PlayerCache cache = manager.getPlayerCache();
+        for (Player p : players) {
+            cache.update(p.getNick(), p.getInteger("id"), name, p, STAT_KEYS);
+        }
+        final ArrayList<Record> records = cache.takeDirty(name, false);
+        if (records.isEmpty()) {
+            return;
+        }
+        updateLeaderboards(records);
+        
+        manager.getPersistenceQueue().submit(new PersistenceTask() {
+            @Override
+            public void persist(Connection conn) throws SQLException {
+                try (PreparedStatement ps = prepareSQL(conn, "UPDATE_TTPLAYERSTAT")) {
+                    for (Record p : records) {
+                        // Update data in TTPlayerStat table
+                        ps.setInt(1, p.getInteger("tourneys"));
+                        ps.setInt(2, p.getInteger("points"));
+                        ps.setInt(3, p.getInteger("idles"));
+                        ps.setInt(4, p.getInteger("id"));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
                 }
+                
+                logDBWarning(conn.getWarnings());
             }
-            
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+        });
+    }
+    
+    @Override
+    protected void indexStats(Record record) {
+        PlayerCache cache = manager.getPlayerCache();
+        int id = record.getInteger("id");
+        String nick = record.getString("nick");
+        int tourneys = record.getInteger("tourneys");
+        int points = record.getInteger("points");
+        if (tourneys > 0) {
+            cache.getLeaderboard(name, "tourneys").put(id, nick, tourneys);
+            cache.getLeaderboard(name, "points").put(id, nick, points);
+        } else {
+            cache.getLeaderboard(name, "tourneys").remove(id);
+            cache.getLeaderboard(name, "points").remove(id);
+        }
+        if (tourneys > 5) {
+            cache.getLeaderboard(name, "winrate").put(id, nick, points * 100.0 / tourneys);
+        } else {
+            cache.getLeaderboard(name, "winrate").remove(id);
         }
     }
     
@@ -1502,9 +1494,8 @@ public class TexasTourney extends TexasPoker {
         record.put("total_players", 0);
         record.put("total_tourneys", 0);
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            String sql = getSQL("SELECT_TTGAMETOTALS");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = getDBReadConnection()) {
+            try (PreparedStatement ps = prepareSQL(conn, "SELECT_TTGAMETOTALS")) {
                 try (ResultSet rs = ps.executeQuery()) {
                     if (rs.isBeforeFirst()) {
                         record.put("total_players", rs.getInt("total_players"));
@@ -1521,58 +1512,64 @@ public class TexasTourney extends TexasPoker {
     
     @Override
     protected void saveDBGameStats() {
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            int tourneyID;
-            // Insert data into TTTourney table
-            String sql = getSQL("INSERT_TTTOURNEY");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setLong(1, startTime);
-                ps.setLong(2, endTime);
-                ps.setString(3, channel.getName());
-                ps.setInt(4, tourneyRounds);
-                ps.executeUpdate();
-                tourneyID = ps.getGeneratedKeys().getInt(1);
-            }
-            
-            // Insert winner into TTPlayerTourney table
-            sql = getSQL("INSERT_TTPLAYERTOURNEY");
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, joined.get(0).getInteger("id"));
-                ps.setInt(2, tourneyID);
-                ps.setBoolean(3, Boolean.TRUE);
-                ps.executeUpdate();
-            }
-            
-            for (Player p : blacklist) {
-                // Insert other players into TTPlayerTourney table
-                sql = getSQL("INSERT_TTPLAYERTOURNEY");
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, p.getInteger("id"));
-                    ps.setInt(2, tourneyID);
-                    ps.setBoolean(3, Boolean.FALSE);
+        final long tourneyStart = startTime;
+        final long tourneyEnd = endTime;
+        final String channelName = channel.getName();
+        final int numRounds = tourneyRounds;
+        final int idle = get("idle");
+        final int idleWarning = get("idlewarning");
+        final int winnerID = joined.get(0).getInteger("id");
+        final ArrayList<Record> losers = new ArrayList<>(blacklist.size());
+        for (Player p : blacklist) {
+            losers.add(new Record(p));
+        }
+        
+        manager.getPersistenceQueue().submit(new PersistenceTask() {
+            @Override
+            public void persist(Connection conn) throws SQLException {
+                int tourneyID;
+                // Insert data into TTTourney table
+                try (PreparedStatement ps = prepareSQL(conn, "INSERT_TTTOURNEY")) {
+                    ps.setLong(1, tourneyStart);
+                    ps.setLong(2, tourneyEnd);
+                    ps.setString(3, channelName);
+                    ps.setInt(4, numRounds);
                     ps.executeUpdate();
+                    tourneyID = ps.getGeneratedKeys().getInt(1);
                 }
-                
-                // Only players in the blacklist could have idled out
-                if (p.getBoolean("idled")) {
-                    // Insert data into TTPlayerIdle table
-                    sql = getSQL("INSERT_TTPLAYERIDLE");
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setInt(1, p.getInteger("id"));
-                        ps.setInt(2, tourneyID);
-                        ps.setInt(3, get("idle"));
-                        ps.setInt(4, get("idlewarning"));
-                        ps.executeUpdate();
+
+                try (PreparedStatement psTourney = prepareSQL(conn, "INSERT_TTPLAYERTOURNEY");
+                        PreparedStatement psIdle = prepareSQL(conn, "INSERT_TTPLAYERIDLE")) {
+                    // Insert winner into TTPlayerTourney table
+                    psTourney.setInt(1, winnerID);
+                    psTourney.setInt(2, tourneyID);
+                    psTourney.setBoolean(3, Boolean.TRUE);
+                    psTourney.addBatch();
+
+                    for (Record p : losers) {
+                        // Insert other players into TTPlayerTourney table
+                        psTourney.setInt(1, p.getInteger("id"));
+                        psTourney.setInt(2, tourneyID);
+                        psTourney.setBoolean(3, Boolean.FALSE);
+                        psTourney.addBatch();
+
+                        // Only players in the blacklist could have idled out
+                        if (p.getBoolean("idled")) {
+                            // Insert data into TTPlayerIdle table
+                            psIdle.setInt(1, p.getInteger("id"));
+                            psIdle.setInt(2, tourneyID);
+                            psIdle.setInt(3, idle);
+                            psIdle.setInt(4, idleWarning);
+                            psIdle.addBatch();
+                        }
                     }
+                    psTourney.executeBatch();
+                    psIdle.executeBatch();
                 }
+                
+                logDBWarning(conn.getWarnings());
             }
-            
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
-        }
+        });
     }
     
     /////////////////////////////////////////////////////////////
@@ -1693,62 +1690,65 @@ public class TexasTourney extends TexasPoker {
     public void showPlayerRank(String nick, String stat) throws IllegalArgumentException {
         String statName = "";
         String line = Colors.BLACK + ",08";
-        String sql;
         
-        // Build SQL query
+        // Choose leaderboard
         if (stat.equalsIgnoreCase("winrate")) {
             statName = "winrate";
-            sql = getSQL("SELECT_RANK_TTWINRATE_BY_NICK");
             line += "Texas Hold'em Tournament Win Rate: ";
         } else if (stat.equalsIgnoreCase("wins")) {
-            sql = getSQL("SELECT_RANK_TTPOINTS_BY_NICK");
             statName = "points";
             line += "Texas Hold'em Tournament Wins (min. 1 tournament): ";
         } else if (stat.equalsIgnoreCase("tourneys")) {
-            sql = getSQL("SELECT_RANK_TTTOURNEYS_BY_NICK");
             statName = "tourneys";
             line += "Texas Hold'em Tournaments Played (min. 1 tournament): ";
         } else {
             throw new IllegalArgumentException();
         }
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            // Retrieve data from DB if possible
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, nick);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        line += "#" + rs.getInt("rank") + " " + Colors.WHITE + ",04 " + formatNoPing(rs.getString("nick"));
-                        if (statName.equals("winrate")){
-                            if (rs.getInt("tourneys") < 5) {
-                                line = String.format("%s (%d) has not played in enough tournaments. A minimum of 5 tournaments must be played to qualify for a win rate ranking.", formatNoPing(rs.getString("nick")), rs.getInt("tourneys"));
-                            } else {
-                                line += " " + formatNoDecimal(rs.getDouble(statName)) + "%%";
-                            }
-                        } else if (statName.equals("points")) {
-                            if (rs.getInt("tourneys") == 0) {
-                                line = String.format(getMsg("tt_player_no_tourneys"), formatNoPing(rs.getString("nick")));
-                            } else {
-                                line += " " + formatNumber(rs.getInt(statName));
-                            }
-                        } else if (statName.equals("tourneys")) {
-                            if (rs.getInt("tourneys") == 0) {
-                                line = String.format(getMsg("tt_player_no_tourneys"), formatNoPing(rs.getString("nick")));
-                            } else {
-                                line += " " + formatNumber(rs.getInt(statName));
-                            }
-                        }
-                        // Show rank
-                        showMsg(line);
-                    } else {
-                        showMsg(getMsg("no_data"), formatNoPing(nick));
-                    }
-                }
+        Player record = loadDBPlayerRecord(nick);
+        if (record == null) {
+            showMsg(getMsg("no_data"), formatNoPing(nick));
+            return;
+        }
+        
+        // Players not yet on the leaderboard are ranked by their record
+        double value;
+        if (statName.equals("winrate")) {
+            value = record.getInteger("points") * 100.0 / Math.max(1, record.getInteger("tourneys"));
+        } else {
+            value = record.getInteger(statName);
+        }
+        
+        // Players on the leaderboard are shown with the saved value they are
+        // ranked by rather than a joined player's live value
+        Leaderboard board = getLeaderboard(name, statName);
+        int rank;
+        synchronized (board) {
+            value = board.getValue(record.getInteger("id"), value);
+            rank = board.getRank(record.getInteger("id"), value);
+        }
+        line += "#" + rank + " " + Colors.WHITE + ",04 " + formatNoPing(record.getNick());
+        if (statName.equals("winrate")){
+            if (record.getInteger("tourneys") < 5) {
+                line = String.format("%s (%d) has not played in enough tournaments. A minimum of 5 tournaments must be played to qualify for a win rate ranking.", formatNoPing(record.getNick()), record.getInteger("tourneys"));
+            } else {
+                line += " " + formatNoDecimal(value) + "%%";
+            }
+        } else if (statName.equals("points")) {
+            if (record.getInteger("tourneys") == 0) {
+                line = String.format(getMsg("tt_player_no_tourneys"), formatNoPing(record.getNick()));
+            } else {
+                line += " " + formatNumber((int) value);
+            }
+        } else if (statName.equals("tourneys")) {
+            if (record.getInteger("tourneys") == 0) {
+                line = String.format(getMsg("tt_player_no_tourneys"), formatNoPing(record.getNick()));
+            } else {
+                line += " " + formatNumber((int) value);
             }
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
         }
+        // Show rank
+        showMsg(line);
     }
     
     @Override
@@ -1760,78 +1760,48 @@ public class TexasTourney extends TexasPoker {
         String title = Colors.BOLD + Colors.BLACK + ",08 Top %,d-%,d";
         String list = Colors.BLACK + ",08";
         String statName = "";
-        String sql = "";
-        String sqlBounds = "";
         
         if (stat.equalsIgnoreCase("wins")){
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_TTPOINTS");
-            sql = getSQL("SELECT_TOP_TTPOINTS");
             statName = "points";
             title += " Texas Hold'em Tournament Wins (min. 1 tournament) ";
         } else if (stat.equalsIgnoreCase("tourneys")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_TTTOURNEYS");
-            sql = getSQL("SELECT_TOP_TTTOURNEYS");
             statName = "tourneys";
             title += " Texas Hold'em Tournaments Played (min. 1 tournament) ";
         } else if (stat.equalsIgnoreCase("winrate")) {
-            sqlBounds = getSQL("SELECT_TOP_BOUNDS_TTWINRATE");
-            sql = getSQL("SELECT_TOP_TTWINRATE");
             statName = "winrate";
             title += " Texas Hold'em Tournament Win Rate (min. 5 tournaments) ";
         } else {
             throw new IllegalArgumentException();
         }
         
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
-            conn.setAutoCommit(false);
-            int limit = 10;
-            int offset = 0;
-            
-            // Retrieve offset
-            try (PreparedStatement ps = conn.prepareStatement(sqlBounds)) {
-                ps.setInt(1, n);
-                ps.setInt(2, n);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        limit = rs.getInt("top_limit");
-                        offset = rs.getInt("top_offset");
-                    }
-                }
-            }
-            
-            title = String.format(title, offset+1, offset+limit);
-            
-            // Retrieve data from DB if possible
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, limit);
-                ps.setInt(2, offset);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.isBeforeFirst()) {
-                        int ctr = offset + 1;
-                        // Add the players in the required range
-                        while (rs.next()) {
-                            list += " #" + ctr++ + ": " + Colors.WHITE + ",04 " + formatNoPing(rs.getString("nick")) + " ";
-                            if (statName.equals("winrate")) {
-                                list += formatNoDecimal(rs.getDouble(statName)) + "%%";
-                            } else {
-                                list += formatNumber(rs.getInt(statName));
-                            }
-                            list += " " + Colors.BLACK + ",08";
-                        }
-                        
-                        // Output title and the list
-                        showMsg(title);
-                        showMsg(list);
-                    } else {
-                        showMsg("No %s data for %s.", statName, getGameNameStr());
-                    }
-                }
+        // Show up to 10 players ending at rank n
+        Leaderboard board = getLeaderboard(name, statName);
+        int size = board.size();
+        int limit = Math.min(Math.min(n, size), 10);
+        int offset = Math.max(0, Math.min(size, n) - 10);
+        ArrayList<Record> top = board.getRange(offset, limit);
+        
+        if (top.isEmpty()) {
+            showMsg("No %s data for %s.", statName, getGameNameStr());
+            return;
+        }
+        
+        title = String.format(title, offset+1, offset+limit);
+        int ctr = offset + 1;
+        // Add the players in the required range
+        for (Record record : top) {
+            list += " #" + ctr++ + ": " + Colors.WHITE + ",04 " + formatNoPing(record.getString("nick")) + " ";
+            if (statName.equals("winrate")) {
+                list += formatNoDecimal(record.getDouble("value")) + "%%";
+            } else {
+                list += formatNumber(record.getDouble("value").intValue());
             }
-            conn.commit();
-            logDBWarning(conn.getWarnings());
-        } catch (SQLException ex) {
-            manager.log("SQL Error: " + ex.getMessage());
+            list += " " + Colors.BLACK + ",08";
         }
+        
+        // Output title and the list
+        showMsg(title);
+        showMsg(list);
     }
     
     @Override
@@ -1845,14 +1815,14 @@ public class TexasTourney extends TexasPoker {
             if (!p.has("cash") || p.has("quit")) {
                 msg += p.getNick(false) + " (" + Colors.RED + formatBold("OUT") + Colors.NORMAL + "), ";
             } else {
-                msg += p.getNick(false) + " (" + formatBold("$" + formatNumber(p.getInteger("cash")));
+                msg += p.getNick(false) + " (" + formatBold("$" + formatNumber(p.getInt("cash")));
                 // Add player stack change
-                if (p.getInteger("change") > 0) {
-                    msg += "[" + Colors.DARK_GREEN + Colors.BOLD + "$" + formatNumber(p.getInteger("change")) + Colors.NORMAL + "]";
-                } else if (p.getInteger("change") < 0) {
-                    msg += "[" + Colors.RED + Colors.BOLD + "$" + formatNumber(p.getInteger("change")) + Colors.NORMAL + "]";
+                if (p.getInt("change") > 0) {
+                    msg += "[" + Colors.DARK_GREEN + Colors.BOLD + "$" + formatNumber(p.getInt("change")) + Colors.NORMAL + "]";
+                } else if (p.getInt("change") < 0) {
+                    msg += "[" + Colors.RED + Colors.BOLD + "$" + formatNumber(p.getInt("change")) + Colors.NORMAL + "]";
                 } else {
-                    msg += "[" + Colors.BOLD + "$" + formatNumber(p.getInteger("change")) + Colors.NORMAL + "]";
+                    msg += "[" + Colors.BOLD + "$" + formatNumber(p.getInt("change")) + Colors.NORMAL + "]";
                 }
                 msg += "), ";
             }
@@ -37,10 +37,10 @@ public class TourneyPokerPlayer extends PokerPlayer {
     }
     
     @Override
-    public Object get(String key) {
-        if (key.equalsIgnoreCase("winrate")) {
+    protected Object getDerivedField(String key) {
+        if (key.equals("winrate")) {
             return getInteger("points") * 100.0 / getInteger("tourneys");
         }
-        return super.get(key);
+        return super.getDerivedField(key);
     }
 }